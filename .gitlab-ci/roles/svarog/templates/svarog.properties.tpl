@@ -4,6 +4,10 @@ driver.name={{ db_driver_name }}
 conn.string={{ db_connstring }}
 user.name={{ db_username }}
 user.password={{ db_password }}
+replica.conn.string=
+sys.replica.max_lag=10
+sys.replica.sticky_time=60
+sys.replica.check_interval=5
 
 conn.dbType={{ db_type }}
 conn.defaultSchema={{ db_schema }}
@@ -16,9 +20,23 @@ sys.service_class=
 sys.force_timezone=
 
 sys.jdbc.batch_size=10
+sys.jdbc.fetch_size=1000
+sys.async.threads=16
+sys.async.virtual_threads=true
+sys.async.queue_size=1000
+sys.query.slow_threshold=1000
+sys.query.log_binds=false
 sys.conf.path=conf
 sys.lock.max_wait_time = 10
 
+sys.cache.max_mb=0
+sys.cache.global_max_mb=0
+sys.cache.query_results.size=1000
+sys.cache.sql_text.size=2000
+sys.cache.authorisation.size=10000
+sys.cache.snapshot.file=
+sys.cache.snapshot.interval=0
+
 sys.defaultLocale=mk_MK
 sys.defaultDateFormat=dd/MM/yyyy
 sys.defaultTimeFormat=HH:mm:ss
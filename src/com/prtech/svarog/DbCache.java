@@ -14,15 +14,24 @@
  *******************************************************************************/
 package com.prtech.svarog;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
 
 import com.prtech.svarog_common.DbDataArray;
 import com.prtech.svarog_common.DbDataObject;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
 import com.prtech.svarog.svCONST;
 
 /**
@@ -43,11 +52,120 @@ public class DbCache {
 	 */
 	static private Map<Long, DbCacheTable> cacheStorage = new ConcurrentHashMap<Long, DbCacheTable>();
 
+	/**
+	 * Coalesces concurrent database loads of the same objects and lists on cache
+	 * miss
+	 */
+	static private final SvSingleFlight singleFlight = new SvSingleFlight();
+
+	/**
+	 * Generation counter per object type, increased on every save or delete of
+	 * an object of the type on this node or on any other node in the cluster
+	 */
+	static private final ConcurrentHashMap<Long, AtomicLong> typeGenerations = new ConcurrentHashMap<Long, AtomicLong>();
+
+	/**
+	 * Cache of query results for the object types which have the result cache
+	 * enabled. The results are keyed by the generated SQL and the bind values
+	 */
+	static private final Cache<String, QueryResult> queryResults = CacheBuilder.newBuilder().recordStats()
+			.maximumSize(SvConf.getQueryCacheSize()).expireAfterAccess(Sv.DEFAULT_CACHE_TTL, TimeUnit.MINUTES)
+			.build();
+
+	/**
+	 * Objects read with a column projection. The keys are weak and compared by
+	 * identity, so an object is partial until it is garbage collected
+	 */
+	static private final Cache<DbDataObject, Boolean> partialObjects = CacheBuilder.newBuilder().weakKeys()
+			.build();
+
+	/**
+	 * Objects which don't match the objects in the shared cache: read from the
+	 * read replica, which may be older than the primary, or read with lazy
+	 * geometries, which other readers don't expect
+	 */
+	static private final Cache<DbDataObject, Boolean> uncacheableObjects = CacheBuilder.newBuilder().weakKeys()
+			.build();
+
+	/**
+	 * Cached result of a query together with the generation of the object type
+	 * at the moment the query was executed
+	 */
+	static final class QueryResult {
+		final long generation;
+		final DbDataArray result;
+
+		QueryResult(long generation, DbDataArray result) {
+			this.generation = generation;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Cache of the generated SQL statements, keyed by the structural fingerprint
+	 * of the query, the row limit and the offset
+	 */
+	static private final Cache<String, SqlText> sqlTexts = CacheBuilder.newBuilder().recordStats()
+			.maximumSize(SvConf.getSqlCacheSize()).build();
+
+	/**
+	 * Generated SQL statement together with the return type sequence which the
+	 * generation set on the query
+	 */
+	static final class SqlText {
+		final String sql;
+		final Integer returnTypeSequence;
+
+		SqlText(String sql, Integer returnTypeSequence) {
+			this.sql = sql;
+			this.returnTypeSequence = returnTypeSequence;
+		}
+	}
+
+	/**
+	 * Cache of the authorisation and empowerment decisions, keyed by the user
+	 * and the object type. The decisions are valid as long as the generation of
+	 * the security object types doesn't change
+	 */
+	static private final Cache<String, AuthDecision> authDecisions = CacheBuilder.newBuilder().recordStats()
+			.maximumSize(SvConf.getAuthCacheSize()).expireAfterAccess(Sv.DEFAULT_CACHE_TTL, TimeUnit.MINUTES)
+			.build();
+
+	/**
+	 * Pseudo object type whose generation is increased when a link granting
+	 * access is saved or deleted. Those are the user group memberships and the
+	 * power of attorney links, while the other links don't affect the access
+	 */
+	static final Long SECURITY_LINKS = -1L;
+
+	/**
+	 * The object types which define the access of a user. Saving or deleting
+	 * any of them invalidates the cached authorisation decisions
+	 */
+	static private final Long[] securityTypes = { svCONST.OBJECT_TYPE_ACL, svCONST.OBJECT_TYPE_SID_ACL,
+			svCONST.OBJECT_TYPE_LINK_TYPE, svCONST.OBJECT_TYPE_GROUP, SECURITY_LINKS };
+
+	/**
+	 * Cached authorisation decision together with the security generation at
+	 * the moment the decision was made
+	 */
+	static final class AuthDecision {
+		final long generation;
+		final Object decision;
+
+		AuthDecision(long generation, Object decision) {
+			this.generation = generation;
+			this.decision = decision;
+		}
+	}
+
 	/**
 	 * Static block to initialise the system cache storage
 	 */
 	static {
 		initCache();
+		SvLongCache.setGlobalMaxWeight(SvConf.getCacheGlobalMaxMb() * 1024L * 1024L);
+		SvCacheMonitor.register();
 	}
 
 	/**
@@ -87,6 +205,264 @@ public class DbCache {
 		return true;
 	}
 
+	/**
+	 * Method to get a read only view of all DbCacheTables in the system
+	 * 
+	 * @return Map of DbCacheTables by object type id
+	 */
+	static Map<Long, DbCacheTable> getCacheTables() {
+		return Collections.unmodifiableMap(cacheStorage);
+	}
+
+	/**
+	 * Method to get the name under which the cache of an object type is
+	 * reported. It is the table name of the object type, or the type id if the
+	 * descriptor isn't cached.
+	 * 
+	 * @param objectType The id of the object type
+	 * @return The name of the cache
+	 */
+	static String getCacheName(Long objectType) {
+		DbDataObject dbt = getObject(objectType, svCONST.OBJECT_TYPE_TABLE);
+		Object tableName = dbt != null ? dbt.getVal(Sv.TABLE_NAME) : null;
+		return tableName != null ? tableName.toString().toLowerCase() : objectType.toString();
+	}
+
+	/**
+	 * Method to get the single flight instance which coalesces concurrent loads
+	 * on cache miss
+	 * 
+	 * @return The single flight instance
+	 */
+	static SvSingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+	/**
+	 * Method to build the key identifying a load from the database
+	 * 
+	 * @param kind       Prefix identifying the kind of load (object, parent list
+	 *                   or link list)
+	 * @param objectType The type of the loaded objects
+	 * @param id         The id of the object, parent or linked object
+	 * @param refDate    The reference date of the load, null for current data
+	 * @return The key of the load
+	 */
+	static String loadKey(String kind, Long objectType, Long id, DateTime refDate) {
+		return kind + "." + objectType + "." + id + (refDate != null ? "." + refDate.getMillis() : "");
+	}
+
+	/**
+	 * Method to get the number of database loads which were saved, because a
+	 * concurrent load of the same data was already in progress
+	 * 
+	 * @return The number of saved loads
+	 */
+	public static long getSavedLoadCount() {
+		return singleFlight.getSavedLoadCount();
+	}
+
+	/**
+	 * Method to get the number of database loads executed on cache miss
+	 * 
+	 * @return The number of executed loads
+	 */
+	public static long getLoadCount() {
+		return singleFlight.getLoadCount();
+	}
+
+	/**
+	 * Method to get the current generation of an object type. The generation
+	 * changes every time an object of the type is saved or deleted, so any result
+	 * read at an older generation might be stale
+	 * 
+	 * @param objectType The id of the object type
+	 * @return The current generation
+	 */
+	static long getGeneration(Long objectType) {
+		AtomicLong generation = typeGenerations.get(objectType);
+		return generation != null ? generation.get() : 0L;
+	}
+
+	/**
+	 * Method to increase the generation of an object type, invalidating all
+	 * cached query results of the type
+	 * 
+	 * @param objectType The id of the object type
+	 */
+	static void bumpGeneration(Long objectType) {
+		AtomicLong generation = typeGenerations.get(objectType);
+		if (generation == null) {
+			AtomicLong newGeneration = new AtomicLong();
+			generation = typeGenerations.putIfAbsent(objectType, newGeneration);
+			if (generation == null)
+				generation = newGeneration;
+		}
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Method to check if the results of the queries over an object type should
+	 * be cached. The result cache is enabled per type by setting
+	 * sys.cache.query_results.[table_name]=true. It should be used for read
+	 * mostly types, since every save or delete drops the cached results of the
+	 * whole type
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @return True if the query results should be cached
+	 */
+	static boolean isResultCacheEnabled(DbDataObject objectDescriptor) {
+		if (objectDescriptor == null || Sv.PERM.equals(getCacheType(objectDescriptor)))
+			return false;
+		Object tableName = objectDescriptor.getVal(Sv.TABLE_NAME);
+		return tableName != null && Boolean
+				.parseBoolean(SvConf.getParam("sys.cache.query_results." + tableName.toString().toLowerCase()));
+	}
+
+	/**
+	 * Method to build the key of a query result from the SQL statement and the
+	 * bind values
+	 * 
+	 * @param objectType     The id of the queried object type
+	 * @param sql            The SQL statement
+	 * @param bindVals       The values bound to the statement
+	 * @param lazyGeometries If the geometries of the result are lazy
+	 * @return The key of the result
+	 */
+	static String queryResultKey(Long objectType, String sql, List<Object> bindVals, boolean lazyGeometries) {
+		StringBuilder key = new StringBuilder(sql.length() + 16 * (bindVals.size() + 1));
+		key.append(objectType).append(lazyGeometries ? 'L' : 'G').append('\u0001').append(sql);
+		for (Object val : bindVals)
+			key.append('\u0001').append(val);
+		return key.toString();
+	}
+
+	/**
+	 * Method to get a cached query result, if it was read at the current
+	 * generation of the object type. Every caller gets its own copy of the
+	 * array, so adding or removing items doesn't change the cached result.
+	 * 
+	 * @param objectType The id of the queried object type
+	 * @param key        The key of the result
+	 * @return The cached result or null if there is no valid result
+	 */
+	static DbDataArray getQueryResult(Long objectType, String key) {
+		QueryResult cached = queryResults.getIfPresent(key);
+		if (cached == null)
+			return null;
+		if (cached.generation != getGeneration(objectType)) {
+			queryResults.invalidate(key);
+			return null;
+		}
+		return new DbDataArray(new ArrayList<DbDataObject>(cached.result.getItems()));
+	}
+
+	/**
+	 * Method to cache a copy of a query result
+	 * 
+	 * @param key        The key of the result
+	 * @param generation The generation of the object type read before the query
+	 *                   was executed
+	 * @param result     The result of the query
+	 */
+	static void putQueryResult(String key, long generation, DbDataArray result) {
+		queryResults.put(key,
+				new QueryResult(generation, new DbDataArray(new ArrayList<DbDataObject>(result.getItems()))));
+	}
+
+	/**
+	 * Method to get the combined generation of the security object types. The
+	 * generations only grow, so the sum changes whenever any of them changes
+	 * 
+	 * @return The security generation
+	 */
+	static long getSecurityGeneration() {
+		long generation = 0L;
+		for (Long objectType : securityTypes)
+			generation += getGeneration(objectType);
+		return generation;
+	}
+
+	/**
+	 * Method to get a cached authorisation decision, if it was made at the
+	 * current security generation
+	 * 
+	 * @param key The key of the decision
+	 * @return The decision or null if there is no valid decision
+	 */
+	static Object getAuthDecision(String key) {
+		AuthDecision cached = authDecisions.getIfPresent(key);
+		if (cached == null)
+			return null;
+		if (cached.generation != getSecurityGeneration()) {
+			authDecisions.invalidate(key);
+			return null;
+		}
+		return cached.decision;
+	}
+
+	/**
+	 * Method to cache an authorisation decision
+	 * 
+	 * @param key        The key of the decision
+	 * @param generation The security generation read before the decision was
+	 *                   made
+	 * @param decision   The decision
+	 */
+	static void putAuthDecision(String key, long generation, Object decision) {
+		authDecisions.put(key, new AuthDecision(generation, decision));
+	}
+
+	/**
+	 * Method to get the cache of authorisation decisions
+	 * 
+	 * @return The authorisation decision cache
+	 */
+	static Cache<String, AuthDecision> getAuthDecisions() {
+		return authDecisions;
+	}
+
+	/**
+	 * Method to get a cached SQL statement
+	 * 
+	 * @param key The fingerprint of the query, including the row limit and offset
+	 * @return The cached SQL statement or null if it isn't cached
+	 */
+	static SqlText getSqlText(String key) {
+		return sqlTexts.getIfPresent(key);
+	}
+
+	/**
+	 * Method to cache a generated SQL statement
+	 * 
+	 * @param key                The fingerprint of the query, including the row
+	 *                           limit and offset
+	 * @param sql                The generated SQL statement
+	 * @param returnTypeSequence The return type sequence set on the query by the
+	 *                           generation
+	 */
+	static void putSqlText(String key, String sql, Integer returnTypeSequence) {
+		sqlTexts.put(key, new SqlText(sql, returnTypeSequence));
+	}
+
+	/**
+	 * Method to get the cache of generated SQL statements
+	 * 
+	 * @return The SQL statement cache
+	 */
+	static Cache<String, SqlText> getSqlTexts() {
+		return sqlTexts;
+	}
+
+	/**
+	 * Method to get the cache of query results
+	 * 
+	 * @return The query result cache
+	 */
+	static Cache<String, QueryResult> getQueryResults() {
+		return queryResults;
+	}
+
 	/**
 	 * Method for fetching an object from the cache based on Id and Type
 	 * 
@@ -102,6 +478,38 @@ public class DbCache {
 			return null;
 	}
 
+	/**
+	 * Method for fetching the version of an object valid at a reference date from
+	 * the cache based on Id and Type
+	 * 
+	 * @param objectId   Id of the object which should be fetched
+	 * @param objectType Type Id of the object
+	 * @param refDate    The reference date at which the version was valid
+	 * @return A DbDataObject instance representing the type/id pair
+	 */
+	static DbDataObject getObject(Long objectId, Long objectType, DateTime refDate) {
+		DbCacheTable dbc = cacheStorage.get(objectType);
+		if (dbc != null)
+			return dbc.getObject(objectId, refDate);
+		else
+			return null;
+	}
+
+	/**
+	 * Method to add a historical version of an object to the cache. The version
+	 * is indexed by its validity interval so it serves any reference date
+	 * between its dt_insert and dt_delete
+	 * 
+	 * @param obj The version of the object to be cached
+	 */
+	static void addObjectVersion(DbDataObject obj) {
+		if (!isCacheable(obj))
+			return;
+		DbCacheTable dbc = getDbCacheTable(obj.getObjectType());
+		if (dbc != null)
+			dbc.addObjectVersion(obj);
+	}
+
 	/**
 	 * Method for fetching a object from the cache by unique key
 	 * 
@@ -118,6 +526,108 @@ public class DbCache {
 			return null;
 	}
 
+	/**
+	 * Method for fetching an object from the cache by the values of a secondary
+	 * index declared for the object type
+	 *
+	 * @param objectType The object type
+	 * @param criteria   Map of upper case field names and values, covering exactly
+	 *                   the fields of an index
+	 * @return The cached object or null if there is no cached object or index
+	 */
+	static DbDataObject getObjectByIndex(Long objectType, Map<String, Object> criteria) {
+		DbCacheTable dbc = cacheStorage.get(objectType);
+		if (dbc != null)
+			return dbc.getObjectByIndex(criteria);
+		else
+			return null;
+	}
+
+	/**
+	 * Method to check if the object type has a secondary index covering exactly
+	 * the set of fields
+	 *
+	 * @param objectType The object type
+	 * @param fields     The upper case field names
+	 * @return True if an index is declared for the fields
+	 */
+	static boolean hasIndex(Long objectType, Collection<String> fields) {
+		DbCacheTable dbc = getDbCacheTable(objectType);
+		return dbc != null && dbc.findIndex(fields) >= 0;
+	}
+
+	/**
+	 * Method to mark an object as partial, because it was read with a column
+	 * projection
+	 * 
+	 * @param obj The partial object
+	 */
+	static void markPartial(DbDataObject obj) {
+		partialObjects.put(obj, Boolean.TRUE);
+	}
+
+	/**
+	 * Method to check if an object is partial. Partial objects don't have all
+	 * fields of their type loaded, so they are never cached and can't be saved
+	 * 
+	 * @param obj The object to check
+	 * @return True if the object was read with a column projection
+	 */
+	public static boolean isPartial(DbDataObject obj) {
+		return obj != null && partialObjects.getIfPresent(obj) != null;
+	}
+
+	/**
+	 * Method to check if an array contains partial objects
+	 * 
+	 * @param arr The array to check
+	 * @return True if any object in the array is partial
+	 */
+	static boolean hasPartial(DbDataArray arr) {
+		if (arr != null && partialObjects.size() > 0)
+			for (DbDataObject obj : arr.getItems())
+				if (isPartial(obj))
+					return true;
+		return false;
+	}
+
+	/**
+	 * Method to mark an object which must be kept out of the cache, because
+	 * it was read from the read replica or with lazy geometries
+	 * 
+	 * @param obj The object to be kept out of the cache
+	 */
+	static void markUncacheable(DbDataObject obj) {
+		uncacheableObjects.put(obj, Boolean.TRUE);
+	}
+
+	/**
+	 * Method to check if an object can be added to the cache. Partial objects,
+	 * objects read from the read replica and objects with lazy geometries are
+	 * never cached
+	 * 
+	 * @param obj The object to check
+	 * @return True if the object can be cached
+	 */
+	static boolean isCacheable(DbDataObject obj) {
+		return !isPartial(obj) && uncacheableObjects.getIfPresent(obj) == null;
+	}
+
+	/**
+	 * Method to check if an array contains objects which can't be cached
+	 * 
+	 * @param arr The array to check
+	 * @return True if any object in the array is partial or read from the
+	 *         replica
+	 */
+	static boolean hasUncacheable(DbDataArray arr) {
+		if (arr != null && (partialObjects.size() > 0 || uncacheableObjects.size() > 0))
+			for (DbDataObject obj : arr.getItems())
+				if (!isCacheable(obj))
+					return true;
+		return false;
+	}
+
 	/**
 	 * Overrided version for backwards compatibility, which doesn't add parent data
 	 * 
@@ -197,22 +707,173 @@ public class DbCache {
 	 */
 	@SuppressWarnings("rawtypes")
 	public static CacheBuilder createBuilder(DbDataObject objectDescriptor, Long cacheSize, Long cacheExpiry) {
-		CacheBuilder builder = CacheBuilder.newBuilder();
-		Long lSize = cacheSize != null ? cacheSize : Sv.DEFAULT_CACHE_SIZE;
-		Long lExpiry = cacheExpiry != null ? cacheExpiry : Sv.DEFAULT_CACHE_TTL;
-		String cacheType = Sv.LRU_TTL;
-		if (objectDescriptor != null) {
-			cacheType = (String) objectDescriptor.getVal(Sv.CACHE_TYPE);
-			lSize = objectDescriptor.getVal(Sv.CACHE_SIZE) == null ? lSize
-					: (Long) objectDescriptor.getVal(Sv.CACHE_SIZE);
-			lExpiry = objectDescriptor.getVal(Sv.CACHE_EXPIRY) == null ? lExpiry
-					: (Long) objectDescriptor.getVal(Sv.CACHE_EXPIRY);
+		CacheBuilder builder = CacheBuilder.newBuilder().recordStats();
+		long lSize = getCacheSize(objectDescriptor, cacheSize);
+		long lExpiry = getCacheExpiry(objectDescriptor, cacheExpiry);
+		if (lExpiry > 0)
+			builder = builder.expireAfterAccess(lExpiry, TimeUnit.MINUTES);
+		if (lSize > 0)
+			builder = builder.maximumSize(lSize);
+		return builder;
+	}
+
+	/**
+	 * Method to create a primitive long keyed cache, configured from the
+	 * objectDescriptor object with the same size and expiry limits as
+	 * {@link #createBuilder(DbDataObject, Long, Long)}
+	 * 
+	 * @param objectDescriptor The object type from which the cache should be
+	 *                         configured
+	 * @param removalListener  Listener to be notified when an entry is removed.
+	 *                         Can be null
+	 * @return The SvLongCache instance configured by objectDescriptor
+	 */
+	static <V> SvLongCache<V> createLongCache(DbDataObject objectDescriptor,
+			RemovalListener<Long, V> removalListener) {
+		return new SvLongCache<V>(getCacheSize(objectDescriptor, null), 0, null,
+				TimeUnit.MINUTES.toNanos(getCacheExpiry(objectDescriptor, null)), removalListener,
+				Ticker.systemTicker(), isFrequencyAdmission(objectDescriptor));
+	}
+
+	/**
+	 * Method to check if the object type is configured with a frequency based
+	 * cache (LFU or LFU_TTL). Such caches admit a new object only if it is
+	 * accessed more often than the object which would be evicted for it, so
+	 * large one-off reads don't push the frequently used objects out of the
+	 * cache
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @return True if the cache should use frequency based admission
+	 */
+	static boolean isFrequencyAdmission(DbDataObject objectDescriptor) {
+		String cacheType = getCacheType(objectDescriptor);
+		return Sv.LFU.equals(cacheType) || Sv.LFU_TTL.equals(cacheType);
+	}
+
+	/**
+	 * Method to create the cache holding the objects of an object type. If a
+	 * memory limit is configured for the object type or globally, the objects
+	 * are weighed by their estimated size and the cache is bounded by weight as
+	 * well as by number of objects. Permanent caches are never weighed.
+	 * 
+	 * @param objectDescriptor The object type from which the cache should be
+	 *                         configured
+	 * @param removalListener  Listener to be notified when an entry is removed.
+	 *                         Can be null
+	 * @return The SvLongCache instance configured by objectDescriptor
+	 */
+	static SvLongCache<DbDataObject> createObjectCache(DbDataObject objectDescriptor,
+			RemovalListener<Long, DbDataObject> removalListener) {
+		long maxWeight = getCacheMaxWeight(objectDescriptor);
+		if (Sv.PERM.equals(getCacheType(objectDescriptor)) || (maxWeight <= 0 && SvConf.getCacheGlobalMaxMb() <= 0))
+			return createLongCache(objectDescriptor, removalListener);
+		return new SvLongCache<DbDataObject>(getCacheSize(objectDescriptor, null), maxWeight, new SvObjectWeigher(),
+				TimeUnit.MINUTES.toNanos(getCacheExpiry(objectDescriptor, null)), removalListener,
+				Ticker.systemTicker(), isFrequencyAdmission(objectDescriptor));
+	}
+
+	/**
+	 * Method to get the maximum size in bytes of the objects cached for an object
+	 * type. The limit is configured by sys.cache.max_mb.[table_name] and defaults
+	 * to sys.cache.max_mb
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @return The maximum size in bytes, zero if there is no limit
+	 */
+	static long getCacheMaxWeight(DbDataObject objectDescriptor) {
+		long maxMb = SvConf.getCacheMaxMb();
+		Object tableName = objectDescriptor != null ? objectDescriptor.getVal(Sv.TABLE_NAME) : null;
+		if (tableName != null) {
+			String typeMaxMb = SvConf.getParam("sys.cache.max_mb." + tableName.toString().toLowerCase());
+			if (typeMaxMb != null)
+				try {
+					maxMb = Long.parseLong(typeMaxMb);
+				} catch (NumberFormatException e) {
+					log4j.warn("Invalid cache size limit for " + tableName + ":" + typeMaxMb);
+				}
+		}
+		return maxMb * 1024L * 1024L;
+	}
+
+	/**
+	 * Method to get the refresh interval of the objects cached for an object
+	 * type. The interval is configured by sys.cache.refresh.[table_name] in
+	 * minutes after the object was loaded. It is valid only for expiring caches
+	 * and must be shorter than the cache expiry
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @return The refresh interval in minutes, zero if refresh is disabled
+	 */
+	static long getCacheRefresh(DbDataObject objectDescriptor) {
+		Object tableName = objectDescriptor != null ? objectDescriptor.getVal(Sv.TABLE_NAME) : null;
+		if (tableName == null)
+			return 0;
+		String typeRefresh = SvConf.getParam("sys.cache.refresh." + tableName.toString().toLowerCase());
+		if (typeRefresh == null)
+			return 0;
+		long refresh = 0;
+		try {
+			refresh = Long.parseLong(typeRefresh);
+		} catch (NumberFormatException e) {
+			log4j.warn("Invalid cache refresh interval for " + tableName + ":" + typeRefresh);
 		}
-		if (!Sv.PERM.equals(cacheType)) {
-			builder = builder.expireAfterAccess(lSize, TimeUnit.MINUTES);
-			builder = builder.maximumSize(lExpiry);
+		long expiry = getCacheExpiry(objectDescriptor, null);
+		if (refresh > 0 && refresh >= expiry) {
+			log4j.warn("Cache refresh interval for " + tableName + " must be shorter than the cache expiry");
+			return 0;
 		}
-		return builder;
+		return refresh;
+	}
+
+	/**
+	 * Method to get the cache type configured in the object descriptor
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @return The cache type, LRU_TTL if none is configured
+	 */
+	static String getCacheType(DbDataObject objectDescriptor) {
+		String cacheType = objectDescriptor != null ? (String) objectDescriptor.getVal(Sv.CACHE_TYPE) : null;
+		return cacheType != null ? cacheType : Sv.LRU_TTL;
+	}
+
+	/**
+	 * Method to get the maximum number of cached objects as configured in the
+	 * object descriptor
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @param cacheSize        The size to be used in case the descriptor doesn't
+	 *                         specify one
+	 * @return The maximum size of the cache or 0 if the cache type is not size
+	 *         limited
+	 */
+	static long getCacheSize(DbDataObject objectDescriptor, Long cacheSize) {
+		String cacheType = getCacheType(objectDescriptor);
+		if (!Sv.LRU.equals(cacheType) && !Sv.LRU_TTL.equals(cacheType) && !Sv.LFU.equals(cacheType)
+				&& !Sv.LFU_TTL.equals(cacheType))
+			return 0;
+		Long lSize = cacheSize != null ? cacheSize : Sv.DEFAULT_CACHE_SIZE;
+		if (objectDescriptor != null && objectDescriptor.getVal(Sv.CACHE_SIZE) != null)
+			lSize = (Long) objectDescriptor.getVal(Sv.CACHE_SIZE);
+		return lSize;
+	}
+
+	/**
+	 * Method to get the time in minutes after last access, after which the cached
+	 * objects expire as configured in the object descriptor
+	 * 
+	 * @param objectDescriptor The object type descriptor
+	 * @param cacheExpiry      The expiry to be used in case the descriptor doesn't
+	 *                         specify one
+	 * @return The expiry in minutes or 0 if the cache type doesn't expire
+	 */
+	static long getCacheExpiry(DbDataObject objectDescriptor, Long cacheExpiry) {
+		String cacheType = getCacheType(objectDescriptor);
+		if (!Sv.TTL.equals(cacheType) && !Sv.LRU_TTL.equals(cacheType) && !Sv.LFU_TTL.equals(cacheType))
+			return 0;
+		Long lExpiry = cacheExpiry != null ? cacheExpiry : Sv.DEFAULT_CACHE_TTL;
+		if (objectDescriptor != null && objectDescriptor.getVal(Sv.CACHE_EXPIRY) != null)
+			lExpiry = (Long) objectDescriptor.getVal(Sv.CACHE_EXPIRY);
+		return lExpiry;
 	}
 
 	/**
@@ -221,6 +882,10 @@ public class DbCache {
 	 * @param obj Object to be cached
 	 */
 	static void addObject(DbDataObject obj, String key, Boolean addParentData) {
+		// partial objects would be served as full objects, replica objects
+		// may be stale
+		if (!isCacheable(obj))
+			return;
 		// get the DbCacheTable which holds the actual in-memory cache
 		DbCacheTable dbc = getDbCacheTable(obj.getObjectType());
 		if (dbc != null) {
@@ -256,6 +921,39 @@ public class DbCache {
 		return null;
 	}
 
+	/**
+	 * Method for fetching array of children objects valid at a reference date
+	 * from the cache based on parent and type
+	 * 
+	 * @param parentId   Id of the parent
+	 * @param objectType Id of the type of parent
+	 * @param refDate    The reference date at which the children were valid
+	 * @return
+	 */
+	static DbDataArray getObjectsByParentId(Long parentId, Long objectType, DateTime refDate) {
+		DbCacheTable tbl = cacheStorage.get(objectType);
+		if (tbl != null)
+			return tbl.getObjectsByParentId(parentId, refDate);
+		return null;
+	}
+
+	/**
+	 * Method which adds all versions of the children of a parent to the cache.
+	 * The versions are indexed by their validity interval, so the history serves
+	 * children lists for any reference date.
+	 * 
+	 * @param versions     All versions of the children of the parent
+	 * @param objectTypeId The type of the children
+	 * @param parentId     The ID of the parent
+	 */
+	static void addHistoryByParentId(DbDataArray versions, Long objectTypeId, Long parentId) {
+		if (hasUncacheable(versions))
+			return;
+		DbCacheTable dbc = getDbCacheTable(objectTypeId);
+		if (dbc != null)
+			dbc.addHistoryByParentId(versions, objectTypeId, parentId);
+	}
+
 	/**
 	 * Method for fetching array of linked objects from the cache based on linked
 	 * object id , type id and link type id
@@ -318,6 +1016,8 @@ public class DbCache {
 	 */
 	static void addArrayByParentId(DbDataArray dboArray, Long objectTypeId, Long parentId,
 			boolean executeParentChecks) {
+		if (hasUncacheable(dboArray))
+			return;
 		// get the DbCacheTable which holds the actual in-memory cache
 		DbCacheTable dbc = getDbCacheTable(objectTypeId);
 		if (dbc != null)
@@ -357,6 +1057,8 @@ public class DbCache {
 	 */
 	static void addArrayByLinkedId(DbDataArray arr, Long LinkObjectId, Long linkObjectTypeId, Long dbLinkId,
 			Long objectTypeId, String linkStatus) {
+		if (hasUncacheable(arr))
+			return;
 		// get the DbCacheTable which holds the actual in-memory cache
 		DbCacheTable dbc = getDbCacheTable(objectTypeId);
 		if (dbc != null)
@@ -452,13 +1154,20 @@ public class DbCache {
 		DbCacheTable tbl = cacheStorage.get(objectType);
 		if (tbl != null)
 			tbl.clean();
+		bumpGeneration(objectType);
 	}
 
 	/**
 	 * Method to reset the full Svarog cache
 	 */
 	static void clean() {
+		// release the weight of the dropped caches from the global budget
+		for (DbCacheTable tbl : cacheStorage.values())
+			tbl.invalidateAll();
 		cacheStorage.clear();
+		queryResults.invalidateAll();
+		sqlTexts.invalidateAll();
+		authDecisions.invalidateAll();
 		initCache();
 	}
 }
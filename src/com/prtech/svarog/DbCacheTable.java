@@ -16,11 +16,14 @@ package com.prtech.svarog;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
@@ -31,6 +34,10 @@ import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.prtech.svarog_common.DbDataArray;
 import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbSearch;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
 
 public class DbCacheTable {
 
@@ -45,23 +52,52 @@ public class DbCacheTable {
 	/**
 	 * Internal Cache object storing DbDataObjects
 	 */
-	private Cache<Long, DbDataObject> objCache = null;
+	private SvLongCache<DbDataObject> objCache = null;
 
 	/**
 	 * Internal Cache object storing Historical DbDataObjects
 	 */
-	private Cache<Long, DbDataObject> objHistoryCache = null;
+	private SvLongCache<DbDataObject> objHistoryCache = null;
 
 	/**
 	 * Map holding pairs of unique values and object Id
 	 */
 	private Cache<String, DbDataObject> objKeyCache = null;
 
-	private Cache<String, CopyOnWriteArrayList<Long>> objParentIdCache = null;
+	/**
+	 * Map holding the current list of children per parent id. The lists are
+	 * immutable snapshots, which are swapped atomically on change
+	 */
+	private SvLongCache<long[]> objParentIdCache = null;
+
+	/**
+	 * Interval index of the cached versions per object id. Each snapshot holds
+	 * triplets of dt_insert millis, dt_delete millis and pkid of a version
+	 */
+	private SvLongCache<long[]> objVersionIdx = null;
+
+	/**
+	 * Interval index of all versions of the children per parent id, using the
+	 * same triplet layout as objVersionIdx
+	 */
+	private SvLongCache<long[]> objHistoryParentIdx = null;
+
+	/**
+	 * Map holding the snapshots of linked object ids per link status
+	 */
+	private Cache<String, ConcurrentHashMap<String, long[]>> objLinkedIdCache = null;
+
+	/**
+	 * The sorted field names of each secondary index declared for the type
+	 */
+	private String[][] indexFields = new String[0][];
 
-	private Cache<String, ConcurrentHashMap<String, CopyOnWriteArrayList<Long>>> objLinkedIdCache = null;
+	/**
+	 * Secondary indexes mapping the key built from the indexed values to the
+	 * object id, one map per entry in indexFields
+	 */
+	private ArrayList<ConcurrentHashMap<String, Long>> indexes = new ArrayList<ConcurrentHashMap<String, Long>>();
 
-	private Cache<String, Long> objHistoryDateCache = null;
 	// when the cache is evicting records we need to remove the object support
 	// in form of
 	// unique maps and parent lists
@@ -71,45 +107,78 @@ public class DbCacheTable {
 		}
 	};
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void cacheConfig(DbDataObject objectdDescriptor) {
-		String cType = "LRU_TTL";
-
-		CacheBuilder builder = CacheBuilder.newBuilder();
-		if (objectdDescriptor != null) {
-			if (objectdDescriptor.getVal("cache_type") != null)
-				cType = (String) objectdDescriptor.getVal("cache_type");
-
-			if (cType.equals("LRU") || cType.equals("LRU_TTL")) {
-				if (objectdDescriptor.getVal("cache_size") != null)
-					builder = builder.maximumSize((Long) objectdDescriptor.getVal("cache_size"));
-				else
-					builder = builder.maximumSize(5000);
-
-			}
+	/**
+	 * Method to find the index of an id in a snapshot of ids
+	 * 
+	 * @param ids The snapshot of ids
+	 * @param id  The id to look for
+	 * @return The index of the id or -1 if not found
+	 */
+	static int indexOf(long[] ids, long id) {
+		for (int i = 0; i < ids.length; i++)
+			if (ids[i] == id)
+				return i;
+		return -1;
+	}
 
-			if (cType.equals("TTL") || cType.equals("LRU_TTL")) {
-				if (objectdDescriptor.getVal("cache_expiry") != null)
-					builder = builder.expireAfterAccess((Long) objectdDescriptor.getVal("cache_expiry"),
-							TimeUnit.MINUTES);
-				else
-					builder = builder.expireAfterAccess(10, TimeUnit.MINUTES);
+	/**
+	 * Method to create a new snapshot with the id appended at the end
+	 * 
+	 * @param ids The current snapshot of ids
+	 * @param id  The id to be appended
+	 * @return New snapshot containing the id
+	 */
+	static long[] append(long[] ids, long id) {
+		long[] result = Arrays.copyOf(ids, ids.length + 1);
+		result[ids.length] = id;
+		return result;
+	}
 
-			}
+	/**
+	 * Method to create a new snapshot without the id at the specified index
+	 * 
+	 * @param ids   The current snapshot of ids
+	 * @param index The index to be removed
+	 * @return New snapshot without the id
+	 */
+	static long[] removeAt(long[] ids, int index) {
+		long[] result = new long[ids.length - 1];
+		System.arraycopy(ids, 0, result, 0, index);
+		System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+		return result;
+	}
 
-		}
-		objHistoryCache = (Cache<Long, DbDataObject>) builder.<Long, DbDataObject>build();
-		objLinkedIdCache = (Cache<String, ConcurrentHashMap<String, CopyOnWriteArrayList<Long>>>) builder
-				.<String, ConcurrentHashMap<String, CopyOnWriteArrayList<Long>>>build();
-		objHistoryDateCache = (Cache<String, Long>) builder.<String, Long>build();
-		objParentIdCache = (Cache<String, CopyOnWriteArrayList<Long>>) builder
-				.<String, CopyOnWriteArrayList<Long>>build();
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void cacheConfig(DbDataObject objectdDescriptor) {
+		// caches without descriptor are the core system caches, which are
+		// never evicted
+		CacheBuilder builder = objectdDescriptor != null ? DbCache.createBuilder(objectdDescriptor)
+				: CacheBuilder.newBuilder().recordStats();
+
+		objHistoryCache = objectdDescriptor != null ? DbCache.createObjectCache(objectdDescriptor, null)
+				: new SvLongCache<DbDataObject>(0, 0, null);
+		objParentIdCache = objectdDescriptor != null ? DbCache.<long[]>createLongCache(objectdDescriptor, null)
+				: new SvLongCache<long[]>(0, 0, null);
+		objLinkedIdCache = (Cache<String, ConcurrentHashMap<String, long[]>>) builder
+				.<String, ConcurrentHashMap<String, long[]>>build();
+		objVersionIdx = objectdDescriptor != null ? DbCache.<long[]>createLongCache(objectdDescriptor, null)
+				: new SvLongCache<long[]>(0, 0, null);
+		objHistoryParentIdx = objectdDescriptor != null ? DbCache.<long[]>createLongCache(objectdDescriptor, null)
+				: new SvLongCache<long[]>(0, 0, null);
 		objKeyCache = (Cache<String, DbDataObject>) builder.<String, DbDataObject>build();
 
-		if (!cType.equals("PERM"))
-			builder = builder.removalListener(onRemove);
-
-		objCache = (Cache<Long, DbDataObject>) builder.<Long, DbDataObject>build();
+		RemovalListener<Long, DbDataObject> listener = Sv.PERM.equals(DbCache.getCacheType(objectdDescriptor))
+				? null
+				: onRemove;
+		objCache = objectdDescriptor != null ? DbCache.createObjectCache(objectdDescriptor, listener)
+				: new SvLongCache<DbDataObject>(0, 0, listener);
+		// hot objects are reloaded in the background before they expire, so
+		// the objects expire after they were loaded instead after last access
+		long refresh = DbCache.getCacheRefresh(objectdDescriptor);
+		if (refresh > 0)
+			objCache.setRefreshAfterWrite(TimeUnit.MINUTES.toNanos(refresh),
+					TimeUnit.MINUTES.toNanos(DbCache.getCacheExpiry(objectdDescriptor, null)),
+					new SvCacheRefresher(objectdDescriptor.getObjectId()));
 	}
 
 	DbCacheTable(String[] uqFields, String unqLevel) {
@@ -127,26 +196,240 @@ public class DbCacheTable {
 	 */
 	DbCacheTable(DbDataObject objectdDescriptor, DbDataArray objectProperties) {
 		cacheConfig(objectdDescriptor);
+		indexFields = getIndexFields(objectdDescriptor);
+		for (int i = 0; i < indexFields.length; i++)
+			indexes.add(new ConcurrentHashMap<String, Long>());
+	}
+
+	/**
+	 * Method to parse the secondary indexes of an object type. The unique
+	 * config id of configuration tables is always indexed, other indexes are
+	 * declared in the cache_indexes extended parameter as comma separated list
+	 * of indexes, where the fields of a composite index are joined with '+'.
+	 * For example "PIN,PARENT_ID+CODE_VALUE"
+	 * 
+	 * @param objectDescriptor The descriptor of the object type
+	 * @return Array of the sorted upper case field names of each index
+	 */
+	static String[][] getIndexFields(DbDataObject objectDescriptor) {
+		ArrayList<String[]> result = new ArrayList<String[]>();
+		if (objectDescriptor != null) {
+			Object configUnqId = objectDescriptor.getVal(Sv.CONFIG_UNQ_ID);
+			if (Boolean.TRUE.equals(objectDescriptor.getVal(Sv.IS_CONFIG_TABLE)) && configUnqId != null)
+				addIndexFields(result, configUnqId.toString());
+			Object declared = objectDescriptor.getVal(Sv.CACHE_INDEXES);
+			if (declared != null)
+				for (String index : declared.toString().split(","))
+					addIndexFields(result, index);
+		}
+		return result.toArray(new String[result.size()][]);
+	}
+
+	private static void addIndexFields(ArrayList<String[]> result, String index) {
+		String fieldList = index.trim().toUpperCase();
+		if (fieldList.isEmpty())
+			return;
+		String[] fields = fieldList.split("\\s*\\+\\s*");
+		Arrays.sort(fields);
+		for (String[] existing : result)
+			if (Arrays.equals(existing, fields))
+				return;
+		result.add(fields);
+	}
+
+	/**
+	 * Method to get the value of an indexed field from an object, including the
+	 * repo fields which aren't part of the values map
+	 * 
+	 * @param dbo   The object
+	 * @param field The upper case field name
+	 * @return The value of the field
+	 */
+	static Object getIndexedValue(DbDataObject dbo, String field) {
+		if (Sv.PARENT_ID.equalsIgnoreCase(field))
+			return dbo.getParentId();
+		if (Sv.STATUS.equalsIgnoreCase(field))
+			return dbo.getStatus();
+		return dbo.getVal(field);
+	}
+
+	/**
+	 * Method to build the key of an index from the values of the indexed fields.
+	 * Numbers are normalised so the key doesn't depend on the numeric class
+	 * returned by the JDBC driver
+	 * 
+	 * @param values The values in the order of the sorted index fields
+	 * @return The key or null if any of the values is null
+	 */
+	static String indexKey(Object[] values) {
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			if (value == null)
+				return null;
+			if (i > 0)
+				key.append('\u0001');
+			if (value instanceof Number)
+				key.append("N:").append(new BigDecimal(value.toString()).stripTrailingZeros().toPlainString());
+			else
+				key.append(value.getClass().getName()).append(':').append(value.toString());
+		}
+		return key.toString();
+	}
+
+	private static String indexKey(DbDataObject dbo, String[] fields) {
+		Object[] values = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			values[i] = getIndexedValue(dbo, fields[i]);
+		return indexKey(values);
+	}
+
+	/**
+	 * Method to find the secondary index covering exactly the set of fields
+	 * 
+	 * @param fields The upper case field names
+	 * @return The position of the index or -1 if there is no such index
+	 */
+	int findIndex(Collection<String> fields) {
+		String[] sorted = fields.toArray(new String[fields.size()]);
+		Arrays.sort(sorted);
+		for (int i = 0; i < indexFields.length; i++)
+			if (Arrays.equals(indexFields[i], sorted))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Method to get an object by the values of a declared secondary index. The
+	 * values of the cached object are verified against the criteria, so a stale
+	 * index entry is dropped instead of returning a wrong object.
+	 * 
+	 * @param criteria Map of upper case field names and values, covering exactly
+	 *                 the fields of an index
+	 * @return The object or null if it isn't cached or there is no such index
+	 */
+	DbDataObject getObjectByIndex(Map<String, Object> criteria) {
+		int ix = findIndex(criteria.keySet());
+		if (ix < 0)
+			return null;
+		String[] fields = indexFields[ix];
+		Object[] values = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			values[i] = criteria.get(fields[i]);
+		String key = indexKey(values);
+		if (key == null)
+			return null;
+		ConcurrentHashMap<String, Long> index = indexes.get(ix);
+		Long objectId = index.get(key);
+		if (objectId == null)
+			return null;
+		DbDataObject dbo = getObjectImpl(objectId, false);
+		if (dbo == null || !key.equals(indexKey(dbo, fields))) {
+			index.remove(key, objectId);
+			return null;
+		}
+		return dbo;
+	}
+
+	/**
+	 * Method to add an object to all secondary indexes of the type
+	 * 
+	 * @param dbo The cached object
+	 */
+	private void indexObject(DbDataObject dbo) {
+		for (int i = 0; i < indexFields.length; i++) {
+			String key = indexKey(dbo, indexFields[i]);
+			if (key != null)
+				indexes.get(i).put(key, dbo.getObject_id());
+		}
+	}
+
+	/**
+	 * Method to remove an object from all secondary indexes. Entries which
+	 * already point to another object are left intact
+	 * 
+	 * @param dbo The object removed from the cache
+	 */
+	private void unindexObject(DbDataObject dbo) {
+		for (int i = 0; i < indexFields.length; i++) {
+			String key = indexKey(dbo, indexFields[i]);
+			if (key != null)
+				indexes.get(i).remove(key, dbo.getObject_id());
+		}
+	}
+
+	/**
+	 * Method to convert a search into a map of equality criteria, which can be
+	 * served by a secondary index. Only a single EQUAL criterion or an
+	 * expression of EQUAL criteria joined with AND are accepted.
+	 * 
+	 * @param search The search to be converted
+	 * @return Map of upper case field names and values or null if the search
+	 *         isn't a plain equality search
+	 */
+	static HashMap<String, Object> getEqualityCriteria(DbSearch search) {
+		HashMap<String, Object> criteria = new HashMap<String, Object>();
+		return addEqualityCriteria(criteria, search) ? criteria : null;
+	}
+
+	private static boolean addEqualityCriteria(HashMap<String, Object> criteria, DbSearch search) {
+		if (search instanceof DbSearchCriterion) {
+			DbSearchCriterion crit = (DbSearchCriterion) search;
+			if (crit.getOperand() != DbCompareOperand.EQUAL || crit.getFieldName() == null
+					|| Boolean.TRUE.equals(crit.getNotPrefix()) || crit.getCompareValue() == null)
+				return false;
+			return criteria.put(crit.getFieldName().trim().toUpperCase(), crit.getCompareValue()) == null;
+		}
+		if (search instanceof DbSearchExpression) {
+			DbSearchExpression expr = (DbSearchExpression) search;
+			ArrayList<DbSearch> items = expr.getExprList();
+			if (items.isEmpty())
+				return false;
+			for (int i = 0; i < items.size(); i++) {
+				DbSearch item = items.get(i);
+				String operand = item instanceof DbSearchCriterion ? ((DbSearchCriterion) item).getNextCritOperand()
+						: item instanceof DbSearchExpression ? ((DbSearchExpression) item).getNextCritOperand()
+								: null;
+				if ((i < items.size() - 1 && !DbSearch.DbLogicOperand.AND.toString().equals(operand))
+						|| !addEqualityCriteria(criteria, item))
+					return false;
+			}
+			return true;
+		}
+		return false;
 	}
 
 	DbDataObject getObject(Long object_id) {
 		return getObject(object_id, null);
 	}
 
+	/**
+	 * Method to get the version of an object which was valid at the reference
+	 * date. The version is located by the interval index, so any reference date
+	 * between the dt_insert and dt_delete of a cached version is a hit.
+	 * 
+	 * @param object_id The id of the object
+	 * @param refDate   The reference date, null for the current version
+	 * @return The object or null if no cached version is valid at refDate
+	 */
 	DbDataObject getObject(Long object_id, DateTime refDate) {
-		Long oid = object_id;
-		boolean isHistorical = refDate != null;
-		if (isHistorical)
-			oid = objHistoryDateCache.getIfPresent(object_id.toString() + Long.toString(refDate.getMillis()));
-		if (oid != null)
-			return getObjectImpl(oid, isHistorical);
-		else
-			return null;
+		if (refDate == null)
+			return getObjectImpl(object_id, false);
 
+		long[] versions = objVersionIdx.getIfPresent(object_id);
+		if (versions == null)
+			return null;
+		int ix = findVersion(versions, 0, refDate.getMillis());
+		if (ix < 0)
+			return null;
+		DbDataObject dbo = getObjectImpl(versions[ix + 2], true);
+		if (dbo == null)
+			objVersionIdx.remove(object_id, versions);
+		return dbo;
 	}
 
-	private DbDataObject getObjectImpl(Long object_id, boolean isHistorical) {
-		Cache<Long, DbDataObject> currentCache = isHistorical ? objHistoryCache : objCache;
+	private DbDataObject getObjectImpl(long object_id, boolean isHistorical) {
+		SvLongCache<DbDataObject> currentCache = isHistorical ? objHistoryCache : objCache;
 		DbDataObject dbo = currentCache.getIfPresent(object_id);
 		if (dbo != null && !dbo.getIs_dirty())
 			return dbo;
@@ -157,32 +440,135 @@ public class DbCacheTable {
 		}
 	}
 
+	/**
+	 * Method to apply a background refresh of a cached object. The cache is
+	 * changed only if it still holds the refreshed instance. The unique keys
+	 * and the indexes of the refreshed instance are dropped the same way as in
+	 * {@link #removeObject(Long, String)}, as well as the parent lists if the
+	 * object was deleted or moved to another parent. The linked lists don't
+	 * depend on the object version and the lists holding a deleted object are
+	 * dropped on the next read, since the object isn't cached anymore
+	 * 
+	 * @param objectId The id of the object
+	 * @param cached   The cached instance which was refreshed
+	 * @param current  The current version from the database, null if the object
+	 *                 was deleted
+	 */
+	void refreshObject(long objectId, DbDataObject cached, DbDataObject current) {
+		if (current == null) {
+			if (objCache.remove(objectId, cached)) {
+				objVersionIdx.invalidate(objectId);
+				removeKeys(cached);
+				removeObjectSupport(cached);
+			}
+		} else if (current.getPkid().equals(cached.getPkid()))
+			objCache.touch(objectId, cached);
+		else if (objCache.replace(objectId, cached, current)) {
+			objVersionIdx.invalidate(objectId);
+			removeKeys(cached);
+			unindexObject(cached);
+			indexObject(current);
+			Long oldParent = cached.getParentId();
+			if (oldParent == null ? current.getParentId() != null : !oldParent.equals(current.getParentId())) {
+				removeObjectSupport(oldParent);
+				removeObjectSupport(current.getParentId());
+			}
+		}
+	}
+
+	/**
+	 * Method to remove the unique keys which point to an instance. The key
+	 * can't be derived from the object, so the key cache is scanned
+	 * 
+	 * @param dbo The instance removed from the cache
+	 */
+	private void removeKeys(DbDataObject dbo) {
+		Iterator<DbDataObject> it = objKeyCache.asMap().values().iterator();
+		while (it.hasNext())
+			if (it.next() == dbo)
+				it.remove();
+	}
+
+	/**
+	 * Method to find the next version triplet which is valid at the reference
+	 * time. Validity is inclusive on both ends, same as the BETWEEN criterion
+	 * used by DbQueryObject
+	 * 
+	 * @param versions The interval index snapshot
+	 * @param start    The index of the triplet from which to start the search
+	 * @param refTime  The reference time in millis
+	 * @return The index of the triplet or -1 if no version is valid
+	 */
+	static int findVersion(long[] versions, int start, long refTime) {
+		for (int i = start; i < versions.length; i += 3)
+			if (versions[i] <= refTime && refTime <= versions[i + 1])
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Method to add a version of an object to the historical cache and its
+	 * validity interval to the index of the object
+	 * 
+	 * @param dbo The version of the object
+	 */
+	void addObjectVersion(DbDataObject dbo) {
+		if (dbo.getPkid() == null || dbo.getDtInsert() == null || dbo.getDtDelete() == null)
+			return;
+		objHistoryCache.put(dbo.getPkid(), dbo);
+		long objectId = dbo.getObject_id();
+		while (true) {
+			long[] versions = objVersionIdx.getIfPresent(objectId);
+			if (versions == null) {
+				if (objVersionIdx.putIfAbsent(objectId, versionTriplet(dbo)) == null)
+					return;
+			} else {
+				for (int i = 0; i < versions.length; i += 3)
+					if (versions[i + 2] == dbo.getPkid())
+						return;
+				long[] triplet = versionTriplet(dbo);
+				long[] result = Arrays.copyOf(versions, versions.length + 3);
+				System.arraycopy(triplet, 0, result, versions.length, 3);
+				if (objVersionIdx.replace(objectId, versions, result))
+					return;
+			}
+		}
+	}
+
+	private static long[] versionTriplet(DbDataObject dbo) {
+		return new long[] { dbo.getDtInsert().getMillis(), dbo.getDtDelete().getMillis(), dbo.getPkid() };
+	}
+
 	DbDataArray getObjectsByParentId(Long parent_id) {
 		return getObjectsByParentId(parent_id, null);
 	}
 
+	/**
+	 * Method to get the children of a parent. For reference dates, the children
+	 * are filtered from the cached version history of the parent, so all
+	 * reference dates are served by a single cached history.
+	 * 
+	 * @param parent_id The id of the parent
+	 * @param refDate   The reference date, null for the current list
+	 * @return The array of children or null if the list isn't cached
+	 */
 	DbDataArray getObjectsByParentId(Long parent_id, DateTime refDate) {
-		boolean isHistorical = refDate != null;
-		String listId = parent_id.toString() + (isHistorical ? Long.toString(refDate.getMillis()) : CURRENT_TIME);
-		CopyOnWriteArrayList<Long> children = null;
-		children = objParentIdCache.getIfPresent(listId);
+		if (refDate != null)
+			return getObjectsByParentIdHistory(parent_id, refDate.getMillis());
 
+		long[] children = objParentIdCache.getIfPresent(parent_id);
 		if (children != null) {
 			DbDataArray retval = new DbDataArray();
-			synchronized (children) {
-				Iterator<Long> it = children.iterator();
-				while (it.hasNext()) {
-					DbDataObject dbo = getObjectImpl(it.next(), isHistorical);
-					if (dbo != null)
-						retval.addDataItem(dbo);
-					else {
-
-						objParentIdCache.invalidate(listId);
-						retval = null;
-						break;
-					}
-
+			for (long childId : children) {
+				DbDataObject dbo = getObjectImpl(childId, false);
+				if (dbo != null)
+					retval.addDataItem(dbo);
+				else {
+					objParentIdCache.remove(parent_id, children);
+					retval = null;
+					break;
 				}
+
 			}
 			return retval;
 		} else
@@ -190,6 +576,48 @@ public class DbCacheTable {
 
 	}
 
+	private DbDataArray getObjectsByParentIdHistory(long parentId, long refTime) {
+		long[] versions = objHistoryParentIdx.getIfPresent(parentId);
+		if (versions == null)
+			return null;
+		DbDataArray retval = new DbDataArray();
+		int ix = findVersion(versions, 0, refTime);
+		while (ix >= 0) {
+			DbDataObject dbo = getObjectImpl(versions[ix + 2], true);
+			if (dbo == null) {
+				objHistoryParentIdx.remove(parentId, versions);
+				return null;
+			}
+			retval.addDataItem(dbo);
+			ix = findVersion(versions, ix + 3, refTime);
+		}
+		return retval;
+	}
+
+	/**
+	 * Method to cache the full version history of the children of a parent.
+	 * Versions which are not of the object type or not children of the parent
+	 * are ignored.
+	 * 
+	 * @param versions     All versions of the children of the parent
+	 * @param objectTypeId The type of the children
+	 * @param parentId     The id of the parent
+	 */
+	void addHistoryByParentId(DbDataArray versions, Long objectTypeId, Long parentId) {
+		long[] index = new long[versions.getItems().size() * 3];
+		int size = 0;
+		for (DbDataObject dbo : versions.getItems()) {
+			if (!dbo.getObject_type().equals(objectTypeId) || !parentId.equals(dbo.getParent_id())
+					|| dbo.getPkid() == null || dbo.getDtInsert() == null || dbo.getDtDelete() == null)
+				continue;
+			addObjectVersion(dbo);
+			long[] triplet = versionTriplet(dbo);
+			System.arraycopy(triplet, 0, index, size, 3);
+			size += 3;
+		}
+		objHistoryParentIdx.put(parentId, size == index.length ? index : Arrays.copyOf(index, size));
+	}
+
 	/**
 	 * Get all objects from the cache linked to LinkObjectId via dbLinkId
 	 * 
@@ -224,31 +652,28 @@ public class DbCacheTable {
 
 		String mapId = LinkObjectId.toString() + dbLinkId.toString()
 				+ (isHistorical ? Long.toString(refDate.getMillis()) : CURRENT_TIME);
-		ConcurrentHashMap<String, CopyOnWriteArrayList<Long>> lnkMap = objLinkedIdCache.getIfPresent(mapId);
+		ConcurrentHashMap<String, long[]> lnkMap = objLinkedIdCache.getIfPresent(mapId);
 		if (lnkMap == null)
 			return null;
 
-		synchronized (lnkMap) {
-			String lstId = linkStatus != null ? linkStatus : "null";
-			CopyOnWriteArrayList<Long> children = lnkMap.get(lstId);
-			if (children != null) {
-				DbDataArray retval = new DbDataArray();
-				Iterator<Long> it = children.iterator();
-				while (it.hasNext()) {
-					DbDataObject dbo = getObjectImpl(it.next(), isHistorical);
-					if (dbo != null)
-						retval.addDataItem(dbo);
-					else {
-						objLinkedIdCache.invalidate(mapId);
-						retval = null;
-						break;
-					}
-
+		String lstId = linkStatus != null ? linkStatus : "null";
+		long[] children = lnkMap.get(lstId);
+		if (children != null) {
+			DbDataArray retval = new DbDataArray();
+			for (long childId : children) {
+				DbDataObject dbo = getObjectImpl(childId, isHistorical);
+				if (dbo != null)
+					retval.addDataItem(dbo);
+				else {
+					lnkMap.remove(lstId, children);
+					retval = null;
+					break;
 				}
-				return retval;
-			} else
-				return null;
-		}
+
+			}
+			return retval;
+		} else
+			return null;
 	}
 
 	/**
@@ -258,6 +683,7 @@ public class DbCacheTable {
 	 */
 	void addObject(DbDataObject obj) {
 		objCache.put(obj.getObject_id(), obj);
+		indexObject(obj);
 	}
 
 	/**
@@ -267,6 +693,7 @@ public class DbCacheTable {
 	 */
 	void addObject(DbDataObject obj, String key) {
 		objCache.put(obj.getObject_id(), obj);
+		indexObject(obj);
 		if (key != null)
 			objKeyCache.put(key, obj);
 	}
@@ -287,41 +714,56 @@ public class DbCacheTable {
 	 */
 	void addObjectParentMetaData(DbDataObject obj) {
 		DbDataObject oldDbo = objCache.getIfPresent(obj.getObject_id());
-		String parentListId = (obj.getParent_id() != null ? obj.getParent_id().toString() : "0") + CURRENT_TIME;
 		// if the object was cached, check if the parent was changed
-		synchronized (objParentIdCache) {
-			if (oldDbo != null && obj.getParent_id() != oldDbo.getParent_id()) {
-				String oldListId = (oldDbo.getParent_id() != null ? oldDbo.getParent_id().toString() : "0")
-						+ CURRENT_TIME;
-
-				CopyOnWriteArrayList<Long> oldChildren = objParentIdCache.getIfPresent(oldListId);
-				if (oldChildren != null) {
-					int oldIx = oldChildren.indexOf(oldDbo.getObject_id());
-					if (oldIx >= 0)
-						oldChildren.remove(oldIx);
-				}
-			}
-			CopyOnWriteArrayList<Long> children = objParentIdCache.getIfPresent(parentListId);
+		if (oldDbo != null && obj.getParent_id() != oldDbo.getParent_id())
+			removeChild(oldDbo.getParent_id() != null ? oldDbo.getParent_id() : 0L, oldDbo.getObject_id());
+		addChild(obj.getParent_id() != null ? obj.getParent_id() : 0L, obj.getObject_id());
+	}
+
+	/**
+	 * Method to add a child id to the current list of children of a parent. The
+	 * new snapshot is published with compare-and-set, retrying if another writer
+	 * changed the list concurrently.
+	 * 
+	 * @param parentId The id of the parent
+	 * @param childId  The id of the child
+	 */
+	private void addChild(long parentId, long childId) {
+		while (true) {
+			long[] children = objParentIdCache.getIfPresent(parentId);
 			if (children == null) {
-				children = new CopyOnWriteArrayList<Long>();
-				objParentIdCache.put(parentListId, children);
-			}
-			children.addIfAbsent(obj.getObject_id());
+				if (objParentIdCache.putIfAbsent(parentId, new long[] { childId }) == null)
+					return;
+			} else if (indexOf(children, childId) >= 0
+					|| objParentIdCache.replace(parentId, children, append(children, childId)))
+				return;
 		}
+	}
 
+	/**
+	 * Method to remove a child id from the current list of children of a parent
+	 * 
+	 * @param parentId The id of the parent
+	 * @param childId  The id of the child
+	 */
+	private void removeChild(long parentId, long childId) {
+		while (true) {
+			long[] children = objParentIdCache.getIfPresent(parentId);
+			if (children == null)
+				return;
+			int ix = indexOf(children, childId);
+			if (ix < 0 || objParentIdCache.replace(parentId, children, removeAt(children, ix)))
+				return;
+		}
 	}
 
 	void removeByParentId(Long parentId) {
-		String parentListId = parentId.toString() + CURRENT_TIME;
-		objParentIdCache.invalidate(parentListId);
+		objParentIdCache.invalidate(parentId);
+		objHistoryParentIdx.invalidate(parentId);
 	}
 
 	void addArrayByParentId(DbDataArray objects, Long objectTypeId, Long parentId) {
-		addArrayByParentId(objects, objectTypeId, parentId, null, true);
-	}
-
-	void addArrayByParentId(DbDataArray objects, Long objectTypeId, Long parentId, boolean executeParentChecks) {
-		addArrayByParentId(objects, objectTypeId, parentId, null, executeParentChecks);
+		addArrayByParentId(objects, objectTypeId, parentId, true);
 	}
 
 	/**
@@ -337,30 +779,29 @@ public class DbCacheTable {
 	void updateObjectMetadata(DbDataObject dbo, DbDataObject oldDbo) {
 		if (oldDbo != null && oldDbo.getPkid() != dbo.getPkid()) {
 			if (dbo.getParent_id() != oldDbo.getParent_id()) {
-				String oldListID = (oldDbo.getParent_id() != null ? oldDbo.getParent_id().toString() : "0")
-						+ CURRENT_TIME;
-				objParentIdCache.invalidate(oldListID);
+				objParentIdCache.invalidate(oldDbo.getParent_id() != null ? oldDbo.getParent_id() : 0L);
 			}
 		}
 	}
 
 	/**
-	 * Method to update the list of children according to a parent, or according to
-	 * a list of linked objects as well
+	 * Method to build the list of children according to a parent, or according
+	 * to a list of linked objects as well
 	 * 
-	 * @param children        The list object IDs of the children (or linked
-	 *                        objects)
 	 * @param childrenDbArray The new list of objects which
 	 * @param parentId        The parent Id for which we want to cache the children.
 	 *                        If its a linked list then its null
 	 * @param objectTypeId    The object type (we use it to make sure that we don't
 	 *                        cache wrong object types)
 	 * @param isHistorical    Flag to signify if the list is current or historical
+	 * @return Immutable snapshot of the object IDs of the children (or linked
+	 *         objects)
 	 */
-	private void updateChildList(CopyOnWriteArrayList<Long> children, DbDataArray childrenDbArray, Long parentId,
-			Long objectTypeId, boolean isHistorical, boolean executeParentChecks) {
-		children.clear(); // make sure we clear the old children list
-		Cache<Long, DbDataObject> currentCache = isHistorical ? objHistoryCache : objCache;
+	private long[] buildChildList(DbDataArray childrenDbArray, Long parentId, Long objectTypeId,
+			boolean isHistorical, boolean executeParentChecks) {
+		long[] children = new long[childrenDbArray.getItems().size()];
+		int size = 0;
+		SvLongCache<DbDataObject> currentCache = isHistorical ? objHistoryCache : objCache;
 		for (DbDataObject dbo : childrenDbArray.getItems()) {
 			if (dbo.getObject_type().equals(objectTypeId)) {
 				// if we are adding classic children list, make sure that the
@@ -368,7 +809,7 @@ public class DbCacheTable {
 				if (parentId != null && !dbo.getParent_id().equals(parentId) && executeParentChecks)
 					continue;
 				// for historical objects use the pkid. for current object_id.
-				Long oid = isHistorical ? dbo.getPkid() : dbo.getObject_id();
+				long oid = isHistorical ? dbo.getPkid() : dbo.getObject_id();
 				// get the currently cached object
 				DbDataObject oldDbo = currentCache.getIfPresent(oid);
 				// if we aren't in historical mode than refresh the
@@ -381,25 +822,15 @@ public class DbCacheTable {
 				if (oldDbo == null || oldDbo.getPkid() != dbo.getPkid())
 					currentCache.put(oid, dbo);
 				// add the id to the list
-				children.add(oid);
+				children[size++] = oid;
 
 			}
 		}
+		return size == children.length ? children : Arrays.copyOf(children, size);
 	}
 
-	void addArrayByParentId(DbDataArray objects, Long objectTypeId, Long parentId, DateTime refDate,
-			boolean executeParentChecks) {
-		boolean isHistorical = refDate != null;
-		String parentListId = parentId.toString() + (isHistorical ? Long.toString(refDate.getMillis()) : CURRENT_TIME);
-		CopyOnWriteArrayList<Long> children = null;
-		CopyOnWriteArrayList<Long> value = new CopyOnWriteArrayList<Long>();
-		children = objParentIdCache.asMap().putIfAbsent(parentListId, value);
-		if (children == null)
-			children = value;
-		synchronized (children) {
-			updateChildList(children, objects, parentId, objectTypeId, isHistorical, executeParentChecks);
-		}
-
+	void addArrayByParentId(DbDataArray objects, Long objectTypeId, Long parentId, boolean executeParentChecks) {
+		objParentIdCache.put(parentId, buildChildList(objects, parentId, objectTypeId, false, executeParentChecks));
 	}
 
 	/**
@@ -447,28 +878,19 @@ public class DbCacheTable {
 	 */
 	void addArrayByLinkedId(DbDataArray objects, Long LinkObjectId, Long linkObjectTypeId, Long dbLinkId,
 			String linkStatus, DateTime refDate) {
-		CopyOnWriteArrayList<Long> children = null;
 		boolean isHistorical = refDate != null;
-		synchronized (objLinkedIdCache) {
-			String mapId = LinkObjectId.toString() + dbLinkId.toString()
-					+ (isHistorical ? Long.toString(refDate.getMillis()) : CURRENT_TIME);
-			String lstId = linkStatus != null ? linkStatus : "null";
-
-			ConcurrentHashMap<String, CopyOnWriteArrayList<Long>> lnkMap = objLinkedIdCache.getIfPresent(mapId);
-			if (lnkMap == null) {
-				lnkMap = new ConcurrentHashMap<String, CopyOnWriteArrayList<Long>>();
-				objLinkedIdCache.put(mapId, lnkMap);
-			} else {
-				children = lnkMap.get(lstId);
-			}
-			if (children == null) {
-				children = new CopyOnWriteArrayList<Long>();
-				lnkMap.put(lstId, children);
-			}
-		}
-		synchronized (children) {
-			updateChildList(children, objects, null, linkObjectTypeId, isHistorical, true);
+		String mapId = LinkObjectId.toString() + dbLinkId.toString()
+				+ (isHistorical ? Long.toString(refDate.getMillis()) : CURRENT_TIME);
+		String lstId = linkStatus != null ? linkStatus : "null";
+
+		ConcurrentHashMap<String, long[]> lnkMap = objLinkedIdCache.getIfPresent(mapId);
+		if (lnkMap == null) {
+			ConcurrentHashMap<String, long[]> newMap = new ConcurrentHashMap<String, long[]>();
+			lnkMap = objLinkedIdCache.asMap().putIfAbsent(mapId, newMap);
+			if (lnkMap == null)
+				lnkMap = newMap;
 		}
+		lnkMap.put(lstId, buildChildList(objects, null, linkObjectTypeId, isHistorical, true));
 	}
 
 	public class DboComparator implements Comparator<Long> {
@@ -504,11 +926,97 @@ public class DbCacheTable {
 	 * @param parentId Id of the parent which should be sorted
 	 * @param keyName  KeyName according to which the comparison should be done
 	 */
-	synchronized void sortParentIdx(Long parentId, String keyName, Class<?> objType) {
-		String parentListId = parentId.toString() + CURRENT_TIME;
-		CopyOnWriteArrayList<Long> parentIdx = objParentIdCache.getIfPresent(parentListId);
-		if (parentIdx != null)
-			Collections.sort(parentIdx, new DboComparator(keyName, objType));
+	void sortParentIdx(Long parentId, String keyName, Class<?> objType) {
+		DboComparator comparator = new DboComparator(keyName, objType);
+		while (true) {
+			long[] parentIdx = objParentIdCache.getIfPresent(parentId);
+			if (parentIdx == null)
+				return;
+			Long[] sorted = new Long[parentIdx.length];
+			for (int i = 0; i < parentIdx.length; i++)
+				sorted[i] = parentIdx[i];
+			Arrays.sort(sorted, comparator);
+			long[] sortedIdx = new long[sorted.length];
+			for (int i = 0; i < sorted.length; i++)
+				sortedIdx[i] = sorted[i];
+			if (objParentIdCache.replace(parentId, parentIdx, sortedIdx))
+				return;
+		}
+	}
+
+	/**
+	 * Method to get the statistics of the caches in this table
+	 * 
+	 * @return Map of statistics by the name of the internal cache
+	 */
+	Map<String, SvCacheStats> getStats() {
+		Map<String, SvCacheStats> stats = new LinkedHashMap<String, SvCacheStats>();
+		stats.put("objects", SvCacheStats.of(objCache));
+		stats.put("keys", SvCacheStats.of(objKeyCache));
+		stats.put("parents", SvCacheStats.of(objParentIdCache));
+		stats.put("links", SvCacheStats.of(objLinkedIdCache));
+		stats.put("history", SvCacheStats.of(objHistoryCache));
+		stats.put("versions", SvCacheStats.of(objVersionIdx));
+		stats.put("parent_history", SvCacheStats.of(objHistoryParentIdx));
+		return stats;
+	}
+
+	/**
+	 * Method to get the current objects in the table cache, skipping the dirty
+	 * ones
+	 * 
+	 * @return List of the cached objects
+	 */
+	ArrayList<DbDataObject> getCachedObjects() {
+		ArrayList<DbDataObject> result = new ArrayList<DbDataObject>();
+		for (DbDataObject dbo : objCache.snapshot().values())
+			if (!dbo.getIs_dirty())
+				result.add(dbo);
+		return result;
+	}
+
+	/**
+	 * Method to get a copy of the objects cached by unique key
+	 * 
+	 * @return Map of the objects by key
+	 */
+	HashMap<String, DbDataObject> getCachedKeys() {
+		return new HashMap<String, DbDataObject>(objKeyCache.asMap());
+	}
+
+	/**
+	 * Method to get a copy of the current lists of children per parent id
+	 * 
+	 * @return Map of the snapshots of child ids by parent id
+	 */
+	LinkedHashMap<Long, long[]> getCachedParentLists() {
+		return objParentIdCache.snapshot();
+	}
+
+	/**
+	 * Method to set the list of children of a parent, used when the cache is
+	 * restored. The children must already be in the cache
+	 * 
+	 * @param parentId The id of the parent
+	 * @param children The snapshot of child ids
+	 */
+	void putParentList(long parentId, long[] children) {
+		objParentIdCache.put(parentId, children);
+	}
+
+	/**
+	 * Method to remove all objects from the table cache
+	 */
+	void invalidateAll() {
+		objCache.invalidateAll();
+		objHistoryCache.invalidateAll();
+		objKeyCache.invalidateAll();
+		objParentIdCache.invalidateAll();
+		objHistoryParentIdx.invalidateAll();
+		objVersionIdx.invalidateAll();
+		objLinkedIdCache.invalidateAll();
+		for (ConcurrentHashMap<String, Long> index : indexes)
+			index.clear();
 	}
 
 	/**
@@ -517,13 +1025,17 @@ public class DbCacheTable {
 	synchronized void clean() {
 		objKeyCache.cleanUp();
 		objParentIdCache.cleanUp();
+		objHistoryParentIdx.cleanUp();
 		objLinkedIdCache.cleanUp();
 		objCache.cleanUp();
 		objHistoryCache.cleanUp();
-		objHistoryDateCache.cleanUp();
+		objVersionIdx.cleanUp();
 	}
 
 	void removeObject(Long object_id, String key) {
+		// the index holds the open interval of the current version, which is
+		// closed by the write
+		objVersionIdx.invalidate(object_id);
 		DbDataObject dbo = objCache.getIfPresent(object_id);
 		if (dbo != null) {
 			objCache.invalidate(dbo.getObject_id());
@@ -537,15 +1049,14 @@ public class DbCacheTable {
 	void removeObjectSupport(DbDataObject dbo) {
 		if (dbo != null) {
 			removeObjectSupport(dbo.getParentId());
+			unindexObject(dbo);
 		}
 
 	}
 
 	void removeObjectSupport(Long parentId) {
-		synchronized (objParentIdCache) {
-			String parentListId = parentId.toString() + CURRENT_TIME;
-			objParentIdCache.invalidate(parentListId);
-
-		}
+		long parentKey = parentId != null ? parentId : 0L;
+		objParentIdCache.invalidate(parentKey);
+		objHistoryParentIdx.invalidate(parentKey);
 	}
 }
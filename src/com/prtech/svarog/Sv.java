@@ -133,6 +133,7 @@ public class Sv {
 	public static final String LOCALE_ID = "locale_id";
 	public static final String LABEL_TEXT = "label_text";
 	public static final String CACHE_TYPE = "cache_type";
+	public static final String CACHE_INDEXES = "cache_indexes";
 	public static final String BOUNDS_CLASS = "BOUNDS_CLASS";
 	public static final String CENTROID = "CENTROID";
 	public static final String GEOMETRY = "GEOMETRY";
@@ -176,6 +177,7 @@ public class Sv {
 	public static final SvCharId REPO_TABLE = new SvCharId("REPO_TABLE");
 	public static final String POA = "POA";
 	public static final String POA_OU = "POA_OU";
+	public static final String ACL = "ACL";
 	public static final String V = "V";
 	public static final SvCharId LAST_REFRESH = new SvCharId("last_refresh");
 	public static final String USER_DEFAULT_GROUP = "USER_DEFAULT_GROUP";
@@ -213,6 +215,8 @@ public class Sv {
 	public static final String CONFIG_FILENAME = "svarog.properties";
 	public static final String LRU = "LRU";
 	public static final String LRU_TTL = "LRU_TTL";
+	public static final String LFU = "LFU";
+	public static final String LFU_TTL = "LFU_TTL";
 	public static final String TTL = "TTL";
 	public static final String CODE_VALUE = "CODE_VALUE";
 	public static final String TABLE = "TABLE";
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * Specification of aggregates which are computed by the database over the
+ * result of a query, instead of loading the objects. The aggregates are
+ * returned as one untyped DbDataObject per group, holding the group by fields
+ * under their names and the aggregates under their aliases, for example
+ * COUNT_ALL, SUM_AREA or MAX_DT_INSERT.
+ */
+public class SvAggregate {
+
+	/**
+	 * The aggregate functions which can be pushed to the database
+	 */
+	public enum AggregateFunction {
+		COUNT, SUM, MIN, MAX
+	};
+
+	/**
+	 * Alias of the count of all rows
+	 */
+	public static final String COUNT_ALL = "COUNT_ALL";
+
+	/**
+	 * Table alias of object type queries which are aggregated without an
+	 * explicit table prefix
+	 */
+	static final String TBL_PREFIX = "AGG0";
+
+	/**
+	 * Pattern of valid field names, since the names are rendered in the SQL
+	 */
+	private static final Pattern FIELD_NAME = Pattern.compile("[A-Z][A-Z0-9_]*");
+
+	final ArrayList<AggregateFunction> functions = new ArrayList<AggregateFunction>();
+	final ArrayList<String> fields = new ArrayList<String>();
+	final ArrayList<String> groupBy = new ArrayList<String>();
+
+	/**
+	 * Method to add a count of all rows
+	 * 
+	 * @return This aggregate specification
+	 */
+	public SvAggregate addCount() {
+		return add(AggregateFunction.COUNT, null);
+	}
+
+	/**
+	 * Method to add an aggregate over a field
+	 * 
+	 * @param function  The aggregate function
+	 * @param fieldName The field to aggregate. Null is allowed only for COUNT,
+	 *                  which counts all rows
+	 * @return This aggregate specification
+	 */
+	public SvAggregate add(AggregateFunction function, String fieldName) {
+		functions.add(function);
+		fields.add(fieldName != null ? fieldName.toUpperCase().trim() : null);
+		return this;
+	}
+
+	/**
+	 * Method to add a field to the group by clause
+	 * 
+	 * @param fieldName The field by which the aggregates are grouped
+	 * @return This aggregate specification
+	 */
+	public SvAggregate addGroupBy(String fieldName) {
+		groupBy.add(fieldName != null ? fieldName.toUpperCase().trim() : null);
+		return this;
+	}
+
+	/**
+	 * Method to get the alias under which an aggregate is returned
+	 * 
+	 * @param function  The aggregate function
+	 * @param fieldName The aggregated field, or null for COUNT of all rows
+	 * @return The alias of the aggregate
+	 */
+	public static String getAlias(AggregateFunction function, String fieldName) {
+		if (fieldName == null)
+			return COUNT_ALL;
+		return function.toString() + "_" + fieldName.toUpperCase().trim();
+	}
+
+	/**
+	 * Method to get all field names referenced by the aggregates and the group
+	 * by clause
+	 * 
+	 * @return The list of field names
+	 */
+	ArrayList<String> getFieldNames() {
+		ArrayList<String> names = new ArrayList<String>(groupBy);
+		for (String fieldName : fields)
+			if (fieldName != null && !names.contains(fieldName))
+				names.add(fieldName);
+		return names;
+	}
+
+	/**
+	 * Method to validate the specification before rendering it to SQL
+	 * 
+	 * @param allowedFields The field names which can be aggregated, or null if
+	 *                      any valid identifier is allowed
+	 * @throws SvException If there are no aggregates, a field is invalid or an
+	 *                     aggregate other than COUNT has no field
+	 */
+	void validate(Collection<String> allowedFields) throws SvException {
+		if (functions.isEmpty())
+			throw (new SvException("system.error.aggregate_invalid", svCONST.systemUser, null, this));
+		for (int i = 0; i < functions.size(); i++)
+			if (fields.get(i) == null && !AggregateFunction.COUNT.equals(functions.get(i)))
+				throw (new SvException("system.error.aggregate_invalid", svCONST.systemUser, null, functions.get(i)));
+		for (String fieldName : getFieldNames())
+			if (fieldName == null || !FIELD_NAME.matcher(fieldName).matches()
+					|| (allowedFields != null && !allowedFields.contains(fieldName)))
+				throw (new SvException("system.error.aggregate_invalid", svCONST.systemUser, null, fieldName));
+	}
+
+	/**
+	 * Method to render the aggregate SQL over the SQL of a query
+	 * 
+	 * @param querySql     The SQL of the query, which is used as sub-query
+	 * @param columnPrefix The prefix of the field columns in the query result
+	 * @return The aggregate SQL
+	 */
+	String getSQL(String querySql, String columnPrefix) {
+		StringBuilder sql = new StringBuilder(querySql.length() + 200);
+		StringBuilder groupCols = new StringBuilder();
+		sql.append("SELECT ");
+		for (String fieldName : groupBy) {
+			groupCols.append(groupCols.length() > 0 ? "," : "").append(columnPrefix).append(fieldName);
+			sql.append(columnPrefix).append(fieldName).append(" AS ").append(fieldName).append(",");
+		}
+		for (int i = 0; i < functions.size(); i++) {
+			String fieldName = fields.get(i);
+			sql.append(functions.get(i).toString()).append('(')
+					.append(fieldName != null ? columnPrefix + fieldName : "*").append(") AS ")
+					.append(getAlias(functions.get(i), fieldName)).append(i < functions.size() - 1 ? "," : "");
+		}
+		sql.append(" FROM (").append(querySql).append(") AGG");
+		if (groupCols.length() > 0)
+			sql.append(" GROUP BY ").append(groupCols);
+		return sql.toString();
+	}
+}
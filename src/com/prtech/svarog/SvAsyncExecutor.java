@@ -0,0 +1,203 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Executor of the asynchronous reads of {@link SvReader}. Every read holds its
+ * own JDBC connection for the time it runs, so the number of concurrent reads
+ * is limited by sys.async.threads to protect the connection pool. If the JVM
+ * supports virtual threads (Java 21 and newer) and sys.async.virtual_threads
+ * is enabled, each read runs on its own virtual thread and the limit is
+ * enforced by a semaphore, otherwise the reads run on a fixed pool of daemon
+ * threads. At most sys.async.queue_size reads wait for a free slot, the reads
+ * submitted above that are rejected.
+ */
+final class SvAsyncExecutor {
+
+	private static final Logger log4j = SvConf.getLogger(SvAsyncExecutor.class);
+
+	/**
+	 * The executor running the reads, created on first use
+	 */
+	private static ExecutorService executor = null;
+
+	/**
+	 * Permits limiting the concurrent reads on virtual threads, null if the
+	 * reads run on the fixed thread pool
+	 */
+	private static Semaphore permits = null;
+
+	/**
+	 * Slots limiting the reads running or waiting on virtual threads, null if
+	 * the reads run on the fixed thread pool, whose queue is bounded
+	 */
+	private static Semaphore slots = null;
+
+	/**
+	 * Counter used for naming the pool threads
+	 */
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private SvAsyncExecutor() {
+	}
+
+	/**
+	 * Method to get the executor, creating it on first use
+	 * 
+	 * @return The executor running the asynchronous reads
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, SvConf.getAsyncReadThreads());
+			if (SvConf.isAsyncVirtualThreads())
+				executor = getVirtualThreadExecutor();
+			int queueSize = Math.max(1, SvConf.getAsyncQueueSize());
+			if (executor != null) {
+				permits = new Semaphore(threads);
+				slots = new Semaphore(threads + queueSize);
+			} else {
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+						new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable r) {
+								Thread thread = new Thread(r, "svarog-async-" + threadCount.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				pool.allowCoreThreadTimeOut(true);
+				executor = pool;
+				permits = null;
+				slots = null;
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Method to create a virtual thread per task executor. The JVM method is
+	 * invoked by reflection, since svarog is compiled for Java 8
+	 * 
+	 * @return The executor or null if the JVM doesn't support virtual threads
+	 */
+	static ExecutorService getVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			if (log4j.isDebugEnabled())
+				log4j.debug("Virtual threads are not supported, using a thread pool for asynchronous reads");
+			return null;
+		}
+	}
+
+	/**
+	 * Method to execute a task asynchronously
+	 * 
+	 * @param task The task to be executed
+	 * @return The future which is completed with the result of the task, or
+	 *         exceptionally with the exception thrown by the task. If too many
+	 *         reads are waiting, it is completed with a
+	 *         {@link RejectedExecutionException}
+	 */
+	static <T> CompletableFuture<T> submit(final Callable<T> task) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final Semaphore taskPermits;
+		final Semaphore taskSlots;
+		ExecutorService taskExecutor;
+		synchronized (SvAsyncExecutor.class) {
+			taskExecutor = getExecutor();
+			taskPermits = permits;
+			taskSlots = slots;
+		}
+		if (taskSlots != null && !taskSlots.tryAcquire()) {
+			future.completeExceptionally(new RejectedExecutionException("Too many asynchronous reads waiting"));
+			return future;
+		}
+		try {
+			taskExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						runTask(task, future, taskPermits);
+					} finally {
+						if (taskSlots != null)
+							taskSlots.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			if (taskSlots != null)
+				taskSlots.release();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Method to run a task and complete its future, holding a permit while it
+	 * runs if the concurrency is limited by permits
+	 * 
+	 * @param task        The task to be executed
+	 * @param future      The future of the task
+	 * @param taskPermits The permits limiting the concurrent tasks, or null
+	 */
+	private static <T> void runTask(Callable<T> task, CompletableFuture<T> future, Semaphore taskPermits) {
+		if (future.isDone())
+			return;
+		try {
+			if (taskPermits != null)
+				taskPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+			return;
+		}
+		try {
+			future.complete(task.call());
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+		} finally {
+			if (taskPermits != null)
+				taskPermits.release();
+		}
+	}
+
+	/**
+	 * Method to shut down the executor. The reads in progress are finished,
+	 * a new executor is created if a read is submitted afterwards.
+	 */
+	static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+			permits = null;
+			slots = null;
+		}
+	}
+}
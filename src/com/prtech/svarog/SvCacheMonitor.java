@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * JMX bean exposing the statistics of the Svarog caches under the name
+ * com.prtech.svarog:type=SvCacheMonitor
+ */
+public class SvCacheMonitor implements SvCacheMonitorMBean {
+
+	/**
+	 * Log4j instance used for logging
+	 */
+	private static final Logger log4j = SvConf.getLogger(SvCacheMonitor.class);
+
+	/**
+	 * The JMX name of the cache monitor
+	 */
+	static final String MBEAN_NAME = "com.prtech.svarog:type=SvCacheMonitor";
+
+	/**
+	 * Method to register the cache monitor with the platform MBean server. If the
+	 * monitor is already registered, the method does nothing.
+	 */
+	static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(new SvCacheMonitor(), name);
+		} catch (Exception e) {
+			log4j.warn("Can't register the cache monitor with JMX", e);
+		}
+	}
+
+	private SvCacheStats getStats(String cacheName) {
+		SvCacheStats stats = SvCacheStats.collect().get(cacheName);
+		return stats != null ? stats : new SvCacheStats(0, 0, 0, 0);
+	}
+
+	@Override
+	public String[] getCacheNames() {
+		return SvCacheStats.collect().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public long getHitCount(String cacheName) {
+		return getStats(cacheName).getHitCount();
+	}
+
+	@Override
+	public long getMissCount(String cacheName) {
+		return getStats(cacheName).getMissCount();
+	}
+
+	@Override
+	public double getHitRate(String cacheName) {
+		return getStats(cacheName).getHitRate();
+	}
+
+	@Override
+	public long getEvictionCount(String cacheName) {
+		return getStats(cacheName).getEvictionCount();
+	}
+
+	@Override
+	public long getRejectionCount(String cacheName) {
+		return getStats(cacheName).getRejectionCount();
+	}
+
+	@Override
+	public long getSize(String cacheName) {
+		return getStats(cacheName).getSize();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return DbCache.getLoadCount();
+	}
+
+	@Override
+	public long getSavedLoadCount() {
+		return DbCache.getSavedLoadCount();
+	}
+
+	@Override
+	public long getRefreshCount() {
+		return SvCacheRefresher.getRefreshCount();
+	}
+
+	@Override
+	public long getSkippedRefreshCount() {
+		return SvCacheRefresher.getSkippedCount();
+	}
+
+	@Override
+	public String getStatsJson() {
+		return SvCacheStats.toJson().toString();
+	}
+}
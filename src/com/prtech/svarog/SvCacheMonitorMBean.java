@@ -0,0 +1,67 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+/**
+ * JMX interface exposing the statistics of the Svarog caches. Each cache is
+ * identified by the name under which it is listed in SvCacheStats.collect
+ */
+public interface SvCacheMonitorMBean {
+
+	/**
+	 * @return The names of all caches in the system
+	 */
+	String[] getCacheNames();
+
+	long getHitCount(String cacheName);
+
+	long getMissCount(String cacheName);
+
+	double getHitRate(String cacheName);
+
+	long getEvictionCount(String cacheName);
+
+	/**
+	 * @return The number of new entries which were never cached
+	 */
+	long getRejectionCount(String cacheName);
+
+	long getSize(String cacheName);
+
+	/**
+	 * @return The number of database loads executed on cache miss
+	 */
+	long getLoadCount();
+
+	/**
+	 * @return The number of database loads saved by coalescing concurrent misses
+	 */
+	long getSavedLoadCount();
+
+	/**
+	 * @return The number of objects reloaded in the background before expiry
+	 */
+	long getRefreshCount();
+
+	/**
+	 * @return The number of background reloads skipped due to saturation
+	 */
+	long getSkippedRefreshCount();
+
+	/**
+	 * @return The statistics of all caches as JSON string
+	 */
+	String getStatsJson();
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+
+import com.prtech.svarog_common.DbDataObject;
+
+/**
+ * Refresher reloading hot cached objects in the background before they
+ * expire. The reloads of all object types share a small bounded executor. If
+ * the executor is saturated the refresh is skipped, and the object is reloaded
+ * by the first reader after it expires, same as without refresh-ahead.
+ */
+class SvCacheRefresher implements SvLongCache.Refresher<DbDataObject> {
+
+	/**
+	 * Log4j instance used for logging
+	 */
+	private static final Logger log4j = SvConf.getLogger(SvCacheRefresher.class);
+
+	/**
+	 * Maximum number of threads reloading objects
+	 */
+	static final int MAX_THREADS = 2;
+
+	/**
+	 * Maximum number of refreshes waiting for a thread
+	 */
+	static final int MAX_QUEUED = 1000;
+
+	/**
+	 * The executor shared by the refreshers of all object types
+	 */
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60L,
+			TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+				private final AtomicLong counter = new AtomicLong();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "svarog-cache-refresh-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Number of executed refreshes
+	 */
+	private static final AtomicLong refreshCount = new AtomicLong();
+
+	/**
+	 * Number of refreshes skipped because the executor was saturated
+	 */
+	private static final AtomicLong skippedCount = new AtomicLong();
+
+	/**
+	 * The object type refreshed by this instance
+	 */
+	private final Long objectType;
+
+	/**
+	 * The ids of the objects with a refresh in progress
+	 */
+	private final ConcurrentHashMap<Long, Boolean> inProgress = new ConcurrentHashMap<Long, Boolean>();
+
+	SvCacheRefresher(Long objectType) {
+		this.objectType = objectType;
+	}
+
+	@Override
+	public void refresh(final long key, final DbDataObject value) {
+		// geometries are loaded on demand, the readers decide if they need them
+		if (value.isGeometryType() || inProgress.putIfAbsent(key, Boolean.TRUE) != null)
+			return;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						reload(key, value);
+					} finally {
+						inProgress.remove(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inProgress.remove(key);
+			skippedCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Method to reload an object from the database and update the cache. Since
+	 * a version of an object never changes, an unchanged PKID only resets the
+	 * refresh timer of the cached object. The cache is updated only if it still
+	 * holds the refreshed instance, so a concurrent save is never overwritten.
+	 * 
+	 * @param objectId The id of the object
+	 * @param cached   The cached instance which is refreshed
+	 */
+	void reload(long objectId, DbDataObject cached) {
+		DbCacheTable table = DbCache.getCacheTables().get(objectType);
+		if (table == null)
+			return;
+		try (SvReader svr = new SvReader()) {
+			DbDataObject current = svr.getObjectByIdFromDb(objectId, SvCore.getDbt(objectType));
+			refreshCount.incrementAndGet();
+			table.refreshObject(objectId, cached, current);
+		} catch (Exception e) {
+			log4j.debug("Error refreshing object " + objectId + " of type " + objectType, e);
+		}
+	}
+
+	/**
+	 * @return The number of executed refreshes
+	 */
+	static long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * @return The number of refreshes skipped because the executor was saturated
+	 */
+	static long getSkippedCount() {
+		return skippedCount.get();
+	}
+}
@@ -0,0 +1,632 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
+
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.SvCharId;
+
+/**
+ * Snapshot of the object caches stored in a local file, so a restarted node
+ * doesn't have to warm up its caches against the database. The snapshot is
+ * written on shutdown and optionally on a timer by the maintenance thread.
+ * Each cached type is stamped with the highest PKID and the latest closed
+ * DT_DELETE of the type in its repo table. Every save inserts a new PKID and
+ * every save or delete closes a version, so on restore the type is dropped if
+ * the stamp in the database differs from the one in the snapshot. The stamps
+ * of all types in a repo table are read by a single query.
+ * 
+ * The field values are written with their exact Java type, so the restored
+ * objects are equal to the objects loaded from the database. Objects holding
+ * values of any other type are left out of the snapshot.
+ */
+final class SvCacheSnapshot {
+
+	/**
+	 * Log4j instance used for logging
+	 */
+	private static final Logger log4j = SvConf.getLogger(SvCacheSnapshot.class);
+
+	/**
+	 * Marker identifying a svarog cache snapshot file
+	 */
+	static final int MAGIC = 0x53564353;
+
+	/**
+	 * Version of the snapshot format
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * Type tags of the encoded field values
+	 */
+	static final byte T_NULL = 0;
+	static final byte T_STRING = 1;
+	static final byte T_LONG = 2;
+	static final byte T_INTEGER = 3;
+	static final byte T_DECIMAL = 4;
+	static final byte T_DOUBLE = 5;
+	static final byte T_BOOLEAN = 6;
+	static final byte T_DATETIME = 7;
+	static final byte T_TIMESTAMP = 8;
+	static final byte T_DATE = 9;
+	static final byte T_TIME = 10;
+	static final byte T_UNSUPPORTED = -1;
+
+	/**
+	 * Time in millis when the last snapshot was written
+	 */
+	private static volatile long lastWrite = System.currentTimeMillis();
+
+	private SvCacheSnapshot() {
+	}
+
+	/**
+	 * Method to check if the object type is cached by the core caches, which are
+	 * always loaded from the database on initialisation
+	 * 
+	 * @param typeId The id of the object type
+	 * @return True if the type is a core type
+	 */
+	static boolean isCoreType(Long typeId) {
+		return typeId.equals(svCONST.OBJECT_TYPE_TABLE) || typeId.equals(svCONST.OBJECT_TYPE_FIELD)
+				|| typeId.equals(svCONST.OBJECT_TYPE_FIELD_SORT) || typeId.equals(svCONST.OBJECT_TYPE_CODE);
+	}
+
+	/**
+	 * Method to write the snapshot to the configured file, if the snapshot is
+	 * enabled. Errors are logged, since the snapshot is only an optimisation
+	 */
+	static void save() {
+		if (SvConf.getCacheSnapshotFile().isEmpty() || !SvCore.isValid.get())
+			return;
+		try (SvReader svr = new SvReader()) {
+			write(svr, new File(SvConf.getCacheSnapshotFile()));
+		} catch (Exception e) {
+			log4j.warn("Error writing the cache snapshot", e);
+		}
+	}
+
+	/**
+	 * Method invoked by the maintenance thread to write the snapshot when the
+	 * configured interval has elapsed
+	 */
+	static void maintain() {
+		long interval = SvConf.getCacheSnapshotInterval() * 60L * 1000L;
+		if (interval > 0 && System.currentTimeMillis() - lastWrite >= interval)
+			save();
+	}
+
+	/**
+	 * Method to restore the configured snapshot, if the snapshot is enabled and
+	 * the file exists. Errors are logged, since the caches can always be loaded
+	 * from the database
+	 * 
+	 * @param svc The SvCore instance used to read the stamps from the database
+	 */
+	static void restore(SvCore svc) {
+		if (SvConf.getCacheSnapshotFile().isEmpty())
+			return;
+		File file = new File(SvConf.getCacheSnapshotFile());
+		if (!file.exists())
+			return;
+		try {
+			read(svc, file);
+		} catch (Exception e) {
+			log4j.warn("Error restoring the cache snapshot from " + file.getPath(), e);
+		}
+	}
+
+	/**
+	 * Method to read the stamps of all object types stored in a repo table, by
+	 * a single pass over the table
+	 * 
+	 * @param conn     The JDBC connection used for the query
+	 * @param repoName The qualified name of the repo table
+	 * @return Map of the stamps by object type
+	 * @throws SQLException Pass through exception from JDBC
+	 * @throws SvException  Any exception releasing the JDBC resources
+	 */
+	static HashMap<Long, long[]> getStamps(Connection conn, String repoName) throws SQLException, SvException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = conn.prepareStatement(
+					"SELECT object_type, max(pkid), max(CASE WHEN dt_delete<? THEN dt_delete END) FROM " + repoName
+							+ " GROUP BY object_type");
+			ps.setTimestamp(1, SvConf.MAX_DATE_SQL);
+			rs = ps.executeQuery();
+			HashMap<Long, long[]> stamps = new HashMap<Long, long[]>();
+			while (rs.next()) {
+				long[] stamp = new long[2];
+				stamp[0] = rs.getLong(2);
+				Timestamp dtDelete = rs.getTimestamp(3);
+				stamp[1] = dtDelete != null ? dtDelete.getTime() : 0L;
+				stamps.put(rs.getLong(1), stamp);
+			}
+			return stamps;
+		} finally {
+			SvCore.closeResource(rs, svCONST.systemUser);
+			SvCore.closeResource(ps, svCONST.systemUser);
+		}
+	}
+
+	/**
+	 * Method to get the stamp of an object type. The stamps of its repo table
+	 * are read on first use and kept in the map for the other types.
+	 * 
+	 * @param conn       The JDBC connection used for the query
+	 * @param dbt        The descriptor of the object type
+	 * @param repoStamps The stamps read so far, by qualified repo table name
+	 * @return Pair of the highest PKID and the latest closed DT_DELETE in millis
+	 * @throws SQLException Pass through exception from JDBC
+	 * @throws SvException  Any exception releasing the JDBC resources
+	 */
+	static long[] getStamp(Connection conn, DbDataObject dbt, Map<String, HashMap<Long, long[]>> repoStamps)
+			throws SQLException, SvException {
+		String repoName = dbt.getVal("schema") + "." + dbt.getVal("repo_name");
+		HashMap<Long, long[]> stamps = repoStamps.get(repoName);
+		if (stamps == null) {
+			stamps = getStamps(conn, repoName);
+			repoStamps.put(repoName, stamps);
+		}
+		long[] stamp = stamps.get(dbt.getObjectId());
+		return stamp != null ? stamp : new long[2];
+	}
+
+	/**
+	 * Method to write the cached objects, unique keys and children lists of all
+	 * cached object types to a file. The stamps of a repo table are read before
+	 * the objects of its types are collected, so an object saved meanwhile
+	 * makes the type stale instead of being missed. The file is written under a temporary name and
+	 * moved in place when complete.
+	 * 
+	 * @param svc  The SvCore instance used to read the stamps from the database
+	 * @param file The snapshot file
+	 * @return The number of written object types
+	 * @throws SvException Any exception accessing the database
+	 * @throws IOException Any exception writing the file
+	 */
+	static int write(SvCore svc, File file) throws SvException, IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		int typeCount = 0;
+		Connection conn = svc.dbGetConn();
+		HashMap<String, HashMap<Long, long[]>> repoStamps = new HashMap<String, HashMap<Long, long[]>>();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Map.Entry<Long, DbCacheTable> entry : DbCache.getCacheTables().entrySet()) {
+				Long typeId = entry.getKey();
+				if (isCoreType(typeId))
+					continue;
+				DbDataObject dbt = SvCore.getDbt(typeId);
+				long[] stamp = getStamp(conn, dbt, repoStamps);
+				if (writeType(out, typeId, dbt, stamp, entry.getValue()))
+					typeCount++;
+			}
+			out.writeBoolean(false);
+		} catch (SQLException e) {
+			throw (new SvException("system.error.sql_statement_err", svc.instanceUser, null, null, e));
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		lastWrite = System.currentTimeMillis();
+		log4j.info("Cache snapshot of " + typeCount + " object types written to " + file.getPath());
+		return typeCount;
+	}
+
+	private static boolean writeType(DataOutputStream out, Long typeId, DbDataObject dbt, long[] stamp,
+			DbCacheTable table) throws IOException {
+		ArrayList<DbDataObject> objects = new ArrayList<DbDataObject>();
+		HashMap<Long, DbDataObject> written = new HashMap<Long, DbDataObject>();
+		for (DbDataObject dbo : table.getCachedObjects()) {
+			// geometries are loaded on demand and aren't part of the snapshot
+			if (dbo.isGeometryType() || !isSupported(dbo))
+				continue;
+			objects.add(dbo);
+			written.put(dbo.getObjectId(), dbo);
+		}
+		if (objects.isEmpty())
+			return false;
+
+		out.writeBoolean(true);
+		out.writeLong(typeId);
+		out.writeLong(dbt.getPkid());
+		out.writeLong(stamp[0]);
+		out.writeLong(stamp[1]);
+		out.writeInt(objects.size());
+		for (DbDataObject dbo : objects)
+			writeObject(out, dbo);
+
+		ArrayList<Map.Entry<String, DbDataObject>> keys = new ArrayList<Map.Entry<String, DbDataObject>>();
+		for (Map.Entry<String, DbDataObject> key : table.getCachedKeys().entrySet())
+			if (written.get(key.getValue().getObjectId()) == key.getValue())
+				keys.add(key);
+		out.writeInt(keys.size());
+		for (Map.Entry<String, DbDataObject> key : keys) {
+			out.writeUTF(key.getKey());
+			out.writeLong(key.getValue().getObjectId());
+		}
+
+		ArrayList<Map.Entry<Long, long[]>> lists = new ArrayList<Map.Entry<Long, long[]>>();
+		for (Map.Entry<Long, long[]> list : table.getCachedParentLists().entrySet())
+			if (isComplete(list.getValue(), written))
+				lists.add(list);
+		out.writeInt(lists.size());
+		for (Map.Entry<Long, long[]> list : lists) {
+			out.writeLong(list.getKey());
+			out.writeInt(list.getValue().length);
+			for (long childId : list.getValue())
+				out.writeLong(childId);
+		}
+		return true;
+	}
+
+	/**
+	 * Method to get the type tag of a field value
+	 * 
+	 * @param value The field value
+	 * @return The type tag, or {@link #T_UNSUPPORTED} if the value can't be
+	 *         written to the snapshot
+	 */
+	static byte typeOf(Object value) {
+		if (value == null)
+			return T_NULL;
+		Class<?> valueClass = value.getClass();
+		if (valueClass == String.class)
+			return T_STRING;
+		if (valueClass == Long.class)
+			return T_LONG;
+		if (valueClass == Integer.class)
+			return T_INTEGER;
+		if (valueClass == BigDecimal.class)
+			return T_DECIMAL;
+		if (valueClass == Double.class)
+			return T_DOUBLE;
+		if (valueClass == Boolean.class)
+			return T_BOOLEAN;
+		if (valueClass == DateTime.class)
+			return T_DATETIME;
+		if (valueClass == Timestamp.class)
+			return T_TIMESTAMP;
+		if (valueClass == java.sql.Date.class)
+			return T_DATE;
+		if (valueClass == java.sql.Time.class)
+			return T_TIME;
+		return T_UNSUPPORTED;
+	}
+
+	/**
+	 * Method to check if all field values of an object can be written to the
+	 * snapshot
+	 * 
+	 * @param dbo The object
+	 * @return True if the object can be written
+	 */
+	static boolean isSupported(DbDataObject dbo) {
+		if (dbo.getValuesMap() != null)
+			for (Object value : dbo.getValuesMap().values())
+				if (typeOf(value) == T_UNSUPPORTED)
+					return false;
+		return true;
+	}
+
+	/**
+	 * Method to write an object with its repo data and all field values. The
+	 * object must be supported by {@link #isSupported(DbDataObject)}
+	 * 
+	 * @param out The output stream
+	 * @param dbo The object to be written
+	 * @throws IOException Any exception writing the stream
+	 */
+	static void writeObject(DataOutputStream out, DbDataObject dbo) throws IOException {
+		out.writeLong(dbo.getObjectType());
+		out.writeLong(dbo.getObjectId());
+		out.writeLong(dbo.getPkid());
+		writeValue(out, dbo.getParentId());
+		writeValue(out, dbo.getUserId());
+		writeValue(out, dbo.getDtInsert());
+		writeValue(out, dbo.getDtDelete());
+		writeValue(out, dbo.getStatus());
+		Map<SvCharId, Object> values = dbo.getValuesMap();
+		out.writeInt(values != null ? values.size() : 0);
+		if (values != null)
+			for (Map.Entry<SvCharId, Object> entry : values.entrySet()) {
+				writeString(out, entry.getKey().toString());
+				writeValue(out, entry.getValue());
+			}
+	}
+
+	/**
+	 * Method to read an object written by
+	 * {@link #writeObject(DataOutputStream, DbDataObject)}
+	 * 
+	 * @param in The input stream
+	 * @return The object, which isn't dirty
+	 * @throws IOException Any exception reading the stream, including an unknown
+	 *                     type tag
+	 */
+	static DbDataObject readObject(DataInputStream in) throws IOException {
+		Long objectType = in.readLong();
+		DbDataObject dbo = new DbDataObject(objectType);
+		dbo.setObjectType(objectType);
+		dbo.setObjectId(in.readLong());
+		dbo.setPkid(in.readLong());
+		dbo.setParentId((Long) readValue(in));
+		dbo.setUserId((Long) readValue(in));
+		dbo.setDtInsert((DateTime) readValue(in));
+		dbo.setDtDelete((DateTime) readValue(in));
+		dbo.setStatus((String) readValue(in));
+		for (int i = in.readInt(); i > 0; i--) {
+			SvCharId fieldName = new SvCharId(readString(in));
+			dbo.setVal(fieldName, readValue(in));
+		}
+		dbo.setIsDirty(false);
+		return dbo;
+	}
+
+	/**
+	 * Method to write a field value preceded by its type tag
+	 * 
+	 * @param out   The output stream
+	 * @param value The value, which must have a supported type
+	 * @throws IOException Any exception writing the stream, including a value of
+	 *                     unsupported type
+	 */
+	static void writeValue(DataOutputStream out, Object value) throws IOException {
+		byte type = typeOf(value);
+		out.writeByte(type);
+		switch (type) {
+		case T_NULL:
+			break;
+		case T_STRING:
+			writeString(out, (String) value);
+			break;
+		case T_LONG:
+			out.writeLong((Long) value);
+			break;
+		case T_INTEGER:
+			out.writeInt((Integer) value);
+			break;
+		case T_DECIMAL:
+			writeString(out, ((BigDecimal) value).toString());
+			break;
+		case T_DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case T_BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case T_DATETIME:
+			out.writeLong(((DateTime) value).getMillis());
+			break;
+		case T_TIMESTAMP:
+			out.writeLong(((Timestamp) value).getTime());
+			out.writeInt(((Timestamp) value).getNanos());
+			break;
+		case T_DATE:
+			out.writeLong(((java.sql.Date) value).getTime());
+			break;
+		case T_TIME:
+			out.writeLong(((java.sql.Time) value).getTime());
+			break;
+		default:
+			throw new IOException("Unsupported value type " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Method to read a field value written by
+	 * {@link #writeValue(DataOutputStream, Object)}
+	 * 
+	 * @param in The input stream
+	 * @return The value
+	 * @throws IOException Any exception reading the stream, including an unknown
+	 *                     type tag
+	 */
+	static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case T_NULL:
+			return null;
+		case T_STRING:
+			return readString(in);
+		case T_LONG:
+			return in.readLong();
+		case T_INTEGER:
+			return in.readInt();
+		case T_DECIMAL:
+			return new BigDecimal(readString(in));
+		case T_DOUBLE:
+			return in.readDouble();
+		case T_BOOLEAN:
+			return in.readBoolean();
+		case T_DATETIME:
+			return new DateTime(in.readLong());
+		case T_TIMESTAMP:
+			Timestamp timestamp = new Timestamp(in.readLong());
+			timestamp.setNanos(in.readInt());
+			return timestamp;
+		case T_DATE:
+			return new java.sql.Date(in.readLong());
+		case T_TIME:
+			return new java.sql.Time(in.readLong());
+		default:
+			throw new IOException("Unknown value type " + type + " in the cache snapshot");
+		}
+	}
+
+	/**
+	 * Method to write a string of any length as UTF-8, since
+	 * {@link DataOutputStream#writeUTF(String)} is limited to 64KB
+	 * 
+	 * @param out   The output stream
+	 * @param value The string
+	 * @throws IOException Any exception writing the stream
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Method to check if all children of a list are available
+	 * 
+	 * @param children The ids of the children
+	 * @param objects  Map of the available objects by id
+	 * @return True if all children are available
+	 */
+	private static boolean isComplete(long[] children, Map<Long, DbDataObject> objects) {
+		for (long childId : children)
+			if (!objects.containsKey(childId))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Method to load a snapshot file into the cache. Object types which were
+	 * changed since the snapshot was written, whose descriptor was changed or
+	 * which were already loaded by the initialisation are skipped.
+	 * 
+	 * @param svc  The SvCore instance used to read the stamps from the database
+	 * @param file The snapshot file
+	 * @return The number of restored object types
+	 * @throws SvException Any exception accessing the database
+	 * @throws IOException Any exception reading the file, including a truncated
+	 *                     or foreign file
+	 */
+	static int read(SvCore svc, File file) throws SvException, IOException {
+		int typeCount = 0;
+		int skipCount = 0;
+		Connection conn = svc.dbGetConn();
+		HashMap<String, HashMap<Long, long[]>> repoStamps = new HashMap<String, HashMap<Long, long[]>>();
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Unsupported cache snapshot format");
+			while (in.readBoolean()) {
+				Long typeId = in.readLong();
+				long dbtPkid = in.readLong();
+				long[] stamp = new long[] { in.readLong(), in.readLong() };
+				ArrayList<DbDataObject> objects = new ArrayList<DbDataObject>();
+				for (int i = in.readInt(); i > 0; i--)
+					objects.add(readObject(in));
+				HashMap<String, Long> keys = new HashMap<String, Long>();
+				for (int i = in.readInt(); i > 0; i--)
+					keys.put(in.readUTF(), in.readLong());
+				HashMap<Long, long[]> lists = new HashMap<Long, long[]>();
+				for (int i = in.readInt(); i > 0; i--) {
+					Long parentId = in.readLong();
+					long[] children = new long[in.readInt()];
+					for (int j = 0; j < children.length; j++)
+						children[j] = in.readLong();
+					lists.put(parentId, children);
+				}
+
+				if (DbCache.getCacheTables().containsKey(typeId)
+						|| !isValid(conn, typeId, dbtPkid, stamp, repoStamps)) {
+					skipCount++;
+					continue;
+				}
+				restoreType(typeId, objects, keys, lists);
+				typeCount++;
+			}
+		} catch (SQLException e) {
+			throw (new SvException("system.error.sql_statement_err", svc.instanceUser, null, null, e));
+		}
+		log4j.info("Cache snapshot restored " + typeCount + " object types, skipped " + skipCount
+				+ " stale object types");
+		return typeCount;
+	}
+
+	/**
+	 * Method to check if the snapshot of an object type is still valid
+	 * 
+	 * @param conn       The JDBC connection used for the query
+	 * @param typeId     The id of the object type
+	 * @param dbtPkid    The version of the type descriptor in the snapshot
+	 * @param stamp      The stamp of the type in the snapshot
+	 * @param repoStamps The stamps read from the database so far
+	 * @return True if neither the descriptor nor any object of the type changed
+	 * @throws SQLException Pass through exception from JDBC
+	 */
+	private static boolean isValid(Connection conn, Long typeId, long dbtPkid, long[] stamp,
+			Map<String, HashMap<Long, long[]>> repoStamps) throws SQLException {
+		DbDataObject dbt = null;
+		try {
+			dbt = SvCore.getDbt(typeId);
+			return dbt != null && dbt.getPkid() == dbtPkid && Boolean.TRUE.equals(dbt.getVal("use_cache"))
+					&& Arrays.equals(stamp, getStamp(conn, dbt, repoStamps));
+		} catch (SvException e) {
+			log4j.debug("Can't validate the cache snapshot of type " + typeId, e);
+			return false;
+		}
+	}
+
+	private static void restoreType(Long typeId, List<DbDataObject> objects, Map<String, Long> keys,
+			Map<Long, long[]> lists) {
+		HashMap<Long, DbDataObject> restored = new HashMap<Long, DbDataObject>();
+		for (DbDataObject dbo : objects) {
+			DbCache.addObject(dbo);
+			restored.put(dbo.getObjectId(), dbo);
+		}
+		DbCacheTable table = DbCache.getDbCacheTable(typeId);
+		if (table == null)
+			return;
+		for (Map.Entry<String, Long> key : keys.entrySet()) {
+			DbDataObject dbo = restored.get(key.getValue());
+			if (dbo != null)
+				table.addObject(dbo, key.getKey());
+		}
+		for (Map.Entry<Long, long[]> list : lists.entrySet())
+			if (isComplete(list.getValue(), restored))
+				table.putParentList(list.getKey(), list.getValue());
+	}
+}
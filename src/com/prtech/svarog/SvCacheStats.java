@@ -0,0 +1,169 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.gson.JsonObject;
+
+/**
+ * Snapshot of the statistics of a single Svarog cache. The class also collects
+ * the statistics of all caches in the system: the DbCacheTable of each object
+ * type, SvComplexCache, the SvGeometry layer caches, SvParameter params cache
+ * and the SvFileStore system file cache.
+ */
+public class SvCacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+	private final long weight;
+	private final long rejectionCount;
+
+	SvCacheStats(long hitCount, long missCount, long evictionCount, long size) {
+		this(hitCount, missCount, evictionCount, size, 0, 0);
+	}
+
+	SvCacheStats(long hitCount, long missCount, long evictionCount, long size, long weight, long rejectionCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+		this.weight = weight;
+		this.rejectionCount = rejectionCount;
+	}
+
+	/**
+	 * Method to create statistics snapshot of a Guava cache. The cache must be
+	 * built with recordStats, otherwise only the size is available.
+	 * 
+	 * @param cache The cache instance
+	 * @return The statistics snapshot
+	 */
+	static SvCacheStats of(Cache<?, ?> cache) {
+		CacheStats stats = cache.stats();
+		return new SvCacheStats(stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.size());
+	}
+
+	/**
+	 * Method to create statistics snapshot of a primitive long keyed cache
+	 * 
+	 * @param cache The cache instance
+	 * @return The statistics snapshot
+	 */
+	static SvCacheStats of(SvLongCache<?> cache) {
+		return new SvCacheStats(cache.hitCount(), cache.missCount(), cache.evictionCount(), cache.size(),
+				cache.weight(),
+				cache.rejectionCount());
+	}
+
+	/**
+	 * Method to collect the statistics of all caches in the system
+	 * 
+	 * @return Map of statistics sorted by cache name
+	 */
+	public static Map<String, SvCacheStats> collect() {
+		Map<String, SvCacheStats> result = new TreeMap<String, SvCacheStats>();
+		for (Entry<Long, DbCacheTable> entry : DbCache.getCacheTables().entrySet())
+			for (Entry<String, SvCacheStats> tblStats : entry.getValue().getStats().entrySet())
+				result.put("dbcache." + DbCache.getCacheName(entry.getKey()) + "." + tblStats.getKey(),
+						tblStats.getValue());
+		result.put("dbcache.query_results", of(DbCache.getQueryResults()));
+		result.put("complex_cache", of(SvComplexCache.cachedRelations));
+		for (Entry<Long, Cache<String, SvSDITile>> entry : SvGeometry.layerCache.entrySet())
+			result.put("geometry.layer." + DbCache.getCacheName(entry.getKey()), of(entry.getValue()));
+		result.put("parameter.params", of(SvParameter.paramsCache));
+		result.put("filestore.system_files", of(SvFileStore.getSystemCache()));
+		return result;
+	}
+
+	/**
+	 * Method to dump the statistics of all caches in the system as JSON
+	 * 
+	 * @return JsonObject with the statistics of each cache under the cache name
+	 */
+	public static JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		for (Entry<String, SvCacheStats> entry : collect().entrySet())
+			json.add(entry.getKey(), entry.getValue().toJsonObject());
+		JsonObject loads = new JsonObject();
+		loads.addProperty("load_count", DbCache.getLoadCount());
+		loads.addProperty("saved_load_count", DbCache.getSavedLoadCount());
+		json.add("dbcache.loads", loads);
+		json.addProperty("dbcache.weight", SvLongCache.globalWeight());
+		return json;
+	}
+
+	/**
+	 * @return The statistics as JSON object
+	 */
+	public JsonObject toJsonObject() {
+		JsonObject json = new JsonObject();
+		json.addProperty("hit_count", hitCount);
+		json.addProperty("miss_count", missCount);
+		json.addProperty("hit_rate", getHitRate());
+		json.addProperty("eviction_count", evictionCount);
+		json.addProperty("size", size);
+		json.addProperty("weight", weight);
+		json.addProperty("rejection_count", rejectionCount);
+		return json;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return The ratio of lookups which found a value, 1.0 if there were no
+	 *         lookups
+	 */
+	public double getHitRate() {
+		long requests = hitCount + missCount;
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The estimated size in bytes of the cached objects, zero if the
+	 *         cache isn't weighed
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return The number of new entries which were never cached, because they
+	 *         were too heavy or not admitted
+	 */
+	public long getRejectionCount() {
+		return rejectionCount;
+	}
+}
@@ -33,7 +33,7 @@ public class SvComplexCache {
 
 	@SuppressWarnings("unchecked")
 	private static Cache<String, SvRelationCache> cacheConfig() {
-		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
 		builder = builder.removalListener(onRemove);
 		builder = builder.expireAfterAccess(10, TimeUnit.MINUTES);
 		builder = builder.maximumSize(100);
@@ -97,6 +97,34 @@ public class SvComplexCache {
 			return null;
 	}
 
+	/**
+	 * Static method to get the rows of a relation cache in which a field has a
+	 * specific value, using an index declared by
+	 * {@link SvRelationCache#addIndex(String, String)}
+	 * 
+	 * @param uniqueId
+	 *            The key under which the SvRelationCache is registered
+	 * @param alias
+	 *            The object alias of the node holding the field
+	 * @param fieldName
+	 *            The name of the indexed field
+	 * @param value
+	 *            The value of the field
+	 * @param sharedCore
+	 *            The SvCore instance used to load the data if needed
+	 * @return The matching rows or null if there is no such relation cache
+	 * @throws SvException
+	 *             Pass through exception from SvRelationCache.getDataByKey
+	 */
+	static public DbDataArray getDataByKey(String uniqueId, String alias, String fieldName, Object value,
+			SvCore sharedCore) throws SvException {
+		SvRelationCache cache = cachedRelations.getIfPresent(uniqueId);
+		if (cache != null)
+			return cache.getDataByKey(sharedCore, alias, fieldName, value);
+		else
+			return null;
+	}
+
 	static public SvRelationCache getCache(String uniqueId) {
 		return cachedRelations.getIfPresent(uniqueId);
 	}
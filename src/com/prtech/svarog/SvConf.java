@@ -102,6 +102,83 @@ public class SvConf {
 	 */
 	private static int maxLockCount;
 
+	/**
+	 * Default maximum size in megabytes of the objects cached per object type.
+	 * Zero means the caches are limited only by number of objects
+	 */
+	private static int cacheMaxMb;
+
+	/**
+	 * Maximum size in megabytes of the objects cached across all object types.
+	 * Zero means there is no global budget
+	 */
+	private static int cacheGlobalMaxMb;
+
+	/**
+	 * Maximum number of query results held by the result cache
+	 */
+	private static int queryCacheSize;
+
+	/**
+	 * Maximum number of generated SQL statements held by the SQL text cache.
+	 * Zero disables the cache
+	 */
+	private static int sqlCacheSize;
+
+	/**
+	 * Maximum number of authorisation decisions held by the authorisation
+	 * cache. Zero disables the cache
+	 */
+	private static int authCacheSize;
+
+	/**
+	 * Number of rows fetched from the database in one round trip by the
+	 * streaming cursors
+	 */
+	private static int jdbcFetchSize;
+
+	/**
+	 * Maximum number of asynchronous reads executed concurrently, each of them
+	 * holding its own JDBC connection
+	 */
+	private static int asyncReadThreads;
+
+	/**
+	 * Flag to execute the asynchronous reads on virtual threads, if the JVM
+	 * supports them
+	 */
+	private static boolean asyncVirtualThreads;
+
+	/**
+	 * Maximum number of asynchronous reads waiting for a free slot. Reads
+	 * submitted above the limit are rejected
+	 */
+	private static int asyncQueueSize;
+
+	/**
+	 * Execution time in milliseconds above which a statement is logged as slow
+	 * query. Negative value disables the slow query log
+	 */
+	private static int slowQueryThreshold;
+
+	/**
+	 * Flag to include the bind values in the slow query log. Disabled by
+	 * default, since the binds may hold personal data
+	 */
+	private static boolean slowQueryLogBinds;
+
+	/**
+	 * Local file in which the cache snapshot is stored for warm restart. Empty
+	 * disables the snapshot
+	 */
+	private static String cacheSnapshotFile;
+
+	/**
+	 * Interval in minutes between two cache snapshots. Zero means the snapshot
+	 * is written only on shutdown
+	 */
+	private static int cacheSnapshotInterval;
+
 	/**
 	 * Maximum time before the node will perform cluster maintenance.
 	 */
@@ -186,6 +263,29 @@ public class SvConf {
 	 */
 	private static volatile DataSource sysDataSource = null;
 
+	/**
+	 * The Datasource of the read replica, null if there is no replica
+	 * configured
+	 */
+	private static volatile DataSource replicaDataSource = null;
+
+	/**
+	 * Maximum replication lag in seconds, above which the reads are routed to
+	 * the primary database
+	 */
+	private static int replicaMaxLag;
+
+	/**
+	 * Time in seconds after a write in a session, during which the reads of
+	 * the session are routed to the primary database
+	 */
+	private static int replicaStickyTime;
+
+	/**
+	 * Interval in seconds between two checks of the replication lag
+	 */
+	private static int replicaCheckInterval;
+
 	/**
 	 * Set the default multi select separator. It is used to separate selected
 	 * values when stored in the d
@@ -459,6 +559,7 @@ public class SvConf {
 				log4j.info("DB connection type is JDBC, using DBCP2");
 				configureDBCP(mainProperties);
 			}
+			initReplicaDataSource(mainProperties);
 			hasErrors = false;
 			if (!(svDbType.equals(SvDbType.ORACLE) || svDbType.equals(SvDbType.POSTGRES)
 					|| svDbType.equals(SvDbType.MSSQL))) {
@@ -533,6 +634,22 @@ public class SvConf {
 
 			maxLockTimeout = getProperty(mainProperties, "sys.lock.max_wait_time", 5) * 60L * 1000L;
 			maxLockCount = getProperty(mainProperties, "sys.lock.max_count", 5000);
+			cacheMaxMb = getProperty(mainProperties, "sys.cache.max_mb", 0);
+			cacheGlobalMaxMb = getProperty(mainProperties, "sys.cache.global_max_mb", 0);
+			queryCacheSize = getProperty(mainProperties, "sys.cache.query_results.size", 1000);
+			sqlCacheSize = getProperty(mainProperties, "sys.cache.sql_text.size", 2000);
+			authCacheSize = getProperty(mainProperties, "sys.cache.authorisation.size", 10000);
+			replicaMaxLag = getProperty(mainProperties, "sys.replica.max_lag", 10);
+			replicaStickyTime = getProperty(mainProperties, "sys.replica.sticky_time", 60);
+			replicaCheckInterval = getProperty(mainProperties, "sys.replica.check_interval", 5);
+			jdbcFetchSize = getProperty(mainProperties, "sys.jdbc.fetch_size", 1000);
+			asyncReadThreads = getProperty(mainProperties, "sys.async.threads", 16);
+			asyncVirtualThreads = getProperty(mainProperties, "sys.async.virtual_threads", true);
+			asyncQueueSize = getProperty(mainProperties, "sys.async.queue_size", 1000);
+			slowQueryThreshold = getProperty(mainProperties, "sys.query.slow_threshold", 1000);
+			slowQueryLogBinds = getProperty(mainProperties, "sys.query.log_binds", false);
+			cacheSnapshotFile = getProperty(mainProperties, "sys.cache.snapshot.file", "");
+			cacheSnapshotInterval = getProperty(mainProperties, "sys.cache.snapshot.interval", 0);
 			multiSelectSeparator = getProperty(mainProperties, "sys.codes.multiselect_separator", "");
 			sdiEnabled = getProperty(mainProperties, "sys.gis.enable_spatial", false);
 
@@ -670,38 +787,82 @@ public class SvConf {
 	 * @return configured DBCP data source
 	 */
 	static DataSource configureDBCP(Properties mainProperties) {
+		sysDataSource = createDBCP(mainProperties, mainProperties.getProperty("conn.string").trim(),
+				mainProperties.getProperty("user.name").trim(), mainProperties.getProperty("user.password").trim());
+		return sysDataSource;
+	}
 
-		sysDataSource = new BasicDataSource();
-		((BasicDataSource) sysDataSource).setDriverClassName(mainProperties.getProperty("driver.name").trim());
-		((BasicDataSource) sysDataSource).setUrl(mainProperties.getProperty("conn.string").trim());
-		log4j.info("Configuring connection to: " + mainProperties.getProperty("conn.string").trim());
-		log4j.info("Configuring database user name: " + mainProperties.getProperty("user.name").trim());
+	/**
+	 * Method to create a DBCP data source with the pooling parameters from the
+	 * main properties
+	 * 
+	 * @param mainProperties the svarog main properties
+	 * @param connString     The JDBC connection string
+	 * @param userName       The database user name
+	 * @param password       The database password
+	 * @return configured DBCP data source
+	 */
+	private static BasicDataSource createDBCP(Properties mainProperties, String connString, String userName,
+			String password) {
+		BasicDataSource dataSource = new BasicDataSource();
+		dataSource.setDriverClassName(mainProperties.getProperty("driver.name").trim());
+		dataSource.setUrl(connString);
+		log4j.info("Configuring connection to: " + connString);
+		log4j.info("Configuring database user name: " + userName);
 		log4j.info("Configuring database schema: " + defaultSchema);
-		((BasicDataSource) sysDataSource).setUsername(mainProperties.getProperty("user.name").trim());
-		((BasicDataSource) sysDataSource).setPassword(mainProperties.getProperty("user.password").trim());
+		dataSource.setUsername(userName);
+		dataSource.setPassword(password);
 
 		// Parameters for connection pooling
-		((BasicDataSource) sysDataSource).setInitialSize(getProperty(mainProperties, "dbcp.init.size", 10));
-		((BasicDataSource) sysDataSource).setMaxTotal(getProperty(mainProperties, "dbcp.max.total", 200));
-		((BasicDataSource) sysDataSource).setTestOnBorrow(getProperty(mainProperties, "dbcp.test.borrow", true));
-		((BasicDataSource) sysDataSource).setTestWhileIdle(getProperty(mainProperties, "dbcp.test.idle", true));
+		dataSource.setInitialSize(getProperty(mainProperties, "dbcp.init.size", 10));
+		dataSource.setMaxTotal(getProperty(mainProperties, "dbcp.max.total", 200));
+		dataSource.setTestOnBorrow(getProperty(mainProperties, "dbcp.test.borrow", true));
+		dataSource.setTestWhileIdle(getProperty(mainProperties, "dbcp.test.idle", true));
 		String defaultValidationQuery = "SELECT 1" + (svDbType.equals(SvDbType.ORACLE) ? " FROM DUAL" : "");
-		((BasicDataSource) sysDataSource)
-				.setValidationQuery(getProperty(mainProperties, "dbcp.validation.query", defaultValidationQuery));
-		((BasicDataSource) sysDataSource)
-				.setValidationQueryTimeout(getProperty(mainProperties, "dbcp.validation.timoeut", 3000));
-		((BasicDataSource) sysDataSource)
-				.setAccessToUnderlyingConnectionAllowed(getProperty(mainProperties, "dbcp.access.conn", true));
-		((BasicDataSource) sysDataSource)
-				.setRemoveAbandonedOnBorrow(getProperty(mainProperties, "dbcp.remove.abandoned", true));
-		((BasicDataSource) sysDataSource)
-				.setRemoveAbandonedOnMaintenance(getProperty(mainProperties, "dbcp.remove.abandoned", true));
-		((BasicDataSource) sysDataSource)
-				.setRemoveAbandonedTimeout(getProperty(mainProperties, "dbcp.abandoned.timeout", 600));
-		((BasicDataSource) sysDataSource)
-				.setTimeBetweenEvictionRunsMillis(getProperty(mainProperties, "dbcp.eviction.time", 3000));
-		((BasicDataSource) sysDataSource).setMaxIdle(getProperty(mainProperties, "dbcp.max.idle", 10));
-		return sysDataSource;
+		dataSource.setValidationQuery(getProperty(mainProperties, "dbcp.validation.query", defaultValidationQuery));
+		dataSource.setValidationQueryTimeout(getProperty(mainProperties, "dbcp.validation.timoeut", 3000));
+		dataSource.setAccessToUnderlyingConnectionAllowed(getProperty(mainProperties, "dbcp.access.conn", true));
+		dataSource.setRemoveAbandonedOnBorrow(getProperty(mainProperties, "dbcp.remove.abandoned", true));
+		dataSource.setRemoveAbandonedOnMaintenance(getProperty(mainProperties, "dbcp.remove.abandoned", true));
+		dataSource.setRemoveAbandonedTimeout(getProperty(mainProperties, "dbcp.abandoned.timeout", 600));
+		dataSource.setTimeBetweenEvictionRunsMillis(getProperty(mainProperties, "dbcp.eviction.time", 3000));
+		dataSource.setMaxIdle(getProperty(mainProperties, "dbcp.max.idle", 10));
+		return dataSource;
+	}
+
+	/**
+	 * Method to configure the optional read replica data source. The replica
+	 * is configured by replica.jndi.datasource for JNDI connections, or by
+	 * replica.conn.string for JDBC connections, in which case the user name and
+	 * password default to the ones of the primary database.
+	 * 
+	 * @param mainProperties the svarog main properties
+	 */
+	private static void initReplicaDataSource(Properties mainProperties) {
+		replicaDataSource = null;
+		try {
+			if (svDbConnType.equals(SvDbConnType.JNDI)) {
+				String jndiDataSourceName = getProperty(mainProperties, "replica.jndi.datasource", "");
+				if (!jndiDataSourceName.isEmpty()) {
+					log4j.info("Read replica datasource name:" + jndiDataSourceName);
+					Context initialContext = new InitialContext();
+					replicaDataSource = (DataSource) initialContext.lookup(jndiDataSourceName);
+				}
+			} else {
+				String connString = getProperty(mainProperties, "replica.conn.string", "");
+				if (!connString.isEmpty()) {
+					log4j.info("Configuring read replica");
+					replicaDataSource = createDBCP(mainProperties, connString,
+							getProperty(mainProperties, "replica.user.name",
+									mainProperties.getProperty("user.name").trim()),
+							getProperty(mainProperties, "replica.user.password",
+									mainProperties.getProperty("user.password").trim()));
+				}
+			}
+		} catch (Exception e) {
+			log4j.error("Read replica can't be configured, all reads will use the primary database", e);
+			replicaDataSource = null;
+		}
 	}
 
 	/**
@@ -744,6 +905,37 @@ public class SvConf {
 		return result;
 	}
 
+	/**
+	 * Method to get a new JDBC connection to the read replica
+	 * 
+	 * @return A JDBC connection object
+	 * @throws SvException If there is no replica or the connection can't be
+	 *                     acquired from the datasource a
+	 *                     system.error.db_conn_err is thrown
+	 */
+	static Connection getReplicaConnection() throws SvException {
+		Connection result = null;
+		try {
+			result = getReplicaDataSource().getConnection();
+		} catch (Exception ex) {
+			throw (new SvException("system.error.db_conn_err", svCONST.systemUser, ex));
+		}
+		log4j.trace("New read replica connection acquired");
+		return result;
+	}
+
+	/**
+	 * Method to get the read replica data source
+	 * 
+	 * @return The replica data source or null if there is no replica
+	 */
+	static DataSource getReplicaDataSource() {
+		// the replica is initialised together with the system data source
+		if (getDataSource() == null)
+			return null;
+		return replicaDataSource;
+	}
+
 	/**
 	 * Method to get parameter values from the svarog config file.
 	 * 
@@ -1011,6 +1203,135 @@ public class SvConf {
 		SvConf.maxLockCount = maxLockCount;
 	}
 
+	public static int getCacheMaxMb() {
+		return cacheMaxMb;
+	}
+
+	public static void setCacheMaxMb(int cacheMaxMb) {
+		SvConf.cacheMaxMb = cacheMaxMb;
+	}
+
+	public static int getCacheGlobalMaxMb() {
+		return cacheGlobalMaxMb;
+	}
+
+	public static void setCacheGlobalMaxMb(int cacheGlobalMaxMb) {
+		SvConf.cacheGlobalMaxMb = cacheGlobalMaxMb;
+		SvLongCache.setGlobalMaxWeight(cacheGlobalMaxMb * 1024L * 1024L);
+	}
+
+	public static int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+
+	public static void setQueryCacheSize(int queryCacheSize) {
+		SvConf.queryCacheSize = queryCacheSize;
+	}
+
+	public static int getSqlCacheSize() {
+		return sqlCacheSize;
+	}
+
+	public static void setSqlCacheSize(int sqlCacheSize) {
+		SvConf.sqlCacheSize = sqlCacheSize;
+	}
+
+	public static int getAuthCacheSize() {
+		return authCacheSize;
+	}
+
+	public static void setAuthCacheSize(int authCacheSize) {
+		SvConf.authCacheSize = authCacheSize;
+	}
+
+	public static int getReplicaMaxLag() {
+		return replicaMaxLag;
+	}
+
+	public static void setReplicaMaxLag(int replicaMaxLag) {
+		SvConf.replicaMaxLag = replicaMaxLag;
+	}
+
+	public static int getReplicaStickyTime() {
+		return replicaStickyTime;
+	}
+
+	public static void setReplicaStickyTime(int replicaStickyTime) {
+		SvConf.replicaStickyTime = replicaStickyTime;
+	}
+
+	public static int getReplicaCheckInterval() {
+		return replicaCheckInterval;
+	}
+
+	public static void setReplicaCheckInterval(int replicaCheckInterval) {
+		SvConf.replicaCheckInterval = replicaCheckInterval;
+	}
+
+	public static int getAsyncReadThreads() {
+		return asyncReadThreads;
+	}
+
+	public static void setAsyncReadThreads(int asyncReadThreads) {
+		SvConf.asyncReadThreads = asyncReadThreads;
+	}
+
+	public static boolean isAsyncVirtualThreads() {
+		return asyncVirtualThreads;
+	}
+
+	public static void setAsyncVirtualThreads(boolean asyncVirtualThreads) {
+		SvConf.asyncVirtualThreads = asyncVirtualThreads;
+	}
+
+	public static int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	public static void setAsyncQueueSize(int asyncQueueSize) {
+		SvConf.asyncQueueSize = asyncQueueSize;
+	}
+
+	public static int getSlowQueryThreshold() {
+		return slowQueryThreshold;
+	}
+
+	public static void setSlowQueryThreshold(int slowQueryThreshold) {
+		SvConf.slowQueryThreshold = slowQueryThreshold;
+	}
+
+	public static boolean isSlowQueryLogBinds() {
+		return slowQueryLogBinds;
+	}
+
+	public static void setSlowQueryLogBinds(boolean slowQueryLogBinds) {
+		SvConf.slowQueryLogBinds = slowQueryLogBinds;
+	}
+
+	public static int getJdbcFetchSize() {
+		return jdbcFetchSize;
+	}
+
+	public static void setJdbcFetchSize(int jdbcFetchSize) {
+		SvConf.jdbcFetchSize = jdbcFetchSize;
+	}
+
+	public static String getCacheSnapshotFile() {
+		return cacheSnapshotFile;
+	}
+
+	public static void setCacheSnapshotFile(String cacheSnapshotFile) {
+		SvConf.cacheSnapshotFile = cacheSnapshotFile;
+	}
+
+	public static int getCacheSnapshotInterval() {
+		return cacheSnapshotInterval;
+	}
+
+	public static void setCacheSnapshotInterval(int cacheSnapshotInterval) {
+		SvConf.cacheSnapshotInterval = cacheSnapshotInterval;
+	}
+
 	public static int getHeartBeatPort() {
 		return heartBeatPort;
 	}
@@ -16,6 +16,7 @@ package com.prtech.svarog;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.HashSet;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -36,6 +37,24 @@ class SvConnTrace {
 	 */
 	int usageCount = 0;
 
+	/**
+	 * Flag marking that the tracked connection is served by the read replica
+	 */
+	boolean replica = false;
+
+	/**
+	 * The replica connection which was replaced by a primary connection. It
+	 * stays open until the trace is released, since the cores sharing the trace
+	 * may still read from it, for example through an open SvCursor
+	 */
+	private Connection retiredConnection = null;
+
+	/**
+	 * The object types saved or deleted in the open transaction of the
+	 * connection, by any of the SvCore instances sharing it
+	 */
+	private HashSet<Long> modifiedTypes = null;
+
 	/**
 	 * Method to increase the usageCount to mark another instance using the
 	 * connection
@@ -51,7 +70,7 @@ class SvConnTrace {
 				if (connection == null) {
 					if (log4j.isDebugEnabled())
 						log4j.trace("Current connection is null. Fetching a new connection from SvConf");
-					connection = SvConf.getDBConnection();
+					connection = replica ? getReplicaConnection() : SvConf.getDBConnection();
 				}
 			} catch (SQLException e) {
 				throw (new SvException("system.error.db_conn_err", svCONST.systemUser, e));
@@ -63,6 +82,98 @@ class SvConnTrace {
 		}
 	}
 
+	/**
+	 * Method to fetch a connection from the read replica. If the replica isn't
+	 * available the trace falls back to the primary data source.
+	 * 
+	 * @return JDBC connection to the replica or the primary
+	 * @throws SvException
+	 */
+	private Connection getReplicaConnection() throws SvException {
+		Connection replicaConn = null;
+		try {
+			replicaConn = SvConf.getReplicaConnection();
+		} catch (SvException e) {
+			log4j.warn("Can't fetch a replica connection, falling back to primary", e);
+		}
+		if (replicaConn == null) {
+			replica = false;
+			replicaConn = SvConf.getDBConnection();
+		}
+		return replicaConn;
+	}
+
+	/**
+	 * Method to move the trace from the read replica to the primary. Used when
+	 * an instance which may write joins a chain which was reading from the
+	 * replica, so the whole chain shares the same transaction. The replica
+	 * connection isn't closed before the trace is released, so open result
+	 * sets of other cores in the chain remain valid.
+	 */
+	void switchToPrimary() {
+		synchronized (this) {
+			if (!replica)
+				return;
+			replica = false;
+			if (connection != null) {
+				if (log4j.isDebugEnabled())
+					log4j.trace("Switching tracked connection from the read replica to the primary");
+				retiredConnection = connection;
+				connection = null;
+			}
+		}
+	}
+
+	/**
+	 * Method to register an object type which was saved or deleted over the
+	 * connection. If the connection is in auto commit mode the change is
+	 * already committed and there is nothing to track.
+	 * 
+	 * @param objectType The id of the object type
+	 */
+	void markModified(Long objectType) {
+		synchronized (this) {
+			try {
+				if (connection != null && !connection.isClosed() && connection.getAutoCommit())
+					return;
+			} catch (SQLException e) {
+				log4j.warn("Can't check the auto commit mode, tracking the type as uncommitted", e);
+			}
+			if (modifiedTypes == null)
+				modifiedTypes = new HashSet<Long>();
+			modifiedTypes.add(objectType);
+		}
+	}
+
+	/**
+	 * Method to check if an object type was modified in the open transaction of
+	 * the connection
+	 * 
+	 * @param objectType The id of the object type
+	 * @return True if the type has uncommitted changes
+	 */
+	boolean isModified(Long objectType) {
+		synchronized (this) {
+			return modifiedTypes != null && modifiedTypes.contains(objectType);
+		}
+	}
+
+	/**
+	 * Method to end the tracking of the open transaction, after it was
+	 * committed or rolled back. The generations of all modified types are
+	 * increased, so query results read while the transaction was open are not
+	 * reused.
+	 */
+	void endTransaction() {
+		synchronized (this) {
+			if (modifiedTypes != null) {
+				for (Long objectType : modifiedTypes)
+					DbCache.bumpGeneration(objectType);
+				modifiedTypes = null;
+			}
+		}
+	}
+
 	/**
 	 * Method to release the usage of connection. If connection is shared
 	 * between multiple SvCore instances, then just decrease the usage count.
@@ -87,6 +198,16 @@ class SvConnTrace {
 				} catch (SQLException e) {
 					log4j.error("Can't ROLLBACK connection for a deleted SvCore object", e);
 				}
+				endTransaction();
+				if (retiredConnection != null) {
+					try {
+						if (!retiredConnection.isClosed())
+							retiredConnection.close();
+					} catch (SQLException e) {
+						log4j.error("Can't close the replica connection", e);
+					}
+					retiredConnection = null;
+				}
 				try {
 					if (this.connection != null) {
 						if (!isManual) {
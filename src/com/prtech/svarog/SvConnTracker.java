@@ -95,10 +95,18 @@ class SvConnTracker {
 		Connection conn = null;
 		SvConnTrace connTrace = null;
 		connTrace = tracker.get(toCore);
-		if (connTrace == null)
+		if (connTrace == null) {
+			// the route is decided before the tracker lock is taken, so no
+			// acquisition waits on it
+			SvCore requester = toCore.get();
+			boolean replicaRoute = requester != null && requester.replicaEligible
+					&& SvReplica.route(requester.getSessionId());
 			synchronized (tracker) {
 				ArrayDeque<SoftReference<SvCore>> tmpTracker = new ArrayDeque<SoftReference<SvCore>>(4);
 				SoftReference<SvCore> currentCore = toCore;
+				// the chain may read from the replica only if all of its
+				// untracked cores are read only
+				boolean replicaChain = true;
 				// we need to pass all the parent cores in the chain up to find
 				// the one with tracker
 				while (currentCore != null && connTrace == null) {
@@ -111,9 +119,10 @@ class SvConnTracker {
 									+ " doesn't have a tracer, we go up the chain to find a tracer");
 						tmpTracker.add(currentCore);
 						SvCore core = currentCore.get();
-						if (core != null)
+						if (core != null) {
+							replicaChain = replicaChain && core.replicaEligible;
 							currentCore = core.weakSrcCore;
-						else
+						} else
 							currentCore = null;
 					}
 				}
@@ -125,17 +134,54 @@ class SvConnTracker {
 						log4j.trace(
 								"The core chain " + tmpTracker.toString() + "doesn't have a tracer, create a new one");
 					connTrace = new SvConnTrace();
-				}
+					connTrace.replica = replicaChain && replicaRoute;
+				} else if (!replicaChain)
+					connTrace.switchToPrimary();
 				// assign the new tracer to all chained cores.
 				for (SoftReference<SvCore> sCore : tmpTracker) {
 					tracker.put(sCore, connTrace);
 					connTrace.usageCount++;
 				}
 			}
+		}
 		conn = connTrace.acquire();
 		return conn;
 	}
 
+	/**
+	 * Method to check if the tracked connection of a SvCore instance is served
+	 * by the read replica
+	 * 
+	 * @param svCore
+	 *            Soft reference to the instance
+	 * @return True if the instance reads from the replica
+	 */
+	static boolean isReplicaConnection(SoftReference<SvCore> svCore) {
+		SvConnTrace connTrace = tracker.get(svCore);
+		return connTrace != null && connTrace.replica;
+	}
+
+	/**
+	 * Method to find the connection trace shared by a SvCore instance, without
+	 * acquiring a connection. If the instance itself isn't tracked yet, the
+	 * trace of the nearest tracked parent in the chain is returned.
+	 * 
+	 * @param svCore
+	 *            Soft reference to the instance
+	 * @return The connection trace or null if the chain has no connection
+	 */
+	static SvConnTrace getTrace(SoftReference<SvCore> svCore) {
+		SoftReference<SvCore> currentCore = svCore;
+		while (currentCore != null) {
+			SvConnTrace connTrace = tracker.get(currentCore);
+			if (connTrace != null)
+				return connTrace;
+			SvCore core = currentCore.get();
+			currentCore = core != null ? core.weakSrcCore : null;
+		}
+		return null;
+	}
+
 	/**
 	 * Method to release a tracked connection for a specific SvCore instance.
 	 * 
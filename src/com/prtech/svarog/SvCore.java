@@ -29,8 +29,10 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -303,6 +305,10 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 * The permissions associated with this instance
 	 */
 	private HashMap<SvAclKey, HashMap<String, DbDataObject>> instancePermissions = null;
+	/**
+	 * The security generation read before the instance permissions were loaded
+	 */
+	private long permissionsGeneration = -1L;
 	/**
 	 * The permissions indexed by key (label_code)
 	 */
@@ -355,6 +361,16 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 * method validations
 	 */
 	Boolean includeGeometries = false;
+	/**
+	 * Variable to identify if geometries should be kept as WKB and decoded on
+	 * first access, see {@link SvLazyGeometry}
+	 */
+	boolean lazyGeometries = false;
+	/**
+	 * Flag if the instance only reads data, so it may be served by the read
+	 * replica, see {@link SvReplica}
+	 */
+	boolean replicaEligible = false;
 	/**
 	 * Writer object to serialize geometries
 	 */
@@ -368,6 +384,23 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		this.includeGeometries = includeGeometries;
 	}
 
+	public boolean getLazyGeometries() {
+		return lazyGeometries;
+	}
+
+	/**
+	 * Method to enable the lazy geometries. The geometry fields of the objects
+	 * read by this instance hold a {@link SvLazyGeometry} instead of a JTS
+	 * geometry, which is decoded on first access through
+	 * {@link SvGeometry#getGeometry(DbDataObject)}. Has no effect unless the
+	 * geometries are included.
+	 * 
+	 * @param lazyGeometries True to enable the lazy geometries
+	 */
+	public void setLazyGeometries(boolean lazyGeometries) {
+		this.lazyGeometries = lazyGeometries;
+	}
+
 	/**
 	 * Writer object to serialize geometries
 	 */
@@ -770,6 +803,24 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		return dblt;
 	}
 
+	/**
+	 * Method to check if a link grants access to a user, by membership in a
+	 * user group or by power of attorney. If the link type is unknown the link
+	 * is considered to grant access
+	 * 
+	 * @param dboLink The link object
+	 * @return True if saving or deleting the link may change the access
+	 */
+	static boolean isSecurityLink(DbDataObject dboLink) {
+		Object linkTypeId = dboLink.getVal("LINK_TYPE_ID");
+		DbDataObject dblt = linkTypeId instanceof Long ? getLinkType((Long) linkTypeId) : null;
+		if (dblt == null)
+			return true;
+		Object type = dblt.getVal(Sv.Link.LINK_TYPE);
+		return Sv.USER_GROUP.equals(type) || Sv.USER_DEFAULT_GROUP.equals(type) || Sv.POA.equals(type)
+				|| Sv.POA_OU.equals(type);
+	}
+
 	/**
 	 * Method to get a link type descriptor in DbDataObject format
 	 * 
@@ -1336,6 +1387,10 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 			public void run() {
 				try {
 					log4j.info("Shutting down svarog");
+					// store the caches for a warm restart while the database is
+					// still available
+					SvCacheSnapshot.save();
+					SvAsyncExecutor.shutdown();
 					// Svarog shut down executing list of executors
 					if (SvConf.isClusterEnabled()) {
 						log4j.info("Shutting down the cluster infrastructure");
@@ -1481,6 +1536,8 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 					return true;
 				// we have the master repo in the database so lets load the core
 				loadCoreObjects(svc);
+				// warm up the object caches from the local snapshot, if any
+				SvCacheSnapshot.restore(svc);
 
 				// calculate the session debounce interval
 				DbDataObject sessionDbt = getDbt(svCONST.OBJECT_TYPE_SECURITY_LOG);
@@ -1719,9 +1776,50 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 				conn.commit();
 		} catch (SQLException ex) {
 			throw (new SvException("system.error.sql_err", this.instanceUser, null, null, ex));
+		} finally {
+			endTransaction();
 		}
 	}
 
+	/**
+	 * Method to register an object type which was saved or deleted in the
+	 * current transaction. The generation of the type is increased immediately
+	 * and once more when the transaction of the shared connection ends, no
+	 * matter which of the instances sharing the connection commits or rolls
+	 * it back
+	 * 
+	 * @param objectType The id of the object type
+	 */
+	void markTypeModified(Long objectType) {
+		DbCache.bumpGeneration(objectType);
+		SvReplica.markWrite(coreSessionId);
+		SvConnTrace connTrace = SvConnTracker.getTrace(weakThis);
+		if (connTrace != null)
+			connTrace.markModified(objectType);
+	}
+
+	/**
+	 * Method to check if an object type has uncommitted changes in the
+	 * transaction of the connection shared by this instance. Query results of
+	 * such type must not be served from or put in the shared result cache.
+	 * 
+	 * @param objectType The id of the object type
+	 * @return True if the type was modified in the open transaction
+	 */
+	boolean hasUncommittedChanges(Long objectType) {
+		SvConnTrace connTrace = SvConnTracker.getTrace(weakThis);
+		return connTrace != null && connTrace.isModified(objectType);
+	}
+
+	/**
+	 * Method to end the tracking of the transaction of the shared connection
+	 */
+	private void endTransaction() {
+		SvConnTrace connTrace = SvConnTracker.getTrace(weakThis);
+		if (connTrace != null)
+			connTrace.endTransaction();
+	}
+
 	/**
 	 * Wrapper method for Connection.rollback(). The wrapper is needed to get the
 	 * tracked JDBC connection associated with this specific instance. If the
@@ -1737,6 +1835,8 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 				conn.rollback();
 		} catch (SQLException ex) {
 			throw (new SvException("system.error.sql_err", this.instanceUser, null, null, ex));
+		} finally {
+			endTransaction();
 		}
 	}
 
@@ -1960,47 +2060,136 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	DbQueryExpression updatedQuery(DbQuery query, DbDataObject dbc) throws SvException {
 		DbDataObject dboUG = getDefaultUserGroup();
 		DbDataObject dbt = ((DbQueryObject) query).getDbt();
-		Long objectType = dbt.getObjectId();
-		if (Sv.POA.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE))
-				&& ((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_1)).equals(svCONST.OBJECT_TYPE_USER)
-				&& objectType.equals((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_2))) {
+		if (!isPoaLinkType(dboUG, dbc, dbt))
+			return null;
+		return updatedQuery(query, dbc,
+				Sv.POA_OU.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE)) ? getEmpoweredOrgUnits() : null);
+	}
+
+	/**
+	 * Method to modify the underlying query to include power of attorney
+	 * crosschecks with a link type which was already matched to the query
+	 * 
+	 * @param query    The original query
+	 * @param dbc      The power of attorney link type
+	 * @param orgUnits The ids of the org units of the user for POA_OU link
+	 *                 types, or null for POA link types
+	 * @return The query joined to the empowering user or org units
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	DbQueryExpression updatedQuery(DbQuery query, DbDataObject dbc, ArrayList<Long> orgUnits)
+			throws SvException {
+		DbQueryObject dqo = null;
+		if (orgUnits == null) {
 			DbDataObject usersDbt = getDbt(svCONST.OBJECT_TYPE_USER);
-			DbQueryExpression dqe = new DbQueryExpression();
-			DbQueryObject dqo = new DbQueryObject(usersDbt,
+			dqo = new DbQueryObject(usersDbt,
 					new DbSearchCriterion(Sv.OBJECT_ID, DbCompareOperand.EQUAL, instanceUser.getObjectId()),
 					DbJoinType.INNER, dbc, LinkType.DBLINK, null, null);
-			dqe.addItem(dqo);
-			dqe.addItem((DbQueryObject) query);
-			((DbQueryObject) query).setIsReturnType(true);
-			return dqe;
-		} else if (Sv.POA_OU.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE))
-				&& ((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_1)).equals(svCONST.OBJECT_TYPE_ORG_UNITS)
-				&& objectType.equals((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_2))) {
-
+		} else {
 			DbSearchExpression dbs = new DbSearchExpression();
-			try (SvReader svr = new SvReader(this)) {
-				svr.isInternal = true;
-				String uqVals = Sv.POA + "." + Long.toString(svCONST.OBJECT_TYPE_USER) + "."
-						+ Long.toString(svCONST.OBJECT_TYPE_ORG_UNITS);
-				DbDataObject linkUser2OU = DbCache.getObject(uqVals, svCONST.OBJECT_TYPE_LINK_TYPE);
-				DbDataArray linkedOU = svr.getObjectsByLinkedId(instanceUser.getObjectId(), linkUser2OU, null, null,
-						null);
-				for (DbDataObject ou : linkedOU.getItems()) {
-					dbs.addDbSearchItem(new DbSearchCriterion(Sv.OBJECT_ID, DbCompareOperand.EQUAL, ou.getObjectId(),
-							DbSearch.DbLogicOperand.OR));
-				}
+			for (Long ouId : orgUnits) {
+				dbs.addDbSearchItem(
+						new DbSearchCriterion(Sv.OBJECT_ID, DbCompareOperand.EQUAL, ouId, DbSearch.DbLogicOperand.OR));
 			}
-
 			DbDataObject usersDbt = getDbt(svCONST.OBJECT_TYPE_ORG_UNITS);
-			DbQueryExpression dqe = new DbQueryExpression();
-			DbQueryObject dqo = new DbQueryObject(usersDbt, dbs, DbJoinType.INNER, dbc, LinkType.DBLINK, null, null);
-			dqe.addItem(dqo);
-			dqe.addItem((DbQueryObject) query);
-			((DbQueryObject) query).setIsReturnType(true);
-			return dqe;
+			dqo = new DbQueryObject(usersDbt, dbs, DbJoinType.INNER, dbc, LinkType.DBLINK, null, null);
+		}
+		DbQueryExpression dqe = new DbQueryExpression();
+		dqe.addItem(dqo);
+		dqe.addItem((DbQueryObject) query);
+		((DbQueryObject) query).setIsReturnType(true);
+		return dqe;
+	}
+
+	/**
+	 * Method to check if a power of attorney link type applies to an object
+	 * type for the security type of the user group
+	 * 
+	 * @param userGroup The default user group of the user
+	 * @param dbc       The power of attorney link type
+	 * @param dbt       The queried object type
+	 * @return True if the link type empowers the user over the object type
+	 */
+	private boolean isPoaLinkType(DbDataObject userGroup, DbDataObject dbc, DbDataObject dbt) {
+		Long objectType = dbt.getObjectId();
+		if (Sv.POA.equals(userGroup.getVal(Sv.GROUP_SECURITY_TYPE)))
+			return ((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_1)).equals(svCONST.OBJECT_TYPE_USER)
+					&& objectType.equals((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_2));
+		else if (Sv.POA_OU.equals(userGroup.getVal(Sv.GROUP_SECURITY_TYPE)))
+			return ((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_1)).equals(svCONST.OBJECT_TYPE_ORG_UNITS)
+					&& objectType.equals((Long) dbc.getVal(Sv.Link.LINK_OBJ_TYPE_2));
+		return false;
+	}
 
+	/**
+	 * Method to get the ids of the org units to which the user is linked by
+	 * power of attorney
+	 * 
+	 * @return The list of org unit ids
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	private ArrayList<Long> getEmpoweredOrgUnits() throws SvException {
+		ArrayList<Long> orgUnits = new ArrayList<Long>();
+		try (SvReader svr = new SvReader(this)) {
+			svr.isInternal = true;
+			String uqVals = Sv.POA + "." + Long.toString(svCONST.OBJECT_TYPE_USER) + "."
+					+ Long.toString(svCONST.OBJECT_TYPE_ORG_UNITS);
+			DbDataObject linkUser2OU = DbCache.getObject(uqVals, svCONST.OBJECT_TYPE_LINK_TYPE);
+			DbDataArray linkedOU = svr.getObjectsByLinkedId(instanceUser.getObjectId(), linkUser2OU, null, null,
+					null);
+			for (DbDataObject ou : linkedOU.getItems())
+				orgUnits.add(ou.getObjectId());
 		}
-		return null;
+		return orgUnits;
+	}
+
+	/**
+	 * Power of attorney which applies to a query of an object type. The link
+	 * type is null if the user isn't restricted by power of attorney
+	 */
+	static final class PoaDecision {
+		final DbDataObject linkType;
+		final ArrayList<Long> orgUnits;
+
+		PoaDecision(DbDataObject linkType, ArrayList<Long> orgUnits) {
+			this.linkType = linkType;
+			this.orgUnits = orgUnits;
+		}
+	}
+
+	/**
+	 * Method to get the power of attorney which applies to the queries of an
+	 * object type. The decisions are cached per user, user group and object
+	 * type until any of the ACL, SID-ACL, link type or user group objects or a
+	 * group membership or power of attorney link changes.
+	 * 
+	 * @param dboUG The default user group of the user
+	 * @param dbt   The queried object type
+	 * @return The power of attorney decision
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	private PoaDecision getPoaDecision(DbDataObject dboUG, DbDataObject dbt) throws SvException {
+		String key = null;
+		long generation = 0L;
+		if (SvConf.getAuthCacheSize() > 0) {
+			generation = DbCache.getSecurityGeneration();
+			key = Sv.POA + '\u0001' + instanceUser.getObjectId() + '\u0001' + dboUG.getObjectId() + '\u0001'
+					+ dbt.getObjectId();
+			Object cached = DbCache.getAuthDecision(key);
+			if (cached instanceof PoaDecision)
+				return (PoaDecision) cached;
+		}
+		PoaDecision decision = new PoaDecision(null, null);
+		for (DbDataObject dblPoa : poaDbLinkTypes.getItems()) {
+			if (isPoaLinkType(dboUG, dblPoa, dbt)) {
+				decision = new PoaDecision(dblPoa,
+						Sv.POA_OU.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE)) ? getEmpoweredOrgUnits() : null);
+				break;
+			}
+		}
+		if (key != null)
+			DbCache.putAuthDecision(key, generation, decision);
+		return decision;
 	}
 
 	boolean isLinkTypeCompatible(DbDataObject userGroup, DbDataObject linkType, DbDataObject dbt) {
@@ -2035,12 +2224,10 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		if (dboUG != null && (Sv.POA.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE))
 				|| Sv.POA_OU.equals(dboUG.getVal(Sv.GROUP_SECURITY_TYPE)))) {
 			if (query instanceof DbQueryObject) {
-				for (DbDataObject dblPoa : poaDbLinkTypes.getItems()) {
-					DbQuery updated = updatedQuery(query, dblPoa);
-					if (updated != null) {
-						retVal = updated;
-						break;
-					}
+				if (((DbQueryObject) query).getDbt() != null) {
+					PoaDecision poa = getPoaDecision(dboUG, ((DbQueryObject) query).getDbt());
+					if (poa.linkType != null)
+						retVal = updatedQuery(query, poa.linkType, poa.orgUnits);
 				}
 			} else if (query instanceof DbQueryExpression && !((DbQueryExpression) query).getIsReverseExpression()) {
 				DbDataObject dbt = ((DbQueryExpression) query).getItems().get(0).getDbt();
@@ -2069,11 +2256,42 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		return retVal;
 	}
 
+	/**
+	 * Method to convert a collection of values bound as a single parameter to a
+	 * JDBC array. The SQL type of the array is decided by the type of the first
+	 * non-null value
+	 * 
+	 * @param conn   The connection on which the statement is prepared
+	 * @param values The values of the array
+	 * @return The JDBC array
+	 * @throws SQLException Any underlying exception is re-thrown
+	 */
+	static java.sql.Array getSqlArray(Connection conn, Collection<?> values) throws SQLException {
+		String arrayType = "varchar";
+		for (Object val : values)
+			if (val != null) {
+				if (val instanceof Long || val instanceof Integer)
+					arrayType = "bigint";
+				else if (val instanceof BigDecimal)
+					arrayType = "numeric";
+				else if (val instanceof DateTime || val instanceof Timestamp)
+					arrayType = "timestamp";
+				break;
+			}
+		Object[] elements = new Object[values.size()];
+		int i = 0;
+		for (Object val : values)
+			elements[i++] = val instanceof DateTime ? new Timestamp(((DateTime) val).getMillis()) : val;
+		return conn.createArrayOf(arrayType, elements);
+	}
+
 	void bindQueryVals(PreparedStatement ps, ArrayList<Object> bindVals) throws SQLException {
 		Integer paramIdx = 1;
 		for (Object obj : bindVals) {
 			if (obj != null && obj.getClass().equals(DateTime.class))
 				obj = new Timestamp(((DateTime) obj).getMillis());
+			else if (obj instanceof Collection)
+				obj = getSqlArray(ps.getConnection(), (Collection<?>) obj);
 			if (log4j.isDebugEnabled())
 				log4j.trace("Bind Variable:" + paramIdx.toString() + ", value:"
 						+ (obj != null ? obj.toString() : Sv.SQL.NULL));
@@ -2096,6 +2314,20 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 * @throws SvException Any underlying exception is re-thrown
 	 */
 	private StringBuilder getSQLStatement(DbQuery query, Integer rowLimit, Integer offset) throws SvException {
+		// queries with the same structure generate the same SQL, so the
+		// generation is skipped if the fingerprint is in the cache
+		String sqlKey = null;
+		if (SvConf.getSqlCacheSize() > 0) {
+			String fingerprint = query.getSQLFingerprint(false, includeGeometries);
+			if (fingerprint != null) {
+				sqlKey = fingerprint + '\u0001' + rowLimit + '\u0001' + offset;
+				DbCache.SqlText cached = DbCache.getSqlText(sqlKey);
+				if (cached != null) {
+					query.restoreSQLState(cached.returnTypeSequence);
+					return new StringBuilder(cached.sql);
+				}
+			}
+		}
 		StringBuilder sqlQry;
 		sqlQry = query.getSQLExpression(false, includeGeometries);
 		if (rowLimit != null && offset != null && (rowLimit > 0 || offset > 0)) {
@@ -2112,6 +2344,8 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		}
 		if (log4j.isDebugEnabled())
 			log4j.trace("Generating SQL: " + sqlQry);
+		if (sqlKey != null)
+			DbCache.putSqlText(sqlKey, sqlQry.toString(), query.getReturnTypeSequence());
 		return sqlQry;
 	}
 
@@ -2323,6 +2557,7 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 				lock = SvLock.getLock(lockKey, true, SvConf.getMaxLockTimeout());
 				if (lock != null) {
 					if (instancePermissions == null) {
+						permissionsGeneration = DbCache.getSecurityGeneration();
 						instancePermissions = new HashMap<SvAclKey, HashMap<String, DbDataObject>>();
 						// make sure to check first if we have already cached a
 						// list of permissions for this specific user in the
@@ -2521,60 +2756,111 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 * @throws ParseException Exception from conversion of datatypes between DB/Java
 	 * @throws SvException    Re-throws any underlying exception
 	 */
-	private DbDataObject getObjectFromRecord(ResultSet rs, String tblPrefix, DbQuery query, ResultSetMetaData rsmt)
+	DbDataObject getObjectFromRecord(ResultSet rs, String tblPrefix, DbQuery query, ResultSetMetaData rsmt)
 			throws SQLException, ParseException, SvException {
+		return getObjectFromRecord(rs, getRowPlan(tblPrefix, query, rsmt));
+	}
+
+	/**
+	 * Method to compute the row mapping plan for a result set. The plan should be
+	 * computed once after the query is executed and used for all rows.
+	 * 
+	 * @param tblPrefix String prefix of the metadata fields. MUST BE UPPERCASED!!!
+	 * @param query     the Svarog DbQuery object which was used for execution
+	 * @param rsmt      The metadata of the resultset
+	 * @return The row mapping plan
+	 * @throws SQLException Underlying exceptions from the JDBC structures
+	 */
+	SvRowPlan getRowPlan(String tblPrefix, DbQuery query, ResultSetMetaData rsmt) throws SQLException {
+		HashMap<SvCharId, Object> fields = null;
+		if (query.getReturnType() != null) {
+			// make sure the field map of the type is initialised
+			if (!dbtKeyMap.containsKey(query.getReturnType().getObjectId()))
+				createDboByType(query.getReturnType());
+			fields = dbtKeyMap.get(query.getReturnType().getObjectId());
+		}
+		return new SvRowPlan(tblPrefix, query, rsmt, fields);
+	}
+
+	/**
+	 * A method for converting a row from the resultset into a DbDataObject
+	 * according to a pre-computed row mapping plan
+	 * 
+	 * @param rs   A ResultSet object which contains the data
+	 * @param plan The row mapping plan of the resultset
+	 * 
+	 * @return DbDataObject containing the data.
+	 * @throws SQLException   Underlying exceptions from the JDBC structures
+	 * @throws ParseException Exception from conversion of datatypes between DB/Java
+	 * @throws SvException    Re-throws any underlying exception
+	 */
+	DbDataObject getObjectFromRecord(ResultSet rs, SvRowPlan plan) throws SQLException, ParseException, SvException {
 		DbDataObject object = null;
-		Long typeId = query.getReturnType() != null ? query.getReturnType().getObjectId() : 0L;
-		boolean isExpression = query instanceof DbQueryExpression;
-		boolean isReverse = isExpression ? ((DbQueryExpression) query).getIsReverseExpression() : false;
-		int numberOfColumns = rs.getMetaData().getColumnCount();
-		if (!typeId.equals(0L)) {
-			object = createDboByType(query.getReturnType());
+		if (plan.returnType != null && !plan.returnType.getObjectId().equals(0L)) {
+			object = createDboByType(plan.returnType);
 		} else
 			object = new DbDataObject();
 
-		String fieldName = "";
-		if (query.getReturnType() != null && !isReverse) {
-			tblPrefix = tblPrefix + query.getReturnTypeSequence();
-		}
-		// end of part which should be moved one up
-		String fieldType = "";
-		HashMap<SvCharId, Object> fields = dbtKeyMap.get(typeId);
-
-		for (int colIndex = 1; colIndex <= numberOfColumns; colIndex++) {
-			fieldName = rsmt.getColumnName(colIndex).toUpperCase();
-			if (query.getReturnType() != null) {
-				fieldName = fieldName.substring(tblPrefix.length() + 1);
-				// if the column is not a repo field, process it
-				if (svCONST.repoFieldNames.indexOf(fieldName) < 0) {
-					SvCharId fieldId = new SvCharId(fieldName);
-					DbDataObject dbf = (DbDataObject) fields.get(fieldId);
-					fieldType = (dbf != null ? (String) dbf.getVal(Sv.FIELD_TYPE) : null);
-					Object fieldVal = getObjectFromCol(rs, fieldType, colIndex, rsmt);
+		for (int colIndex = 1; colIndex <= plan.columnCount; colIndex++) {
+			if (plan.returnType != null) {
+				SvCharId fieldId = plan.fieldIds[colIndex];
+				// the repo columns have no field id
+				if (fieldId != null) {
+					Object fieldVal = getObjectFromCol(rs, plan.fieldTypes[colIndex], colIndex,
+							plan.sqlTypes[colIndex], plan.scales[colIndex]);
 					object.setVal(fieldId, fieldVal);
 					if (fieldVal instanceof Geometry) {
 						((Geometry) fieldVal).setUserData(object);
-					}
-					recordPostProcess(fieldId, fieldVal, object, dbf);
+					} else if (fieldVal instanceof SvLazyGeometry)
+						((SvLazyGeometry) fieldVal).setUserData(object);
+					if (plan.postProcess[colIndex])
+						recordPostProcess(fieldId, fieldVal, object, plan.fieldDescs[colIndex]);
 				}
 			} else {
-				Object obj = getObjectFromCol(rs, null, colIndex, rsmt);
-				fieldName = fieldName.replace(tblPrefix + "_", "").toUpperCase();
-				object.setVal(fieldName, obj);
+				Object obj = getObjectFromCol(rs, null, colIndex, plan.sqlTypes[colIndex], plan.scales[colIndex]);
+				object.setVal(plan.fieldNames[colIndex], obj);
 			}
 		}
-		if (query.getReturnType() != null && (!isExpression || (isExpression && query.getReturnTypes().size() == 1))) {
-			setObjectRepoData(object, rs, tblPrefix);
-			object.setObjectType(query.getReturnType().getObjectId());
-			if (hasGeometries(query.getReturnType().getObjectId()))
+		if (plan.setRepoData) {
+			if (plan.repoCols != null)
+				setObjectRepoData(object, rs, plan.repoCols);
+			else
+				setObjectRepoData(object, rs, plan.tblPrefix);
+			object.setObjectType(plan.returnType.getObjectId());
+			if (hasGeometries(plan.returnType.getObjectId()))
 				DboFactory.dboIsGeometryType(object);
 			if (includeGeometries)
 				DboFactory.dboHasGeometry(object);
+			if (plan.partial)
+				DbCache.markPartial(object);
 		}
 		object.setIsDirty(false);
 		return object;
 	}
 
+	/**
+	 * Method to populate basic object data from a resultset using the column
+	 * indexes of the repo fields
+	 * 
+	 * @param object   The DbDataObject instance which will be initialised from the
+	 *                 resultset
+	 * @param rs       The JDBC resultset which will be used for initialising the
+	 *                 object metadata
+	 * @param repoCols The column indexes of the repo fields, in the order of
+	 *                 {@link SvRowPlan#REPO_COLUMNS}
+	 * @throws SQLException Any underlying exception is re-thrown
+	 */
+	private void setObjectRepoData(DbDataObject object, ResultSet rs, int[] repoCols) throws SQLException {
+		object.setPkid(rs.getLong(repoCols[SvRowPlan.PKID]));
+		object.setObjectId(rs.getLong(repoCols[SvRowPlan.OBJECT_ID]));
+		object.setDtInsert(new DateTime(rs.getTimestamp(repoCols[SvRowPlan.DT_INSERT])));
+		object.setDtDelete(new DateTime(rs.getTimestamp(repoCols[SvRowPlan.DT_DELETE])));
+		object.setParentId(rs.getLong(repoCols[SvRowPlan.PARENT_ID]));
+		object.setObjectType(rs.getLong(repoCols[SvRowPlan.OBJECT_TYPE]));
+		object.setStatus(rs.getString(repoCols[SvRowPlan.STATUS]));
+		object.setUserId(rs.getLong(repoCols[SvRowPlan.USER_ID]));
+	}
+
 	/**
 	 * Method to populate basic object data from a resultset
 	 * 
@@ -2604,6 +2890,8 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 *                  fetched
 	 * @param fieldType The type of the field
 	 * @param colIndex  The index of the field in the resultset
+	 * @param sqlType   The JDBC type of the column
+	 * @param scale     The scale of the column, if it is numeric
 	 * @return A java object of the specific type (string, number, geometry,
 	 *         boolean)
 	 * @throws SQLException   Any of the vcalls to the ResultSet methods raised an
@@ -2613,7 +2901,7 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 * @throws SvException    If the getDbHandler thrown exception
 	 */
 
-	private Object getObjectFromCol(ResultSet rs, String fieldType, int colIndex, ResultSetMetaData rsmt)
+	private Object getObjectFromCol(ResultSet rs, String fieldType, int colIndex, int sqlType, int scale)
 			throws SQLException, ParseException, SvException {
 
 		Object obj = null;
@@ -2627,7 +2915,7 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 				if (includeGeometries) {
 					byte[] geom = SvConf.getDbHandler().getGeometry(rs, colIndex);
 					if (geom != null) {
-						obj = getWKBReader().read(geom);
+						obj = lazyGeometries ? new SvLazyGeometry(geom) : getWKBReader().read(geom);
 					}
 				}
 				break;
@@ -2641,7 +2929,7 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 				}
 			}
 		}
-		switch (rsmt.getColumnType(colIndex)) {
+		switch (sqlType) {
 		case java.sql.Types.TIMESTAMP:
 			obj = rs.getTimestamp(colIndex);
 			if (obj != null)
@@ -2649,7 +2937,7 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 			break;
 		case java.sql.Types.NUMERIC:
 			obj = rs.getBigDecimal(colIndex);
-			if (obj != null && rsmt.getScale(colIndex) == 0)
+			if (obj != null && scale == 0)
 				obj = ((BigDecimal) obj).longValue();
 			break;
 		}
@@ -2717,48 +3005,82 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 
 	protected boolean authoriseDqoByConfig(DbQueryObject dqo, HashMap<String, DbDataObject> aclMap,
 			SvAccess accessLevel) {
-		boolean hasAccess = false;
-		// create expression to hold the config criteria
-		DbSearchExpression innerDbx = new DbSearchExpression();
-		innerDbx.setNextCritOperand(Sv.AND);
-		// get the config field name to filter by
-		String cfgFieldName = (String) dqo.getDbt().getVal(Sv.CONFIG_UNQ_ID);
+		ArrayList<String> configKeys = getGrantedConfigKeys(aclMap, accessLevel);
+		if (!configKeys.isEmpty())
+			applyConfigCriteria(dqo, configKeys);
+		return !configKeys.isEmpty();
+	}
 
+	/**
+	 * Method to get the configuration keys to which an ACL map grants the
+	 * required access level
+	 * 
+	 * @param aclMap      The ACLs of an object type by configuration key
+	 * @param accessLevel The required access level
+	 * @return The list of granted configuration keys
+	 */
+	private ArrayList<String> getGrantedConfigKeys(HashMap<String, DbDataObject> aclMap, SvAccess accessLevel) {
+		ArrayList<String> configKeys = new ArrayList<String>();
 		for (Entry<String, DbDataObject> permItem : aclMap.entrySet()) {
 			// if the key of the permission is null, than its the global table
 			// key, so we ignore it
 			if (permItem.getKey() != null && permItem.getValue() != null) {
 				DbDataObject acl = permItem.getValue();
 				SvAccess accessType = (SvAccess) acl.getVal(Sv.ACCESS_TYPE);
-				if (accessType.getAccessLevelValue() >= accessLevel.getAccessLevelValue()) {
-					hasAccess = true;
-					try {
-						DbSearchCriterion crit = new DbSearchCriterion(cfgFieldName, DbCompareOperand.EQUAL,
-								permItem.getKey());
-						crit.setNextCritOperand(Sv.OR);
-						innerDbx.addDbSearchItem(crit);
-					} catch (SvException e) {
-					}
-				}
+				if (accessType.getAccessLevelValue() >= accessLevel.getAccessLevelValue())
+					configKeys.add(permItem.getKey());
 			}
 		}
-		// if we granted access, make sure we modify the search criteria
-		if (hasAccess) {
-			// create on final criteria, based on the innerDbx populated few
-			// rows up
-			DbSearchExpression finalDbx = new DbSearchExpression().addDbSearchItem(innerDbx);
-			if (dqo.getSearchExternal() != null) {
-				finalDbx.addDbSearchItem(dqo.getSearchExternal());
+		return configKeys;
+	}
+
+	/**
+	 * Method to restrict a query of a configuration table to the granted
+	 * configuration keys
+	 * 
+	 * @param dqo        The query object to be restricted
+	 * @param configKeys The granted configuration keys
+	 */
+	private void applyConfigCriteria(DbQueryObject dqo, ArrayList<String> configKeys) {
+		// create expression to hold the config criteria
+		DbSearchExpression innerDbx = new DbSearchExpression();
+		innerDbx.setNextCritOperand(Sv.AND);
+		// get the config field name to filter by
+		String cfgFieldName = (String) dqo.getDbt().getVal(Sv.CONFIG_UNQ_ID);
+		for (String configKey : configKeys) {
+			try {
+				DbSearchCriterion crit = new DbSearchCriterion(cfgFieldName, DbCompareOperand.EQUAL, configKey);
+				crit.setNextCritOperand(Sv.OR);
+				innerDbx.addDbSearchItem(crit);
+			} catch (SvException e) {
 			}
-			dqo.setSearch(finalDbx);
 		}
-		return hasAccess;
-
+		// create on final criteria, based on the innerDbx populated few
+		// rows up
+		DbSearchExpression finalDbx = new DbSearchExpression().addDbSearchItem(innerDbx);
+		if (dqo.getSearchExternal() != null) {
+			finalDbx.addDbSearchItem(dqo.getSearchExternal());
+		}
+		dqo.setSearch(finalDbx);
 	}
 
 	protected boolean authoriseDqoByConfigType(DbQueryObject dqo, HashMap<String, DbDataObject> aclMap,
 			SvAccess accessLevel) throws SvException {
-		boolean hasAccess = false;
+		ArrayList<String> configKeys = getGrantedConfigKeys(aclMap, accessLevel);
+		if (!configKeys.isEmpty())
+			applyConfigTypeCriteria(dqo, configKeys);
+		return !configKeys.isEmpty();
+	}
+
+	/**
+	 * Method to restrict a query of an implementation table to the objects
+	 * related to the granted configuration keys
+	 * 
+	 * @param dqo        The query object to be restricted
+	 * @param configKeys The granted configuration keys of the configuration type
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	private void applyConfigTypeCriteria(DbQueryObject dqo, ArrayList<String> configKeys) throws SvException {
 		DbDataObject dbt = dqo.getDbt();
 
 		// create expression to hold the config criteria
@@ -2774,20 +3096,10 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 
 		// the cfg column from the configuration type table
 		String cfgFieldName = (String) cfgDbt.getVal(Sv.CONFIG_UNQ_ID);
-		for (Entry<String, DbDataObject> permItem : aclMap.entrySet()) {
-			// if the key of the permission is null, than its the global table
-			// key, so we ignore it
-			if (permItem.getKey() != null && permItem.getValue() != null) {
-				DbDataObject acl = permItem.getValue();
-				SvAccess accessType = (SvAccess) acl.getVal(Sv.ACCESS_TYPE);
-				if (accessType.getAccessLevelValue() >= accessLevel.getAccessLevelValue()) {
-					hasAccess = true;
-					try {
-						subCfgDbx.addDbSearchItem(
-								new DbSearchCriterion(cfgFieldName, DbCompareOperand.EQUAL, permItem.getKey()));
-					} catch (SvException e) {
-					}
-				}
+		for (String configKey : configKeys) {
+			try {
+				subCfgDbx.addDbSearchItem(new DbSearchCriterion(cfgFieldName, DbCompareOperand.EQUAL, configKey));
+			} catch (SvException e) {
 			}
 		}
 		if (dbt.getVal(Sv.CONFIG_RELATION_TYPE).equals(Sv.FIELD)) {
@@ -2800,43 +3112,104 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		}
 		// TODO add a new query for relation by link ;)
 
-		// if we granted access, make sure we modify the search criteria
-		if (hasAccess) {
-			// create on final criteria, based on the innerDbx populated few
-			// rows up
-			DbSearchExpression finalDbx = new DbSearchExpression().addDbSearchItem(innerDbx);
-			if (dqo.getSearchExternal() != null) {
-				finalDbx.addDbSearchItem(dqo.getSearchExternal());
-			}
-			dqo.setSearch(finalDbx);
+		// create on final criteria, based on the innerDbx populated few
+		// rows up
+		DbSearchExpression finalDbx = new DbSearchExpression().addDbSearchItem(innerDbx);
+		if (dqo.getSearchExternal() != null) {
+			finalDbx.addDbSearchItem(dqo.getSearchExternal());
 		}
-		return hasAccess;
+		dqo.setSearch(finalDbx);
+	}
+
+	/**
+	 * Decision on the access of a user to an object type. The user has either
+	 * full access to the type, access to the granted configuration keys of a
+	 * configuration table, access to the objects related to the granted keys
+	 * of the configuration type, or no access at all
+	 */
+	static final class AclDecision {
+		final boolean fullAccess;
+		final ArrayList<String> configKeys;
+		final ArrayList<String> configTypeKeys;
+
+		AclDecision(boolean fullAccess, ArrayList<String> configKeys, ArrayList<String> configTypeKeys) {
+			this.fullAccess = fullAccess;
+			this.configKeys = configKeys;
+			this.configTypeKeys = configTypeKeys;
+		}
+	}
 
+	/**
+	 * Method to get the access decision of the instance user for an object
+	 * type. The decisions are cached per user, object type and access level
+	 * until any of the ACL, SID-ACL, link type or user group objects or a group
+	 * membership or power of attorney link changes.
+	 * 
+	 * @param dbt         The object type descriptor
+	 * @param accessLevel The required access level
+	 * @return The access decision
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	private AclDecision getAclDecision(DbDataObject dbt, SvAccess accessLevel) throws SvException {
+		String key = null;
+		long generation = 0L;
+		if (SvConf.getAuthCacheSize() > 0) {
+			generation = DbCache.getSecurityGeneration();
+			key = Sv.ACL + '\u0001' + instanceUser.getObjectId() + '\u0001' + dbt.getObjectId() + '\u0001'
+					+ accessLevel;
+			Object cached = DbCache.getAuthDecision(key);
+			if (cached instanceof AclDecision)
+				return (AclDecision) cached;
+		}
+		boolean fullAccess = false;
+		ArrayList<String> configKeys = null;
+		ArrayList<String> configTypeKeys = null;
+		HashMap<SvAclKey, HashMap<String, DbDataObject>> permissions = this.getPermissionsImpl();
+		// the decision of an instance whose permissions were loaded before the
+		// last security change must not be shared with the other instances
+		if (key != null && permissionsGeneration != generation)
+			key = null;
+		HashMap<String, DbDataObject> aclMap = permissions.get(new SvAclKey(dbt));
+		if (aclMap != null) {
+			// check for full table access via null key
+			DbDataObject acl = aclMap.get(null);
+			if (acl != null) {
+				SvAccess accessType = (SvAccess) acl.getVal(Sv.ACCESS_TYPE);
+				fullAccess = accessType.getAccessLevelValue() >= accessLevel.getAccessLevelValue();
+			}
+			// if the full table access was not authorised, try to authorise
+			// based on config id. only if its a config table of course.
+			if (!fullAccess && (boolean) dbt.getVal(Sv.IS_CONFIG_TABLE)) {
+				configKeys = getGrantedConfigKeys(aclMap, accessLevel);
+				if (configKeys.isEmpty())
+					configKeys = null;
+			}
+			// Authorising implementation tables based on related config
+			if (!fullAccess && configKeys == null && dbt.getVal(Sv.CONFIG_TYPE_ID) != null) {
+				configTypeKeys = getGrantedConfigKeys(aclMap, accessLevel);
+				if (configTypeKeys.isEmpty())
+					configTypeKeys = null;
+			}
+		}
+		AclDecision decision = new AclDecision(fullAccess, configKeys, configTypeKeys);
+		if (key != null)
+			DbCache.putAuthDecision(key, generation, decision);
+		return decision;
 	}
 
 	protected boolean authoriseDqo(DbQueryObject dqo, SvAccess accessLevel) throws SvException {
 		boolean hasAccess = false;
 		if (!isSystem() && !isService() && dqo.getDbt() != null) {
 			DbDataObject dbt = dqo.getDbt();
-			SvAclKey aclKey = new SvAclKey(dbt);
-			HashMap<String, DbDataObject> aclMap = this.getPermissionsImpl().get(aclKey);
-			if (aclMap != null) {
-				// check for full table access via null key
-				DbDataObject acl = aclMap.get(null);
-				if (acl != null) {
-					SvAccess accessType = (SvAccess) acl.getVal(Sv.ACCESS_TYPE);
-					hasAccess = accessType.getAccessLevelValue() >= accessLevel.getAccessLevelValue();
-				}
-				// if the full table access was not authorised, try to
-				// authorise
-				// based on config id. only if its a config table of course.
-				if (!hasAccess && (boolean) dqo.getDbt().getVal(Sv.IS_CONFIG_TABLE)) {
-					hasAccess = authoriseDqoByConfig(dqo, aclMap, accessLevel);
-				}
-				// Authorising implementation tables based on related config
-				if (!hasAccess && dqo.getDbt().getVal(Sv.CONFIG_TYPE_ID) != null) {
-					hasAccess = authoriseDqoByConfigType(dqo, aclMap, accessLevel);
-				}
+			AclDecision decision = getAclDecision(dbt, accessLevel);
+			if (decision.fullAccess)
+				hasAccess = true;
+			else if (decision.configKeys != null) {
+				applyConfigCriteria(dqo, decision.configKeys);
+				hasAccess = true;
+			} else if (decision.configTypeKeys != null) {
+				applyConfigTypeCriteria(dqo, decision.configTypeKeys);
+				hasAccess = true;
 			}
 			if (!hasAccess)
 				throw (new SvException(Sv.Exceptions.NOT_AUTHORISED, instanceUser, dbt, accessLevel.toString()));
@@ -2845,6 +3218,20 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		return hasAccess;
 	}
 
+	/**
+	 * Method to check if the instance user can read all objects of a type,
+	 * without the access being narrowed to the granted configuration keys
+	 * 
+	 * @param dbt The object type descriptor
+	 * @return True if the user has full read access to the type
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	boolean hasFullReadAccess(DbDataObject dbt) throws SvException {
+		if (isSystem() || isService() || isAdmin())
+			return true;
+		return getAclDecision(dbt, SvAccess.READ).fullAccess;
+	}
+
 	private boolean hasDQOTreeAccess(DbQueryObject dqo, SvAccess accessLevel) throws SvException {
 		// DbDataArray perms = getPermissions();
 		boolean hasAccess = authoriseDqo(dqo, SvAccess.READ);
@@ -2899,6 +3286,19 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		}
 	}
 
+	/**
+	 * Method to check if the power of attorney of the current user restricts the
+	 * query. Results of restricted queries are specific to the user and must not
+	 * be served from the shared object cache.
+	 * 
+	 * @param query The query to be executed
+	 * @return True if the query is extended with empowerment criteria
+	 * @throws SvException Any underlying exception is re-thrown
+	 */
+	boolean isQueryEmpowered(DbQuery query) throws SvException {
+		return addEmpoweredCriteria(query) != query;
+	}
+
 	/**
 	 * This is the root getter method. This method is responsible for rendering the
 	 * DbQuery object to a plain SQL and then running the statement against the DB
@@ -2918,6 +3318,30 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 	 *                     bad.
 	 */
 	DbDataArray getObjects(DbQuery query, Integer rowLimit, Integer offset) throws SvException {
+		return getObjects(query, rowLimit, offset, null);
+	}
+
+	/**
+	 * Root getter method with optional caching of the result. If a result cache
+	 * type is set, the result is cached by the generated SQL and the bind values
+	 * and it is reused until an object of that type is saved or deleted. The
+	 * read access is checked on every invocation, even if the result is served
+	 * from the cache.
+	 * 
+	 * @param query           {@link DbQueryObject} to be executed against the
+	 *                        underlying DB
+	 * @param rowLimit        maximum number of objects to be returned
+	 * @param offset          offset from which the objects should be returned
+	 * @param resultCacheType The id of the object type whose generation
+	 *                        validates the cached result, or null if the result
+	 *                        shall not be cached
+	 * @return A {@link DbDataArray} object containing all returned data in
+	 *         DbDataObject format
+	 * @throws SvException Pass through exception from
+	 *                     {@link #getObjects(DbQuery, Integer, Integer)}
+	 */
+	DbDataArray getObjects(DbQuery query, Integer rowLimit, Integer offset, Long resultCacheType)
+			throws SvException {
 		// Check for read access to all query objects in the DbQuery
 		authoriseSelectQuery(query);
 
@@ -2926,13 +3350,36 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		PreparedStatement ps = null;
 		DbQuery fullQuery = addEmpoweredCriteria(query);
 		DbDataArray result = new DbDataArray();
+		String sql = null;
+		ArrayList<Object> bindVals = null;
+		long startTime = 0L;
 		try {
+			sql = getSQLStatement(fullQuery, rowLimit, offset).toString();
+			bindVals = fullQuery.getSQLParamVals();
+			String resultKey = null;
+			long generation = 0L;
+			// uncommitted changes of this transaction must not be shared with
+			// other connections, nor hidden by results cached by them
+			if (resultCacheType != null && !hasUncommittedChanges(resultCacheType)) {
+				// the generation must be read before the query, so a concurrent
+				// write makes the result stale instead of being missed
+				generation = DbCache.getGeneration(resultCacheType);
+				resultKey = DbCache.queryResultKey(resultCacheType, sql, bindVals,
+						includeGeometries && lazyGeometries);
+				DbDataArray cached = DbCache.getQueryResult(resultCacheType, resultKey);
+				if (cached != null)
+					return cached;
+			}
 			conn = this.dbGetConn();
+			// objects from the replica may be stale, so they are not cached
+			boolean fromReplica = SvConnTracker.isReplicaConnection(weakThis);
+			boolean lazy = includeGeometries && lazyGeometries;
 			// execute the db query to fetch data for the requested item
-			ps = conn.prepareStatement(getSQLStatement(fullQuery, rowLimit, offset).toString());
+			ps = conn.prepareStatement(sql);
 			// bind the parameters
-			bindQueryVals(ps, fullQuery.getSQLParamVals());
+			bindQueryVals(ps, bindVals);
 			// System.out.println("Before exec "+new DateTime().toString());
+			startTime = SvQueryLog.start();
 			rs = ps.executeQuery();
 			// System.out.println("After exec "+new DateTime().toString());
 			String tblPrefix = Sv.TBL;
@@ -2941,18 +3388,26 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 					tblPrefix = ((DbQueryExpression) fullQuery).getRootQueryObject().getSqlTablePrefix();
 				}
 			}
-			ResultSetMetaData rsmt = rs.getMetaData();
+			// must use uppercase table prefix!!!
+			SvRowPlan plan = getRowPlan(tblPrefix, fullQuery, rs.getMetaData());
 			while (rs.next()) {
 				// System.out.println("After rs next:"+new
 				// DateTime().toString());
-				// must use uppercase table prefix!!!
-				DbDataObject obj = getObjectFromRecord(rs, tblPrefix, fullQuery, rsmt);
+				DbDataObject obj = getObjectFromRecord(rs, plan);
 				// System.out.println("After object parsing:"+new
 				// DateTime().toString());
-				if (obj != null)
+				if (obj != null) {
+					if (fromReplica || (lazy && obj.isGeometryType()))
+						DbCache.markUncacheable(obj);
 					result.addDataItem(obj);
+				}
 			}
 			// System.out.println("After full fetch"+new DateTime().toString());
+			SvQueryLog.record(this, SvQueryLog.getObjectType(fullQuery), SvQueryLog.SELECT, sql, bindVals,
+					result.size(), startTime, false);
+			startTime = 0L;
+			if (resultKey != null && !fromReplica)
+				DbCache.putQueryResult(resultKey, generation, result);
 			return result;
 		} catch (SQLException ex) {
 			try {
@@ -2970,6 +3425,10 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 			}
 			throw (new SvException("system.error.wkb_parse_err", instanceUser, null, query, ex.getCause()));
 		} finally {
+			// a statement which failed or timed out is still recorded
+			if (startTime != 0L)
+				SvQueryLog.record(this, SvQueryLog.getObjectType(fullQuery), SvQueryLog.SELECT, sql, bindVals,
+						result.size(), startTime, true);
 			if (rs != null)
 				try {
 					rs.close();
@@ -2985,6 +3444,221 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 		}
 	}
 
+	/**
+	 * Method to compute aggregates over the result of a query in the database.
+	 * The same read authorisation and power of attorney rules as in
+	 * {@link #getObjects(DbQuery, Integer, Integer)} apply, the query is used as
+	 * a sub-query of the aggregate SQL. For a {@link DbQueryObject} the
+	 * aggregated fields are the fields of the object type, while for a
+	 * {@link DbQueryExpression} they are the column names of the expression
+	 * result (for example TBL0_AREA).
+	 * 
+	 * @param query     The query over which the aggregates are computed
+	 * @param aggregate The specification of the aggregates
+	 * @return One untyped object per group, holding the group by fields and the
+	 *         aggregates by their aliases
+	 * @throws SvException If the aggregate specification is invalid, the user
+	 *                     has no read access or the underlying JDBC call failed
+	 */
+	DbDataArray getAggregate(DbQuery query, SvAggregate aggregate) throws SvException {
+		String columnPrefix = "";
+		Collection<String> allowedFields = null;
+		// the query of the caller gets the prefix only for the duration of the
+		// call, so reusing it afterwards produces the same SQL as before
+		DbQueryObject prefixedDqo = null;
+		if (query instanceof DbQueryObject) {
+			DbQueryObject dqo = (DbQueryObject) query;
+			// the prefix must be fixed before the query is wrapped by the
+			// power of attorney criteria, which renumber the table aliases
+			if (dqo.getSqlTablePrefix() == null) {
+				dqo.setSqlTablePrefix(SvAggregate.TBL_PREFIX);
+				prefixedDqo = dqo;
+			}
+			columnPrefix = dqo.getSqlTablePrefix() + "_";
+			allowedFields = new HashSet<String>(svCONST.repoFieldNames);
+			if (dqo.getDbt_fields() != null)
+				for (DbDataObject field : dqo.getDbt_fields().getItems())
+					if (!DbFieldType.GEOMETRY.toString().equals(field.getVal(Sv.FIELD_TYPE)))
+						allowedFields.add((String) field.getVal(Sv.FIELD_NAME));
+		}
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		DbQuery fullQuery = null;
+		DbDataArray result = new DbDataArray();
+		try {
+			aggregate.validate(allowedFields);
+			// Check for read access to all query objects in the DbQuery
+			authoriseSelectQuery(query);
+			fullQuery = addEmpoweredCriteria(query);
+			String sql = aggregate.getSQL(getSQLStatement(fullQuery, null, null).toString(), columnPrefix);
+			if (log4j.isDebugEnabled())
+				log4j.trace("Generating aggregate SQL: " + sql);
+			conn = this.dbGetConn();
+			ps = conn.prepareStatement(sql);
+			bindQueryVals(ps, fullQuery.getSQLParamVals());
+			rs = ps.executeQuery();
+			ResultSetMetaData rsmt = rs.getMetaData();
+			String[] aliases = new String[rsmt.getColumnCount()];
+			for (int i = 0; i < aliases.length; i++)
+				aliases[i] = rsmt.getColumnLabel(i + 1).toUpperCase();
+			while (rs.next()) {
+				DbDataObject obj = new DbDataObject();
+				for (int i = 0; i < aliases.length; i++)
+					obj.setVal(aliases[i], getAggregateValue(rs.getObject(i + 1)));
+				result.addDataItem(obj);
+			}
+			return result;
+		} catch (SQLException ex) {
+			try {
+				log4j.error("Error in getAggregate() with criteria:" + fullQuery.getSQLExpression() + ", query:"
+						+ fullQuery.toJson().toString(), ex);
+			} catch (Exception e) {
+				log4j.error("Error getting DbSearch.getSQLExpression!");
+			}
+			throw (new SvException("system.error.sql_statement_err", instanceUser, null, query, ex.getCause()));
+		} finally {
+			if (rs != null)
+				try {
+					rs.close();
+				} catch (Exception ex) {
+					log4j.error("Error releasing result set", ex);
+				}
+			if (ps != null)
+				try {
+					ps.close();
+				} catch (Exception ex) {
+					log4j.error("Error releasing prepared statement", ex);
+				}
+			if (prefixedDqo != null)
+				prefixedDqo.setSqlTablePrefix(null);
+		}
+	}
+
+	/**
+	 * Method to convert an aggregate value from its JDBC type to the type used
+	 * by svarog objects. Counts and whole numbers are returned as Long,
+	 * timestamps as DateTime.
+	 * 
+	 * @param value The JDBC value
+	 * @return The converted value
+	 */
+	static Object getAggregateValue(Object value) {
+		if (value instanceof Timestamp)
+			return new DateTime(((Timestamp) value).getTime());
+		if (value instanceof Integer || value instanceof Short || value instanceof java.math.BigInteger)
+			return ((Number) value).longValue();
+		if (value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0)
+			return ((BigDecimal) value).longValue();
+		return value;
+	}
+
+	/**
+	 * Method to open a streaming cursor over the result of a query. The same
+	 * read authorisation and power of attorney rules as in
+	 * {@link #getObjects(DbQuery, Integer, Integer)} apply, but the rows are
+	 * read from the database in batches of the configured JDBC fetch size
+	 * instead of loading the whole result in memory. Some JDBC drivers
+	 * (PostgreSQL) apply the fetch size only within a transaction, so the
+	 * cursor reads over a dedicated connection with auto commit switched off.
+	 * The connection of this instance, which other instances may share, is
+	 * never used, so its transaction isn't affected by the cursor.
+	 * 
+	 * @param query    {@link DbQuery} to be executed against the underlying DB
+	 * @param rowLimit maximum number of objects to be returned
+	 * @param offset   offset from which the objects should be returned
+	 * @return The open cursor, which must be closed by the caller
+	 * @throws SvException Any underlying JDBC exception wrapped in SvException
+	 */
+	SvCursor getObjectsCursor(DbQuery query, Integer rowLimit, Integer offset) throws SvException {
+		// Check for read access to all query objects in the DbQuery
+		authoriseSelectQuery(query);
+
+		DbQuery fullQuery = addEmpoweredCriteria(query);
+		Connection conn = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		SvCursor cursor = null;
+		try {
+			coreLastActivity = DateTime.now().getMillis();
+			conn = getCursorConnection();
+			conn.setAutoCommit(false);
+			ps = conn.prepareStatement(getSQLStatement(fullQuery, rowLimit, offset).toString(),
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(SvConf.getJdbcFetchSize());
+			bindQueryVals(ps, fullQuery.getSQLParamVals());
+			rs = ps.executeQuery();
+			String tblPrefix = Sv.TBL;
+			if ((fullQuery instanceof DbQueryExpression) && ((DbQueryExpression) fullQuery).getIsReverseExpression()
+					&& fullQuery.getReturnTypes().size() == 1)
+				tblPrefix = ((DbQueryExpression) fullQuery).getRootQueryObject().getSqlTablePrefix();
+			cursor = new SvCursor(this, conn, ps, rs, fullQuery, tblPrefix);
+			return cursor;
+		} catch (SQLException ex) {
+			throw (new SvException("system.error.sql_statement_err", instanceUser, null, query, ex));
+		} finally {
+			// once handed out, the cursor owns the connection and the statement
+			if (cursor == null)
+				closeCursorResources(conn, ps, rs, instanceUser);
+		}
+	}
+
+	/**
+	 * Method to open the dedicated connection of a streaming cursor. The cursor
+	 * reads from the read replica if this instance does, or if the instance
+	 * has no connection yet and it would be routed to the replica.
+	 * 
+	 * @return A new JDBC connection, which isn't tracked
+	 * @throws SvException If the connection can't be opened
+	 */
+	private Connection getCursorConnection() throws SvException {
+		SvConnTrace connTrace = SvConnTracker.getTrace(weakThis);
+		boolean replica = connTrace != null ? connTrace.replica
+				: replicaEligible && SvReplica.route(getSessionId());
+		Connection conn = null;
+		if (replica)
+			try {
+				conn = SvConf.getReplicaConnection();
+			} catch (SvException e) {
+				log4j.warn("Can't fetch a replica connection for a cursor, falling back to primary", e);
+			}
+		return conn != null ? conn : SvConf.getDBConnection();
+	}
+
+	/**
+	 * Method to release the resources of a streaming cursor. The read only
+	 * transaction of the dedicated connection is rolled back and the connection
+	 * is closed. Errors are logged, since there is nothing the caller can do
+	 * about them.
+	 * 
+	 * @param conn         The dedicated connection of the cursor
+	 * @param ps           The statement of the cursor
+	 * @param rs           The result set of the cursor
+	 * @param instanceUser The user of the instance which opened the cursor
+	 */
+	static void closeCursorResources(Connection conn, PreparedStatement ps, ResultSet rs,
+			DbDataObject instanceUser) {
+		try {
+			closeResource(rs, instanceUser);
+			closeResource(ps, instanceUser);
+		} catch (SvException e) {
+			log4j.error("Error releasing the cursor statement", e);
+		}
+		if (conn != null)
+			try {
+				if (!conn.isClosed() && !conn.getAutoCommit())
+					conn.rollback();
+			} catch (SQLException e) {
+				log4j.error("Can't roll back the cursor connection", e);
+			} finally {
+				try {
+					conn.close();
+				} catch (SQLException e) {
+					log4j.error("Can't close the cursor connection", e);
+				}
+			}
+	}
+
 	/**
 	 * Method to get the object type for a certain object ID.
 	 * 
@@ -3066,7 +3740,8 @@ public abstract class SvCore implements ISvCore, java.lang.AutoCloseable {
 			break;
 		case GEOMETRY:
 			if (value != null) {
-				byte[] byteVal = getWKBWriter().write((Geometry) value);
+				byte[] byteVal = getWKBWriter().write(value instanceof SvLazyGeometry
+						? ((SvLazyGeometry) value).getGeometry() : (Geometry) value);
 				try {
 					SvConf.getDbHandler().setGeometry(ps, bindAtPosition, byteVal);
 				} catch (Exception e) {
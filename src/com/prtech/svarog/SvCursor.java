@@ -0,0 +1,178 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.logging.log4j.Logger;
+import org.joda.time.DateTime;
+
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbQuery;
+import com.vividsolutions.jts.io.ParseException;
+
+/**
+ * Forward only cursor over the result of a query. The objects are read from
+ * the JDBC result set one by one, so the memory used doesn't depend on the size
+ * of the result. The cursor reads over its own connection, which isn't shared
+ * with the SvCore instance which opened it, so it doesn't see the uncommitted
+ * changes of the transaction of that instance and it never commits or rolls
+ * back that transaction. The connection isn't tracked, so the cursor must be
+ * closed after use, preferably with try-with-resources.
+ * 
+ * The cursor can be consumed by {@link #fetchNext()}, as an {@link Iterator}
+ * or as a {@link Stream}. Since the iterator and the stream can't throw checked
+ * exceptions, a database error during iteration is thrown as
+ * IllegalStateException with the SvException as cause.
+ */
+public class SvCursor implements Iterator<DbDataObject>, AutoCloseable {
+
+	/**
+	 * Log4j instance used for logging
+	 */
+	private static final Logger log4j = SvConf.getLogger(SvCursor.class);
+
+	/**
+	 * Number of fetched objects after which the activity of the core is
+	 * refreshed, so the connection isn't reclaimed as idle while iterating
+	 */
+	private static final int ACTIVITY_INTERVAL = 1000;
+
+	private final SvCore core;
+	private final Connection conn;
+	private final PreparedStatement ps;
+	private final ResultSet rs;
+	private final DbQuery query;
+
+	/**
+	 * The row mapping plan, computed once for the result set
+	 */
+	private final SvRowPlan plan;
+
+	/**
+	 * The next object, read ahead by hasNext
+	 */
+	private DbDataObject nextObject = null;
+	private boolean closed = false;
+	private long fetchCount = 0;
+
+	SvCursor(SvCore core, Connection conn, PreparedStatement ps, ResultSet rs, DbQuery query, String tblPrefix)
+			throws SQLException {
+		this.core = core;
+		this.conn = conn;
+		this.ps = ps;
+		this.rs = rs;
+		this.query = query;
+		this.plan = core.getRowPlan(tblPrefix, query, rs.getMetaData());
+	}
+
+	/**
+	 * Method to read the next object from the result set
+	 * 
+	 * @return The next object or null if there are no more objects. The cursor
+	 *         is closed automatically after the last object
+	 * @throws SvException If the result set can't be read
+	 */
+	public DbDataObject fetchNext() throws SvException {
+		if (nextObject != null) {
+			DbDataObject result = nextObject;
+			nextObject = null;
+			return result;
+		}
+		try {
+			while (!closed && rs.next()) {
+				if (++fetchCount % ACTIVITY_INTERVAL == 0)
+					core.setCoreLastActivity(DateTime.now().getMillis());
+				DbDataObject obj = core.getObjectFromRecord(rs, plan);
+				if (obj != null)
+					return obj;
+			}
+		} catch (SQLException ex) {
+			close();
+			throw (new SvException("system.error.sql_statement_err", core.instanceUser, null, query, ex));
+		} catch (ParseException ex) {
+			close();
+			throw (new SvException("system.error.wkb_parse_err", core.instanceUser, null, query, ex));
+		}
+		close();
+		return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextObject == null && !closed)
+			try {
+				nextObject = fetchNext();
+			} catch (SvException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		return nextObject != null;
+	}
+
+	@Override
+	public DbDataObject next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		DbDataObject result = nextObject;
+		nextObject = null;
+		return result;
+	}
+
+	/**
+	 * Method to get a sequential stream over the remaining objects. Closing the
+	 * stream closes the cursor
+	 * 
+	 * @return The stream of objects
+	 */
+	public Stream<DbDataObject> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(new Runnable() {
+					@Override
+					public void run() {
+						close();
+					}
+				});
+	}
+
+	/**
+	 * @return The number of rows fetched so far
+	 */
+	public long getFetchCount() {
+		return fetchCount;
+	}
+
+	/**
+	 * Method to release the result set, the statement and the dedicated
+	 * connection of the cursor. The read only transaction of the cursor is
+	 * rolled back before the connection is closed
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		SvCore.closeCursorResources(conn, ps, rs, core.instanceUser);
+	}
+}
@@ -166,10 +166,20 @@ public class SvFileStore extends SvCore {
 		} catch (Exception e) {
 			cache_ttl = 10;
 		}
-		return CacheBuilder.newBuilder().expireAfterAccess(cache_ttl, TimeUnit.MINUTES).<Long, byte[]>build();
+		return CacheBuilder.newBuilder().recordStats().expireAfterAccess(cache_ttl, TimeUnit.MINUTES)
+				.<Long, byte[]>build();
 
 	}
 
+	/**
+	 * Method to get the cache holding the system file data
+	 * 
+	 * @return The system file cache
+	 */
+	static Cache<Long, byte[]> getSystemCache() {
+		return systemCache;
+	}
+
 	/**
 	 * Method to save a file based on byte[] file data.
 	 * 
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+/**
+ * Count-min sketch estimating how often a key was accessed recently, used as
+ * TinyLFU admission filter by SvLongCache. Each key is counted in four rows of
+ * small counters saturating at 15 and its frequency is the minimum of the four counters. After
+ * a number of additions proportional to the width, all counters are halved, so
+ * the sketch forgets old popularity and follows the current working set. The
+ * sketch is not thread safe, the callers must synchronise the access.
+ */
+class SvFrequencySketch {
+
+	/**
+	 * Number of counter rows
+	 */
+	static final int DEPTH = 4;
+
+	/**
+	 * Maximum value of a counter
+	 */
+	static final int MAX_COUNT = 15;
+
+	/**
+	 * Seeds used to derive the row hashes
+	 */
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+
+	private final byte[] counters;
+	private final int widthMask;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * Constructor of the sketch
+	 * 
+	 * @param expectedSize The number of entries expected in the cache
+	 */
+	SvFrequencySketch(long expectedSize) {
+		int width = 16;
+		long target = Math.min(Math.max(expectedSize, 16), 1 << 24);
+		while (width < target)
+			width <<= 1;
+		this.counters = new byte[DEPTH * width];
+		this.widthMask = width - 1;
+		this.sampleSize = 10 * width;
+	}
+
+	private int indexOf(long key, int row) {
+		long h = (key + SEEDS[row]) * SEEDS[row];
+		h ^= h >>> 29;
+		return row * (widthMask + 1) + ((int) h & widthMask);
+	}
+
+	/**
+	 * Method to estimate the recent access frequency of a key
+	 * 
+	 * @param key The key
+	 * @return The estimated frequency between 0 and MAX_COUNT
+	 */
+	int frequency(long key) {
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++)
+			frequency = Math.min(frequency, counters[indexOf(key, row)]);
+		return frequency;
+	}
+
+	/**
+	 * Method to record an access to a key
+	 * 
+	 * @param key The key
+	 */
+	void increment(long key) {
+		boolean added = false;
+		for (int row = 0; row < DEPTH; row++) {
+			int idx = indexOf(key, row);
+			if (counters[idx] < MAX_COUNT) {
+				counters[idx]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize)
+			age();
+	}
+
+	/**
+	 * Halve all counters, so the old accesses lose weight
+	 */
+	private void age() {
+		for (int i = 0; i < counters.length; i++)
+			counters[i] = (byte) (counters[i] >> 1);
+		additions = additions >> 1;
+	}
+}
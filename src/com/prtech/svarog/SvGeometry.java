@@ -241,12 +241,41 @@ public class SvGeometry extends SvWriter {
 		return retEnv;
 	}
 
+	/**
+	 * Method to get the geometry of an object. If the object was read with lazy
+	 * geometries, the geometry is decoded on first access.
+	 * 
+	 * @param dbo The object holding the geometry
+	 * @return The geometry of the object
+	 */
 	public static Geometry getGeometry(DbDataObject dbo) {
-		return (Geometry) dbo.getVal(getGeometryFieldName(dbo.getObjectType()));
+		Object geom = dbo.getVal(getGeometryFieldName(dbo.getObjectType()));
+		if (geom instanceof SvLazyGeometry)
+			return ((SvLazyGeometry) geom).getGeometry();
+		return (Geometry) geom;
+	}
+
+	/**
+	 * Method to get the envelope of the geometry of an object. If the object
+	 * was read with lazy geometries, the envelope is computed without decoding
+	 * the geometry.
+	 * 
+	 * @param dbo The object holding the geometry
+	 * @return The envelope of the geometry or null if the object has no
+	 *         geometry
+	 */
+	public static Envelope getEnvelope(DbDataObject dbo) {
+		Object geom = dbo.getVal(getGeometryFieldName(dbo.getObjectType()));
+		if (geom instanceof SvLazyGeometry)
+			return ((SvLazyGeometry) geom).getEnvelope();
+		return geom != null ? ((Geometry) geom).getEnvelopeInternal() : null;
 	}
 
 	public static Point getCentroid(DbDataObject dbo) {
-		return (Point) dbo.getVal(getCentroidFieldName(dbo.getObjectType()));
+		Object centroid = dbo.getVal(getCentroidFieldName(dbo.getObjectType()));
+		if (centroid instanceof SvLazyGeometry)
+			return (Point) ((SvLazyGeometry) centroid).getGeometry();
+		return (Point) centroid;
 	}
 
 	public static String getGeometryFieldName(Long objectType) {
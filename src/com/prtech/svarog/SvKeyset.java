@@ -0,0 +1,240 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.joda.time.DateTime;
+
+import com.google.common.io.BaseEncoding;
+import com.prtech.svarog.SvConf.SvDbType;
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbSearch;
+import com.prtech.svarog_common.DbSearch.DbLogicOperand;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
+
+/**
+ * Support for keyset pagination. Instead of skipping rows with an offset, the
+ * next page is read by seeking after the sort key and the object id of the
+ * last object of the previous page, so every page costs the same regardless
+ * of its depth. The position is handed to the client as an opaque
+ * continuation token.
+ * 
+ * The pages are sorted ascending by the sort field and the object id. Objects
+ * with a null sort key are returned after all others (before them on MSSQL,
+ * following the null ordering of the database).
+ */
+public final class SvKeyset {
+
+	private static final char SEPARATOR = '\u0001';
+	private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+	private SvKeyset() {
+	}
+
+	/**
+	 * Method to get the continuation token for the page following the
+	 * specified page
+	 * 
+	 * @param page      The page of objects returned by one of the paging
+	 *                  methods of SvReader
+	 * @param sortField The field by which the page was sorted, or null if it was
+	 *                  sorted by object id only
+	 * @return The continuation token or null if the page is empty, which means
+	 *         there are no more pages
+	 * @throws SvException If the sort key type isn't supported
+	 */
+	public static String getNextToken(DbDataArray page, String sortField) throws SvException {
+		if (page == null || page.size() == 0)
+			return null;
+		return getToken(page.get(page.size() - 1), sortField);
+	}
+
+	/**
+	 * Method to get the continuation token which positions the next page after
+	 * a specific object
+	 * 
+	 * @param last      The last object of the previous page
+	 * @param sortField The field by which the pages are sorted, or null if they
+	 *                  are sorted by object id only
+	 * @return The continuation token
+	 * @throws SvException If the sort key type isn't supported
+	 */
+	public static String getToken(DbDataObject last, String sortField) throws SvException {
+		StringBuilder token = new StringBuilder(64);
+		token.append(sortField != null ? sortField.toUpperCase() : "").append(SEPARATOR).append(last.getObjectId())
+				.append(SEPARATOR);
+		Object value = sortField != null ? last.getVal(sortField) : null;
+		if (value == null)
+			token.append('N');
+		else if (value instanceof Long || value instanceof Integer)
+			token.append('L').append(((Number) value).longValue());
+		else if (value instanceof BigDecimal || value instanceof Double || value instanceof Float)
+			token.append('D').append(new BigDecimal(value.toString()).toPlainString());
+		else if (value instanceof String)
+			token.append('S').append(value);
+		else if (value instanceof DateTime)
+			token.append('T').append(((DateTime) value).getMillis());
+		else if (value instanceof Boolean)
+			token.append('B').append(value);
+		else
+			throw (new SvException("system.error.keyset_sort_field_err", svCONST.systemUser, null, sortField));
+		return ENCODING.encode(token.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Method to validate the sort field and get the order by clause of the
+	 * pages
+	 * 
+	 * @param dbt       The descriptor of the paged object type
+	 * @param sortField The field by which the pages are sorted, or null if they
+	 *                  are sorted by object id only
+	 * @return The list of order by fields
+	 * @throws SvException If the sort field isn't a non-geometry field of the
+	 *                     type
+	 */
+	static ArrayList<String> getOrderBy(DbDataObject dbt, String sortField) throws SvException {
+		ArrayList<String> orderBy = new ArrayList<String>(2);
+		if (sortField != null && !isObjectId(sortField)) {
+			// the sort field is rendered in the SQL, so it must be a field of
+			// the type
+			boolean isField = false;
+			for (DbDataObject dbf : SvCore.getFields(dbt.getObjectId()).getItems()) {
+				if (sortField.equalsIgnoreCase((String) dbf.getVal(Sv.FIELD_NAME))
+						&& !Sv.GEOMETRY.equals(dbf.getVal(Sv.FIELD_TYPE))) {
+					isField = true;
+					break;
+				}
+			}
+			if (!isField)
+				throw (new SvException("system.error.keyset_sort_field_err", svCONST.systemUser, dbt, sortField));
+			orderBy.add(sortField.toUpperCase());
+		}
+		orderBy.add(Sv.OBJECT_ID);
+		return orderBy;
+	}
+
+	/**
+	 * Method to create the seek criteria which select the objects after the
+	 * position of the continuation token
+	 * 
+	 * @param token     The continuation token
+	 * @param sortField The field by which the pages are sorted, or null if they
+	 *                  are sorted by object id only
+	 * @return The seek criteria
+	 * @throws SvException If the token is malformed or it was issued for a
+	 *                     different sort field
+	 */
+	static DbSearch getSeekSearch(String token, String sortField) throws SvException {
+		return getSeekSearch(token, sortField, !SvDbType.MSSQL.equals(SvConf.getDbType()));
+	}
+
+	/**
+	 * Method to create the seek criteria for a specific null ordering of the
+	 * database
+	 * 
+	 * @param token     The continuation token
+	 * @param sortField The field by which the pages are sorted, or null if they
+	 *                  are sorted by object id only
+	 * @param nullsLast If the database sorts null keys after all other keys
+	 * @return The seek criteria
+	 * @throws SvException If the token is malformed or it was issued for a
+	 *                     different sort field
+	 */
+	static DbSearch getSeekSearch(String token, String sortField, boolean nullsLast) throws SvException {
+		String field = sortField != null && !isObjectId(sortField) ? sortField.toUpperCase() : null;
+		String[] parts;
+		Long objectId;
+		Object value;
+		try {
+			parts = new String(ENCODING.decode(token), StandardCharsets.UTF_8).split(String.valueOf(SEPARATOR), 3);
+			if (parts.length != 3 || parts[2].length() < 1)
+				throw (new SvException("system.error.keyset_token_err", svCONST.systemUser, null, token));
+			objectId = Long.valueOf(parts[1]);
+			value = decodeValue(parts[2]);
+		} catch (IllegalArgumentException e) {
+			throw (new SvException("system.error.keyset_token_err", svCONST.systemUser, null, token, e));
+		}
+		String tokenField = parts[0].length() > 0 && !isObjectId(parts[0]) ? parts[0] : null;
+		if (field == null ? tokenField != null : !field.equals(tokenField))
+			throw (new SvException("system.error.keyset_token_err", svCONST.systemUser, null, token));
+
+		DbSearchCriterion afterId = new DbSearchCriterion(Sv.OBJECT_ID, DbCompareOperand.GREATER, objectId);
+		if (field == null)
+			return afterId;
+
+		DbSearchExpression seek = new DbSearchExpression();
+		if (value != null) {
+			// (field > v) OR (field = v AND object_id > id)
+			seek.addDbSearchItem(new DbSearchCriterion(field, DbCompareOperand.GREATER, value, DbLogicOperand.OR));
+			DbSearchExpression sameKey = new DbSearchExpression();
+			sameKey.addDbSearchItem(new DbSearchCriterion(field, DbCompareOperand.EQUAL, value));
+			sameKey.addDbSearchItem(afterId);
+			seek.addDbSearchItem(sameKey);
+			if (nullsLast) {
+				sameKey.setNextCritOperand(DbLogicOperand.OR.toString());
+				seek.addDbSearchItem(new DbSearchCriterion(field, DbCompareOperand.ISNULL));
+			}
+		} else {
+			// (field IS NULL AND object_id > id)
+			DbSearchExpression sameKey = new DbSearchExpression();
+			sameKey.addDbSearchItem(new DbSearchCriterion(field, DbCompareOperand.ISNULL));
+			sameKey.addDbSearchItem(afterId);
+			seek.addDbSearchItem(sameKey);
+			if (!nullsLast) {
+				sameKey.setNextCritOperand(DbLogicOperand.OR.toString());
+				DbSearchCriterion notNull = new DbSearchCriterion(field, DbCompareOperand.ISNULL);
+				notNull.setNotPrefix(true);
+				seek.addDbSearchItem(notNull);
+			}
+		}
+		return seek;
+	}
+
+	/**
+	 * Method to decode a typed sort key from a continuation token
+	 * 
+	 * @param encoded The type prefixed value
+	 * @return The decoded value
+	 */
+	static Object decodeValue(String encoded) {
+		String str = encoded.substring(1);
+		switch (encoded.charAt(0)) {
+		case 'N':
+			return null;
+		case 'L':
+			return Long.valueOf(str);
+		case 'D':
+			return new BigDecimal(str);
+		case 'S':
+			return str;
+		case 'T':
+			return new DateTime(Long.parseLong(str));
+		case 'B':
+			return Boolean.valueOf(str);
+		default:
+			throw new IllegalArgumentException("Unknown sort key type");
+		}
+	}
+
+	private static boolean isObjectId(String field) {
+		return Sv.OBJECT_ID.equalsIgnoreCase(field);
+	}
+}
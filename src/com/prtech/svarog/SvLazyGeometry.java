@@ -0,0 +1,253 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.logging.log4j.Logger;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * Geometry value read from the database which is decoded on first access.
+ * SvCore stores instances of this class instead of JTS geometries when lazy
+ * geometries are enabled, so the rows of which only the attributes are used
+ * don't pay for building the JTS objects. The geometry is accessed through
+ * {@link SvGeometry#getGeometry(com.prtech.svarog_common.DbDataObject)}, while
+ * {@link SvGeometry#getEnvelope(com.prtech.svarog_common.DbDataObject)}
+ * computes the envelope directly from the WKB without decoding. The text form
+ * of a lazy geometry is the WKT of the decoded geometry, the same as the text
+ * form of a JTS geometry, so serializing it doesn't expose the wrapper.
+ */
+public final class SvLazyGeometry {
+
+	private static final Logger log4j = SvConf.getLogger(SvLazyGeometry.class);
+
+	private static final int WKB_POINT = 1;
+	private static final int WKB_LINESTRING = 2;
+	private static final int WKB_POLYGON = 3;
+	private static final int WKB_MULTIPOINT = 4;
+	private static final int WKB_MULTILINESTRING = 5;
+	private static final int WKB_MULTIPOLYGON = 6;
+	private static final int WKB_GEOMETRYCOLLECTION = 7;
+
+	private static final int EWKB_Z = 0x80000000;
+	private static final int EWKB_M = 0x40000000;
+	private static final int EWKB_SRID = 0x20000000;
+
+	/**
+	 * The (E)WKB bytes as read from the database
+	 */
+	private final byte[] wkb;
+
+	/**
+	 * The decoded geometry, null until first access
+	 */
+	private volatile Geometry geometry = null;
+
+	/**
+	 * The envelope of the geometry, null until first access
+	 */
+	private volatile Envelope envelope = null;
+
+	/**
+	 * The user data set to the geometry when it is decoded, usually the
+	 * DbDataObject holding the geometry
+	 */
+	private volatile Object userData = null;
+
+	/**
+	 * Constructor of a lazy geometry
+	 * 
+	 * @param wkb The (E)WKB bytes of the geometry
+	 */
+	public SvLazyGeometry(byte[] wkb) {
+		this.wkb = wkb;
+	}
+
+	/**
+	 * @return The (E)WKB bytes of the geometry
+	 */
+	public byte[] getWkb() {
+		return wkb;
+	}
+
+	/**
+	 * @return True if the geometry was already decoded
+	 */
+	public boolean isDecoded() {
+		return geometry != null;
+	}
+
+	/**
+	 * Method to get the geometry, decoding it on first access. If two threads
+	 * access the geometry at the same time, both decode it and one of the
+	 * results is kept.
+	 * 
+	 * @return The decoded geometry or null if the WKB can't be parsed
+	 */
+	public Geometry getGeometry() {
+		Geometry geom = geometry;
+		if (geom == null) {
+			try {
+				// the WKB reader isn't thread safe, so it isn't shared
+				geom = new WKBReader(SvUtil.sdiFactory).read(wkb);
+				geom.setUserData(userData);
+				geometry = geom;
+			} catch (ParseException e) {
+				log4j.error("Error decoding lazy geometry", e);
+			}
+		}
+		return geom;
+	}
+
+	/**
+	 * Method to get the envelope of the geometry. The envelope is computed by
+	 * scanning the coordinates in the WKB, unless the geometry was already
+	 * decoded.
+	 * 
+	 * @return The envelope of the geometry, a null envelope if it is empty
+	 */
+	public Envelope getEnvelope() {
+		Envelope env = envelope;
+		if (env == null) {
+			Geometry geom = geometry;
+			env = geom != null ? geom.getEnvelopeInternal() : getEnvelope(wkb);
+			if (env == null) {
+				geom = getGeometry();
+				env = geom != null ? geom.getEnvelopeInternal() : new Envelope();
+			}
+			envelope = env;
+		}
+		return env;
+	}
+
+	/**
+	 * Method to set the user data of the geometry, which is set to the decoded
+	 * geometry
+	 * 
+	 * @param userData The user data
+	 */
+	public void setUserData(Object userData) {
+		this.userData = userData;
+		Geometry geom = geometry;
+		if (geom != null)
+			geom.setUserData(userData);
+	}
+
+	/**
+	 * Method to get the text form of the geometry, decoding it if needed
+	 * 
+	 * @return The WKT of the geometry, same as {@link Geometry#toString()}
+	 */
+	@Override
+	public String toString() {
+		return String.valueOf(getGeometry());
+	}
+
+	/**
+	 * Method to compute the envelope of a WKB or PostGIS EWKB geometry without
+	 * decoding it.
+	 * 
+	 * @param wkb The WKB bytes
+	 * @return The envelope or null if the WKB contains a geometry type which
+	 *         isn't supported or it is malformed
+	 */
+	static Envelope getEnvelope(byte[] wkb) {
+		Envelope env = new Envelope();
+		try {
+			if (!expandEnvelope(ByteBuffer.wrap(wkb), env))
+				return null;
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+		return env;
+	}
+
+	/**
+	 * Method to expand an envelope by the coordinates of a WKB geometry
+	 * 
+	 * @param buf The buffer positioned at the start of the geometry
+	 * @param env The envelope to be expanded
+	 * @return False if the geometry type isn't supported
+	 */
+	private static boolean expandEnvelope(ByteBuffer buf, Envelope env) {
+		buf.order(buf.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		int typeInt = buf.getInt();
+		int dimensions = 2;
+		if ((typeInt & EWKB_Z) != 0)
+			dimensions++;
+		if ((typeInt & EWKB_M) != 0)
+			dimensions++;
+		if ((typeInt & EWKB_SRID) != 0)
+			buf.getInt();
+		// ISO WKB encodes Z and M as thousands of the type code
+		int isoType = typeInt & 0x0FFFFFFF;
+		int isoDims = isoType / 1000;
+		if (isoDims == 1 || isoDims == 2)
+			dimensions++;
+		else if (isoDims == 3)
+			dimensions += 2;
+		switch (isoType % 1000) {
+		case WKB_POINT:
+			expandPoints(buf, env, 1, dimensions);
+			return true;
+		case WKB_LINESTRING:
+			expandPoints(buf, env, buf.getInt(), dimensions);
+			return true;
+		case WKB_POLYGON:
+			int rings = buf.getInt();
+			for (int i = 0; i < rings; i++)
+				expandPoints(buf, env, buf.getInt(), dimensions);
+			return true;
+		case WKB_MULTIPOINT:
+		case WKB_MULTILINESTRING:
+		case WKB_MULTIPOLYGON:
+		case WKB_GEOMETRYCOLLECTION:
+			int parts = buf.getInt();
+			for (int i = 0; i < parts; i++)
+				if (!expandEnvelope(buf, env))
+					return false;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Method to expand an envelope by a sequence of points
+	 * 
+	 * @param buf        The buffer positioned at the first point
+	 * @param env        The envelope to be expanded
+	 * @param count      The number of points
+	 * @param dimensions The number of ordinates of each point
+	 */
+	private static void expandPoints(ByteBuffer buf, Envelope env, int count, int dimensions) {
+		for (int i = 0; i < count; i++) {
+			double x = buf.getDouble();
+			double y = buf.getDouble();
+			for (int d = 2; d < dimensions; d++)
+				buf.getDouble();
+			// empty points are encoded with NaN coordinates
+			if (!Double.isNaN(x) && !Double.isNaN(y))
+				env.expandToInclude(x, y);
+		}
+	}
+}
@@ -0,0 +1,902 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License.
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing
+ *   permissions and limitations under the License.
+ *
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Cache keyed by primitive long values. The cache is split in segments, each
+ * segment is an open addressing (linear probing) hash table storing the keys in
+ * a long[] so no Long wrappers nor entry objects are allocated per cached item.
+ * The cache supports the same limits as the Guava caches used across Svarog,
+ * maximum size and expiry after access. When the maximum size is reached, the
+ * least recently accessed entry out of a small sample is evicted. Optionally
+ * the entries can be weighed, so the cache is bounded by total weight of the
+ * entries and by a global weight budget shared by all weighed caches.
+ *
+ * @param <V> The type of the cached values
+ */
+class SvLongCache<V> {
+
+	/**
+	 * Number of segments, must be power of 2
+	 */
+	static final int SEGMENT_COUNT = 16;
+
+	/**
+	 * Number of occupied slots inspected when looking for eviction candidate
+	 */
+	static final int EVICTION_SAMPLE = 8;
+
+	/**
+	 * Initial capacity of a segment, must be power of 2
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The array of segments
+	 */
+	private final Segment[] segments;
+
+	/**
+	 * Maximum number of entries per segment. Zero or less means unbounded
+	 */
+	private final long maxSegmentSize;
+
+	/**
+	 * Maximum weight of the entries per segment. Zero or less means unbounded
+	 */
+	private final long maxSegmentWeight;
+
+	/**
+	 * Weigher used to calculate the weight of the entries, null if the entries
+	 * are not weighed
+	 */
+	private final Weigher<Long, V> weigher;
+
+	/**
+	 * The total weight of the entries in all weighed caches
+	 */
+	private static final AtomicLong globalWeight = new AtomicLong();
+
+	/**
+	 * The maximum total weight of the entries in all weighed caches. Zero or less
+	 * means unbounded
+	 */
+	private static volatile long globalMaxWeight = 0;
+
+	/**
+	 * Time after the last access, after which an entry expires. Zero or less
+	 * means entries never expire
+	 */
+	private final long expiryNanos;
+
+	/**
+	 * The time source used for expiry
+	 */
+	private final Ticker ticker;
+
+	/**
+	 * Listener notified when an entry is removed from the cache
+	 */
+	private final RemovalListener<Long, V> removalListener;
+
+	/**
+	 * Number of lookups which found a value
+	 */
+	private final LongAdder hitCount = new LongAdder();
+
+	/**
+	 * Number of lookups which didn't find a value
+	 */
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * Number of entries removed due to size limit or expiry
+	 */
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * Number of new entries which were never cached, because they were too
+	 * heavy or not admitted by the frequency sketch
+	 */
+	private final LongAdder rejectionCount = new LongAdder();
+
+	/**
+	 * Callback which reloads an entry in the background
+	 *
+	 * @param <V> The type of the cached values
+	 */
+	interface Refresher<V> {
+		void refresh(long key, V value);
+	}
+
+	/**
+	 * Time after the last write, after which an accessed entry is refreshed.
+	 * Zero or less disables refresh-ahead
+	 */
+	private volatile long refreshNanos = 0;
+
+	/**
+	 * Time after the last write, after which an entry expires even if it is
+	 * accessed. Zero or less means entries expire only after access
+	 */
+	private volatile long writeExpiryNanos = 0;
+
+	/**
+	 * The refresher invoked for entries which are due for refresh
+	 */
+	private volatile Refresher<V> refresher = null;
+
+	/**
+	 * Constructor of the cache using the system ticker
+	 *
+	 * @param maximumSize     The maximum number of entries in the cache. Zero or
+	 *                        less disables the limit
+	 * @param expiryMinutes   The number of minutes after the last access after
+	 *                        which the entry expires. Zero or less disables
+	 *                        expiry
+	 * @param removalListener Listener to be notified on removal, null if not
+	 *                        needed
+	 */
+	SvLongCache(long maximumSize, long expiryMinutes, RemovalListener<Long, V> removalListener) {
+		this(maximumSize, TimeUnit.MINUTES.toNanos(expiryMinutes), removalListener, Ticker.systemTicker());
+	}
+
+	/**
+	 * Constructor of the cache with custom ticker
+	 *
+	 * @param maximumSize     The maximum number of entries in the cache. Zero or
+	 *                        less disables the limit
+	 * @param expiryNanos     The nanoseconds after the last access after which
+	 *                        the entry expires. Zero or less disables expiry
+	 * @param removalListener Listener to be notified on removal, null if not
+	 *                        needed
+	 * @param ticker          The time source for expiry calculation
+	 */
+	SvLongCache(long maximumSize, long expiryNanos, RemovalListener<Long, V> removalListener, Ticker ticker) {
+		this(maximumSize, 0, null, expiryNanos, removalListener, ticker);
+	}
+
+	/**
+	 * Constructor of the cache with weighed entries
+	 *
+	 * @param maximumSize     The maximum number of entries in the cache. Zero or
+	 *                        less disables the limit
+	 * @param maximumWeight   The maximum total weight of the entries in the
+	 *                        cache. Zero or less disables the limit
+	 * @param weigher         The weigher of the entries, null if the entries
+	 *                        should not be weighed
+	 * @param expiryNanos     The nanoseconds after the last access after which
+	 *                        the entry expires. Zero or less disables expiry
+	 * @param removalListener Listener to be notified on removal, null if not
+	 *                        needed
+	 * @param ticker          The time source for expiry calculation
+	 */
+	SvLongCache(long maximumSize, long maximumWeight, Weigher<Long, V> weigher, long expiryNanos,
+			RemovalListener<Long, V> removalListener, Ticker ticker) {
+		this(maximumSize, maximumWeight, weigher, expiryNanos, removalListener, ticker, false);
+	}
+
+	/**
+	 * Constructor of the cache with weighed entries and optional frequency based
+	 * admission
+	 *
+	 * @param maximumSize        The maximum number of entries in the cache. Zero
+	 *                           or less disables the limit
+	 * @param maximumWeight      The maximum total weight of the entries in the
+	 *                           cache. Zero or less disables the limit
+	 * @param weigher            The weigher of the entries, null if the entries
+	 *                           should not be weighed
+	 * @param expiryNanos        The nanoseconds after the last access after which
+	 *                           the entry expires. Zero or less disables expiry
+	 * @param removalListener    Listener to be notified on removal, null if not
+	 *                           needed
+	 * @param ticker             The time source for expiry calculation
+	 * @param frequencyAdmission If true, a new entry is admitted to a full cache
+	 *                           only if it was accessed more often than the entry
+	 *                           chosen for eviction (TinyLFU)
+	 */
+	SvLongCache(long maximumSize, long maximumWeight, Weigher<Long, V> weigher, long expiryNanos,
+			RemovalListener<Long, V> removalListener, Ticker ticker, boolean frequencyAdmission) {
+		this.weigher = weigher;
+		this.maxSegmentSize = maximumSize > 0 ? Math.max(1, (maximumSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT) : 0;
+		this.maxSegmentWeight = weigher != null && maximumWeight > 0
+				? Math.max(1, (maximumWeight + SEGMENT_COUNT - 1) / SEGMENT_COUNT)
+				: 0;
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(weigher != null ? globalWeight : null);
+			// a sketch narrower than a few hundred counters saturates on
+			// collisions and can't tell the popular keys apart
+			if (frequencyAdmission)
+				segments[i].sketch = new SvFrequencySketch(Math.max(maxSegmentSize, INITIAL_CAPACITY * 16));
+		}
+		this.expiryNanos = expiryNanos;
+		this.removalListener = removalListener;
+		this.ticker = ticker;
+	}
+
+	/**
+	 * Method to enable refresh-ahead. An entry which is read after the refresh
+	 * interval passed since it was written is handed to the refresher, so it can
+	 * be reloaded in the background before it expires. Entries expire after the
+	 * write expiry even if they are accessed, so entries which fail to refresh
+	 * are eventually reloaded by the readers.
+	 *
+	 * @param refreshNanos     The nanoseconds after the last write after which
+	 *                         an accessed entry is refreshed
+	 * @param writeExpiryNanos The nanoseconds after the last write after which an
+	 *                         entry expires. Zero or less disables it
+	 * @param refresher        The callback reloading the entries
+	 */
+	void setRefreshAfterWrite(long refreshNanos, long writeExpiryNanos, Refresher<V> refresher) {
+		this.refreshNanos = refreshNanos;
+		this.writeExpiryNanos = writeExpiryNanos;
+		this.refresher = refresher;
+	}
+
+	/**
+	 * Spread the bits of the key so sequential object ids don't cluster
+	 *
+	 * @param key The key to be hashed
+	 * @return The hash of the key
+	 */
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private Segment segmentFor(int hash) {
+		return segments[(hash >>> 28) & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * Method to get a value from the cache
+	 *
+	 * @param key The key of the value
+	 * @return The value or null if the key is not in the cache or it expired
+	 */
+	@SuppressWarnings("unchecked")
+	V getIfPresent(long key) {
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		ArrayList<Object[]> removed = null;
+		Object value = null;
+		boolean refreshDue = false;
+		seg.lock();
+		try {
+			if (seg.sketch != null)
+				seg.sketch.increment(key);
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0) {
+				long now = ticker.read();
+				if (isExpired(seg, idx, now)) {
+					removed = new ArrayList<Object[]>(1);
+					removed.add(new Object[] { key, seg.values[idx], RemovalCause.EXPIRED });
+					seg.removeAt(idx);
+				} else {
+					seg.access[idx] = now;
+					value = seg.values[idx];
+					refreshDue = refreshNanos > 0 && now - seg.written[idx] >= refreshNanos;
+				}
+			}
+		} finally {
+			seg.unlock();
+		}
+		notifyRemoved(removed);
+		if (value != null)
+			hitCount.increment();
+		else
+			missCount.increment();
+		// the refresher is invoked outside of the lock, it must not block
+		Refresher<V> currentRefresher = refresher;
+		if (refreshDue && currentRefresher != null)
+			currentRefresher.refresh(key, (V) value);
+		return (V) value;
+	}
+
+	/**
+	 * Method to put a value in the cache, replacing any previous value
+	 *
+	 * @param key   The key of the value
+	 * @param value The value to be cached
+	 */
+	void put(long key, V value) {
+		putImpl(key, value, false);
+	}
+
+	/**
+	 * Method to put a value in the cache only if no value is associated with the
+	 * key
+	 *
+	 * @param key   The key of the value
+	 * @param value The value to be cached
+	 * @return The existing value, or null if the new value was added
+	 */
+	V putIfAbsent(long key, V value) {
+		return putImpl(key, value, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private V putImpl(long key, V value, boolean onlyIfAbsent) {
+		if (value == null)
+			throw new NullPointerException();
+		int weight = weigher != null ? weigher.weigh(key, value) : 0;
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		ArrayList<Object[]> removed = null;
+		// an entry heavier than the whole segment is never cached. The listener
+		// is not notified, since the value was never in the cache
+		if (maxSegmentWeight > 0 && weight > maxSegmentWeight) {
+			invalidate(key);
+			rejectionCount.increment();
+			return null;
+		}
+		seg.lock();
+		try {
+			long now = ticker.read();
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0) {
+				if (isExpired(seg, idx, now)) {
+					removed = new ArrayList<Object[]>(1);
+					removed.add(new Object[] { key, seg.values[idx], RemovalCause.EXPIRED });
+				} else if (onlyIfAbsent) {
+					seg.access[idx] = now;
+					return (V) seg.values[idx];
+				} else {
+					removed = new ArrayList<Object[]>(1);
+					removed.add(new Object[] { key, seg.values[idx], RemovalCause.REPLACED });
+				}
+				if (weight > seg.weights[idx]) {
+					// a heavier value must fit within the limits like a new entry
+					seg.removeAt(idx);
+					if (makeRoom(seg, weight, removed, now))
+						seg.insert(key, hash, value, now, weight);
+					else
+						rejectionCount.increment();
+				} else {
+					seg.values[idx] = value;
+					seg.access[idx] = now;
+					seg.written[idx] = now;
+					seg.setWeight(idx, weight);
+				}
+			} else {
+				boolean admitted = true;
+				if (seg.sketch != null)
+					seg.sketch.increment(key);
+				if (isOverLimit(seg, weight)) {
+					removed = new ArrayList<Object[]>(1);
+					// with frequency admission, a new entry which isn't more
+					// popular than the eviction victim is rejected, so one-off
+					// scans don't flush the hot entries
+					if (seg.sketch != null && seg.size > 0)
+						admitted = seg.sketch.frequency(key) > seg.sketch.frequency(seg.keys[seg.selectVictim(now)]);
+					if (admitted)
+						admitted = makeRoom(seg, weight, removed, now);
+					if (!admitted)
+						rejectionCount.increment();
+				}
+				if (admitted)
+					seg.insert(key, hash, value, now, weight);
+			}
+		} finally {
+			seg.unlock();
+		}
+		notifyRemoved(removed);
+		return null;
+	}
+
+	/**
+	 * Method to atomically replace the value associated with a key, only if the
+	 * key is currently mapped to the expected value instance
+	 *
+	 * @param key      The key of the value
+	 * @param expected The value instance expected to be in the cache
+	 * @param newValue The new value to be cached
+	 * @return True if the value was replaced
+	 */
+	boolean replace(long key, V expected, V newValue) {
+		if (newValue == null)
+			throw new NullPointerException();
+		int weight = weigher != null ? weigher.weigh(key, newValue) : 0;
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		ArrayList<Object[]> removed = null;
+		boolean replaced = false;
+		seg.lock();
+		try {
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0 && seg.values[idx] == expected) {
+				long now = ticker.read();
+				removed = new ArrayList<Object[]>(1);
+				if (isExpired(seg, idx, now)) {
+					removed.add(new Object[] { key, seg.values[idx], RemovalCause.EXPIRED });
+					seg.removeAt(idx);
+				} else {
+					removed.add(new Object[] { key, seg.values[idx], RemovalCause.REPLACED });
+					if (weight > seg.weights[idx]) {
+						// a heavier value must fit within the limits like a new
+						// entry
+						seg.removeAt(idx);
+						replaced = makeRoom(seg, weight, removed, now);
+						if (replaced)
+							seg.insert(key, hash, newValue, now, weight);
+						else
+							rejectionCount.increment();
+					} else {
+						seg.values[idx] = newValue;
+						seg.access[idx] = now;
+						seg.written[idx] = now;
+						seg.setWeight(idx, weight);
+						replaced = true;
+					}
+				}
+			}
+		} finally {
+			seg.unlock();
+		}
+		notifyRemoved(removed);
+		return replaced;
+	}
+
+	/**
+	 * Method to reset the write time of an entry, only if the key is currently
+	 * mapped to the expected value instance. It is used when a refresh found the
+	 * cached value is still current
+	 *
+	 * @param key      The key of the value
+	 * @param expected The value instance expected to be in the cache
+	 * @return True if the entry was found
+	 */
+	boolean touch(long key, V expected) {
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		seg.lock();
+		try {
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0 && seg.values[idx] == expected) {
+				seg.written[idx] = ticker.read();
+				return true;
+			}
+			return false;
+		} finally {
+			seg.unlock();
+		}
+	}
+
+	/**
+	 * Method to remove a key from the cache, only if the key is currently mapped
+	 * to the expected value instance
+	 *
+	 * @param key      The key to be removed
+	 * @param expected The value instance expected to be in the cache
+	 * @return True if the key was removed
+	 */
+	boolean remove(long key, V expected) {
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		ArrayList<Object[]> removed = null;
+		seg.lock();
+		try {
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0 && seg.values[idx] == expected) {
+				removed = new ArrayList<Object[]>(1);
+				removed.add(new Object[] { key, seg.values[idx], RemovalCause.EXPLICIT });
+				seg.removeAt(idx);
+			}
+		} finally {
+			seg.unlock();
+		}
+		notifyRemoved(removed);
+		return removed != null;
+	}
+
+	/**
+	 * Method to remove a key from the cache
+	 *
+	 * @param key The key to be removed
+	 */
+	void invalidate(long key) {
+		int hash = hash(key);
+		Segment seg = segmentFor(hash);
+		ArrayList<Object[]> removed = null;
+		seg.lock();
+		try {
+			int idx = seg.indexOf(key, hash);
+			if (idx >= 0) {
+				removed = new ArrayList<Object[]>(1);
+				removed.add(new Object[] { key, seg.values[idx], RemovalCause.EXPLICIT });
+				seg.removeAt(idx);
+			}
+		} finally {
+			seg.unlock();
+		}
+		notifyRemoved(removed);
+	}
+
+	/**
+	 * Method to remove all entries from the cache
+	 */
+	void invalidateAll() {
+		for (Segment seg : segments) {
+			ArrayList<Object[]> removed = new ArrayList<Object[]>();
+			seg.lock();
+			try {
+				for (int i = 0; i < seg.values.length; i++)
+					if (seg.values[i] != null)
+						removed.add(new Object[] { seg.keys[i], seg.values[i], RemovalCause.EXPLICIT });
+				seg.clear();
+			} finally {
+				seg.unlock();
+			}
+			notifyRemoved(removed);
+		}
+	}
+
+	/**
+	 * Method to remove all expired entries from the cache
+	 */
+	void cleanUp() {
+		if (expiryNanos <= 0 && writeExpiryNanos <= 0)
+			return;
+		for (Segment seg : segments) {
+			ArrayList<Object[]> removed = new ArrayList<Object[]>();
+			seg.lock();
+			try {
+				long now = ticker.read();
+				int i = 0;
+				while (i < seg.values.length) {
+					// removeAt shifts the following entries back, so re-check the
+					// same slot after removing
+					if (seg.values[i] != null && isExpired(seg, i, now)) {
+						removed.add(new Object[] { seg.keys[i], seg.values[i], RemovalCause.EXPIRED });
+						seg.removeAt(i);
+					} else
+						i++;
+				}
+			} finally {
+				seg.unlock();
+			}
+			notifyRemoved(removed);
+		}
+	}
+
+	/**
+	 * Method to get the number of entries in the cache, including entries which
+	 * expired but weren't yet cleaned up
+	 *
+	 * @return The number of entries
+	 */
+	long size() {
+		long size = 0;
+		for (Segment seg : segments)
+			size += seg.size;
+		return size;
+	}
+
+	/**
+	 * Method to copy the entries which didn't expire into a map. The access time
+	 * and the statistics of the entries are not updated
+	 *
+	 * @return Map of the values by key
+	 */
+	@SuppressWarnings("unchecked")
+	LinkedHashMap<Long, V> snapshot() {
+		LinkedHashMap<Long, V> result = new LinkedHashMap<Long, V>();
+		for (Segment seg : segments) {
+			seg.lock();
+			try {
+				long now = ticker.read();
+				for (int i = 0; i < seg.values.length; i++)
+					if (seg.values[i] != null && !isExpired(seg, i, now))
+						result.put(seg.keys[i], (V) seg.values[i]);
+			} finally {
+				seg.unlock();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of lookups which found a value
+	 */
+	long hitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return The number of lookups which didn't find a value
+	 */
+	long missCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return The number of entries removed due to size limit or expiry
+	 */
+	long evictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * @return The number of new entries which were rejected without being
+	 *         cached
+	 */
+	long rejectionCount() {
+		return rejectionCount.sum();
+	}
+
+	/**
+	 * Method to check if adding an entry to the segment would exceed the size
+	 * limit, the weight limit of the segment or the global weight budget
+	 *
+	 * @param seg    The segment to which the entry is added
+	 * @param weight The weight of the new entry
+	 * @return True if an entry should be evicted before adding
+	 */
+	private boolean isOverLimit(Segment seg, int weight) {
+		if (maxSegmentSize > 0 && seg.size >= maxSegmentSize)
+			return true;
+		if (maxSegmentWeight > 0 && seg.weight + weight > maxSegmentWeight)
+			return true;
+		long globalMax = globalMaxWeight;
+		return weigher != null && globalMax > 0 && globalWeight.get() + weight > globalMax;
+	}
+
+	/**
+	 * Method to evict entries of a locked segment until a new entry fits within
+	 * all limits. The entries of other caches can't be evicted, so if the
+	 * segment can't free enough weight for the global budget, nothing is
+	 * evicted and the entry shall be rejected.
+	 *
+	 * @param seg     The locked segment to which the entry is added
+	 * @param weight  The weight of the new entry
+	 * @param removed The list to which the evicted entries are added
+	 * @param now     The current time of the ticker
+	 * @return True if the entry fits, false if it shall be rejected
+	 */
+	private boolean makeRoom(Segment seg, int weight, ArrayList<Object[]> removed, long now) {
+		if (maxSegmentWeight > 0 && weight > maxSegmentWeight)
+			return false;
+		long globalMax = globalMaxWeight;
+		if (weigher != null && globalMax > 0 && globalWeight.get() - seg.weight + weight > globalMax)
+			return false;
+		while (seg.size > 0 && isOverLimit(seg, weight))
+			seg.evict(removed, now);
+		// other caches may have added weight while this segment was evicting
+		return !isOverLimit(seg, weight);
+	}
+
+	/**
+	 * @return The total weight of the entries in the cache
+	 */
+	long weight() {
+		long weight = 0;
+		for (Segment seg : segments)
+			weight += seg.weight;
+		return weight;
+	}
+
+	/**
+	 * Method to set the maximum total weight of the entries in all weighed
+	 * caches. When the budget is exceeded, the cache which adds an entry evicts
+	 * its own entries to make room. If its own entries can't free enough
+	 * weight, the entry is rejected without evicting anything.
+	 *
+	 * @param maxWeight The global budget, zero or less disables the budget
+	 */
+	static void setGlobalMaxWeight(long maxWeight) {
+		globalMaxWeight = maxWeight;
+	}
+
+	/**
+	 * @return The total weight of the entries in all weighed caches
+	 */
+	static long globalWeight() {
+		return globalWeight.get();
+	}
+
+	private boolean isExpired(Segment seg, int idx, long now) {
+		return (expiryNanos > 0 && now - seg.access[idx] >= expiryNanos)
+				|| (writeExpiryNanos > 0 && now - seg.written[idx] >= writeExpiryNanos);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void notifyRemoved(ArrayList<Object[]> removed) {
+		if (removed == null)
+			return;
+		for (Object[] r : removed) {
+			if (r[2] == RemovalCause.SIZE || r[2] == RemovalCause.EXPIRED)
+				evictionCount.increment();
+			if (removalListener != null)
+				removalListener.onRemoval(RemovalNotification.create((Long) r[0], (V) r[1], (RemovalCause) r[2]));
+		}
+	}
+
+	/**
+	 * Single open addressing hash table, guarded by its own lock
+	 */
+	@SuppressWarnings("serial")
+	private static final class Segment extends ReentrantLock {
+		long[] keys = new long[INITIAL_CAPACITY];
+		Object[] values = new Object[INITIAL_CAPACITY];
+		long[] access = new long[INITIAL_CAPACITY];
+		long[] written = new long[INITIAL_CAPACITY];
+		int[] weights = new int[INITIAL_CAPACITY];
+		int size = 0;
+		long weight = 0;
+		int evictionHand = 0;
+		/**
+		 * Frequency sketch for TinyLFU admission, null if not used
+		 */
+		SvFrequencySketch sketch = null;
+		/**
+		 * The global weight counter, null if the segment isn't weighed
+		 */
+		final AtomicLong globalWeight;
+
+		Segment(AtomicLong globalWeight) {
+			this.globalWeight = globalWeight;
+		}
+
+		void addWeight(long delta) {
+			weight += delta;
+			if (globalWeight != null && delta != 0)
+				globalWeight.addAndGet(delta);
+		}
+
+		void setWeight(int idx, int newWeight) {
+			addWeight((long) newWeight - weights[idx]);
+			weights[idx] = newWeight;
+		}
+
+		int indexOf(long key, int hash) {
+			int mask = values.length - 1;
+			int idx = hash & mask;
+			while (values[idx] != null) {
+				if (keys[idx] == key)
+					return idx;
+				idx = (idx + 1) & mask;
+			}
+			return -1;
+		}
+
+		void insert(long key, int hash, Object value, long now, int entryWeight) {
+			if ((size + 1) * 4 > values.length * 3)
+				resize(values.length << 1);
+			int mask = values.length - 1;
+			int idx = hash & mask;
+			while (values[idx] != null)
+				idx = (idx + 1) & mask;
+			keys[idx] = key;
+			values[idx] = value;
+			access[idx] = now;
+			written[idx] = now;
+			weights[idx] = entryWeight;
+			addWeight(entryWeight);
+			size++;
+		}
+
+		void resize(int capacity) {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			long[] oldAccess = access;
+			long[] oldWritten = written;
+			int[] oldWeights = weights;
+			keys = new long[capacity];
+			values = new Object[capacity];
+			access = new long[capacity];
+			written = new long[capacity];
+			weights = new int[capacity];
+			int mask = capacity - 1;
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldValues[i] != null) {
+					int idx = hash(oldKeys[i]) & mask;
+					while (values[idx] != null)
+						idx = (idx + 1) & mask;
+					keys[idx] = oldKeys[i];
+					values[idx] = oldValues[i];
+					access[idx] = oldAccess[i];
+					written[idx] = oldWritten[i];
+					weights[idx] = oldWeights[i];
+				}
+			}
+		}
+
+		/**
+		 * Remove the entry at idx using backward shift deletion, so lookups never
+		 * need tombstones
+		 */
+		void removeAt(int idx) {
+			int mask = values.length - 1;
+			int hole = idx;
+			int next = idx;
+			addWeight(-weights[hole]);
+			values[hole] = null;
+			while (true) {
+				next = (next + 1) & mask;
+				if (values[next] == null)
+					break;
+				int home = hash(keys[next]) & mask;
+				// keep the entry if its home slot is cyclically in (hole, next]
+				boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (stays)
+					continue;
+				keys[hole] = keys[next];
+				values[hole] = values[next];
+				access[hole] = access[next];
+				written[hole] = written[next];
+				weights[hole] = weights[next];
+				values[next] = null;
+				hole = next;
+			}
+			size--;
+		}
+
+		/**
+		 * Evict the least recently accessed entry from a sample of occupied slots
+		 */
+		void evict(ArrayList<Object[]> removed, long now) {
+			if (size == 0)
+				return;
+			int victim = selectVictim(now);
+			removed.add(new Object[] { keys[victim], values[victim], RemovalCause.SIZE });
+			removeAt(victim);
+		}
+
+		/**
+		 * Select the least recently accessed entry from a sample of occupied
+		 * slots. The segment must not be empty
+		 */
+		int selectVictim(long now) {
+			int mask = values.length - 1;
+			int victim = -1;
+			int sampled = 0;
+			int idx = evictionHand & mask;
+			for (int scanned = 0; scanned < values.length && sampled < EVICTION_SAMPLE; scanned++) {
+				if (values[idx] != null) {
+					if (victim < 0 || now - access[idx] > now - access[victim])
+						victim = idx;
+					sampled++;
+				}
+				idx = (idx + 1) & mask;
+			}
+			evictionHand = idx;
+			return victim;
+		}
+
+		void clear() {
+			keys = new long[INITIAL_CAPACITY];
+			values = new Object[INITIAL_CAPACITY];
+			access = new long[INITIAL_CAPACITY];
+			written = new long[INITIAL_CAPACITY];
+			weights = new int[INITIAL_CAPACITY];
+			addWeight(-weight);
+			size = 0;
+		}
+	}
+}
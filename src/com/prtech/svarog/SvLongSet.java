@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+/**
+ * Set of primitive long values based on open addressing with linear probing.
+ * It is used for the object id sets of the relation caches, where boxing each
+ * id and scanning lists is too expensive for large results. The set is not
+ * thread safe, it should be fully populated before it is published to other
+ * threads.
+ */
+class SvLongSet {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private boolean[] used;
+	private int size = 0;
+
+	/**
+	 * Constructor of an empty set
+	 */
+	SvLongSet() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor of an empty set with capacity for the expected number of
+	 * values
+	 * 
+	 * @param expectedSize The number of values expected in the set
+	 */
+	SvLongSet(int expectedSize) {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		used = new boolean[capacity];
+	}
+
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		int idx = SvLongCache.hash(key) & mask;
+		while (used[idx] && keys[idx] != key)
+			idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	/**
+	 * Method to add a value to the set
+	 * 
+	 * @param key The value to be added
+	 * @return True if the value wasn't already in the set
+	 */
+	boolean add(long key) {
+		int idx = indexOf(key);
+		if (used[idx])
+			return false;
+		keys[idx] = key;
+		used[idx] = true;
+		if (++size * 2 > keys.length)
+			resize();
+		return true;
+	}
+
+	/**
+	 * Method to check if a value is in the set
+	 * 
+	 * @param key The value to be checked
+	 * @return True if the value is in the set
+	 */
+	boolean contains(long key) {
+		return used[indexOf(key)];
+	}
+
+	/**
+	 * Method to check if a value is in the set, where null is never contained
+	 * 
+	 * @param key The value to be checked
+	 * @return True if the value is not null and is in the set
+	 */
+	boolean contains(Long key) {
+		return key != null && contains(key.longValue());
+	}
+
+	/**
+	 * @return The number of values in the set
+	 */
+	int size() {
+		return size;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		keys = new long[oldKeys.length * 2];
+		used = new boolean[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldUsed[i]) {
+				int idx = indexOf(oldKeys[i]);
+				keys[idx] = oldKeys[i];
+				used[idx] = true;
+			}
+	}
+}
@@ -124,6 +124,8 @@ public class SvMaintenance implements Runnable {
 			trackedConnCleanup();
 			if (SvConf.isClusterEnabled())
 				clusterListMaintenance();
+			// write the periodic cache snapshot
+			SvCacheSnapshot.maintain();
 			// establish waiting period
 			timeout = SvCluster.getIsActive().get() ? (SvConf.getClusterMaintenanceInterval() - 2) * 1000
 					: SvConf.getHeartBeatTimeOut();
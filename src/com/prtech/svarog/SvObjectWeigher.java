@@ -0,0 +1,84 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.math.BigDecimal;
+import java.util.Map.Entry;
+
+import org.joda.time.DateTime;
+
+import com.google.common.cache.Weigher;
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.SvCharId;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Weigher estimating the retained heap size of a DbDataObject in bytes. The
+ * estimate covers the object header and metadata, the values map entries,
+ * string values by length, geometries by number of coordinates and binary
+ * values by length. It is not exact, but it is good enough to keep forms with
+ * large text fields and objects with geometries from taking over the cache.
+ */
+class SvObjectWeigher implements Weigher<Long, DbDataObject> {
+
+	/**
+	 * Estimated size of the DbDataObject with its metadata fields and the empty
+	 * values map
+	 */
+	static final int OBJECT_OVERHEAD = 256;
+
+	/**
+	 * Estimated size of a values map entry including the key
+	 */
+	static final int ENTRY_OVERHEAD = 64;
+
+	/**
+	 * Estimated size of a single JTS coordinate
+	 */
+	static final int COORDINATE_SIZE = 40;
+
+	@Override
+	public int weigh(Long key, DbDataObject dbo) {
+		long size = OBJECT_OVERHEAD;
+		if (dbo.getValuesMap() != null)
+			for (Entry<SvCharId, Object> entry : dbo.getValuesMap().entrySet())
+				size += ENTRY_OVERHEAD + estimateValue(entry.getValue());
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Method to estimate the size of a single value
+	 * 
+	 * @param value The value stored in the DbDataObject
+	 * @return The estimated size in bytes
+	 */
+	static long estimateValue(Object value) {
+		if (value == null)
+			return 0;
+		if (value instanceof String)
+			return 40L + 2L * ((String) value).length();
+		if (value instanceof Geometry)
+			return 96L + (long) COORDINATE_SIZE * ((Geometry) value).getNumPoints();
+		if (value instanceof SvLazyGeometry)
+			return 64L + ((SvLazyGeometry) value).getWkb().length;
+		if (value instanceof byte[])
+			return 16L + ((byte[]) value).length;
+		if (value instanceof BigDecimal)
+			return 64;
+		if (value instanceof DateTime)
+			return 64;
+		return 24;
+	}
+}
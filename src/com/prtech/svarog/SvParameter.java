@@ -107,7 +107,7 @@ public class SvParameter extends SvCore {
 	@SuppressWarnings("unchecked")
 	static Cache<String, DbDataObject> initParamCache() {
 		@SuppressWarnings("rawtypes")
-		CacheBuilder builder = CacheBuilder.newBuilder();
+		CacheBuilder builder = CacheBuilder.newBuilder().recordStats();
 		builder = builder.maximumSize(Sv.DEFAULT_CACHE_SIZE);
 		builder = builder.expireAfterAccess(Sv.DEFAULT_CACHE_TTL, TimeUnit.MINUTES);
 		return (Cache<String, DbDataObject>) builder.<Long, DbDataObject>build();
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Histogram of the execution times of database statements. The times are
+ * counted in fixed buckets, so recording is lock free and the memory used by
+ * the histogram doesn't grow with the number of statements.
+ */
+public class SvQueryHistogram {
+
+	/**
+	 * Exclusive upper bounds of the buckets in milliseconds. The last bucket
+	 * counts all statements above the last bound
+	 */
+	static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+
+	/**
+	 * Method to record the execution of a statement
+	 * 
+	 * @param nanos    The execution time in nanoseconds
+	 * @param rowCount The number of rows read or written by the statement
+	 */
+	void record(long nanos, int rowCount) {
+		long millis = nanos / 1000000L;
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket])
+			bucket++;
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		rows.addAndGet(rowCount);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+
+	/**
+	 * @return The number of recorded statements
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return The total number of rows of the recorded statements
+	 */
+	public long getRows() {
+		return rows.get();
+	}
+
+	/**
+	 * @return The total execution time in milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return The average execution time in milliseconds, zero if there are no
+	 *         statements
+	 */
+	public double getMeanMillis() {
+		long cnt = count.get();
+		return cnt == 0 ? 0 : getTotalMillis() / cnt;
+	}
+
+	/**
+	 * @return The longest execution time in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return The number of statements in each bucket, see
+	 *         {@link #BUCKET_BOUNDS}
+	 */
+	public long[] getBucketCounts() {
+		long[] result = new long[buckets.length()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = buckets.get(i);
+		return result;
+	}
+
+	/**
+	 * Method to estimate a percentile of the execution times. The result is the
+	 * upper bound of the bucket which holds the percentile, or the longest
+	 * execution time for the last bucket.
+	 * 
+	 * @param percentile The percentile between 0 and 100
+	 * @return The estimated execution time in milliseconds, zero if there are no
+	 *         statements
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] counts = getBucketCounts();
+		long total = 0;
+		for (long c : counts)
+			total += c;
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0)
+				return Math.min(BUCKET_BOUNDS[i], getMaxMillis());
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * @return The histogram as JSON object
+	 */
+	public JsonObject toJsonObject() {
+		JsonObject json = new JsonObject();
+		json.addProperty("count", getCount());
+		json.addProperty("rows", getRows());
+		json.addProperty("total_ms", getTotalMillis());
+		json.addProperty("mean_ms", getMeanMillis());
+		json.addProperty("max_ms", getMaxMillis());
+		json.addProperty("p50_ms", getPercentileMillis(50));
+		json.addProperty("p95_ms", getPercentileMillis(95));
+		json.addProperty("p99_ms", getPercentileMillis(99));
+		JsonArray bucketsJson = new JsonArray();
+		long[] counts = getBucketCounts();
+		for (int i = 0; i < counts.length; i++) {
+			JsonObject bucket = new JsonObject();
+			bucket.addProperty("lt_ms", i < BUCKET_BOUNDS.length ? String.valueOf(BUCKET_BOUNDS[i]) : "inf");
+			bucket.addProperty("count", counts[i]);
+			bucketsJson.add(bucket);
+		}
+		json.add("buckets", bucketsJson);
+		return json;
+	}
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonObject;
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbQuery;
+import com.prtech.svarog_common.DbQueryExpression;
+import com.prtech.svarog_common.DbQueryObject;
+
+/**
+ * Timing of the database statements executed by svarog. Each statement is
+ * counted in a {@link SvQueryHistogram} per object type and operation. The
+ * statements slower than sys.query.slow_threshold milliseconds are logged
+ * with the SQL text, the row count, the user and the place where the SvCore
+ * instance was created. Statements which failed, for example by timeout or
+ * cancellation, are timed and logged the same way. The bind values are logged
+ * only if sys.query.log_binds is enabled and never for the user and security
+ * types, whose binds may hold credentials. The slow query log uses its own
+ * logger, so it can be routed to a separate appender.
+ */
+final class SvQueryLog {
+
+	private static final Logger log4j = SvConf.getLogger(SvQueryLog.class);
+
+	/**
+	 * Operation of reading objects with SvCore.getObjects
+	 */
+	static final String SELECT = "select";
+	/**
+	 * Operation of locking the repo records before update or delete
+	 */
+	static final String LOCK = "lock";
+	/**
+	 * Operation of invalidating the previous repo versions
+	 */
+	static final String INVALIDATE = "invalidate";
+	/**
+	 * Operation of inserting the repo records
+	 */
+	static final String INSERT_REPO = "insert_repo";
+	/**
+	 * Operation of inserting the table records
+	 */
+	static final String INSERT_TABLE = "insert_table";
+	/**
+	 * Operation of deleting objects
+	 */
+	static final String DELETE = "delete";
+
+	/**
+	 * Maximum length of a single bind value in the log
+	 */
+	private static final int MAX_BIND_LENGTH = 100;
+
+	/**
+	 * The histograms per object type and operation
+	 */
+	private static final ConcurrentMap<Long, ConcurrentMap<String, SvQueryHistogram>> histograms = new ConcurrentHashMap<Long, ConcurrentMap<String, SvQueryHistogram>>();
+
+	/**
+	 * Number of statements logged as slow
+	 */
+	private static final AtomicLong slowCount = new AtomicLong();
+
+	static {
+		SvQueryMonitor.register();
+	}
+
+	private SvQueryLog() {
+	}
+
+	/**
+	 * Method to get the start time of a statement
+	 * 
+	 * @return The start time in nanoseconds
+	 */
+	static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Method to record the execution of a statement. It shall be invoked from a
+	 * finally block, so the statements which fail are recorded too.
+	 * 
+	 * @param core       The SvCore instance which executed the statement
+	 * @param objectType The id of the object type, or null if unknown
+	 * @param operation  The operation, one of the constants of this class
+	 * @param sql        The SQL text of the statement
+	 * @param bindVals   The bind values, or null for batch statements
+	 * @param rowCount   The number of rows read or written
+	 * @param startNanos The start time returned by {@link #start()}
+	 * @param failed     Flag if the statement failed
+	 */
+	static void record(SvCore core, Long objectType, String operation, String sql, List<?> bindVals,
+			int rowCount, long startNanos, boolean failed) {
+		long nanos = System.nanoTime() - startNanos;
+		getHistogram(objectType != null ? objectType : 0L, operation).record(nanos, rowCount);
+		long threshold = SvConf.getSlowQueryThreshold();
+		if (threshold >= 0 && nanos >= threshold * 1000000L) {
+			slowCount.incrementAndGet();
+			if (log4j.isWarnEnabled())
+				log4j.warn(getSlowQueryMessage(core, objectType, operation, sql, bindVals, rowCount, nanos, failed));
+		}
+	}
+
+	/**
+	 * Method to check if the bind values of statements over an object type may
+	 * be logged. The binds of the users and the security log hold password
+	 * hashes and session tokens, so they are never logged
+	 * 
+	 * @param objectType The id of the object type, or null if unknown
+	 * @return True if the bind values may be logged
+	 */
+	static boolean canLogBinds(Long objectType) {
+		return SvConf.isSlowQueryLogBinds() && objectType != null && !objectType.equals(svCONST.OBJECT_TYPE_USER)
+				&& !objectType.equals(svCONST.OBJECT_TYPE_SECURITY_LOG);
+	}
+
+	/**
+	 * Method to get the object type of the root query object of a query
+	 * 
+	 * @param query The query
+	 * @return The id of the object type or null if it can't be resolved
+	 */
+	static Long getObjectType(DbQuery query) {
+		DbQueryObject dqo = null;
+		if (query instanceof DbQueryObject)
+			dqo = (DbQueryObject) query;
+		else if (query instanceof DbQueryExpression)
+			dqo = ((DbQueryExpression) query).getRootQueryObject();
+		return dqo != null && dqo.getDbt() != null ? dqo.getDbt().getObjectId() : null;
+	}
+
+	private static SvQueryHistogram getHistogram(Long objectType, String operation) {
+		ConcurrentMap<String, SvQueryHistogram> typeHistograms = histograms.get(objectType);
+		if (typeHistograms == null) {
+			typeHistograms = new ConcurrentHashMap<String, SvQueryHistogram>();
+			ConcurrentMap<String, SvQueryHistogram> existing = histograms.putIfAbsent(objectType, typeHistograms);
+			if (existing != null)
+				typeHistograms = existing;
+		}
+		SvQueryHistogram histogram = typeHistograms.get(operation);
+		if (histogram == null) {
+			histogram = new SvQueryHistogram();
+			SvQueryHistogram existing = typeHistograms.putIfAbsent(operation, histogram);
+			if (existing != null)
+				histogram = existing;
+		}
+		return histogram;
+	}
+
+	static String getSlowQueryMessage(SvCore core, Long objectType, String operation, String sql,
+			List<?> bindVals, int rowCount, long nanos, boolean failed) {
+		StringBuilder msg = new StringBuilder(256);
+		msg.append(failed ? "Failed slow " : "Slow ").append(operation).append(" on ")
+				.append(objectType != null ? DbCache.getCacheName(objectType) : "unknown type").append(" took ")
+				.append(nanos / 1000000L).append(" ms, rows:").append(rowCount);
+		if (core != null) {
+			DbDataObject user = core.instanceUser;
+			msg.append(", user:").append(user != null ? user.getVal(Sv.USER_NAME) : null);
+			if (core.getCoreTraceInfo() != null)
+				msg.append(", core:").append(core.getCoreTraceInfo());
+		}
+		msg.append(", sql:").append(sql);
+		if (bindVals != null && canLogBinds(objectType)) {
+			msg.append(", binds:[");
+			for (int i = 0; i < bindVals.size(); i++) {
+				if (i > 0)
+					msg.append(", ");
+				msg.append(formatBind(bindVals.get(i)));
+			}
+			msg.append("]");
+		}
+		return msg.toString();
+	}
+
+	private static String formatBind(Object value) {
+		if (value == null)
+			return "null";
+		if (value instanceof byte[])
+			return "<" + ((byte[]) value).length + " bytes>";
+		String str = value.toString();
+		return str.length() > MAX_BIND_LENGTH ? str.substring(0, MAX_BIND_LENGTH) + "..." : str;
+	}
+
+	/**
+	 * @return The number of statements logged as slow
+	 */
+	static long getSlowCount() {
+		return slowCount.get();
+	}
+
+	/**
+	 * Method to collect the histograms of all object types and operations
+	 * 
+	 * @return Map of histograms sorted by name, in format
+	 *         table_name.operation
+	 */
+	static Map<String, SvQueryHistogram> collect() {
+		Map<String, SvQueryHistogram> result = new TreeMap<String, SvQueryHistogram>();
+		for (Entry<Long, ConcurrentMap<String, SvQueryHistogram>> typeEntry : histograms.entrySet()) {
+			String typeName = typeEntry.getKey() != 0L ? DbCache.getCacheName(typeEntry.getKey()) : "unknown";
+			for (Entry<String, SvQueryHistogram> entry : typeEntry.getValue().entrySet())
+				result.put(typeName + "." + entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Method to dump all histograms as JSON
+	 * 
+	 * @return JsonObject with each histogram under its name
+	 */
+	static JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("slow_count", getSlowCount());
+		for (Entry<String, SvQueryHistogram> entry : collect().entrySet())
+			json.add(entry.getKey(), entry.getValue().toJsonObject());
+		return json;
+	}
+
+	/**
+	 * Method to clear all histograms and the slow statement counter
+	 */
+	static void reset() {
+		histograms.clear();
+		slowCount.set(0);
+	}
+}
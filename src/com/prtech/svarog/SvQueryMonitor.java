@@ -0,0 +1,99 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * JMX bean exposing the execution time histograms of the database statements
+ * under the name com.prtech.svarog:type=SvQueryMonitor
+ */
+public class SvQueryMonitor implements SvQueryMonitorMBean {
+
+	/**
+	 * Log4j instance used for logging
+	 */
+	private static final Logger log4j = SvConf.getLogger(SvQueryMonitor.class);
+
+	/**
+	 * The JMX name of the query monitor
+	 */
+	static final String MBEAN_NAME = "com.prtech.svarog:type=SvQueryMonitor";
+
+	/**
+	 * Method to register the query monitor with the platform MBean server. If
+	 * the monitor is already registered, the method does nothing.
+	 */
+	static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(new SvQueryMonitor(), name);
+		} catch (Exception e) {
+			log4j.warn("Can't register the query monitor with JMX", e);
+		}
+	}
+
+	private SvQueryHistogram getHistogram(String histogramName) {
+		SvQueryHistogram histogram = SvQueryLog.collect().get(histogramName);
+		return histogram != null ? histogram : new SvQueryHistogram();
+	}
+
+	@Override
+	public String[] getHistogramNames() {
+		return SvQueryLog.collect().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public long getCount(String histogramName) {
+		return getHistogram(histogramName).getCount();
+	}
+
+	@Override
+	public double getMeanMillis(String histogramName) {
+		return getHistogram(histogramName).getMeanMillis();
+	}
+
+	@Override
+	public double getMaxMillis(String histogramName) {
+		return getHistogram(histogramName).getMaxMillis();
+	}
+
+	@Override
+	public double getPercentileMillis(String histogramName, double percentile) {
+		return getHistogram(histogramName).getPercentileMillis(percentile);
+	}
+
+	@Override
+	public long getSlowQueryCount() {
+		return SvQueryLog.getSlowCount();
+	}
+
+	@Override
+	public String getStatsJson() {
+		return SvQueryLog.toJson().toString();
+	}
+
+	@Override
+	public void reset() {
+		SvQueryLog.reset();
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+/**
+ * JMX interface exposing the execution time histograms of the database
+ * statements. Each histogram is identified by the name under which it is
+ * listed in SvQueryLog.collect, in format table_name.operation
+ */
+public interface SvQueryMonitorMBean {
+
+	/**
+	 * @return The names of all histograms
+	 */
+	String[] getHistogramNames();
+
+	long getCount(String histogramName);
+
+	double getMeanMillis(String histogramName);
+
+	double getMaxMillis(String histogramName);
+
+	double getPercentileMillis(String histogramName, double percentile);
+
+	/**
+	 * @return The number of statements logged as slow
+	 */
+	long getSlowQueryCount();
+
+	/**
+	 * @return The histograms as JSON string
+	 */
+	String getStatsJson();
+
+	/**
+	 * Clears all histograms
+	 */
+	void reset();
+}
@@ -15,7 +15,13 @@
 package com.prtech.svarog;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.Logger;
@@ -50,6 +56,12 @@ import com.prtech.svarog_common.SvCharId;
 public class SvReader extends SvCore {
 
 	private static final Logger log4j = SvConf.getLogger(SvReader.class);
+
+	/**
+	 * Maximum number of ids loaded by a single query in
+	 * {@link #getObjectsByIds(Collection, Long, DateTime)}
+	 */
+	static final int MULTI_GET_CHUNK_SIZE = 1000;
 	
 	/**
 	 * Constructor to create a SvUtil object according to a user session. This
@@ -63,6 +75,7 @@ public class SvReader extends SvCore {
 	 */
 	public SvReader(String sessionId) throws SvException {
 		super(sessionId);
+		replicaEligible = true;
 	}
 
 	/**
@@ -80,6 +93,8 @@ public class SvReader extends SvCore {
 	 */
 	public SvReader(String sessionId, SvCore sharedSvCore) throws SvException {
 		super(sessionId, sharedSvCore);
+		// a reader chained to a writer must see the writer's transaction
+		replicaEligible = sharedSvCore == null || sharedSvCore.replicaEligible;
 	}
 
 	/**
@@ -94,6 +109,7 @@ public class SvReader extends SvCore {
 	 */
 	public SvReader(SvCore sharedSvCore) throws SvException {
 		super(sharedSvCore);
+		replicaEligible = sharedSvCore != null && sharedSvCore.replicaEligible;
 	}
 
 	/**
@@ -107,6 +123,19 @@ public class SvReader extends SvCore {
 		super(svCONST.systemUser, null);
 	}
 
+	/**
+	 * Constructor used by the asynchronous reads to create an instance
+	 * running as the user of the instance which submitted the read.
+	 * 
+	 * @param instanceUser
+	 *            The user descriptor as which the instance should execute
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	private SvReader(DbDataObject instanceUser) throws SvException {
+		super(instanceUser, null);
+	}
+
 	/**
 	 * To be removed in Svarog v2.0. Simplified version of getObjects, which
 	 * takes a DbSearch and Object Type Descriptor instead
@@ -170,7 +199,41 @@ public class SvReader extends SvCore {
 				getFields(typeDescriptor.getObjectId()), dbSearch, refDate,
 				dbSearch != null ? dbSearch.getOrderByFields() : null);
 
-		return getObjects(query, rowLimit, offset);
+		// equality searches covered by a secondary index are served from the
+		// object cache
+		Long typeId = typeDescriptor.getObjectId();
+		HashMap<String, Object> indexCriteria = null;
+		if (refDate == null && (offset == null || offset == 0) && dbSearch != null && isCfgInDb
+				&& Boolean.TRUE.equals(typeDescriptor.getVal("use_cache"))) {
+			indexCriteria = DbCacheTable.getEqualityCriteria(dbSearch);
+			if (indexCriteria != null && !DbCache.hasIndex(typeId, indexCriteria.keySet()))
+				indexCriteria = null;
+		}
+		if (indexCriteria != null) {
+			DbDataObject cached = DbCache.getObjectByIndex(typeId, indexCriteria);
+			// users restricted to granted config keys or empowered by a power
+			// of attorney are served by the database, which applies the narrowed
+			// search
+			if (cached != null && !(cached.isGeometryType() && !cached.getHasGeometry())
+					&& hasFullReadAccess(typeDescriptor)) {
+				if (!isQueryEmpowered(query)) {
+					DbDataArray result = new DbDataArray();
+					result.addDataItem(cached);
+					return result;
+				}
+			}
+		}
+
+		DbDataArray result;
+		// results of read mostly types are cached until the type is modified
+		if (DbCache.isResultCacheEnabled(typeDescriptor))
+			result = super.getObjects(query, rowLimit, offset, typeId);
+		else
+			result = getObjects(query, rowLimit, offset);
+		// the indexes are unique, so a single result populates the index
+		if (indexCriteria != null && result.size() == 1)
+			DbCache.addObject(result.get(0));
+		return result;
 	}
 
 	/**
@@ -222,6 +285,162 @@ public class SvReader extends SvCore {
 		return retval;
 	}
 
+	/**
+	 * Method to get a page of objects using keyset pagination. The page is
+	 * positioned after the object from which the continuation token was
+	 * created, so deep pages don't cost more than the first one. The token for
+	 * the next page is returned by {@link SvKeyset#getNextToken(DbDataArray, String)}
+	 * 
+	 * @param dbSearch
+	 *            A {@link DbSearch} instance containing the search criteria,
+	 *            or null to page over all objects of the type
+	 * @param objectType
+	 *            ID of the object type to be fetched.
+	 * @param refDate
+	 *            Reference date to be used for the query
+	 * @param pageSize
+	 *            maximum number of objects to be returned
+	 * @param sortField
+	 *            The field by which the pages are sorted ascending, or null to
+	 *            sort by object id only
+	 * @param pageToken
+	 *            The continuation token of the previous page, or null for the
+	 *            first page
+	 * @return A {@link DbDataArray} object containing the page
+	 * @throws SvException
+	 *             If the sort field or the token aren't valid or a
+	 *             pass-through exception from super.getObjects
+	 */
+	public DbDataArray getObjectsPage(DbSearch dbSearch, Long objectType, DateTime refDate, Integer pageSize,
+			String sortField, String pageToken) throws SvException {
+		DbDataObject typeDescriptor = getDbt(objectType);
+		ArrayList<String> orderBy = SvKeyset.getOrderBy(typeDescriptor, sortField);
+		DbSearch search = dbSearch;
+		if (pageToken != null) {
+			// the seek goes first, so the logic operand of the user search
+			// doesn't join it
+			DbSearchExpression seek = new DbSearchExpression();
+			seek.addDbSearchItem(SvKeyset.getSeekSearch(pageToken, sortField));
+			if (dbSearch != null)
+				seek.addDbSearchItem(dbSearch);
+			search = seek;
+		}
+		DbQueryObject query = new DbQueryObject(repoDbt, repoDbtFields, typeDescriptor,
+				getFields(typeDescriptor.getObjectId()), search, refDate, orderBy);
+		return getObjects(query, pageSize, 0);
+	}
+
+	/**
+	 * Method to compute aggregates over the objects matching the search
+	 * criteria in the database, instead of loading the objects. Only the
+	 * fields referenced by the aggregate are selected.
+	 * 
+	 * @param dbSearch
+	 *            A {@link DbSearch} instance containing the search criteria,
+	 *            or null to aggregate all objects of the type
+	 * @param objectType
+	 *            ID of the object type to be aggregated.
+	 * @param refDate
+	 *            Reference date to be used for the query
+	 * @param aggregate
+	 *            The specification of the aggregates and the group by fields
+	 * @return One untyped object per group, holding the group by fields and
+	 *         the aggregates by their aliases
+	 * @throws SvException
+	 *             Pass-through exception from super.getAggregate
+	 */
+	public DbDataArray getAggregate(DbSearch dbSearch, Long objectType, DateTime refDate, SvAggregate aggregate)
+			throws SvException {
+		DbDataObject typeDescriptor = getDbt(objectType);
+		DbQueryObject query = new DbQueryObject(repoDbt, repoDbtFields, typeDescriptor,
+				getFields(typeDescriptor.getObjectId()), dbSearch, refDate, null);
+		query.setProjection(aggregate.getFieldNames());
+		return super.getAggregate(query, aggregate);
+	}
+
+	/**
+	 * Method to compute aggregates over the result of a DbQuery in the
+	 * database. For a {@link DbQueryExpression} the aggregated fields are the
+	 * column names of the expression result.
+	 * 
+	 * @param query
+	 *            The DbQuery object which actually describes the query to the
+	 *            DB
+	 * @param aggregate
+	 *            The specification of the aggregates and the group by fields
+	 * @return One untyped object per group, holding the group by fields and
+	 *         the aggregates by their aliases
+	 * @throws SvException
+	 *             Pass-through exception from super.getAggregate
+	 */
+	public DbDataArray getAggregate(DbQuery query, SvAggregate aggregate) throws SvException {
+		return super.getAggregate(query, aggregate);
+	}
+
+	/**
+	 * Method to count the objects matching the search criteria in the
+	 * database
+	 * 
+	 * @param dbSearch
+	 *            A {@link DbSearch} instance containing the search criteria,
+	 *            or null to count all objects of the type
+	 * @param objectType
+	 *            ID of the object type to be counted.
+	 * @param refDate
+	 *            Reference date to be used for the query
+	 * @return The number of objects
+	 * @throws SvException
+	 *             Pass-through exception from super.getAggregate
+	 */
+	public long getCount(DbSearch dbSearch, Long objectType, DateTime refDate) throws SvException {
+		DbDataArray result = getAggregate(dbSearch, objectType, refDate, new SvAggregate().addCount());
+		Object count = result.size() > 0 ? result.get(0).getVal(SvAggregate.COUNT_ALL) : null;
+		return count instanceof Number ? ((Number) count).longValue() : 0L;
+	}
+
+	/**
+	 * Method to open a streaming cursor over the objects matching the search
+	 * criteria. The objects are read from the database in batches of
+	 * sys.jdbc.fetch_size, so large results can be processed without holding
+	 * them in memory. The objects are not added to the cache.
+	 * 
+	 * @param dbSearch
+	 *            A {@link DbSearch} instance containing the search criteria
+	 * @param objectType
+	 *            ID of the object type to be fetched.
+	 * @param refDate
+	 *            Reference date to be used for the query
+	 * @return The open cursor, which must be closed by the caller
+	 * @throws SvException
+	 *             Pass-through exception from super.getObjectsCursor
+	 */
+	public SvCursor getObjectsCursor(DbSearch dbSearch, Long objectType, DateTime refDate) throws SvException {
+		DbDataObject typeDescriptor = getDbt(objectType);
+		DbQueryObject query = new DbQueryObject(repoDbt, repoDbtFields, typeDescriptor,
+				getFields(typeDescriptor.getObjectId()), dbSearch, refDate,
+				dbSearch != null ? dbSearch.getOrderByFields() : null);
+		return super.getObjectsCursor(query, null, null);
+	}
+
+	/**
+	 * Method to open a streaming cursor over the result of a DbQuery
+	 * 
+	 * @param query
+	 *            The DbQuery object which actually describes the query to the
+	 *            DB
+	 * @param rowLimit
+	 *            The number of rows to be returned
+	 * @param offset
+	 *            The offset in the recordset from which the rowset will be
+	 *            returned
+	 * @return The open cursor, which must be closed by the caller
+	 * @throws SvException
+	 *             Pass-through exception from super.getObjectsCursor
+	 */
+	public SvCursor getObjectsCursor(DbQuery query, Integer rowLimit, Integer offset) throws SvException {
+		return super.getObjectsCursor(query, rowLimit, offset);
+	}
+
 	/**
 	 * Method to return the version history for a specific list of objects
 	 * satifying the search criteria
@@ -622,16 +841,137 @@ public class SvReader extends SvCore {
 	 * @throws SvException
 	 *             Pass through exception from the underlying methods
 	 */
-	DbDataObject getObjectById(Long object_id, DbDataObject dbt, DateTime refDate, Boolean forceDbQuery)
-			throws SvException {
+	DbDataObject getObjectById(final Long object_id, final DbDataObject dbt, final DateTime refDate,
+			Boolean forceDbQuery) throws SvException {
 		DbDataObject object = null;
 
-		if (!forceDbQuery && dbt.getVal("use_cache") != null && refDate == null && isCfgInDb
-				&& (Boolean) dbt.getVal("use_cache"))
-			object = DbCache.getObject(object_id, dbt.getObjectId());
-
-		if (object == null || (object.isGeometryType() && !object.getHasGeometry())) {
+		boolean useCache = !forceDbQuery && dbt.getVal("use_cache") != null && isCfgInDb
+				&& (Boolean) dbt.getVal("use_cache");
+		if (useCache) {
+			object = getCachedObject(object_id, dbt, refDate);
+			// concurrent misses for the same object are coalesced in a single
+			// database load
+			if (object == null)
+				object = DbCache.getSingleFlight().load(
+						DbCache.loadKey("O", dbt.getObjectId(), object_id, refDate),
+						new SvSingleFlight.Loader<DbDataObject>() {
+							@Override
+							public DbDataObject load() throws SvException {
+								return getObjectByIdImpl(object_id, dbt, refDate);
+							}
+						}, new SvSingleFlight.Loader<DbDataObject>() {
+							@Override
+							public DbDataObject load() throws SvException {
+								return getCachedObject(object_id, dbt, refDate);
+							}
+						});
+		} else
 			object = getObjectByIdImpl(object_id, dbt, refDate);
+		return object;
+	}
+
+	/**
+	 * Method for fetching multiple objects of the same type by their ids. The
+	 * objects found in the cache are served from it, while all other objects are
+	 * loaded with a single query per chunk of
+	 * {@link #MULTI_GET_CHUNK_SIZE} ids. The loaded objects are added to the
+	 * cache.
+	 * 
+	 * @param ids
+	 *            The ids of the objects to be fetched
+	 * @param objectType
+	 *            Id of the type of the objects
+	 * @param refDate
+	 *            Reference date on which the data should be fetched
+	 * @return Array of the found objects in the order of the ids. Ids which
+	 *         weren't found are skipped, duplicate ids return the object once
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	public DbDataArray getObjectsByIds(Collection<Long> ids, Long objectType, DateTime refDate)
+			throws SvException {
+		DbDataObject dbt = getDbt(objectType);
+		boolean useCache = dbt.getVal("use_cache") != null && isCfgInDb && (Boolean) dbt.getVal("use_cache");
+
+		HashMap<Long, DbDataObject> found = new HashMap<Long, DbDataObject>(ids.size() * 2);
+		LinkedHashSet<Long> misses = new LinkedHashSet<Long>();
+		for (Long objectId : ids) {
+			if (objectId == null || found.containsKey(objectId))
+				continue;
+			DbDataObject object = useCache ? getCachedObject(objectId, dbt, refDate) : null;
+			if (object != null)
+				found.put(objectId, object);
+			else
+				misses.add(objectId);
+		}
+
+		ArrayList<Object> chunk = new ArrayList<Object>(Math.min(misses.size(), MULTI_GET_CHUNK_SIZE));
+		Iterator<Long> it = misses.iterator();
+		while (it.hasNext()) {
+			chunk.add(it.next());
+			if (chunk.size() < MULTI_GET_CHUNK_SIZE && it.hasNext())
+				continue;
+			DbSearchCriterion inList = new DbSearchCriterion("OBJECT_ID", DbCompareOperand.IN_LIST);
+			inList.setInList(chunk);
+			DbDataArray arr = getObjects(inList, dbt, refDate, 0, 0);
+			for (DbDataObject object : arr.getItems()) {
+				if (found.put(object.getObjectId(), object) != null)
+					throw (new SvException("system.error.multiple_object_instances", instanceUser, null, dbt));
+				if (refDate == null)
+					DbCache.addObject(object);
+				else
+					DbCache.addObjectVersion(object);
+			}
+			chunk = new ArrayList<Object>(Math.min(misses.size(), MULTI_GET_CHUNK_SIZE));
+		}
+
+		DbDataArray result = new DbDataArray();
+		LinkedHashSet<Long> added = new LinkedHashSet<Long>();
+		for (Long objectId : ids) {
+			DbDataObject object = objectId != null ? found.get(objectId) : null;
+			if (object != null && added.add(objectId))
+				result.addDataItem(object);
+		}
+		return result;
+	}
+
+	/**
+	 * Method to get an object from the cache, ignoring cached geometry objects
+	 * which were loaded without the geometry
+	 * 
+	 * @param object_id
+	 *            Id of the object which should be fetched
+	 * @param dbt
+	 *            Configuration for the type of the object fetched
+	 * @param refDate
+	 *            Reference date on which the data should be fetched
+	 * @return The cached object or null
+	 */
+	private DbDataObject getCachedObject(Long object_id, DbDataObject dbt, DateTime refDate) {
+		DbDataObject object = refDate == null ? DbCache.getObject(object_id, dbt.getObjectId())
+				: DbCache.getObject(object_id, dbt.getObjectId(), refDate);
+		if (object != null && object.isGeometryType() && !object.getHasGeometry())
+			object = null;
+		return object;
+	}
+
+	/**
+	 * Method to check if a cached array of objects can be returned to the caller,
+	 * or the array should be reloaded from the database
+	 * 
+	 * @param object
+	 *            The array of objects from the cache
+	 * @param allowEmpty
+	 *            Flag if an empty array is valid
+	 * @return The array or null if it should be reloaded
+	 */
+	private static DbDataArray usableCachedArray(DbDataArray object, boolean allowEmpty) {
+		if (object == null || (object.size() < 1 && !allowEmpty))
+			return null;
+		if (object.size() > 0) {
+			DbDataObject firstObj = object.get(0);
+			if (firstObj.isGeometryType() && !firstObj.getHasGeometry())
+				return null;
 		}
 		return object;
 	}
@@ -660,11 +1000,34 @@ public class SvReader extends SvCore {
 				throw (new SvException("system.error.multiple_object_instances", instanceUser, null, dbt));
 		}
 
-		if (object != null)
-			DbCache.addObject(object);
+		if (object != null) {
+			if (refDate == null)
+				DbCache.addObject(object);
+			else
+				DbCache.addObjectVersion(object);
+		}
 		return object;
 	}
 
+	/**
+	 * Method to read the current version of an object from the database,
+	 * bypassing the object and the result caches
+	 * 
+	 * @param object_id
+	 *            Id of the object which should be fetched
+	 * @param dbt
+	 *            Configuration for the type of the object fetched
+	 * @return The current version or null if the object doesn't exist
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	DbDataObject getObjectByIdFromDb(Long object_id, DbDataObject dbt) throws SvException {
+		DbQueryObject query = new DbQueryObject(repoDbt, repoDbtFields, dbt, getFields(dbt.getObjectId()),
+				new DbSearchCriterion("OBJECT_ID", DbCompareOperand.EQUAL, object_id), null, null);
+		DbDataArray arr = getObjects(query, 1, 0);
+		return arr.size() == 1 ? arr.get(0) : null;
+	}
+
 	/**
 	 * Svarog internal method to get all data for certain SVAROG_OBJECT type
 	 * 
@@ -689,6 +1052,32 @@ public class SvReader extends SvCore {
 		return arr;
 	}
 
+	/**
+	 * Method to get a page of all objects of a type using keyset pagination.
+	 * See {@link #getObjectsPage(DbSearch, Long, DateTime, Integer, String, String)}
+	 * 
+	 * @param typeId
+	 *            The Id of the SVAROG_OBJECT
+	 * @param refDate
+	 *            The reference date at which we want to fetch the object
+	 * @param pageSize
+	 *            Maximum number of objects
+	 * @param sortField
+	 *            The field by which the pages are sorted ascending, or null to
+	 *            sort by object id only
+	 * @param pageToken
+	 *            The continuation token of the previous page, or null for the
+	 *            first page
+	 * @return The page of objects
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	public DbDataArray getObjectsByTypeIdPage(Long typeId, DateTime refDate, Integer pageSize, String sortField,
+			String pageToken) throws SvException {
+		DbSearch search = new DbSearchCriterion("OBJECT_TYPE", DbSearchCriterion.DbCompareOperand.EQUAL, typeId);
+		return getObjectsPage(search, typeId, refDate, pageSize, sortField, pageToken);
+	}
+
 	/**
 	 * Overloaded version of getObjectsByLinkedId to return objects according to
 	 * link code. Not so smart, issues with reversing.
@@ -857,32 +1246,38 @@ public class SvReader extends SvCore {
 	 * @throws SvException
 	 *             Pass through exception from the underlying methods
 	 */
-	public DbDataArray getObjectsByLinkedId(Long LinkObjectId, Long linkObjectTypeId1, DbDataObject dbLink,
-			Long linkObjectTypeId2, Boolean isReverse, DateTime refDate, Integer rowLimit, Integer offset,
-			String linkStatus) throws SvException {
+	public DbDataArray getObjectsByLinkedId(final Long LinkObjectId, final Long linkObjectTypeId1,
+			final DbDataObject dbLink, final Long linkObjectTypeId2, final Boolean isReverse, final DateTime refDate,
+			final Integer rowLimit, final Integer offset, final String linkStatus) throws SvException {
 		DbDataArray object = null; // to replace with db cache
 		if (dbLink != null) {
 			if (refDate == null)
-				object = DbCache.getObjectsByLinkedId(LinkObjectId, linkObjectTypeId1, dbLink.getObject_id(),
-						linkObjectTypeId2, linkStatus);
-			// sync at some point with getObjects by parentId
-			boolean shouldForceDbQuery = false;
-			if (object == null)
-				shouldForceDbQuery = true;
-			else {
-				if (object.size() < 1)
-					shouldForceDbQuery = true;
-				else {
-					DbDataObject firstObj = object.get(0);
-
-					if (firstObj.isGeometryType() && !firstObj.getHasGeometry())
-						shouldForceDbQuery = true;
-				}
+				object = usableCachedArray(DbCache.getObjectsByLinkedId(LinkObjectId, linkObjectTypeId1,
+						dbLink.getObject_id(), linkObjectTypeId2, linkStatus), false);
+
+			if (object == null) {
+				if (refDate == null) {
+					// concurrent misses for the same list are coalesced in a
+					// single database load
+					String key = DbCache.loadKey("L", linkObjectTypeId2, LinkObjectId, null) + "." + dbLink.getObject_id()
+							+ "." + isReverse + "." + linkStatus + "." + rowLimit + "." + offset;
+					object = DbCache.getSingleFlight().load(key, new SvSingleFlight.Loader<DbDataArray>() {
+						@Override
+						public DbDataArray load() throws SvException {
+							return getObjectsByLinkedIdImpl(LinkObjectId, linkObjectTypeId1, dbLink, linkObjectTypeId2,
+									isReverse, refDate, rowLimit, offset, linkStatus);
+						}
+					}, new SvSingleFlight.Loader<DbDataArray>() {
+						@Override
+						public DbDataArray load() throws SvException {
+							return usableCachedArray(DbCache.getObjectsByLinkedId(LinkObjectId, linkObjectTypeId1,
+									dbLink.getObject_id(), linkObjectTypeId2, linkStatus), true);
+						}
+					});
+				} else
+					object = getObjectsByLinkedIdImpl(LinkObjectId, linkObjectTypeId1, dbLink, linkObjectTypeId2,
+							isReverse, refDate, rowLimit, offset, linkStatus);
 			}
-
-			if (shouldForceDbQuery)
-				object = getObjectsByLinkedIdImpl(LinkObjectId, linkObjectTypeId1, dbLink, linkObjectTypeId2, isReverse,
-						refDate, rowLimit, offset, linkStatus);
 		}
 		return object;
 	}
@@ -1029,33 +1424,136 @@ public class SvReader extends SvCore {
 	 * @throws SvException
 	 *             Pass through exception from the underlying methods
 	 */
-	public DbDataArray getObjectsByParentId(Long parent_id, Long object_type, DateTime refDate, Integer rowLimit,
-			Integer offset, String sortByField) throws SvException {
+	public DbDataArray getObjectsByParentId(final Long parent_id, final Long object_type, DateTime refDate,
+			final Integer rowLimit, final Integer offset, String sortByField) throws SvException {
 		DbDataArray object = null;
 
-		if (refDate == null && isCfgInDb)
-			object = DbCache.getObjectsByParentId(parent_id, object_type);
-
-		// think about pulling this infron of the brackets #link
-		// getObjectsByLinkId
-		boolean shouldForceDbQuery = false;
-		if (object == null || object.size() == 0)
-			shouldForceDbQuery = true;
-		else {
-			if (object.size() < 1)
-				shouldForceDbQuery = true;
-			else {
-				DbDataObject firstObj = object.get(0);
+		if (refDate != null)
+			return getObjectsByParentIdHistory(parent_id, object_type, refDate, rowLimit, offset, sortByField);
+
+		if (isCfgInDb)
+			object = usableCachedArray(DbCache.getObjectsByParentId(parent_id, object_type), false);
+
+		if (object == null) {
+			SvSingleFlight.Loader<DbDataArray> loader = new SvSingleFlight.Loader<DbDataArray>() {
+				@Override
+				public DbDataArray load() throws SvException {
+					DbDataArray result = getObjects(
+							new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parent_id), getDbt(object_type),
+							null, rowLimit, offset);
+					DbCache.addArrayByParentId(result, object_type, parent_id);
+					return result;
+				}
+			};
+			// concurrent misses for the same list are coalesced in a single
+			// database load
+			if (isCfgInDb)
+				object = DbCache.getSingleFlight().load(
+						DbCache.loadKey("P", object_type, parent_id, null) + "." + rowLimit + "." + offset, loader,
+						new SvSingleFlight.Loader<DbDataArray>() {
+							@Override
+							public DbDataArray load() throws SvException {
+								return usableCachedArray(DbCache.getObjectsByParentId(parent_id, object_type), true);
+							}
+						});
+			else
+				object = loader.load();
+		}
+		if (sortByField != null && !sortByField.equals("")) {
+			object.getSortedItems(sortByField);
+		}
+		return object;
+	}
+
+	/**
+	 * Method to get a page of the children of a parent using keyset
+	 * pagination. The pages are always read from the database. See
+	 * {@link #getObjectsPage(DbSearch, Long, DateTime, Integer, String, String)}
+	 * 
+	 * @param parent_id
+	 *            The ID of the parent object
+	 * @param object_type
+	 *            The Id of the type of the child objects
+	 * @param refDate
+	 *            Reference date for which the fetch should be executed
+	 * @param pageSize
+	 *            Limit on the number of rows
+	 * @param sortField
+	 *            The field by which the pages are sorted ascending, or null to
+	 *            sort by object id only
+	 * @param pageToken
+	 *            The continuation token of the previous page, or null for the
+	 *            first page
+	 * @return The page of child objects
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	public DbDataArray getObjectsByParentIdPage(Long parent_id, Long object_type, DateTime refDate,
+			Integer pageSize, String sortField, String pageToken) throws SvException {
+		return getObjectsPage(new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parent_id), object_type,
+				refDate, pageSize, sortField, pageToken);
+	}
 
+	/**
+	 * Method for fetching the children of a parent at a reference date. For
+	 * cached object types, the full version history of the children is loaded
+	 * once and indexed by validity interval, so subsequent calls with any
+	 * reference date are served from the cache. Paged requests always go to the
+	 * database.
+	 * 
+	 * @param parent_id
+	 *            The ID of the parent object
+	 * @param object_type
+	 *            The Id of the type of the child objects
+	 * @param refDate
+	 *            Reference date for which the fetch should be executed
+	 * @param rowLimit
+	 *            Limit on the number of rows
+	 * @param offset
+	 *            Offset at which to start returning rows
+	 * @param sortByField
+	 *            the field name in the database which shall be used for sorting
+	 *            the result array
+	 * @return Array of objects saved as children for the parent object
+	 * @throws SvException
+	 *             Pass through exception from the underlying methods
+	 */
+	private DbDataArray getObjectsByParentIdHistory(final Long parent_id, final Long object_type,
+			final DateTime refDate, Integer rowLimit, Integer offset, String sortByField) throws SvException {
+		DbDataObject dbt = getDbt(object_type);
+		boolean useCache = isCfgInDb && dbt.getVal("use_cache") != null && (Boolean) dbt.getVal("use_cache")
+				&& (rowLimit == null || rowLimit == 0) && (offset == null || offset == 0);
+		DbDataArray object = null;
+		if (useCache) {
+			object = DbCache.getObjectsByParentId(parent_id, object_type, refDate);
+			if (object == null) {
+				SvSingleFlight.Loader<DbDataArray> cacheLookup = new SvSingleFlight.Loader<DbDataArray>() {
+					@Override
+					public DbDataArray load() throws SvException {
+						return DbCache.getObjectsByParentId(parent_id, object_type, refDate);
+					}
+				};
+				object = DbCache.getSingleFlight().load(DbCache.loadKey("H", object_type, parent_id, null),
+						new SvSingleFlight.Loader<DbDataArray>() {
+							@Override
+							public DbDataArray load() throws SvException {
+								DbDataArray versions = getObjectsHistory(
+										new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parent_id),
+										object_type, null, null);
+								DbCache.addHistoryByParentId(versions, object_type, parent_id);
+								return DbCache.getObjectsByParentId(parent_id, object_type, refDate);
+							}
+						}, cacheLookup);
+			}
+			if (object != null && object.size() > 0) {
+				DbDataObject firstObj = object.get(0);
 				if (firstObj.isGeometryType() && !firstObj.getHasGeometry())
-					shouldForceDbQuery = true;
+					object = null;
 			}
 		}
-		if (shouldForceDbQuery) {
-			object = getObjects(new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parent_id),
-					getDbt(object_type), refDate, rowLimit, offset);
-			DbCache.addArrayByParentId(object, object_type, parent_id);
-		}
+		if (object == null)
+			object = getObjects(new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parent_id), dbt, refDate,
+					rowLimit, offset);
 		if (sortByField != null && !sortByField.equals("")) {
 			object.getSortedItems(sortByField);
 		}
@@ -1143,4 +1641,168 @@ public class SvReader extends SvCore {
 		return result;
 	}
 
+	/**
+	 * Callback executing a read on the SvReader instance owned by an
+	 * asynchronous task
+	 *
+	 * @param <T> The type of the read result
+	 */
+	public interface AsyncRead<T> {
+		T read(SvReader reader) throws SvException;
+	}
+
+	/**
+	 * Method to execute a read asynchronously. The read runs on a separate
+	 * SvReader instance with the same user, session and security settings as
+	 * this instance, but with its own JDBC connection, which is released when
+	 * the read finishes. JDBC connections can't be used by two threads at the
+	 * same time, so the connection of this instance is never shared with the
+	 * task, which also means that the read doesn't see the uncommitted changes
+	 * of this instance.
+	 * 
+	 * @param read
+	 *            The read to be executed
+	 * @return The future which is completed with the result of the read or
+	 *         exceptionally with the exception thrown by the read
+	 */
+	public <T> CompletableFuture<T> readAsync(final AsyncRead<T> read) {
+		// the identity is captured on the calling thread, so a later user
+		// switch on this instance doesn't affect the submitted reads
+		final DbDataObject user = instanceUser;
+		final String sessionId = getSessionId();
+		final Boolean internal = isInternal;
+		final Boolean geometries = includeGeometries;
+		final boolean lazy = lazyGeometries;
+		final boolean eligible = replicaEligible;
+		return SvAsyncExecutor.submit(new Callable<T>() {
+			@Override
+			public T call() throws SvException {
+				SvReader reader = null;
+				try {
+					reader = new SvReader(user);
+					reader.coreSessionId = sessionId;
+					reader.isInternal = internal;
+					reader.includeGeometries = geometries;
+					reader.lazyGeometries = lazy;
+					reader.replicaEligible = eligible;
+					return read.read(reader);
+				} finally {
+					if (reader != null)
+						reader.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getObjects(DbSearch, Long, DateTime, Integer, Integer)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataArray> getObjectsAsync(final DbSearch dbSearch, final Long objectType,
+			final DateTime refDate, final Integer rowLimit, final Integer offset) {
+		return readAsync(new AsyncRead<DbDataArray>() {
+			@Override
+			public DbDataArray read(SvReader reader) throws SvException {
+				return reader.getObjects(dbSearch, objectType, refDate, rowLimit, offset);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link #getObjects(DbQuery, Integer, Integer)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataArray> getObjectsAsync(final DbQuery query, final Integer rowLimit,
+			final Integer offset) {
+		return readAsync(new AsyncRead<DbDataArray>() {
+			@Override
+			public DbDataArray read(SvReader reader) throws SvException {
+				return reader.getObjects(query, rowLimit, offset);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link #getObjectById(Long, Long, DateTime)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataObject> getObjectByIdAsync(final Long objectId, final Long objectType,
+			final DateTime refDate) {
+		return readAsync(new AsyncRead<DbDataObject>() {
+			@Override
+			public DbDataObject read(SvReader reader) throws SvException {
+				return reader.getObjectById(objectId, objectType, refDate);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getObjectsByIds(Collection, Long, DateTime)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataArray> getObjectsByIdsAsync(final Collection<Long> ids, final Long objectType,
+			final DateTime refDate) {
+		return readAsync(new AsyncRead<DbDataArray>() {
+			@Override
+			public DbDataArray read(SvReader reader) throws SvException {
+				return reader.getObjectsByIds(ids, objectType, refDate);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getObjectsByParentId(Long, Long, DateTime, Integer, Integer)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataArray> getObjectsByParentIdAsync(final Long parentId, final Long objectType,
+			final DateTime refDate, final Integer rowLimit, final Integer offset) {
+		return readAsync(new AsyncRead<DbDataArray>() {
+			@Override
+			public DbDataArray read(SvReader reader) throws SvException {
+				return reader.getObjectsByParentId(parentId, objectType, refDate, rowLimit, offset);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getObjectsByLinkedId(Long, Long, String, Long, Boolean, DateTime, Integer, Integer)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<DbDataArray> getObjectsByLinkedIdAsync(final Long linkObjectId,
+			final Long linkObjectTypeId1, final String linkCode, final Long linkObjectTypeId2,
+			final Boolean isReverse, final DateTime refDate, final Integer rowLimit, final Integer offset) {
+		return readAsync(new AsyncRead<DbDataArray>() {
+			@Override
+			public DbDataArray read(SvReader reader) throws SvException {
+				return reader.getObjectsByLinkedId(linkObjectId, linkObjectTypeId1, linkCode, linkObjectTypeId2,
+						isReverse, refDate, rowLimit, offset);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of {@link #getCount(DbSearch, Long, DateTime)}
+	 * 
+	 * @return The future of the result, see {@link #readAsync(AsyncRead)}
+	 */
+	public CompletableFuture<Long> getCountAsync(final DbSearch dbSearch, final Long objectType,
+			final DateTime refDate) {
+		return readAsync(new AsyncRead<Long>() {
+			@Override
+			public Long read(SvReader reader) throws SvException {
+				return reader.getCount(dbSearch, objectType, refDate);
+			}
+		});
+	}
+
 }
@@ -14,10 +14,16 @@
  *******************************************************************************/
 package com.prtech.svarog;
 
-import java.util.ArrayDeque;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import org.joda.time.DateTime;
 
 import com.prtech.svarog_common.DbDataArray;
@@ -29,6 +35,8 @@ import com.prtech.svarog_common.DbSearchCriterion;
 import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
 import com.prtech.svarog_common.DbSearchExpression;
 import com.prtech.svarog_common.ISvOnSave;
+import com.prtech.svarog_common.SvCharId;
+import com.prtech.svarog_common.DbSearch.DbLogicOperand;
 import com.prtech.svarog_common.DbQueryObject.DbJoinType;
 import com.prtech.svarog_common.DbQueryObject.LinkType;
 
@@ -63,7 +71,7 @@ public class SvRelationCache {
 			// in progress
 			if (cache.isRoot() && !cache.isCacheDirty)
 				if (cache.shouldInvalidateCache(dbo))
-					cache.invalidateCache();
+					cache.addChange(dbo);
 		}
 
 		SvRelationCacheCallback(SvRelationCache cache) {
@@ -82,6 +90,18 @@ public class SvRelationCache {
 	 * refreshed
 	 */
 	boolean isCacheDirty = true;
+	/**
+	 * Maximum number of root objects which are reloaded incrementally. If more
+	 * root objects are affected by the changes, the full set is reloaded
+	 */
+	static final int MAX_DELTA_ROOTS = 50;
+
+	/**
+	 * Snapshots of the objects saved since the cached items were loaded, which
+	 * are not yet applied to the cached items
+	 */
+	final ConcurrentLinkedQueue<DbDataObject> pendingChanges = new ConcurrentLinkedQueue<DbDataObject>();
+
 	/**
 	 * Local variable holding the callback instance used for cleanup
 	 */
@@ -105,6 +125,25 @@ public class SvRelationCache {
 		isCacheDirty = true;
 	}
 
+	/**
+	 * Method to register a saved object which affects the cached items. The
+	 * change is applied on the next {@link #getData(SvCore)}, by reloading only
+	 * the rows of the affected root objects. A snapshot of the object is kept,
+	 * so later changes to the instance which are not saved aren't applied.
+	 * 
+	 * @param dbo
+	 *            The saved object
+	 */
+	void addChange(DbDataObject dbo) {
+		DbDataObject snapshot = new DbDataObject();
+		snapshot.setObjectId(dbo.getObjectId());
+		snapshot.setObjectType(dbo.getObjectType());
+		snapshot.setParentId(dbo.getParentId());
+		for (Entry<SvCharId, Object> entry : dbo.getValuesMap().entrySet())
+			snapshot.setVal(entry.getKey(), entry.getValue());
+		pendingChanges.add(snapshot);
+	}
+
 	/**
 	 * The descriptor of the right hand side relation
 	 */
@@ -195,9 +234,21 @@ public class SvRelationCache {
 	Boolean isReturnType = true;
 
 	/**
-	 * Map holding all object Ids in the complex relation
+	 * Map holding the sets of object Ids in the complex relation by object
+	 * alias
+	 */
+	HashMap<String, SvLongSet> objectIdMap = new HashMap<String, SvLongSet>();
+
+	/**
+	 * Columns of the cached rows (alias_FIELD_NAME) by which the rows are
+	 * indexed
 	 */
-	HashMap<String, ArrayDeque<Long>> objectIdMap = new HashMap<String, ArrayDeque<Long>>();
+	final ArrayList<String> indexedColumns = new ArrayList<String>();
+
+	/**
+	 * Indexes of the cached rows by column and value
+	 */
+	HashMap<String, HashMap<Object, DbDataArray>> rowIndexes = new HashMap<String, HashMap<Object, DbDataArray>>();
 
 	public SvRelationCache(DbDataObject dbt, DbSearchCriterion search, String objectAlias, LinkType relationToParent,
 			String denormFieldName, DbDataObject dblt, DateTime referenceDate) throws SvException {
@@ -345,7 +396,7 @@ public class SvRelationCache {
 		boolean shouldInvalidate = false;
 		if (dbo.getObject_type().equals(dbt.getObject_id())) {
 			// if the object is mapped in the result set always invalidate
-			ArrayDeque<Long> ids = getRoot().objectIdMap.get(objectAlias);
+			SvLongSet ids = getRoot().objectIdMap.get(objectAlias);
 			if (ids != null) {
 				if (ids.contains(dbo.getObject_id()))
 					shouldInvalidate = true;
@@ -364,7 +415,7 @@ public class SvRelationCache {
 				if (relationToParent.equals(LinkType.DBLINK_REVERSE))
 					lhsObjectId = (Long) dbo.getVal("link_obj_id_2");
 
-				ArrayDeque<Long> oList = getRoot().objectIdMap.get(parent.objectAlias);
+				SvLongSet oList = getRoot().objectIdMap.get(parent.objectAlias);
 				// check if there's a map at all, the cache might be in the
 				// process of refresh
 				if (oList != null)
@@ -425,10 +476,12 @@ public class SvRelationCache {
 
 	DbQueryObject buildDQO(SvRelationCache cache, boolean traverseChildren, SvRelationCache rootCache)
 			throws SvException {
-		if (cache == this)
-			rootCache.objectIdMap.clear();
-
-		rootCache.objectIdMap.put(cache.objectAlias, new ArrayDeque<Long>());
+		// the object id map is reset only if the query loads the full set
+		if (rootCache != null) {
+			if (cache == this)
+				rootCache.objectIdMap.clear();
+			rootCache.objectIdMap.put(cache.objectAlias, new SvLongSet());
+		}
 		DbSearch qSearch = cache.search;
 		if (cache.searchExt != null && cache.search != null) {
 			qSearch = new DbSearchExpression().addDbSearchItem(cache.search).addDbSearchItem(cache.searchExt);
@@ -479,10 +532,10 @@ public class SvRelationCache {
 		DbQueryObject currentDqo = buildDQO(false);
 		objectIdMap.clear();
 		dqe.addItem(currentDqo);
-		objectIdMap.put(this.objectAlias, new ArrayDeque<Long>());
+		objectIdMap.put(this.objectAlias, new SvLongSet());
 		if (cacheList.size() > 0) {
 			SvRelationCache cache = cacheList.get(0);
-			objectIdMap.put(cache.objectAlias, new ArrayDeque<Long>());
+			objectIdMap.put(cache.objectAlias, new SvLongSet());
 			DbQueryExpression tmpDq = cache.buildDQE();
 			LinkedList<DbQueryObject> dqos = tmpDq.getItems();
 			// DbQueryObject firstDqo = dqos.getFirst();
@@ -507,37 +560,48 @@ public class SvRelationCache {
 		return parent == null;
 	}
 
+	/**
+	 * Method to get the cached rows, loading them if the cache is dirty or
+	 * applying the pending changes. After the changes are applied the rows of
+	 * the existing root objects keep their load order, while the rows of new
+	 * root objects are appended at the end, so callers must not rely on the
+	 * position of newly added rows.
+	 * 
+	 * @param core
+	 *            The SvCore instance used to load the data if needed
+	 * @return The array of cached rows
+	 * @throws SvException
+	 *             Pass through exception from the database load
+	 */
 	public DbDataArray getData(SvCore core) throws SvException {
-		if (!isCacheDirty)
+		if (!isCacheDirty && pendingChanges.isEmpty())
 			return cachedItems;
 
 		synchronized (this) {
 			// if the cache was already refreshed while we were waiting for the
 			// lock just return the set
-			if (!isCacheDirty)
-				return cachedItems;
+			if (!isCacheDirty) {
+				// the pending changes are drained by applyChanges, so if the
+				// delta load fails the full set must be reloaded next time
+				boolean applied = false;
+				try {
+					applied = pendingChanges.isEmpty() || applyChanges(core);
+				} finally {
+					if (!applied)
+						isCacheDirty = true;
+				}
+				if (applied)
+					return cachedItems;
+			}
+			pendingChanges.clear();
 
 			// do the actual loading
 			SvReader svr = null;
 			try {
 				svr = new SvReader(core);
 				cachedItems = svr.getObjects(buildReverseDQE(), 0, 0);
-				String[][] keys = new String[objectIdMap.keySet().size()][2];
-				int i = 0;
-				for (String key : objectIdMap.keySet()) {
-					keys[i][0] = key;
-					keys[i][1] = key + "_OBJECT_ID";
-					i++;
-				}
-				for (DbDataObject dbo : cachedItems.getItems()) {
-					for (String[] key : keys) {
-						Long oid = (Long) dbo.getVal(key[1]);
-						ArrayDeque<Long> cArr = objectIdMap.get(key[0]);
-						if (oid != null && !cArr.contains(oid))
-							cArr.add(oid);
-					}
-
-				}
+				indexObjectIds(cachedItems, objectIdMap);
+				rowIndexes = indexRows(cachedItems, indexedColumns);
 			} finally {
 				if (svr != null)
 					svr.release();
@@ -547,6 +611,372 @@ public class SvRelationCache {
 		}
 	}
 
+	/**
+	 * Method to register the object ids of all nodes found in the items in the
+	 * map of object ids
+	 * 
+	 * @param items
+	 *            The items loaded from the database
+	 * @param idMap
+	 *            The map of object ids by object alias, which must contain the
+	 *            aliases of all nodes
+	 */
+	static void indexObjectIds(DbDataArray items, HashMap<String, SvLongSet> idMap) {
+		String[][] keys = new String[idMap.keySet().size()][2];
+		int i = 0;
+		for (String key : idMap.keySet()) {
+			keys[i][0] = key;
+			keys[i][1] = key + "_OBJECT_ID";
+			i++;
+		}
+		for (DbDataObject dbo : items.getItems()) {
+			for (String[] key : keys) {
+				Long oid = (Long) dbo.getVal(key[1]);
+				if (oid != null)
+					idMap.get(key[0]).add(oid);
+			}
+		}
+	}
+
+	/**
+	 * Method to apply the pending changes to the cached items. The rows of the
+	 * root objects affected by the changes are loaded again from the database
+	 * and merged in the cached rows, while the other rows are kept.
+	 * 
+	 * @param core
+	 *            The SvCore instance used to load the affected rows
+	 * @return False if the changes can't be applied locally and the full set
+	 *         should be reloaded
+	 * @throws SvException
+	 *             Pass through exception from the database load
+	 */
+	boolean applyChanges(SvCore core) throws SvException {
+		HashSet<Long> rootIds = new HashSet<Long>();
+		DbDataObject change;
+		while ((change = pendingChanges.poll()) != null)
+			if (!collectAffectedRoots(change, rootIds) || rootIds.size() > MAX_DELTA_ROOTS)
+				return false;
+		if (rootIds.isEmpty())
+			return true;
+
+		DbDataArray items = null;
+		SvReader svr = null;
+		try {
+			svr = new SvReader(core);
+			DbDataArray delta = svr.getObjects(buildDeltaDQE(rootIds), 0, 0);
+			items = mergeDelta(cachedItems, delta, objectAlias + "_OBJECT_ID", rootIds);
+		} finally {
+			if (svr != null)
+				svr.release();
+		}
+		HashMap<String, SvLongSet> idMap = new HashMap<String, SvLongSet>();
+		for (String alias : objectIdMap.keySet())
+			idMap.put(alias, new SvLongSet());
+		indexObjectIds(items, idMap);
+		rowIndexes = indexRows(items, indexedColumns);
+		cachedItems = items;
+		objectIdMap = idMap;
+		return true;
+	}
+
+	/**
+	 * Method to merge the reloaded rows of the affected root objects in the
+	 * cached rows. The reloaded rows of a root object take the place of its
+	 * first cached row, so the load order of the existing root objects is
+	 * kept, while the rows of new root objects are appended at the end. A new
+	 * array is returned since the readers might iterate the cached one.
+	 * 
+	 * @param cached
+	 *            The currently cached rows
+	 * @param delta
+	 *            The rows of the affected root objects loaded from the database
+	 * @param rootKey
+	 *            The name of the column holding the object id of the root
+	 * @param rootIds
+	 *            The object ids of the affected root objects
+	 * @return The merged array of rows
+	 */
+	static DbDataArray mergeDelta(DbDataArray cached, DbDataArray delta, String rootKey, HashSet<Long> rootIds) {
+		LinkedHashMap<Object, List<DbDataObject>> deltaRows = new LinkedHashMap<Object, List<DbDataObject>>();
+		for (DbDataObject row : delta.getItems()) {
+			List<DbDataObject> rows = deltaRows.get(row.getVal(rootKey));
+			if (rows == null) {
+				rows = new ArrayList<DbDataObject>();
+				deltaRows.put(row.getVal(rootKey), rows);
+			}
+			rows.add(row);
+		}
+		DbDataArray items = new DbDataArray();
+		for (DbDataObject row : cached.getItems()) {
+			Object rootId = row.getVal(rootKey);
+			if (!rootIds.contains(rootId))
+				items.addDataItem(row);
+			else {
+				// the root rows are removed from the map once placed
+				List<DbDataObject> rows = deltaRows.remove(rootId);
+				if (rows != null)
+					for (DbDataObject deltaRow : rows)
+						items.addDataItem(deltaRow);
+			}
+		}
+		for (List<DbDataObject> rows : deltaRows.values())
+			for (DbDataObject deltaRow : rows)
+				items.addDataItem(deltaRow);
+		return items;
+	}
+
+	/**
+	 * Method to declare an index of the cached rows by the value of a field of
+	 * one of the nodes. The indexed rows can be fetched by
+	 * {@link #getDataByKey(SvCore, String, String, Object)} without scanning
+	 * the full set.
+	 * 
+	 * @param alias
+	 *            The object alias of the node
+	 * @param fieldName
+	 *            The name of the field of the node
+	 */
+	public void addIndex(String alias, String fieldName) {
+		SvRelationCache rootCache = getRoot();
+		String column = (alias + "_" + fieldName).toUpperCase();
+		synchronized (rootCache) {
+			if (!rootCache.indexedColumns.contains(column)) {
+				rootCache.indexedColumns.add(column);
+				if (!rootCache.isCacheDirty && rootCache.cachedItems != null)
+					rootCache.rowIndexes = indexRows(rootCache.cachedItems, rootCache.indexedColumns);
+			}
+		}
+	}
+
+	/**
+	 * Method to get the cached rows in which a field of a node has a specific
+	 * value, using an index declared by {@link #addIndex(String, String)}
+	 * 
+	 * @param core
+	 *            The SvCore instance used to load the data if needed
+	 * @param alias
+	 *            The object alias of the node
+	 * @param fieldName
+	 *            The name of the field of the node
+	 * @param value
+	 *            The value of the field
+	 * @return The array of matching rows, empty if there is no match
+	 * @throws SvException
+	 *             If the index isn't declared or pass through exception from
+	 *             the loading of the data
+	 */
+	public DbDataArray getDataByKey(SvCore core, String alias, String fieldName, Object value)
+			throws SvException {
+		SvRelationCache rootCache = getRoot();
+		String column = (alias + "_" + fieldName).toUpperCase();
+		rootCache.getData(core);
+		HashMap<Object, DbDataArray> index = rootCache.rowIndexes.get(column);
+		if (index == null)
+			throw (new SvException("system.error.relation_cache_no_index", svCONST.systemUser, null, column));
+		DbDataArray rows = index.get(indexKey(value));
+		return rows != null ? rows : new DbDataArray();
+	}
+
+	/**
+	 * Method to build the indexes of the rows by the values of the indexed
+	 * columns
+	 * 
+	 * @param items
+	 *            The cached rows
+	 * @param columns
+	 *            The indexed columns
+	 * @return Map of indexes by column name
+	 */
+	static HashMap<String, HashMap<Object, DbDataArray>> indexRows(DbDataArray items, List<String> columns) {
+		HashMap<String, HashMap<Object, DbDataArray>> indexes = new HashMap<String, HashMap<Object, DbDataArray>>();
+		for (String column : columns) {
+			HashMap<Object, DbDataArray> index = new HashMap<Object, DbDataArray>();
+			for (DbDataObject row : items.getItems()) {
+				Object key = indexKey(row.getVal(column));
+				DbDataArray rows = index.get(key);
+				if (rows == null) {
+					rows = new DbDataArray();
+					index.put(key, rows);
+				}
+				rows.addDataItem(row);
+			}
+			indexes.put(column, index);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Method to normalise a value used as index key. Numbers are indexed by
+	 * value, since the query may return them in a different type than the one
+	 * used for the lookup.
+	 * 
+	 * @param value
+	 *            The value of the field
+	 * @return The key in the index
+	 */
+	static Object indexKey(Object value) {
+		if (value instanceof Number)
+			return new BigDecimal(value.toString()).stripTrailingZeros();
+		return value;
+	}
+
+	/**
+	 * Method to build the reverse DbQueryExpression limited to a set of root
+	 * objects
+	 * 
+	 * @param rootIds
+	 *            The object ids of the root objects
+	 * @return The DbQueryExpression loading only the rows of the root objects
+	 * @throws SvException
+	 *             Any thrown exception is forwarded
+	 */
+	DbQueryExpression buildDeltaDQE(HashSet<Long> rootIds) throws SvException {
+		DbQueryObject rootDqo = buildDQO(this, true, null);
+		DbSearchExpression idSearch = new DbSearchExpression();
+		for (Long rootId : rootIds)
+			idSearch.addDbSearchItem(new DbSearchCriterion(Sv.OBJECT_ID, DbCompareOperand.EQUAL, rootId,
+					DbLogicOperand.OR));
+		DbSearchExpression dbx = new DbSearchExpression();
+		if (rootDqo.getSearch() != null)
+			dbx.addDbSearchItem(rootDqo.getSearch());
+		dbx.addDbSearchItem(idSearch);
+		rootDqo.setSearch(dbx);
+		DbQueryExpression dqe = new DbQueryExpression();
+		dqe.setIsReverseExpression(true);
+		dqe.setRootQueryObject(rootDqo);
+		return dqe;
+	}
+
+	/**
+	 * Method to find the root objects whose rows are affected by a saved
+	 * object. A saved root object affects only its own rows. A saved object of
+	 * another node affects the rows in which it is already present, as long as
+	 * the fields used to join it to the other nodes weren't changed.
+	 * 
+	 * @param change
+	 *            The snapshot of the saved object
+	 * @param rootIds
+	 *            The set to which the affected root object ids are added
+	 * @return False if the affected rows can't be determined and the full set
+	 *         should be reloaded
+	 */
+	boolean collectAffectedRoots(DbDataObject change, HashSet<Long> rootIds) {
+		if (!isReturnType || change.getObjectType().equals(svCONST.OBJECT_TYPE_LINK))
+			return false;
+		if (change.getObjectType().equals(dbt.getObjectId()))
+			rootIds.add(change.getObjectId());
+		return collectAffectedRoots(this, change, rootIds);
+	}
+
+	/**
+	 * Method to find the root objects affected by a saved object in the
+	 * children of a node
+	 * 
+	 * @param node
+	 *            The node whose children should be checked
+	 * @param change
+	 *            The snapshot of the saved object
+	 * @param rootIds
+	 *            The set to which the affected root object ids are added
+	 * @return False if the full set should be reloaded
+	 */
+	private boolean collectAffectedRoots(SvRelationCache node, DbDataObject change, HashSet<Long> rootIds) {
+		for (SvRelationCache child : node.cacheList) {
+			if (change.getObjectType().equals(child.dbt.getObjectId()) && !child.addAffectedRoots(change, rootIds))
+				return false;
+			if (!collectAffectedRoots(child, change, rootIds))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Method to add the root objects of the rows affected by a saved object of
+	 * the type of this (non root) node
+	 * 
+	 * @param change
+	 *            The snapshot of the saved object
+	 * @param rootIds
+	 *            The set to which the affected root object ids are added
+	 * @return False if the full set should be reloaded
+	 */
+	boolean addAffectedRoots(DbDataObject change, HashSet<Long> rootIds) {
+		if (!isReturnType)
+			return false;
+		SvRelationCache rootCache = getRoot();
+		String rootKey = rootCache.objectAlias + "_OBJECT_ID";
+		SvLongSet ids = rootCache.objectIdMap.get(objectAlias);
+		if (ids != null && ids.contains(change.getObjectId())) {
+			String idKey = objectAlias + "_OBJECT_ID";
+			for (DbDataObject row : rootCache.cachedItems.getItems())
+				if (change.getObjectId().equals(row.getVal(idKey))) {
+					if (isRelationChanged(row, change))
+						return false;
+					rootIds.add((Long) row.getVal(rootKey));
+				}
+		} else if (LinkType.PARENT.equals(relationToParent)) {
+			// a new child joins the rows of its parent
+			if (!parent.isReturnType)
+				return false;
+			String parentKey = parent.objectAlias + "_OBJECT_ID";
+			for (DbDataObject row : rootCache.cachedItems.getItems())
+				if (change.getParentId().equals(row.getVal(parentKey)))
+					rootIds.add((Long) row.getVal(rootKey));
+		} else if (isSearchMatched(change))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Method to check if a saved object changed any of the fields used to join
+	 * it to the other nodes or to filter it
+	 * 
+	 * @param row
+	 *            The cached row containing the object
+	 * @param change
+	 *            The snapshot of the saved object
+	 * @return True if any of the relation fields has changed
+	 */
+	boolean isRelationChanged(DbDataObject row, DbDataObject change) {
+		ArrayList<String> fields = new ArrayList<String>();
+		fields.add(Sv.PARENT_ID);
+		fields.add(denormFieldName);
+		fields.add(denormPreviousFieldName);
+		fields.add(search != null ? search.getFieldName() : null);
+		fields.add(searchExt != null ? searchExt.getFieldName() : null);
+		for (SvRelationCache child : cacheList) {
+			fields.add(child.denormFieldName);
+			fields.add(child.denormPreviousFieldName);
+		}
+		for (String field : fields) {
+			if (field == null || Sv.OBJECT_ID.equalsIgnoreCase(field))
+				continue;
+			Object current = Sv.PARENT_ID.equalsIgnoreCase(field) ? change.getParentId() : change.getVal(field);
+			if (!isSameValue(row.getVal(objectAlias + "_" + field.toUpperCase()), current))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method to compare a value read by the complex query with the value of the
+	 * saved object. Numbers are compared by value, since the query may return
+	 * them in a different type.
+	 * 
+	 * @param cached
+	 *            The value in the cached row
+	 * @param current
+	 *            The value of the saved object
+	 * @return True if the values are equal
+	 */
+	static boolean isSameValue(Object cached, Object current) {
+		if (cached == null || current == null)
+			return cached == current;
+		if (cached instanceof Number && current instanceof Number)
+			return new BigDecimal(cached.toString()).compareTo(new BigDecimal(current.toString())) == 0;
+		return cached.equals(current);
+	}
+
 	public SvRelationCache(DbDataObject dbt, DbSearchCriterion search, String objectAlias) throws SvException {
 		this(dbt, search, objectAlias, null, null, null, null);
 	}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.MissingResourceException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Routing of the reads to the optional read replica. The SvReader instances
+ * which aren't chained to a writing core read from the replica, unless:
+ * <ul>
+ * <li>there is no replica configured,</li>
+ * <li>the replication lag is over sys.replica.max_lag seconds or the replica
+ * is unreachable,</li>
+ * <li>the session of the reader wrote to the database in the last
+ * sys.replica.sticky_time seconds, so users always see their own
+ * writes.</li>
+ * </ul>
+ * The replication lag is measured by the REPLICA_LAG query of the SQL
+ * keywords, at most once every sys.replica.check_interval seconds. The
+ * measurement runs on a background thread, so no connection acquisition ever
+ * waits for the replica. Until the first measurement completes the reads are
+ * routed to the primary.
+ */
+final class SvReplica {
+
+	private static final Logger log4j = SvConf.getLogger(SvReplica.class);
+
+	/**
+	 * The sessions which wrote to the database recently, they expire after
+	 * the sticky time
+	 */
+	private static final Cache<String, Boolean> stickySessions = CacheBuilder.newBuilder()
+			.expireAfterWrite(Math.max(1, SvConf.getReplicaStickyTime()), TimeUnit.SECONDS).build();
+
+	/**
+	 * Flag if the replica lag is below the threshold
+	 */
+	private static volatile boolean healthy = false;
+
+	/**
+	 * Time of the last lag check in milliseconds
+	 */
+	private static volatile long lastCheck = 0L;
+
+	/**
+	 * Flag to ensure only one thread checks the lag at a time
+	 */
+	private static final AtomicBoolean checking = new AtomicBoolean(false);
+
+	private SvReplica() {
+	}
+
+	/**
+	 * Method to check if a replica is configured
+	 * 
+	 * @return True if there is a replica data source
+	 */
+	static boolean isConfigured() {
+		return SvConf.getReplicaDataSource() != null;
+	}
+
+	/**
+	 * Method to decide if a reader should use the replica
+	 * 
+	 * @param sessionId The session of the reader, or null
+	 * @return True if the reads should be routed to the replica
+	 */
+	static boolean route(String sessionId) {
+		return route(sessionId, isConfigured());
+	}
+
+	/**
+	 * Method to decide if a reader should use the replica
+	 * 
+	 * @param sessionId  The session of the reader, or null
+	 * @param configured Flag if there is a replica configured
+	 * @return True if the reads should be routed to the replica
+	 */
+	static boolean route(String sessionId, boolean configured) {
+		if (!configured)
+			return false;
+		if (sessionId != null && stickySessions.getIfPresent(sessionId) != null)
+			return false;
+		return isHealthy();
+	}
+
+	/**
+	 * Method to register a write of a session, so the reads of the session
+	 * are routed to the primary database for the sticky time
+	 * 
+	 * @param sessionId The session which wrote to the database
+	 */
+	static void markWrite(String sessionId) {
+		markWrite(sessionId, isConfigured());
+	}
+
+	/**
+	 * Method to register a write of a session, so the reads of the session
+	 * are routed to the primary database for the sticky time
+	 * 
+	 * @param sessionId  The session which wrote to the database
+	 * @param configured Flag if there is a replica configured
+	 */
+	static void markWrite(String sessionId, boolean configured) {
+		if (sessionId != null && configured)
+			stickySessions.put(sessionId, Boolean.TRUE);
+	}
+
+	/**
+	 * Method to check if the replication lag is below the threshold. The
+	 * result of the last check is returned immediately. If the check interval
+	 * has passed, a new measurement is started on a background thread, so the
+	 * caller never waits for the replica.
+	 * 
+	 * @return True if the replica can be used
+	 */
+	static boolean isHealthy() {
+		long now = System.currentTimeMillis();
+		if (now - lastCheck >= SvConf.getReplicaCheckInterval() * 1000L && checking.compareAndSet(false, true)) {
+			try {
+				Thread checker = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							updateHealth(getLag());
+						} finally {
+							checking.set(false);
+						}
+					}
+				});
+				checker.setName("svarog-replica-lag");
+				checker.setDaemon(true);
+				checker.start();
+			} catch (RuntimeException e) {
+				checking.set(false);
+				log4j.error("Can't start the read replica lag check", e);
+			}
+		}
+		return healthy;
+	}
+
+	/**
+	 * Method to update the health of the replica with a measured lag
+	 * 
+	 * @param lag The lag in seconds, infinite if the replica is unreachable
+	 */
+	static void updateHealth(double lag) {
+		healthy = lag <= SvConf.getReplicaMaxLag();
+		lastCheck = System.currentTimeMillis();
+		if (!healthy)
+			log4j.warn("Read replica lag of " + lag + " seconds is over the threshold, reading from primary");
+	}
+
+	/**
+	 * Method to measure the replication lag
+	 * 
+	 * @return The lag in seconds, infinite if the replica is unreachable or 0
+	 *         if the lag can't be measured for the database type
+	 */
+	static double getLag() {
+		String sql;
+		try {
+			sql = SvConf.getSqlkw().getString("REPLICA_LAG");
+		} catch (MissingResourceException e) {
+			return 0;
+		}
+		Connection conn = null;
+		Statement st = null;
+		ResultSet rs = null;
+		try {
+			conn = SvConf.getReplicaConnection();
+			st = conn.createStatement();
+			rs = st.executeQuery(sql);
+			return rs.next() ? rs.getDouble(1) : 0;
+		} catch (Exception e) {
+			log4j.error("Can't measure the read replica lag", e);
+			return Double.POSITIVE_INFINITY;
+		} finally {
+			try {
+				SvCore.closeResource(rs, svCONST.systemUser);
+				SvCore.closeResource(st, svCONST.systemUser);
+				SvCore.closeResource(conn, svCONST.systemUser);
+			} catch (SvException e) {
+				log4j.error("Error releasing the replica lag connection", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbQuery;
+import com.prtech.svarog_common.DbQueryExpression;
+import com.prtech.svarog_common.SvCharId;
+
+/**
+ * Mapping of the columns of a result set to the fields of the returned
+ * objects. The plan is computed once from the result set metadata, so mapping
+ * a row doesn't need any column name processing, field descriptor lookups or
+ * metadata calls.
+ */
+final class SvRowPlan {
+
+	/**
+	 * Repo columns in the order of the slots in {@link #repoCols}
+	 */
+	static final String[] REPO_COLUMNS = { "PKID", "OBJECT_ID", "DT_INSERT", "DT_DELETE", "PARENT_ID",
+			"OBJECT_TYPE", "STATUS", "USER_ID" };
+
+	static final int PKID = 0;
+	static final int OBJECT_ID = 1;
+	static final int DT_INSERT = 2;
+	static final int DT_DELETE = 3;
+	static final int PARENT_ID = 4;
+	static final int OBJECT_TYPE = 5;
+	static final int STATUS = 6;
+	static final int USER_ID = 7;
+
+	/**
+	 * The type descriptor of the returned objects, null for untyped queries
+	 */
+	final DbDataObject returnType;
+
+	/**
+	 * The effective column prefix, including the return type sequence
+	 */
+	final String tblPrefix;
+
+	/**
+	 * Flag if the repo data of the object should be set from the row
+	 */
+	final boolean setRepoData;
+
+	final int columnCount;
+
+	/**
+	 * Field id per column (1 based), null for repo columns of typed queries
+	 */
+	final SvCharId[] fieldIds;
+
+	/**
+	 * Field name per column (1 based), used by untyped queries
+	 */
+	final String[] fieldNames;
+
+	/**
+	 * Field descriptor per column (1 based), if the field has one
+	 */
+	final DbDataObject[] fieldDescs;
+
+	/**
+	 * Svarog field type per column (1 based)
+	 */
+	final String[] fieldTypes;
+
+	/**
+	 * The JDBC type per column (1 based)
+	 */
+	final int[] sqlTypes;
+
+	/**
+	 * The numeric scale per column (1 based)
+	 */
+	final int[] scales;
+
+	/**
+	 * Flag per column (1 based) if the value needs post processing (multi
+	 * select or label fields)
+	 */
+	final boolean[] postProcess;
+
+	/**
+	 * Column index of each repo field, or null if any of them is missing in the
+	 * result set, in which case the repo data is read by column name
+	 */
+	final int[] repoCols;
+
+	/**
+	 * Flag if non-geometry fields of the return type are missing in the result
+	 * set, so the objects are partial
+	 */
+	final boolean partial;
+
+	/**
+	 * Method to compute the plan for a result set
+	 * 
+	 * @param tblPrefix The column prefix used in the query. MUST BE UPPERCASED!!!
+	 * @param query     The query which was executed
+	 * @param rsmt      The metadata of the result set
+	 * @param fields    The field descriptors of the return type by field id, null
+	 *                  for untyped queries
+	 * @throws SQLException Any exception from reading the metadata
+	 */
+	SvRowPlan(String tblPrefix, DbQuery query, ResultSetMetaData rsmt, Map<SvCharId, Object> fields)
+			throws SQLException {
+		boolean isExpression = query instanceof DbQueryExpression;
+		boolean isReverse = isExpression ? ((DbQueryExpression) query).getIsReverseExpression() : false;
+		this.returnType = query.getReturnType();
+		if (returnType != null && !isReverse)
+			tblPrefix = tblPrefix + query.getReturnTypeSequence();
+		this.tblPrefix = tblPrefix;
+		this.setRepoData = returnType != null && (!isExpression || query.getReturnTypes().size() == 1);
+		this.columnCount = rsmt.getColumnCount();
+		this.fieldIds = new SvCharId[columnCount + 1];
+		this.fieldNames = new String[columnCount + 1];
+		this.fieldDescs = new DbDataObject[columnCount + 1];
+		this.fieldTypes = new String[columnCount + 1];
+		this.sqlTypes = new int[columnCount + 1];
+		this.scales = new int[columnCount + 1];
+		this.postProcess = new boolean[columnCount + 1];
+
+		int[] repo = new int[REPO_COLUMNS.length];
+		int mappedFields = 0;
+		for (int colIndex = 1; colIndex <= columnCount; colIndex++) {
+			String fieldName = rsmt.getColumnName(colIndex).toUpperCase();
+			sqlTypes[colIndex] = rsmt.getColumnType(colIndex);
+			if (sqlTypes[colIndex] == java.sql.Types.NUMERIC)
+				scales[colIndex] = rsmt.getScale(colIndex);
+			if (returnType != null) {
+				fieldName = fieldName.substring(tblPrefix.length() + 1);
+				// repo columns are read into the object metadata
+				if (svCONST.repoFieldNames.indexOf(fieldName) >= 0) {
+					int repoIdx = repoIndex(fieldName);
+					if (repoIdx >= 0)
+						repo[repoIdx] = colIndex;
+					continue;
+				}
+				fieldIds[colIndex] = new SvCharId(fieldName);
+				DbDataObject dbf = fields != null ? (DbDataObject) fields.get(fieldIds[colIndex]) : null;
+				fieldDescs[colIndex] = dbf;
+				if (dbf != null) {
+					if (!Sv.GEOMETRY.equals(dbf.getVal(Sv.FIELD_TYPE)))
+						mappedFields++;
+					fieldTypes[colIndex] = (String) dbf.getVal(Sv.FIELD_TYPE);
+					postProcess[colIndex] = isTrue(dbf.getVal(Sv.SV_MULTISELECT))
+							|| (isTrue(dbf.getVal(Sv.SV_ISLABEL)) && isTrue(dbf.getVal(Sv.SV_LOADLABEL)));
+				}
+			} else
+				fieldNames[colIndex] = fieldName.replace(tblPrefix + "_", "");
+		}
+		boolean hasAllRepo = true;
+		for (int idx : repo)
+			hasAllRepo = hasAllRepo && idx > 0;
+		this.repoCols = hasAllRepo ? repo : null;
+		this.partial = setRepoData && fields != null && mappedFields < countFields(fields);
+	}
+
+	/**
+	 * Method to count the non-geometry fields of a type, excluding the PKID
+	 * which has no field descriptor in the field map
+	 * 
+	 * @param fields The field descriptors of the type
+	 * @return The number of fields
+	 */
+	private static int countFields(Map<SvCharId, Object> fields) {
+		int count = 0;
+		for (Object dbf : fields.values())
+			if (dbf != null && !Sv.GEOMETRY.equals(((DbDataObject) dbf).getVal(Sv.FIELD_TYPE)))
+				count++;
+		return count;
+	}
+
+	/**
+	 * Method to find the repo slot of a field name
+	 * 
+	 * @param fieldName The name of the field, without prefix
+	 * @return The slot in {@link #REPO_COLUMNS} or -1 if the field has no slot
+	 */
+	private static int repoIndex(String fieldName) {
+		for (int i = 0; i < REPO_COLUMNS.length; i++)
+			if (REPO_COLUMNS[i].equals(fieldName))
+				return i;
+		return -1;
+	}
+
+	private static boolean isTrue(Object value) {
+		return value != null && (Boolean) value;
+	}
+}
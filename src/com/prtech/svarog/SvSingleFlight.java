@@ -0,0 +1,124 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent cache misses for the same key into a single database
+ * load. The first thread which misses the cache becomes the leader and
+ * executes the load, while the other threads wait for it to finish and then
+ * read the result from the cache. If the cache still has no result (the load
+ * failed, returned nothing or the leader wasn't allowed to see the data), the
+ * waiting thread executes its own load, so the data is never handed over
+ * between users outside of the cache.
+ */
+class SvSingleFlight {
+
+	/**
+	 * Callback executing a cache lookup or a database load
+	 *
+	 * @param <T> The type of the loaded value
+	 */
+	interface Loader<T> {
+		T load() throws SvException;
+	}
+
+	/**
+	 * A load in progress, owned by the leader thread
+	 */
+	private static final class Flight extends CountDownLatch {
+		final Thread owner = Thread.currentThread();
+
+		Flight() {
+			super(1);
+		}
+	}
+
+	/**
+	 * Map of the loads in progress by key
+	 */
+	private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+
+	/**
+	 * Number of database loads executed by leaders
+	 */
+	private final AtomicLong loadCount = new AtomicLong();
+
+	/**
+	 * Number of database loads saved by waiting for a leader
+	 */
+	private final AtomicLong savedLoadCount = new AtomicLong();
+
+	/**
+	 * Method to execute a load, coalescing concurrent loads for the same key
+	 *
+	 * @param key         The key identifying the load
+	 * @param loader      The loader which reads the database and populates the
+	 *                    cache
+	 * @param cacheLookup The lookup used by waiting threads to read the result
+	 *                    from the cache
+	 * @return The loaded value
+	 * @throws SvException Pass through exception from the loader or if the
+	 *                     thread was interrupted while waiting for the leader
+	 */
+	<T> T load(String key, Loader<T> loader, Loader<T> cacheLookup) throws SvException {
+		Flight flight = new Flight();
+		Flight existing = inFlight.putIfAbsent(key, flight);
+		if (existing == null) {
+			try {
+				loadCount.incrementAndGet();
+				return loader.load();
+			} finally {
+				inFlight.remove(key, flight);
+				flight.countDown();
+			}
+		}
+		// a thread re-entering the same load would wait for itself
+		if (existing.owner != Thread.currentThread()) {
+			try {
+				existing.await();
+			} catch (InterruptedException e) {
+				// the interrupted thread gives up instead of loading outside
+				// of the flight
+				Thread.currentThread().interrupt();
+				throw (new SvException("system.err.thread_interrupted", svCONST.systemUser, e));
+			}
+			T value = cacheLookup.load();
+			if (value != null) {
+				savedLoadCount.incrementAndGet();
+				return value;
+			}
+		}
+		loadCount.incrementAndGet();
+		return loader.load();
+	}
+
+	/**
+	 * @return The number of database loads executed
+	 */
+	long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * @return The number of database loads saved by coalescing
+	 */
+	long getSavedLoadCount() {
+		return savedLoadCount.get();
+	}
+}
@@ -374,6 +374,8 @@ public class SvWriter extends SvCore {
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		Object[] repoObjects = null;
+		String sql = null;
+		long startTime = 0L;
 
 		try {
 			ArrayList<Long> supportingObjectPKIDs = getPKIDs(dbt, dba, includingChildren, includingLinks, linkTypes);
@@ -383,8 +385,10 @@ public class SvWriter extends SvCore {
 			if (!SvConf.getDbType().equals(SvDbType.MSSQL))
 				strSQL.append(" FOR UPDATE");
 
-			ps = this.dbGetConn().prepareStatement(strSQL.toString());
+			sql = strSQL.toString();
+			ps = this.dbGetConn().prepareStatement(sql);
 			bindObjectId(ps, dba, supportingObjectPKIDs);
+			startTime = SvQueryLog.start();
 			rs = ps.executeQuery();
 			if (log4j.isDebugEnabled())
 				log4j.trace("Executing SQL:" + strSQL.toString());
@@ -402,6 +406,9 @@ public class SvWriter extends SvCore {
 				// currentStatus = rs.getString("status");
 				// check if the user still has privileges over the object
 			}
+			SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.LOCK, sql, null, oldRepoData.size(), startTime,
+					false);
+			startTime = 0L;
 			if (!isInternal) {
 				for (DbDataObject dbo : dba.getItems())
 					if (!oldRepoData.containsKey(dbo.getObjectId()))
@@ -411,6 +418,9 @@ public class SvWriter extends SvCore {
 		} catch (SQLException e) {
 			throw (new SvException(Sv.Exceptions.SQL_ERR, instanceUser, dba, null, e));
 		} finally {
+			if (startTime != 0L)
+				SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.LOCK, sql, null, oldRepoData.size(), startTime,
+						true);
 			closeResource((AutoCloseable) rs, instanceUser);
 			closeResource((AutoCloseable) ps, instanceUser);
 		}
@@ -735,6 +745,9 @@ public class SvWriter extends SvCore {
 		Object extendedRepoStruct = null;
 		HashMap<Long, Object[]> oldRepoData = null;
 		int[] updatedRows = null;
+		String startOperation = null;
+		String startSql = null;
+		long startTime = 0L;
 
 		try {
 			// get the system configured DB handler
@@ -762,18 +775,32 @@ public class SvWriter extends SvCore {
 				oldRepoData = preSaveChecks(dbt, dba, isUpdate, skipPreSaveChecks);
 
 			// if we are updating, invalidate the old versions
+			String sqlInvalidate = isUpdate ? getUpdateRepoSql(schema, repoName) : null;
 			if (isUpdate)
-				psInvalidate = conn.prepareStatement(getUpdateRepoSql(schema, repoName));
+				psInvalidate = conn.prepareStatement(sqlInvalidate);
 
 			// prepare the insert and invalidate and bind all params.
 			prepareRepoBatch(dbt, dba, oldRepoData, withMetaUpdate, isUpdate, skipPreSaveChecks, psInvalidate, psInsert,
 					extendedRepoStruct);
 
 			// if we have valid invalidate statement execute it
-			updatedRows = psInvalidate != null ? psInvalidate.executeBatch() : null;
+			if (psInvalidate != null) {
+				startOperation = SvQueryLog.INVALIDATE;
+				startSql = sqlInvalidate;
+				startTime = SvQueryLog.start();
+				updatedRows = psInvalidate.executeBatch();
+				SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.INVALIDATE, sqlInvalidate, null,
+						updatedRows.length, startTime, false);
+			}
 
 			// finally execute the repo insert and load the keys back into the objects
+			startOperation = SvQueryLog.INSERT_REPO;
+			startSql = sqlInsRepo;
+			startTime = SvQueryLog.start();
 			int objectIndex = loadRepoKeys(dba, psInsert, extendedRepoStruct);
+			SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.INSERT_REPO, sqlInsRepo, null, objectIndex,
+					startTime, false);
+			startTime = 0L;
 
 			// basic sanity check
 			if (dba.getItems().size() != objectIndex || (isUpdate && !isInternal
@@ -783,6 +810,8 @@ public class SvWriter extends SvCore {
 		} catch (SQLException ex) {
 			throw (new SvException(Sv.Exceptions.REPOSAVE_ERR, instanceUser, null, dba, ex));
 		} finally {
+			if (startTime != 0L)
+				SvQueryLog.record(this, dbt.getObjectId(), startOperation, startSql, null, 0, startTime, true);
 			if (psInvalidate != null)
 				psInvalidate.close();
 			if (psInsert != null)
@@ -1027,9 +1056,14 @@ public class SvWriter extends SvCore {
 	 * @throws SvException
 	 */
 	static void cacheCleanup(Long objectId, Long objectTypeId) throws SvException {
+		// the cached query results are dropped even if the object isn't cached
+		DbCache.bumpGeneration(objectTypeId);
 		DbDataObject dbo = DbCache.getObject(objectId, objectTypeId);
 		if (dbo != null)
 			cacheCleanup(dbo);
+		else if (objectTypeId.equals(svCONST.OBJECT_TYPE_LINK))
+			// a link which isn't cached might grant access
+			DbCache.bumpGeneration(DbCache.SECURITY_LINKS);
 	}
 
 	/**
@@ -1041,6 +1075,8 @@ public class SvWriter extends SvCore {
 	static void cacheCleanup(DbDataObject dbo) throws SvException {
 
 		cacheCleanup(dbo.getObjectId(), dbo.getParentId(), dbo.getObjectType());
+		if (dbo.getObjectType().equals(svCONST.OBJECT_TYPE_LINK) && isSecurityLink(dbo))
+			DbCache.bumpGeneration(DbCache.SECURITY_LINKS);
 
 		if (isCfgInDb) {
 			if (dbo.getObjectType().equals(svCONST.OBJECT_TYPE_LINK))
@@ -1059,7 +1095,7 @@ public class SvWriter extends SvCore {
 	 * @throws SvException
 	 */
 	static void cacheCleanup(Long objectId, Long parentId, Long objectType) throws SvException {
-
+		DbCache.bumpGeneration(objectType);
 		if (isCfgInDb) {
 			if (objectType != svCONST.OBJECT_TYPE_TABLE && objectType != svCONST.OBJECT_TYPE_FIELD) {
 				DbCache.removeObject(objectId, objectType);
@@ -1120,6 +1156,7 @@ public class SvWriter extends SvCore {
 		if (log4j.isDebugEnabled())
 			log4j.trace("Executing SQL:" + sql);
 
+		long startTime = 0L;
 		try (SvLob lob = new SvLob(this.dbGetConn()); PreparedStatement ps = this.dbGetConn().prepareStatement(sql)) {
 			for (DbDataObject objToSave : arrayToSave.getItems()) {
 				Object[] oldRepoData = isUpdate ? oldRepoObjs.get(objToSave.getObjectId()) : null;
@@ -1129,7 +1166,11 @@ public class SvWriter extends SvCore {
 					throw (new SvException("system.error.null_geometry_mix", instanceUser, arrayToSave, dbt));
 				bindColumnValues(objToSave, isUpdate, objectFields, oldRepoData, ps, lob);
 			}
+			startTime = SvQueryLog.start();
 			int[] insertedRows = ps.executeBatch();
+			SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.INSERT_TABLE, sql, null, insertedRows.length,
+					startTime, false);
+			startTime = 0L;
 			if (arrayToSave.getItems().size() != insertedRows.length)
 				throw (new SvException("system.error.batch_size_err", instanceUser, arrayToSave, dbt));
 		} catch (BatchUpdateException e) {
@@ -1142,6 +1183,9 @@ public class SvWriter extends SvCore {
 				throw ((SvException) e);
 			else
 				throw (new SvException("system.error.general_err", instanceUser, arrayToSave, dbt, e));
+		} finally {
+			if (startTime != 0L)
+				SvQueryLog.record(this, dbt.getObjectId(), SvQueryLog.INSERT_TABLE, sql, null, 0, startTime, true);
 		}
 	}
 
@@ -1306,6 +1350,9 @@ public class SvWriter extends SvCore {
 
 		if (dba == null || dba.getItems().size() < 1)
 			throw (new SvException("system.error.no_obj2save_err", instanceUser, dba, null));
+		// saving a partial object would overwrite the fields which weren't read
+		if (DbCache.hasPartial(dba))
+			throw (new SvException("system.error.partial_object_save", instanceUser, dba, null));
 		// authorise the save operation
 		if (!isAdmin() && !isSystem())
 			authoriseSave(dba);
@@ -1355,6 +1402,13 @@ public class SvWriter extends SvCore {
 
 	private void cacheCleanup(DbDataArray dba) throws SvException {
 		DbDataObject dboFirst = dba.getItems().get(0);
+		markTypeModified(dboFirst.getObjectType());
+		if (dboFirst.getObjectType().equals(svCONST.OBJECT_TYPE_LINK))
+			for (DbDataObject dbo : dba.getItems())
+				if (isSecurityLink(dbo)) {
+					markTypeModified(DbCache.SECURITY_LINKS);
+					break;
+				}
 
 		for (DbDataObject dbo : dba.getItems()) {
 			cacheCleanup(dbo);
@@ -1621,13 +1675,15 @@ public class SvWriter extends SvCore {
 		}
 	}
 
-	int executeRepoUpdateSQL(String schema, String repoName, List<Long> pkids) throws SvException, SQLException {
+	int executeRepoUpdateSQL(String schema, String repoName, List<Long> pkids, Long objectType)
+			throws SvException, SQLException {
 		if (pkids.size() < 1)
 			return 0;
 
 		PreparedStatement ps = null;
 		DateTime dt_insert = new DateTime();
 		StringBuilder sqlDel = null;
+		long startTime = 0L;
 		try {
 			Connection conn = this.dbGetConn();
 			sqlDel = new StringBuilder(50);
@@ -1644,8 +1700,15 @@ public class SvWriter extends SvCore {
 			for (Long l : pkids) {
 				ps.setLong(paramPos++, l);
 			}
-			return ps.executeUpdate();
+			startTime = SvQueryLog.start();
+			int updatedRows = ps.executeUpdate();
+			SvQueryLog.record(this, objectType, SvQueryLog.DELETE, sqlDel.toString(), pkids, updatedRows, startTime,
+					false);
+			startTime = 0L;
+			return updatedRows;
 		} finally {
+			if (startTime != 0L)
+				SvQueryLog.record(this, objectType, SvQueryLog.DELETE, sqlDel.toString(), pkids, 0, startTime, true);
 			closeResource((AutoCloseable) ps, instanceUser);
 		}
 
@@ -1667,29 +1730,24 @@ public class SvWriter extends SvCore {
 
 		DbDataObject dbt = null;
 
+		// group the PKIDs per object type, so each statement is recorded in the
+		// query log under the type whose objects it deletes
+		LinkedHashMap<Long, List<Long>> typePkids = new LinkedHashMap<Long, List<Long>>();
 		Iterator<Object[]> repoIt = repoData.values().iterator();
-		List<Long> pkids = new ArrayList<Long>(repoData.size());
-		String schema = null;
-		String repoName = null;
-
 		while (repoIt.hasNext()) {
 			Object[] repo = repoIt.next();
-			if (dbt == null || !dbt.getObjectId().equals(repo[3])) {
-				dbt = getDbt((Long) repo[3]);
-				// if the repo table is the same but the dbt has changed, just leave it
-				if (!(dbt.getVal("schema").equals(schema) && dbt.getVal("repo_name").equals(repoName))) {
-					// repo has changed, first commit the old result to the DB
-					deletedRows = deletedRows + executeRepoUpdateSQL(schema, repoName, pkids);
-					// then change the repo and clear the list of PKIDs
-					repoName = (String) dbt.getVal("repo_name");
-					schema = (String) dbt.getVal("schema");
-					pkids.clear();
-				}
+			List<Long> pkids = typePkids.get((Long) repo[3]);
+			if (pkids == null) {
+				pkids = new ArrayList<Long>();
+				typePkids.put((Long) repo[3], pkids);
 			}
 			pkids.add((Long) repo[0]);
 		}
-		// final update of the DB
-		deletedRows = deletedRows + executeRepoUpdateSQL(schema, repoName, pkids);
+		for (Entry<Long, List<Long>> entry : typePkids.entrySet()) {
+			dbt = getDbt(entry.getKey());
+			deletedRows = deletedRows + executeRepoUpdateSQL((String) dbt.getVal("schema"),
+					(String) dbt.getVal("repo_name"), entry.getValue(), entry.getKey());
+		}
 
 		return deletedRows;
 
@@ -1697,8 +1755,18 @@ public class SvWriter extends SvCore {
 
 	void cacheCleanup(HashMap<Long, Object[]> repoData, boolean deleteLinks) throws SvException {
 		Iterator<Entry<Long, Object[]>> it = repoData.entrySet().iterator();
+		boolean securityMarked = false;
 		while (it.hasNext()) {
 			Entry<Long, Object[]> item = it.next();
+			markTypeModified((Long) item.getValue()[3]);
+			if (!securityMarked && ((Long) item.getValue()[3]).equals(svCONST.OBJECT_TYPE_LINK)) {
+				// the link type is known only if the link is cached
+				DbDataObject dboLink = DbCache.getObject((Long) item.getValue()[1], svCONST.OBJECT_TYPE_LINK);
+				if (dboLink == null || isSecurityLink(dboLink)) {
+					markTypeModified(DbCache.SECURITY_LINKS);
+					securityMarked = true;
+				}
+			}
 			cacheCleanup((Long) item.getValue()[1], (Long) item.getValue()[2], (Long) item.getValue()[3]);
 			if (deleteLinks && svCONST.OBJECT_TYPE_LINK != (Long) item.getValue()[3])
 				it.remove();
@@ -77,6 +77,52 @@ public abstract class DbQuery extends Jsonable {
 	 */
 	public abstract ArrayList<Object> getSQLParamVals() throws SvException;
 
+	/**
+	 * The method generates a fingerprint of the structure of the query. Two
+	 * queries with equal fingerprints generate the same SQL expression, no matter
+	 * of the values bound to the query parameters
+	 * 
+	 * @param forcePhysicalTables
+	 *            The flag used for generating the SQL expression
+	 * @param includeGeometries
+	 *            The flag used for generating the SQL expression
+	 * @return The fingerprint or null if the SQL expression of the query can't
+	 *         be identified by its structure
+	 * @throws SvException
+	 */
+	public String getSQLFingerprint(Boolean forcePhysicalTables, Boolean includeGeometries) throws SvException {
+		return null;
+	}
+
+	/**
+	 * The method restores the state of the query which is set as side effect of
+	 * generating the SQL expression, when a previously generated SQL expression
+	 * is used instead.
+	 * 
+	 * @param returnTypeSequence
+	 *            The return type sequence set by the SQL generation
+	 */
+	public void restoreSQLState(Integer returnTypeSequence) {
+	}
+
+	/**
+	 * Method to append a value to a query fingerprint. The values are length
+	 * prefixed, so different structures can't produce the same fingerprint
+	 * 
+	 * @param fp
+	 *            The fingerprint
+	 * @param value
+	 *            The value to append
+	 */
+	static void appendValue(StringBuilder fp, Object value) {
+		if (value == null) {
+			fp.append('-');
+			return;
+		}
+		String str = value.toString();
+		fp.append(str.length()).append(':').append(str);
+	}
+
 	protected ArrayList<DbDataObject> returnTypes = new ArrayList<DbDataObject>();
 	/**
 	 * Variable holding the return type sequence order in the select query
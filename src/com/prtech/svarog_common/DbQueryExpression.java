@@ -60,6 +60,13 @@ public class DbQueryExpression extends DbQuery {
 	 */
 	ArrayList<String> linkStatusList = new ArrayList<String>();
 
+	/**
+	 * Optional list of upper case field names to which the selected fields of
+	 * the return types are limited, unless the query object has its own
+	 * projection
+	 */
+	ArrayList<String> projection = null;
+
 	/**
 	 * Default contructor to create an empty expression
 	 */
@@ -147,7 +154,8 @@ public class DbQueryExpression extends DbQuery {
 		StringBuilder tmpWhere = new StringBuilder();
 		// append the column list to the query string
 		if (currentDqo.getIsReturnType())
-			columnList.append(currentDqo.getFieldList(null, currentDqo.getSqlTablePrefix(), includeGeometries) + ",");
+			columnList.append(
+					currentDqo.getFieldList(null, currentDqo.getSqlTablePrefix(), includeGeometries, projection) + ",");
 		boolean queryValsBound = false;
 		// add the table to the join list
 		String tblJoin = currentDqo.getTblJoin(currentDqo.getSqlTablePrefix());
@@ -336,14 +344,16 @@ public class DbQueryExpression extends DbQuery {
 			// if there is no return type, just return all columns
 			// TODO update this to handle objects which has set isReturnType
 			if (this.getReturnType() == null) {
-				queryString.append(currentDqo.getFieldList(currentRepoPrefix, currentTblPrefix, includeGeometries));
+				queryString.append(
+						currentDqo.getFieldList(currentRepoPrefix, currentTblPrefix, includeGeometries, projection));
 				if (dqoIterator.hasNext())
 					queryString.append(",");
 
 			} else // find the objects with return type, make sure we just match
 					// the first
 			if (currentDqo.getIsReturnType() && !returnTypeMatched) {
-				queryString.append(currentDqo.getFieldList(currentRepoPrefix, currentTblPrefix, includeGeometries));
+				queryString.append(
+						currentDqo.getFieldList(currentRepoPrefix, currentTblPrefix, includeGeometries, projection));
 				this.setReturnTypeSequence(itemSeq);
 				returnTypeMatched = true;
 			}
@@ -736,6 +746,41 @@ public class DbQueryExpression extends DbQuery {
 
 	}
 
+	/**
+	 * The fingerprint is available only for forward expressions, since the
+	 * parameters of a reverse expression are collected while generating the SQL
+	 */
+	@Override
+	public String getSQLFingerprint(Boolean forcePhysicalTables, Boolean includeGeometries) throws SvException {
+		if (isReverseExpression || items.size() <= 0)
+			return null;
+		StringBuilder fp = new StringBuilder(400);
+		fp.append("X(").append(forcePhysicalTables).append(';');
+		for (DbDataObject returnType : returnTypes)
+			appendValue(fp, returnType != null ? returnType.getObjectId() : null);
+		fp.append(';');
+		appendValue(fp, linkStatusList);
+		appendValue(fp, projection);
+		if (dblt != null) {
+			appendValue(fp, dblt.getVal("schema"));
+			appendValue(fp, dblt.getVal("table_name"));
+		}
+		fp.append(';');
+		for (DbQueryObject item : items) {
+			if (!item.appendFingerprint(fp, includeGeometries))
+				return null;
+		}
+		fp.append(')');
+		return fp.toString();
+	}
+
+	@Override
+	public void restoreSQLState(Integer returnTypeSequence) {
+		getLegacyReturnType();
+		if (!isReverseExpression && this.getReturnType() != null)
+			this.setReturnTypeSequence(returnTypeSequence);
+	}
+
 	private void getReverseReturnTypes(DbQueryObject queryObject, ArrayList<DbDataObject> returnTypes) {
 
 		DbQueryObject currentDqo = queryObject;
@@ -783,6 +828,21 @@ public class DbQueryExpression extends DbQuery {
 		}
 	}
 
+	public ArrayList<String> getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Method to limit the selected fields of the return types to a list of
+	 * fields. The objects read with a projection are partial, they are never
+	 * cached and can't be saved.
+	 * 
+	 * @param projection The list of field names, or null to select all fields
+	 */
+	public void setProjection(ArrayList<String> projection) {
+		this.projection = DbQueryObject.toProjection(projection);
+	}
+
 	public DbQueryObject getRootQueryObject() {
 		return rootQueryObject;
 	}
@@ -97,6 +97,12 @@ public class DbQueryObject extends DbQuery {
 
 	Boolean returnLinkObjects = false;
 
+	/**
+	 * Optional list of upper case field names to which the selected fields of
+	 * the object type are limited. The repo fields are always selected.
+	 */
+	ArrayList<String> projection = null;
+
 	/**
 	 * Overriden version of the method in order to verify if the DBT exists in the
 	 * target configuration
@@ -345,12 +351,30 @@ public class DbQueryObject extends DbQuery {
 	 * @throws SvException
 	 */
 	StringBuilder getFieldList(String repoPrefix, String tblPrefix, Boolean includeGeometries) throws SvException {
+		return getFieldList(repoPrefix, tblPrefix, includeGeometries, null);
+	}
+
+	/**
+	 * Method returning a list of DB fields with their appropriate aliases,
+	 * limited by the projection of the DQO
+	 * 
+	 * @param repoPrefix        The prefix of the repo table
+	 * @param tblPrefix         The prefix of the object table
+	 * @param includeGeometries If the geometry fields should be selected
+	 * @param defaultProjection The projection to be used if the DQO has no own
+	 *                          projection
+	 * @return A string containing list of fields split by comma
+	 * @throws SvException
+	 */
+	StringBuilder getFieldList(String repoPrefix, String tblPrefix, Boolean includeGeometries,
+			ArrayList<String> defaultProjection) throws SvException {
 		assert (dbtFields != null);
 		StringBuilder retval = null;
 		String finalPrefix = (sqlTablePrefix != null) ? sqlTablePrefix : tblPrefix;
 
 		if (repo != null && dbt != null) {
-			retval = this.getFieldList(finalPrefix, repoFields, dbtFields, includeGeometries);
+			retval = this.getFieldList(finalPrefix, repoFields, dbtFields, includeGeometries, true,
+					projection != null ? projection : defaultProjection);
 		} else if (this.subQueryFields != null && !this.subQueryFields.equals("")) {
 			retval = new StringBuilder(400);
 			retval.append(subQueryFields);
@@ -382,6 +406,19 @@ public class DbQueryObject extends DbQuery {
 	 */
 	public StringBuilder getFieldList(String sqlTblAlias, DbDataArray repoFields, DbDataArray dbtFields,
 			Boolean includeGeometries, boolean useColumnPrefix) throws SvException {
+		return getFieldList(sqlTblAlias, repoFields, dbtFields, includeGeometries, useColumnPrefix, null);
+	}
+
+	/**
+	 * Method returning a list of DB fields with their appropriate aliases
+	 * 
+	 * @param projection The list of upper case names of the object type fields
+	 *                   to be selected, or null to select all fields
+	 * @return A string containing list of fields split by comma
+	 * @throws SvException
+	 */
+	StringBuilder getFieldList(String sqlTblAlias, DbDataArray repoFields, DbDataArray dbtFields,
+			Boolean includeGeometries, boolean useColumnPrefix, ArrayList<String> projection) throws SvException {
 		assert (dbtFields != null);
 		ResourceBundle sqlKw = SvConf.getSqlkw();
 		StringBuilder retval = new StringBuilder(400);
@@ -396,6 +433,8 @@ public class DbQueryObject extends DbQuery {
 						+ sqlKw.getString("OBJECT_QUALIFIER_RIGHT") + " as " + tmpPrefix + obj.getVal("field_name"));
 			}
 			for (DbDataObject obj : dbtFields.getItems()) {
+				if (projection != null && !projection.contains(obj.getVal("field_name")))
+					continue;
 				// add specifics for GIS data
 				if (((String) obj.getVal("field_type")).equals("GEOMETRY")) {
 					if (includeGeometries) {
@@ -520,6 +559,74 @@ public class DbQueryObject extends DbQuery {
 		return paramVals;
 	}
 
+	@Override
+	public String getSQLFingerprint(Boolean forcePhysicalTables, Boolean includeGeometries) throws SvException {
+		StringBuilder fp = new StringBuilder(200);
+		fp.append("Q(").append(forcePhysicalTables).append(';');
+		if (!appendFingerprint(fp, includeGeometries))
+			return null;
+		fp.append(')');
+		return fp.toString();
+	}
+
+	/**
+	 * Method to append all members used for generating the SQL expression of
+	 * this DQO, either standalone or as part of an expression, to a query
+	 * fingerprint
+	 * 
+	 * @param fp                The fingerprint
+	 * @param includeGeometries If geometry fields are included in the field list
+	 * @return False if the SQL expression can't be identified by its structure
+	 * @throws SvException
+	 */
+	boolean appendFingerprint(StringBuilder fp, Boolean includeGeometries) throws SvException {
+		fp.append("O(").append(includeGeometries).append(';');
+		if (subQuery != null) {
+			appendValue(fp, subQuery);
+			appendValue(fp, subQueryFields);
+		}
+		if (repo != null) {
+			appendValue(fp, repo.getVal("schema"));
+			appendValue(fp, repo.getVal("table_name"));
+		}
+		if (dbt != null) {
+			appendValue(fp, dbt.getObjectId());
+			appendValue(fp, dbt.getVal("schema"));
+			appendValue(fp, dbt.getVal("table_name"));
+		}
+		if (repoFields != null)
+			for (DbDataObject obj : repoFields.getItems())
+				appendValue(fp, obj.getVal("field_name"));
+		fp.append(';');
+		if (dbtFields != null)
+			for (DbDataObject obj : dbtFields.getItems()) {
+				appendValue(fp, obj.getVal("field_name"));
+				appendValue(fp, obj.getVal("field_type"));
+			}
+		fp.append(';');
+		appendValue(fp, customFieldsList);
+		appendValue(fp, projection);
+		appendValue(fp, sqlTablePrefix);
+		appendValue(fp, getReturnTypeSequence());
+		appendValue(fp, orderByFields);
+		appendValue(fp, linkToNextType);
+		appendValue(fp, linkToNext != null ? linkToNext.getObjectId() : null);
+		appendValue(fp, joinToNext);
+		appendValue(fp, referenceDate == null);
+		appendValue(fp, linkStatusList);
+		appendValue(fp, customJoinLeft);
+		appendValue(fp, customJoinRight);
+		appendValue(fp, customFreeTextJoin);
+		appendValue(fp, denormalizedFieldName);
+		appendValue(fp, denormalizedJoinOnFieldName);
+		appendValue(fp, isReturnType);
+		appendValue(fp, returnLinkObjects);
+		if (search != null && !search.appendFingerprint(fp))
+			return false;
+		fp.append(')');
+		return true;
+	}
+
 	public ArrayList<Object> getSubSQLParamVals() {
 		if (subQuery != null)
 			return subParamVals;
@@ -794,6 +901,37 @@ public class DbQueryObject extends DbQuery {
 		this.customFieldsList = customFieldsList;
 	}
 
+	public ArrayList<String> getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Method to limit the selected fields of the object type to a list of
+	 * fields. The objects read with a projection are partial, they are never
+	 * cached and can't be saved.
+	 * 
+	 * @param projection The list of field names, or null to select all fields
+	 */
+	public void setProjection(ArrayList<String> projection) {
+		this.projection = toProjection(projection);
+	}
+
+	/**
+	 * Method to normalise a projection list to upper case field names
+	 * 
+	 * @param fieldNames The list of field names
+	 * @return The upper case list or null if there are no field names
+	 */
+	static ArrayList<String> toProjection(ArrayList<String> fieldNames) {
+		if (fieldNames == null)
+			return null;
+		ArrayList<String> result = new ArrayList<String>(fieldNames.size());
+		for (String fieldName : fieldNames)
+			if (fieldName != null)
+				result.add(fieldName.toUpperCase().trim());
+		return result;
+	}
+
 	public String getDenormalizedJoinOnFieldName() {
 		return denormalizedJoinOnFieldName;
 	}
@@ -35,5 +35,18 @@ public abstract class DbSearch extends Jsonable{
 	public abstract ArrayList<Object> getSQLParamVals() throws SvException;
 	public abstract ArrayList<String> getOrderByFields(); 
 
+	/**
+	 * Method to append the structure of the search to a query fingerprint. The
+	 * values bound to the parameters aren't part of the fingerprint.
+	 * 
+	 * @param fp The fingerprint
+	 * @return False if the SQL expression of the search can't be identified by
+	 *         its structure
+	 * @throws SvException
+	 */
+	boolean appendFingerprint(StringBuilder fp) throws SvException {
+		return false;
+	}
+
 
 }
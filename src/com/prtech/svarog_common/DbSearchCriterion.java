@@ -15,6 +15,7 @@
 package com.prtech.svarog_common;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.ResourceBundle;
 
 import com.prtech.svarog.SvConf;
@@ -230,7 +231,13 @@ public class DbSearchCriterion extends DbSearch {
 					arr.add(compareValue2);
 
 			} else {
-				if (operand != DbCompareOperand.ISNULL && operand != DbCompareOperand.BBOX
+				if (operand == DbCompareOperand.IN_LIST) {
+					// postgres binds the whole list as one array
+					if (isArrayBound())
+						arr.add(getInListValues());
+					else
+						arr.addAll(getInListValues());
+				} else if (operand != DbCompareOperand.ISNULL && operand != DbCompareOperand.BBOX
 						&& operand != DbCompareOperand.IN_SUBQUERY)
 					if (operand.equals(DbCompareOperand.ILIKE))
 						arr.add(compareValue.toString().toUpperCase());
@@ -331,6 +338,18 @@ public class DbSearchCriterion extends DbSearch {
 		case IN_SUBQUERY:
 			retval = "(" + fullFieldName + " IN (" + inSubQuery.getSQLExpression() + "))";
 			break;
+		case IN_LIST:
+			if (isArrayBound())
+				retval = "(" + fullFieldName + " = ANY(?))";
+			else if (getInListValues().isEmpty())
+				retval = "(1 = 0)";
+			else {
+				StringBuilder params = new StringBuilder();
+				for (int i = 0; i < getInListValues().size(); i++)
+					params.append(i > 0 ? ",?" : "?");
+				retval = "(" + fullFieldName + " IN (" + params + "))";
+			}
+			break;
 		default:
 			if (isField2FieldJoin) {
 				retval = "(" + leftField + " " + sqlKw.getString(tmpOperand.toString()) + " " + rightField + ")";
@@ -348,6 +367,57 @@ public class DbSearchCriterion extends DbSearch {
 		return getSQLExpression(null, tblPrefix);
 	}
 
+	/**
+	 * Method to check if the IN_LIST values are bound as a single array. This is
+	 * supported on PostgreSQL only, other databases get a parameter per value.
+	 * 
+	 * @return True if the list is bound as array
+	 */
+	static boolean isArrayBound() {
+		return SvConf.SvDbType.POSTGRES.equals(SvConf.getDbType());
+	}
+
+	/**
+	 * Method to get the values of an IN_LIST criterion, either from the in list
+	 * or from a collection set as compare value
+	 * 
+	 * @return The list of values
+	 * @throws SvException If there are no values
+	 */
+	@SuppressWarnings("unchecked")
+	ArrayList<Object> getInListValues() throws SvException {
+		if (inList != null)
+			return inList;
+		if (compareValue instanceof Collection)
+			return new ArrayList<Object>((Collection<Object>) compareValue);
+		throw (new SvException("system.error.dbsearch_missing_value", svCONST.systemUser, null, this));
+	}
+
+	@Override
+	boolean appendFingerprint(StringBuilder fp) throws SvException {
+		fp.append("C(").append(nextCritOperand).append(';');
+		if (freeTextWhere != null && !freeTextWhere.equals(""))
+			DbQuery.appendValue(fp, freeTextWhere);
+		else {
+			fp.append(operand).append(';').append(notPrefix).append(';').append(isField2FieldJoin).append(';');
+			DbQuery.appendValue(fp, fieldName);
+			DbQuery.appendValue(fp, fieldName2);
+			DbQuery.appendValue(fp, leftField);
+			DbQuery.appendValue(fp, rightField);
+			// the expanded list has a parameter per value
+			if (operand == DbCompareOperand.IN_LIST && !isArrayBound())
+				fp.append(getInListValues().size()).append(';');
+			if (operand == DbCompareOperand.IN_SUBQUERY) {
+				String subFp = inSubQuery != null ? inSubQuery.getSQLFingerprint(false, false) : null;
+				if (subFp == null)
+					return false;
+				DbQuery.appendValue(fp, subFp);
+			}
+		}
+		fp.append(')');
+		return true;
+	}
+
 	////// From this point on there's only classic getter/setter methods
 	public Boolean getNotPrefix() {
 		return notPrefix;
@@ -67,7 +67,7 @@ public class DbSearchExpression extends DbSearch {
 			DbSearch dbs = it.next();
 			String strExpr = dbs.getSQLExpression(tblPrefix);
 			if (strExpr != null && !strExpr.equals("")) {
-				retval.append(" " + dbs.getSQLExpression(tblPrefix));
+				retval.append(" " + strExpr);
 				if (it.hasNext()) {
 					if (dbs instanceof DbSearchCriterion)
 						retval.append(" " + ((DbSearchCriterion) dbs).getNextCritOperand());
@@ -98,6 +98,17 @@ public class DbSearchExpression extends DbSearch {
 
 	}
 
+	@Override
+	boolean appendFingerprint(StringBuilder fp) throws SvException {
+		fp.append("E(").append(nextCritOperand).append(';');
+		for (DbSearch item : exprList) {
+			if (item == null || !item.appendFingerprint(fp))
+				return false;
+		}
+		fp.append(')');
+		return true;
+	}
+
 	public ArrayList<String> getOrderByFields() {
 		return orderByFields;
 	}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.prtech.svarog.SvCore.AclDecision;
+import com.prtech.svarog_common.DbDataObject;
+
+public class DbCacheAuthDecisionTest {
+
+	private static AclDecision decide(String key) {
+		AclDecision decision = new AclDecision(true, null, null);
+		DbCache.putAuthDecision(key, DbCache.getSecurityGeneration(), decision);
+		assertSame(decision, DbCache.getAuthDecision(key));
+		return decision;
+	}
+
+	@Test
+	public void testUnrelatedChanges() {
+		AclDecision decision = decide("ACL-1");
+		// saving users, org units or plain links doesn't change the access
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_USER);
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_ORG_UNITS);
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_LINK);
+		assertSame(decision, DbCache.getAuthDecision("ACL-1"));
+	}
+
+	@Test
+	public void testAclChange() {
+		decide("ACL-2");
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_ACL);
+		assertNull(DbCache.getAuthDecision("ACL-2"));
+		decide("ACL-2");
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_SID_ACL);
+		assertNull(DbCache.getAuthDecision("ACL-2"));
+	}
+
+	@Test
+	public void testSecurityLinkChange() {
+		decide("ACL-3");
+		DbCache.bumpGeneration(DbCache.SECURITY_LINKS);
+		assertNull(DbCache.getAuthDecision("ACL-3"));
+	}
+
+	@Test
+	public void testRolledBackGrant() {
+		SvConnTrace trace = new SvConnTrace();
+		// the grant is saved in the transaction of a shared connection
+		DbCache.bumpGeneration(svCONST.OBJECT_TYPE_SID_ACL);
+		trace.markModified(svCONST.OBJECT_TYPE_SID_ACL);
+		// a decision made while the grant is uncommitted
+		decide("ACL-4");
+		// the rollback must drop it, instead of keeping it until the TTL
+		trace.endTransaction();
+		assertNull(DbCache.getAuthDecision("ACL-4"));
+	}
+
+	@Test
+	public void testUnknownLinkType() {
+		// a link whose type can't be resolved is assumed to grant access
+		DbDataObject dboLink = new DbDataObject(svCONST.OBJECT_TYPE_LINK);
+		assertTrue(SvCore.isSecurityLink(dboLink));
+	}
+}
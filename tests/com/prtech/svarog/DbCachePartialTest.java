@@ -0,0 +1,101 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+
+public class DbCachePartialTest {
+
+	private static DbDataObject user(long objectId) {
+		DbDataObject dbo = new DbDataObject(svCONST.OBJECT_TYPE_USER);
+		dbo.setObjectId(objectId);
+		dbo.setParentId(0L);
+		dbo.setIsDirty(false);
+		return dbo;
+	}
+
+	@Test
+	public void testMarkPartial() {
+		DbDataObject dbo = user(990101L);
+		assertFalse(DbCache.isPartial(dbo));
+		assertTrue(DbCache.isCacheable(dbo));
+		DbCache.markPartial(dbo);
+		assertTrue(DbCache.isPartial(dbo));
+		assertFalse(DbCache.isCacheable(dbo));
+		// the mark belongs to the instance, not to the object id
+		assertFalse(DbCache.isPartial(user(990101L)));
+		assertFalse(DbCache.isPartial(null));
+	}
+
+	@Test
+	public void testMarkUncacheable() {
+		DbDataObject dbo = user(990102L);
+		DbCache.markUncacheable(dbo);
+		// replica objects may be cached nowhere, but they are complete
+		assertFalse(DbCache.isPartial(dbo));
+		assertFalse(DbCache.isCacheable(dbo));
+		assertTrue(DbCache.isCacheable(user(990102L)));
+	}
+
+	@Test
+	public void testArrays() {
+		DbDataArray arr = new DbDataArray();
+		arr.addDataItem(user(990103L));
+		assertFalse(DbCache.hasPartial(arr));
+		assertFalse(DbCache.hasUncacheable(arr));
+		DbDataObject replica = user(990104L);
+		DbCache.markUncacheable(replica);
+		arr.addDataItem(replica);
+		assertFalse(DbCache.hasPartial(arr));
+		assertTrue(DbCache.hasUncacheable(arr));
+		DbDataObject partial = user(990105L);
+		DbCache.markPartial(partial);
+		arr.addDataItem(partial);
+		assertTrue(DbCache.hasPartial(arr));
+	}
+
+	@Test
+	public void testNotCached() {
+		DbDataObject partial = user(990106L);
+		DbCache.markPartial(partial);
+		DbCache.addObject(partial, null, true);
+		assertNull(DbCache.getObject(990106L, svCONST.OBJECT_TYPE_USER));
+		DbDataArray arr = new DbDataArray();
+		arr.addDataItem(partial);
+		DbCache.addArrayByParentId(arr, svCONST.OBJECT_TYPE_USER, 990107L);
+		assertNull(DbCache.getObjectsByParentId(990107L, svCONST.OBJECT_TYPE_USER));
+	}
+
+	@Test
+	public void testPartialSave() throws SvException {
+		DbDataObject partial = user(990108L);
+		DbCache.markPartial(partial);
+		try (SvWriter svw = new SvWriter()) {
+			svw.saveObject(partial);
+			fail("A partial object was saved");
+		} catch (SvException e) {
+			assertEquals("system.error.partial_object_save", e.getLabelCode());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+
+public class DbCacheQueryResultTest {
+
+	private static final Long TYPE = 990001L;
+
+	private static DbDataArray result(long... objectIds) {
+		DbDataArray arr = new DbDataArray();
+		for (long objectId : objectIds) {
+			DbDataObject dbo = new DbDataObject(TYPE);
+			dbo.setObjectId(objectId);
+			arr.addDataItem(dbo);
+		}
+		return arr;
+	}
+
+	private static String key(String sql) {
+		return DbCache.queryResultKey(TYPE, sql, new ArrayList<Object>(), false);
+	}
+
+	/**
+	 * Simulates a write in the transaction of a shared connection, the same way
+	 * SvCore.markTypeModified does
+	 */
+	private static void write(SvConnTrace trace) {
+		DbCache.bumpGeneration(TYPE);
+		trace.markModified(TYPE);
+	}
+
+	@Test
+	public void testStaleAfterCommit() {
+		SvConnTrace trace = new SvConnTrace();
+		write(trace);
+		assertTrue(trace.isModified(TYPE));
+		// a concurrent reader on another connection still sees the rows
+		// before the commit and caches them under the bumped generation
+		String key = key("SELECT 1");
+		DbCache.putQueryResult(key, DbCache.getGeneration(TYPE), result(1L));
+		assertNotNull(DbCache.getQueryResult(TYPE, key));
+		// the commit of any core sharing the connection ends the transaction
+		trace.endTransaction();
+		assertFalse(trace.isModified(TYPE));
+		assertNull(DbCache.getQueryResult(TYPE, key));
+	}
+
+	@Test
+	public void testStaleAfterRollback() {
+		SvConnTrace trace = new SvConnTrace();
+		write(trace);
+		String key = key("SELECT 2");
+		DbCache.putQueryResult(key, DbCache.getGeneration(TYPE), result(2L));
+		trace.endTransaction();
+		assertNull(DbCache.getQueryResult(TYPE, key));
+	}
+
+	@Test
+	public void testStaleAfterRelease() {
+		SvConnTrace trace = new SvConnTrace();
+		trace.usageCount = 1;
+		write(trace);
+		String key = key("SELECT 3");
+		DbCache.putQueryResult(key, DbCache.getGeneration(TYPE), result(3L));
+		// the last release rolls back the open transaction
+		trace.release(true);
+		assertFalse(trace.isModified(TYPE));
+		assertNull(DbCache.getQueryResult(TYPE, key));
+	}
+
+	@Test
+	public void testEndWithoutChanges() {
+		SvConnTrace trace = new SvConnTrace();
+		long generation = DbCache.getGeneration(TYPE);
+		trace.endTransaction();
+		assertEquals(generation, DbCache.getGeneration(TYPE));
+	}
+
+	@Test
+	public void testResultIsCopied() {
+		String key = key("SELECT 4");
+		DbDataArray read = result(4L, 5L);
+		DbCache.putQueryResult(key, DbCache.getGeneration(TYPE), read);
+		// the reader which cached the result keeps using its own array
+		read.addDataItem(new DbDataObject(TYPE));
+		DbDataArray first = DbCache.getQueryResult(TYPE, key);
+		assertEquals(2, first.size());
+		first.getItems().clear();
+		DbDataArray second = DbCache.getQueryResult(TYPE, key);
+		assertEquals(2, second.size());
+		assertEquals(Long.valueOf(4L), second.get(0).getObjectId());
+	}
+}
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbSearch.DbLogicOperand;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
+
+public class DbCacheTableTest {
+
+	private static final Long TYPE = 1000L;
+	private static final Long OTHER_TYPE = 1001L;
+	private static final long OPEN = 1000000L;
+
+	private static DbDataObject version(Long type, long objectId, long pkid, Long parentId, long from, long to) {
+		DbDataObject dbo = new DbDataObject(type);
+		dbo.setObjectType(type);
+		dbo.setObjectId(objectId);
+		dbo.setPkid(pkid);
+		dbo.setParentId(parentId);
+		dbo.setDtInsert(new DateTime(from));
+		dbo.setDtDelete(new DateTime(to));
+		dbo.setIsDirty(false);
+		return dbo;
+	}
+
+	private static List<Long> pkids(DbDataArray arr) {
+		List<Long> result = new ArrayList<Long>();
+		for (DbDataObject dbo : arr.getItems())
+			result.add(dbo.getPkid());
+		Collections.sort(result);
+		return result;
+	}
+
+	private static DbDataArray children() {
+		DbDataArray versions = new DbDataArray();
+		versions.addDataItem(version(TYPE, 1L, 21L, 5L, 1, 100));
+		versions.addDataItem(version(TYPE, 1L, 22L, 5L, 101, OPEN));
+		versions.addDataItem(version(TYPE, 2L, 31L, 5L, 50, 150));
+		// versions of another parent or type are not part of the history
+		versions.addDataItem(version(TYPE, 3L, 41L, 6L, 1, OPEN));
+		versions.addDataItem(version(OTHER_TYPE, 4L, 51L, 5L, 1, OPEN));
+		return versions;
+	}
+
+	@Test
+	public void testFindVersionInclusiveBounds() {
+		long[] versions = { 100, 200, 1, 201, 300, 2 };
+		assertEquals(0, DbCacheTable.findVersion(versions, 0, 100));
+		assertEquals(0, DbCacheTable.findVersion(versions, 0, 200));
+		assertEquals(3, DbCacheTable.findVersion(versions, 0, 201));
+		assertEquals(3, DbCacheTable.findVersion(versions, 0, 300));
+		assertEquals(-1, DbCacheTable.findVersion(versions, 0, 99));
+		assertEquals(-1, DbCacheTable.findVersion(versions, 0, 301));
+		assertEquals(-1, DbCacheTable.findVersion(versions, 3, 150));
+		assertEquals(-1, DbCacheTable.findVersion(new long[0], 0, 150));
+	}
+
+	@Test
+	public void testSeveralVersionsPerObject() {
+		DbCacheTable tbl = new DbCacheTable(new String[0], Sv.PARENT);
+		tbl.addObjectVersion(version(TYPE, 1L, 13L, null, 201, OPEN));
+		tbl.addObjectVersion(version(TYPE, 1L, 11L, null, 1, 100));
+		tbl.addObjectVersion(version(TYPE, 1L, 12L, null, 101, 200));
+		// adding a cached version again must not break the index
+		tbl.addObjectVersion(version(TYPE, 1L, 12L, null, 101, 200));
+		assertEquals(Long.valueOf(11L), tbl.getObject(1L, new DateTime(1)).getPkid());
+		assertEquals(Long.valueOf(11L), tbl.getObject(1L, new DateTime(100)).getPkid());
+		assertEquals(Long.valueOf(12L), tbl.getObject(1L, new DateTime(101)).getPkid());
+		assertEquals(Long.valueOf(12L), tbl.getObject(1L, new DateTime(200)).getPkid());
+		assertEquals(Long.valueOf(13L), tbl.getObject(1L, new DateTime(250)).getPkid());
+		assertNull(tbl.getObject(1L, new DateTime(0)));
+		assertNull(tbl.getObject(2L, new DateTime(150)));
+	}
+
+	@Test
+	public void testChildHistoryByRefDate() {
+		DbCacheTable tbl = new DbCacheTable(new String[0], Sv.PARENT);
+		tbl.addHistoryByParentId(children(), TYPE, 5L);
+		assertEquals(Collections.singletonList(21L), pkids(tbl.getObjectsByParentId(5L, new DateTime(10))));
+		assertEquals(Arrays.asList(21L, 31L), pkids(tbl.getObjectsByParentId(5L, new DateTime(75))));
+		assertEquals(Arrays.asList(22L, 31L), pkids(tbl.getObjectsByParentId(5L, new DateTime(150))));
+		assertEquals(Collections.singletonList(22L), pkids(tbl.getObjectsByParentId(5L, new DateTime(151))));
+		assertEquals(0, tbl.getObjectsByParentId(5L, new DateTime(0)).size());
+		// the history of the other parent wasn't loaded
+		assertNull(tbl.getObjectsByParentId(6L, new DateTime(75)));
+		// the child versions are also available by object id
+		assertEquals(Long.valueOf(31L), tbl.getObject(2L, new DateTime(75)).getPkid());
+	}
+
+	@Test
+	public void testInvalidationOnWrite() {
+		DbCacheTable tbl = new DbCacheTable(new String[0], Sv.PARENT);
+		tbl.addHistoryByParentId(children(), TYPE, 5L);
+		// the write closes the open version, so its interval must be dropped
+		tbl.removeObject(1L, null);
+		assertNull(tbl.getObject(1L, new DateTime(200)));
+		assertEquals(Long.valueOf(31L), tbl.getObject(2L, new DateTime(75)).getPkid());
+		tbl.removeObjectSupport(5L);
+		assertNull(tbl.getObjectsByParentId(5L, new DateTime(75)));
+		// a version added after the write is served again
+		tbl.addObjectVersion(version(TYPE, 1L, 23L, 5L, 101, 300));
+		assertEquals(Long.valueOf(23L), tbl.getObject(1L, new DateTime(200)).getPkid());
+	}
+
+	private static DbCacheTable cached(DbDataObject dbo, String key) {
+		DbCacheTable tbl = new DbCacheTable(new String[0], Sv.PARENT);
+		tbl.addObject(dbo, key);
+		DbDataArray children = new DbDataArray();
+		children.addDataItem(dbo);
+		tbl.addArrayByParentId(children, TYPE, dbo.getParentId());
+		return tbl;
+	}
+
+	@Test
+	public void testRefreshDeleted() {
+		DbDataObject dbo = version(TYPE, 7L, 70L, 5L, 1, OPEN);
+		DbCacheTable tbl = cached(dbo, "KEY7");
+		tbl.refreshObject(7L, dbo, null);
+		assertNull(tbl.getObject(7L));
+		assertNull(tbl.getObject("KEY7"));
+		assertNull(tbl.getObjectsByParentId(5L));
+	}
+
+	@Test
+	public void testRefreshMoved() {
+		DbDataObject dbo = version(TYPE, 7L, 70L, 5L, 1, OPEN);
+		DbCacheTable tbl = cached(dbo, "KEY7");
+		DbDataArray others = new DbDataArray();
+		others.addDataItem(version(TYPE, 8L, 80L, 6L, 1, OPEN));
+		tbl.addArrayByParentId(others, TYPE, 6L);
+		DbDataObject current = version(TYPE, 7L, 71L, 6L, 1, OPEN);
+		tbl.refreshObject(7L, dbo, current);
+		assertSame(current, tbl.getObject(7L));
+		// the key might have changed with the new version
+		assertNull(tbl.getObject("KEY7"));
+		// both the old and the new parent lists are stale
+		assertNull(tbl.getObjectsByParentId(5L));
+		assertNull(tbl.getObjectsByParentId(6L));
+	}
+
+	@Test
+	public void testRefreshAfterSave() {
+		DbDataObject dbo = version(TYPE, 7L, 70L, 5L, 1, OPEN);
+		DbCacheTable tbl = cached(dbo, "KEY7");
+		// a save replaced the refreshed instance in the mean time
+		DbDataObject saved = version(TYPE, 7L, 72L, 5L, 1, OPEN);
+		tbl.addObject(saved, "KEY7");
+		tbl.refreshObject(7L, dbo, null);
+		assertSame(saved, tbl.getObject(7L));
+		assertSame(saved, tbl.getObject("KEY7"));
+		assertEquals(1, tbl.getObjectsByParentId(5L).size());
+	}
+
+	private static DbCacheTable indexed(String indexes) {
+		DbDataObject descriptor = new DbDataObject();
+		descriptor.setObjectId(TYPE);
+		descriptor.setVal(Sv.CACHE_TYPE, Sv.PERM);
+		descriptor.setVal(Sv.CACHE_INDEXES, indexes);
+		return new DbCacheTable(descriptor, null);
+	}
+
+	private static DbDataObject coded(long objectId, Long parentId, String code, Object pin) {
+		DbDataObject dbo = version(TYPE, objectId, objectId * 10, parentId, 1, OPEN);
+		dbo.setVal("CODE_VALUE", code);
+		dbo.setVal("PIN", pin);
+		return dbo;
+	}
+
+	private static HashMap<String, Object> criteria(Object... pairs) {
+		HashMap<String, Object> result = new HashMap<String, Object>();
+		for (int i = 0; i < pairs.length; i += 2)
+			result.put((String) pairs[i], pairs[i + 1]);
+		return result;
+	}
+
+	@Test
+	public void testGetIndexFields() {
+		DbDataObject descriptor = new DbDataObject();
+		descriptor.setVal(Sv.IS_CONFIG_TABLE, true);
+		descriptor.setVal(Sv.CONFIG_UNQ_ID, "code_value");
+		descriptor.setVal(Sv.CACHE_INDEXES, "pin, code_value+parent_id ,CODE_VALUE, ");
+		String[][] fields = DbCacheTable.getIndexFields(descriptor);
+		// the declared duplicate of the config id is dropped, the composite
+		// index fields are sorted
+		assertEquals(3, fields.length);
+		assertEquals(Arrays.asList("CODE_VALUE"), Arrays.asList(fields[0]));
+		assertEquals(Arrays.asList("PIN"), Arrays.asList(fields[1]));
+		assertEquals(Arrays.asList("CODE_VALUE", "PARENT_ID"), Arrays.asList(fields[2]));
+		assertEquals(0, DbCacheTable.getIndexFields(null).length);
+	}
+
+	@Test
+	public void testIndexKey() {
+		assertEquals(DbCacheTable.indexKey(new Object[] { 15L }),
+				DbCacheTable.indexKey(new Object[] { new BigDecimal("15.00") }));
+		assertEquals(DbCacheTable.indexKey(new Object[] { 15L }), DbCacheTable.indexKey(new Object[] { 15 }));
+		assertNotEquals(DbCacheTable.indexKey(new Object[] { 15L }), DbCacheTable.indexKey(new Object[] { "15" }));
+		assertNotEquals(DbCacheTable.indexKey(new Object[] { "A", "BC" }),
+				DbCacheTable.indexKey(new Object[] { "AB", "C" }));
+		assertNull(DbCacheTable.indexKey(new Object[] { "A", null }));
+	}
+
+	@Test
+	public void testEqualityCriteria() {
+		assertEquals(criteria("PIN", 15L),
+				DbCacheTable.getEqualityCriteria(new DbSearchCriterion("pin", DbCompareOperand.EQUAL, 15L)));
+		DbSearchExpression and = new DbSearchExpression()
+				.addDbSearchItem(new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, 5L))
+				.addDbSearchItem(new DbSearchCriterion("CODE_VALUE", DbCompareOperand.EQUAL, "A"));
+		assertEquals(criteria("PARENT_ID", 5L, "CODE_VALUE", "A"), DbCacheTable.getEqualityCriteria(and));
+
+		DbSearchCriterion first = new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, 5L);
+		first.setNextCritOperand(DbLogicOperand.OR.toString());
+		assertNull(DbCacheTable.getEqualityCriteria(new DbSearchExpression().addDbSearchItem(first)
+				.addDbSearchItem(new DbSearchCriterion("CODE_VALUE", DbCompareOperand.EQUAL, "A"))));
+		assertNull(DbCacheTable.getEqualityCriteria(new DbSearchCriterion("PIN", DbCompareOperand.GREATER, 15L)));
+		assertNull(DbCacheTable.getEqualityCriteria(new DbSearchCriterion("PIN", DbCompareOperand.EQUAL, null)));
+		DbSearchCriterion not = new DbSearchCriterion("PIN", DbCompareOperand.EQUAL, 15L);
+		not.setNotPrefix(true);
+		assertNull(DbCacheTable.getEqualityCriteria(not));
+		// the same field twice can't be served by a single index lookup
+		assertNull(DbCacheTable.getEqualityCriteria(
+				new DbSearchExpression().addDbSearchItem(new DbSearchCriterion("PIN", DbCompareOperand.EQUAL, 1L))
+						.addDbSearchItem(new DbSearchCriterion("PIN", DbCompareOperand.EQUAL, 2L))));
+		assertNull(DbCacheTable.getEqualityCriteria(new DbSearchExpression()));
+	}
+
+	@Test
+	public void testObjectByIndex() {
+		DbCacheTable tbl = indexed("PIN,PARENT_ID+CODE_VALUE");
+		assertEquals(0, tbl.findIndex(Arrays.asList("PIN")));
+		assertEquals(1, tbl.findIndex(Arrays.asList("PARENT_ID", "CODE_VALUE")));
+		assertEquals(-1, tbl.findIndex(Arrays.asList("CODE_VALUE")));
+
+		DbDataObject dbo = coded(7L, 5L, "A", 15L);
+		tbl.addObject(dbo);
+		assertSame(dbo, tbl.getObjectByIndex(criteria("PIN", new BigDecimal(15))));
+		assertSame(dbo, tbl.getObjectByIndex(criteria("CODE_VALUE", "A", "PARENT_ID", 5L)));
+		assertNull(tbl.getObjectByIndex(criteria("CODE_VALUE", "A", "PARENT_ID", 6L)));
+		// no index covers exactly these fields
+		assertNull(tbl.getObjectByIndex(criteria("CODE_VALUE", "A")));
+		assertNull(tbl.getObjectByIndex(criteria("PIN", 15L, "CODE_VALUE", "A")));
+
+		tbl.removeObject(7L, null);
+		assertNull(tbl.getObjectByIndex(criteria("PIN", 15L)));
+		assertNull(tbl.getObjectByIndex(criteria("CODE_VALUE", "A", "PARENT_ID", 5L)));
+	}
+
+	@Test
+	public void testObjectByIndexStale() {
+		DbCacheTable tbl = indexed("PIN");
+		DbDataObject dbo = coded(7L, 5L, "A", 15L);
+		tbl.addObject(dbo);
+		// the cached instance was changed without going through the cache
+		dbo.setVal("PIN", 16L);
+		assertNull(tbl.getObjectByIndex(criteria("PIN", 15L)));
+
+		// a new object with the same key replaces the entry, the removal of the
+		// previous owner leaves it intact
+		DbDataObject other = coded(8L, 5L, "B", 16L);
+		tbl.addObject(other);
+		assertSame(other, tbl.getObjectByIndex(criteria("PIN", 16L)));
+		tbl.removeObject(7L, null);
+		assertSame(other, tbl.getObjectByIndex(criteria("PIN", 16L)));
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbQueryExpression;
+import com.prtech.svarog_common.DbQueryObject;
+import com.prtech.svarog_common.DbSearch;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
+
+public class DbQueryFingerprintTest {
+
+	private static String fingerprint(Long objectType, DbSearch search) throws SvException {
+		return new DbQueryObject(SvCore.getDbt(objectType), search, null, null).getSQLFingerprint(false, false);
+	}
+
+	private static String fingerprint(String fieldName, DbCompareOperand operand, Object value) throws SvException {
+		return fingerprint(svCONST.OBJECT_TYPE_USER, new DbSearchCriterion(fieldName, operand, value));
+	}
+
+	private static DbSearchExpression expression(String nextCritOperand) throws SvException {
+		DbSearchCriterion first = new DbSearchCriterion("USER_NAME", DbCompareOperand.EQUAL, "A");
+		first.setNextCritOperand(nextCritOperand);
+		return new DbSearchExpression().addDbSearchItem(first)
+				.addDbSearchItem(new DbSearchCriterion("USER_TYPE", DbCompareOperand.EQUAL, "B"));
+	}
+
+	@Test
+	public void testEqualShapes() throws SvException {
+		// the values are bound, so they aren't part of the fingerprint
+		String fp = fingerprint("USER_NAME", DbCompareOperand.EQUAL, "ADMIN");
+		assertNotNull(fp);
+		assertEquals(fp, fingerprint("USER_NAME", DbCompareOperand.EQUAL, "GUEST"));
+		assertEquals(fingerprint(svCONST.OBJECT_TYPE_USER, expression("AND")),
+				fingerprint(svCONST.OBJECT_TYPE_USER, expression("AND")));
+	}
+
+	@Test
+	public void testDistinctShapes() throws SvException {
+		String fp = fingerprint("USER_NAME", DbCompareOperand.EQUAL, "ADMIN");
+		assertNotEquals(fp, fingerprint("USER_TYPE", DbCompareOperand.EQUAL, "ADMIN"));
+		assertNotEquals(fp, fingerprint("USER_NAME", DbCompareOperand.LIKE, "ADMIN"));
+		assertNotEquals(fp, fingerprint("USER_NAME", DbCompareOperand.NOTEQUAL, "ADMIN"));
+		assertNotEquals(fp, fingerprint(svCONST.OBJECT_TYPE_ORG_UNITS,
+				new DbSearchCriterion("USER_NAME", DbCompareOperand.EQUAL, "ADMIN")));
+		assertNotEquals(fingerprint(svCONST.OBJECT_TYPE_USER, expression("AND")),
+				fingerprint(svCONST.OBJECT_TYPE_USER, expression("OR")));
+	}
+
+	@Test
+	public void testReverseExpression() throws SvException {
+		DbQueryExpression forward = new DbQueryExpression();
+		// an expression without items has no fingerprint either
+		assertNull(forward.getSQLFingerprint(false, false));
+		forward.addItem(new DbQueryObject(SvCore.getDbt(svCONST.OBJECT_TYPE_USER),
+				new DbSearchCriterion("USER_NAME", DbCompareOperand.EQUAL, "ADMIN"), null, null));
+		assertNotNull(forward.getSQLFingerprint(false, false));
+		DbQueryExpression reverse = new DbQueryExpression();
+		reverse.setIsReverseExpression(true);
+		assertNull(reverse.getSQLFingerprint(false, false));
+	}
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+
+public class DbSearchInListTest {
+
+	/**
+	 * PostgreSQL binds the whole list as a single array parameter
+	 */
+	private static boolean isArrayBound() {
+		return SvConf.SvDbType.POSTGRES.equals(SvConf.getDbType());
+	}
+
+	private static DbSearchCriterion inList(Object... values) throws SvException {
+		DbSearchCriterion crit = new DbSearchCriterion("USER_NAME", DbCompareOperand.IN_LIST);
+		crit.setInList(new ArrayList<Object>(Arrays.asList(values)));
+		return crit;
+	}
+
+	@Test
+	public void testInList() throws SvException {
+		DbSearchCriterion crit = inList("A", "B", "C");
+		if (isArrayBound()) {
+			assertEquals("(TBL.USER_NAME = ANY(?))", crit.getSQLExpression("TBL"));
+			assertEquals(1, crit.getSQLParamVals().size());
+			assertEquals(Arrays.asList("A", "B", "C"), crit.getSQLParamVals().get(0));
+		} else {
+			assertEquals("(TBL.USER_NAME IN (?,?,?))", crit.getSQLExpression("TBL"));
+			assertEquals(Arrays.asList((Object) "A", "B", "C"), crit.getSQLParamVals());
+		}
+	}
+
+	@Test
+	public void testCollectionValue() throws SvException {
+		// a collection passed as compare value is used as the list
+		DbSearchCriterion crit = new DbSearchCriterion("USER_NAME", DbCompareOperand.IN_LIST,
+				Arrays.asList("A", "B"));
+		assertEquals(isArrayBound() ? "(TBL.USER_NAME = ANY(?))" : "(TBL.USER_NAME IN (?,?))",
+				crit.getSQLExpression("TBL"));
+	}
+
+	@Test
+	public void testEmptyList() throws SvException {
+		DbSearchCriterion crit = inList();
+		if (isArrayBound()) {
+			// an empty array matches no rows
+			assertEquals("(TBL.USER_NAME = ANY(?))", crit.getSQLExpression("TBL"));
+			assertEquals(1, crit.getSQLParamVals().size());
+		} else {
+			// IN () isn't valid SQL, so the criterion is always false
+			assertEquals("(1 = 0)", crit.getSQLExpression("TBL"));
+			assertTrue(crit.getSQLParamVals().isEmpty());
+		}
+	}
+
+	@Test
+	public void testNotInList() throws SvException {
+		DbSearchCriterion crit = inList("A");
+		crit.setNotPrefix(true);
+		assertEquals(isArrayBound() ? "NOT(TBL.USER_NAME = ANY(?))" : "NOT(TBL.USER_NAME IN (?))",
+				crit.getSQLExpression("TBL"));
+	}
+}
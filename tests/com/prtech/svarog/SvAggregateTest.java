@@ -0,0 +1,116 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.prtech.svarog.SvAggregate.AggregateFunction;
+
+public class SvAggregateTest {
+
+	private static final List<String> ALLOWED = Arrays.asList("AREA", "STATUS", "DT_INSERT");
+
+	private static void assertInvalid(SvAggregate agg, List<String> allowedFields) {
+		try {
+			agg.validate(allowedFields);
+			fail("The aggregate was accepted: " + agg.getFieldNames());
+		} catch (SvException e) {
+			assertEquals("system.error.aggregate_invalid", e.getLabelCode());
+		}
+	}
+
+	@Test
+	public void testAlias() {
+		assertEquals(SvAggregate.COUNT_ALL, SvAggregate.getAlias(AggregateFunction.COUNT, null));
+		assertEquals("COUNT_AREA", SvAggregate.getAlias(AggregateFunction.COUNT, "AREA"));
+		assertEquals("SUM_AREA", SvAggregate.getAlias(AggregateFunction.SUM, " area "));
+		assertEquals("MAX_DT_INSERT", SvAggregate.getAlias(AggregateFunction.MAX, "dt_insert"));
+	}
+
+	@Test
+	public void testFieldNames() {
+		SvAggregate agg = new SvAggregate().addGroupBy("status").addCount()
+				.add(AggregateFunction.SUM, " area").add(AggregateFunction.MIN, "AREA")
+				.add(AggregateFunction.MAX, "STATUS");
+		assertEquals(Arrays.asList("STATUS", "AREA"), agg.getFieldNames());
+	}
+
+	@Test
+	public void testValidSpecs() throws SvException {
+		new SvAggregate().addCount().validate(null);
+		new SvAggregate().addCount().validate(ALLOWED);
+		// the count of all rows references no field
+		new SvAggregate().addCount().validate(Arrays.<String>asList());
+		new SvAggregate().addGroupBy("STATUS").add(AggregateFunction.SUM, "area")
+				.add(AggregateFunction.MAX, "DT_INSERT").validate(ALLOWED);
+		// without allowed fields any valid identifier is accepted
+		new SvAggregate().add(AggregateFunction.MIN, "CUSTOM_FIELD_2").validate(null);
+	}
+
+	@Test
+	public void testInvalidSpecs() {
+		assertInvalid(new SvAggregate(), null);
+		assertInvalid(new SvAggregate().addGroupBy("STATUS"), ALLOWED);
+		assertInvalid(new SvAggregate().add(AggregateFunction.SUM, null), null);
+		assertInvalid(new SvAggregate().add(AggregateFunction.MIN, null), ALLOWED);
+		assertInvalid(new SvAggregate().addCount().addGroupBy(null), null);
+	}
+
+	@Test
+	public void testInvalidFieldNames() {
+		String[] invalid = new String[] { "", "1AREA", "_AREA", "AREA;DROP TABLE X", "AREA)", "A.AREA",
+				"AREA--", "AREA OR 1=1", "'AREA'", "\"AREA\"", "AREA*", "AR\u00c9A" };
+		for (String fieldName : invalid) {
+			assertInvalid(new SvAggregate().add(AggregateFunction.SUM, fieldName), null);
+			assertInvalid(new SvAggregate().addCount().addGroupBy(fieldName), null);
+		}
+	}
+
+	@Test
+	public void testFieldNotAllowed() {
+		assertInvalid(new SvAggregate().add(AggregateFunction.SUM, "PKID"), ALLOWED);
+		assertInvalid(new SvAggregate().addCount().addGroupBy("USER_ID"), ALLOWED);
+		assertInvalid(new SvAggregate().addGroupBy("STATUS").add(AggregateFunction.MAX, "PASSWORD"), ALLOWED);
+		assertInvalid(new SvAggregate().add(AggregateFunction.SUM, "AREA"), Arrays.<String>asList());
+	}
+
+	@Test
+	public void testCountSQL() {
+		assertEquals("SELECT COUNT(*) AS COUNT_ALL FROM (SELECT * FROM T) AGG",
+				new SvAggregate().addCount().getSQL("SELECT * FROM T", "AGG0_"));
+	}
+
+	@Test
+	public void testGroupBySQL() {
+		SvAggregate agg = new SvAggregate().addGroupBy("status").addGroupBy("DT_INSERT").addCount()
+				.add(AggregateFunction.SUM, "area").add(AggregateFunction.MAX, "DT_INSERT");
+		assertEquals("SELECT AGG0_STATUS AS STATUS,AGG0_DT_INSERT AS DT_INSERT,COUNT(*) AS COUNT_ALL,"
+				+ "SUM(AGG0_AREA) AS SUM_AREA,MAX(AGG0_DT_INSERT) AS MAX_DT_INSERT FROM (SELECT * FROM T) AGG"
+				+ " GROUP BY AGG0_STATUS,AGG0_DT_INSERT", agg.getSQL("SELECT * FROM T", "AGG0_"));
+	}
+
+	@Test
+	public void testSQLWithoutPrefix() {
+		SvAggregate agg = new SvAggregate().addGroupBy("STATUS").add(AggregateFunction.MIN, "AREA");
+		assertEquals("SELECT STATUS AS STATUS,MIN(AREA) AS MIN_AREA FROM (Q) AGG GROUP BY STATUS",
+				agg.getSQL("Q", ""));
+	}
+}
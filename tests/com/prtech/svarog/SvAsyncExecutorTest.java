@@ -0,0 +1,103 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.prtech.svarog.SvReader.AsyncRead;
+
+public class SvAsyncExecutorTest {
+
+	@Test
+	public void testReaderSettings() throws Exception {
+		try (SvReader svr = new SvReader()) {
+			svr.isInternal = true;
+			svr.includeGeometries = true;
+			svr.lazyGeometries = true;
+			svr.replicaEligible = true;
+			Object[] settings = svr.readAsync(new AsyncRead<Object[]>() {
+				@Override
+				public Object[] read(SvReader reader) throws SvException {
+					return new Object[] { reader.instanceUser.getObjectId(), reader.getSessionId(), reader.isInternal,
+							reader.includeGeometries, reader.lazyGeometries, reader.replicaEligible };
+				}
+			}).get(30, TimeUnit.SECONDS);
+			assertEquals(svr.instanceUser.getObjectId(), settings[0]);
+			assertEquals(svr.getSessionId(), settings[1]);
+			assertEquals(Boolean.TRUE, settings[2]);
+			assertEquals(Boolean.TRUE, settings[3]);
+			assertEquals(Boolean.TRUE, settings[4]);
+			assertEquals(Boolean.TRUE, settings[5]);
+		}
+	}
+
+	@Test
+	public void testQueueBound() throws Exception {
+		int threads = SvConf.getAsyncReadThreads();
+		int queueSize = SvConf.getAsyncQueueSize();
+		boolean virtualThreads = SvConf.isAsyncVirtualThreads();
+		try {
+			SvConf.setAsyncReadThreads(1);
+			SvConf.setAsyncQueueSize(1);
+			// the bound applies to the thread pool and to the virtual threads
+			for (boolean virtual : new boolean[] { false, true }) {
+				SvConf.setAsyncVirtualThreads(virtual);
+				SvAsyncExecutor.shutdown();
+				assertQueueBound();
+			}
+		} finally {
+			SvAsyncExecutor.shutdown();
+			SvConf.setAsyncReadThreads(threads);
+			SvConf.setAsyncQueueSize(queueSize);
+			SvConf.setAsyncVirtualThreads(virtualThreads);
+		}
+	}
+
+	private static void assertQueueBound() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Callable<Boolean> blocking = new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				started.countDown();
+				return release.await(30, TimeUnit.SECONDS);
+			}
+		};
+		CompletableFuture<Boolean> running = SvAsyncExecutor.submit(blocking);
+		assertTrue(started.await(30, TimeUnit.SECONDS));
+		CompletableFuture<Boolean> waiting = SvAsyncExecutor.submit(blocking);
+		CompletableFuture<Boolean> rejected = SvAsyncExecutor.submit(blocking);
+		try {
+			rejected.get(30, TimeUnit.SECONDS);
+			fail("The read above the queue size was accepted");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		release.countDown();
+		assertTrue(running.get(30, TimeUnit.SECONDS));
+		assertTrue(waiting.get(30, TimeUnit.SECONDS));
+	}
+}
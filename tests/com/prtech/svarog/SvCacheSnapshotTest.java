@@ -0,0 +1,146 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataObject;
+
+public class SvCacheSnapshotTest {
+
+	private static final Long TYPE = 990002L;
+
+	private static DbDataObject roundTrip(DbDataObject dbo) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		SvCacheSnapshot.writeObject(out, dbo);
+		out.flush();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		DbDataObject restored = SvCacheSnapshot.readObject(in);
+		assertEquals(-1, in.read());
+		return restored;
+	}
+
+	private static void assertSameValue(Object expected, Object actual) {
+		assertEquals(expected, actual);
+		if (expected != null)
+			assertEquals(expected.getClass(), actual.getClass());
+	}
+
+	@Test
+	public void testObjectRoundTrip() throws IOException {
+		DbDataObject dbo = new DbDataObject(TYPE);
+		dbo.setObjectType(TYPE);
+		dbo.setObjectId(11L);
+		dbo.setPkid(12L);
+		dbo.setParentId(13L);
+		dbo.setUserId(14L);
+		dbo.setDtInsert(new DateTime(1500000000000L));
+		dbo.setDtDelete(SvConf.MAX_DATE);
+		dbo.setStatus("VALID");
+		dbo.setVal("F_TEXT", "text \u00e9");
+		dbo.setVal("F_LONG", 42L);
+		dbo.setVal("F_INT", 7);
+		dbo.setVal("F_DECIMAL", new BigDecimal("12.50"));
+		dbo.setVal("F_DOUBLE", 1.5d);
+		dbo.setVal("F_BOOLEAN", Boolean.TRUE);
+		dbo.setVal("F_DATETIME", new DateTime(1600000000123L));
+		Timestamp timestamp = new Timestamp(1600000000000L);
+		timestamp.setNanos(123456789);
+		dbo.setVal("F_TIMESTAMP", timestamp);
+		dbo.setVal("F_DATE", new java.sql.Date(1600000000000L));
+		dbo.setVal("F_TIME", new java.sql.Time(3600000L));
+		dbo.setVal("F_NULL", null);
+		dbo.setIsDirty(false);
+
+		DbDataObject restored = roundTrip(dbo);
+		assertEquals(TYPE, restored.getObjectType());
+		assertEquals(Long.valueOf(11L), restored.getObjectId());
+		assertEquals(Long.valueOf(12L), restored.getPkid());
+		assertEquals(Long.valueOf(13L), restored.getParentId());
+		assertEquals(Long.valueOf(14L), restored.getUserId());
+		assertEquals(dbo.getDtInsert().getMillis(), restored.getDtInsert().getMillis());
+		assertEquals(dbo.getDtDelete().getMillis(), restored.getDtDelete().getMillis());
+		assertEquals("VALID", restored.getStatus());
+		assertFalse(restored.getIs_dirty());
+		for (String field : Arrays.asList("F_TEXT", "F_LONG", "F_INT", "F_DECIMAL", "F_DOUBLE", "F_BOOLEAN",
+				"F_TIMESTAMP", "F_DATE", "F_TIME"))
+			assertSameValue(dbo.getVal(field), restored.getVal(field));
+		// the scale of decimals is kept, so 12.50 isn't restored as 12.5
+		assertEquals("12.50", restored.getVal("F_DECIMAL").toString());
+		assertEquals(DateTime.class, restored.getVal("F_DATETIME").getClass());
+		assertEquals(1600000000123L, ((DateTime) restored.getVal("F_DATETIME")).getMillis());
+		assertNull(restored.getVal("F_NULL"));
+		assertEquals(dbo.getValuesMap().keySet().toString(), restored.getValuesMap().keySet().toString());
+	}
+
+	@Test
+	public void testLongText() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 70000; i++)
+			text.append((char) ('a' + i % 26));
+		DbDataObject dbo = new DbDataObject(TYPE);
+		dbo.setObjectType(TYPE);
+		dbo.setObjectId(21L);
+		dbo.setPkid(22L);
+		dbo.setVal("F_TEXT", text.toString());
+		assertEquals(text.toString(), roundTrip(dbo).getVal("F_TEXT"));
+	}
+
+	@Test
+	public void testUnsupportedValue() throws IOException {
+		DbDataObject dbo = new DbDataObject(TYPE);
+		dbo.setObjectType(TYPE);
+		dbo.setObjectId(31L);
+		dbo.setPkid(32L);
+		dbo.setVal("F_TEXT", "text");
+		assertTrue(SvCacheSnapshot.isSupported(dbo));
+		dbo.setVal("F_BYTES", new byte[] { 1, 2 });
+		assertFalse(SvCacheSnapshot.isSupported(dbo));
+		assertEquals(SvCacheSnapshot.T_UNSUPPORTED, SvCacheSnapshot.typeOf(new Object()));
+		try {
+			SvCacheSnapshot.writeValue(new DataOutputStream(new ByteArrayOutputStream()), new byte[0]);
+			fail("An unsupported value was written");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnknownTypeTag() {
+		try {
+			SvCacheSnapshot.readValue(new DataInputStream(new ByteArrayInputStream(new byte[] { 99 })));
+			fail("An unknown type tag was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
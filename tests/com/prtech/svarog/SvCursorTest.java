@@ -0,0 +1,91 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbSearch;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
+
+public class SvCursorTest {
+
+	private static final String NOTE_NAME = "CURSOR_TEST";
+
+	private static long countNotes(SvReader svr, Long parentId) throws SvException {
+		DbSearch search = new DbSearchExpression()
+				.addDbSearchItem(new DbSearchCriterion("PARENT_ID", DbCompareOperand.EQUAL, parentId))
+				.addDbSearchItem(new DbSearchCriterion("NOTE_NAME", DbCompareOperand.EQUAL, NOTE_NAME));
+		long count = 0;
+		try (SvCursor cursor = svr.getObjectsCursor(search, svCONST.OBJECT_TYPE_NOTES, null)) {
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testCloseKeepsTransaction() {
+		try (SvReader svr = new SvReader(); SvWriter svw = new SvWriter(svr); SvNote svn = new SvNote(svr)) {
+			String token = SvarogRolesTest.getUserToken(true);
+			DbDataObject dboToken = DbCache.getObject(token, svCONST.OBJECT_TYPE_SECURITY_LOG);
+			Long oid = dboToken.getObjectId();
+			svw.dbSetAutoCommit(false);
+			svn.setNote(oid, NOTE_NAME, NOTE_NAME, false);
+			// the cursor reads over its own connection, so the uncommitted
+			// note of the shared transaction isn't visible to it
+			assertEquals(0, countNotes(svr, oid));
+			// closing the cursor must neither commit nor end the transaction
+			assertFalse(svw.dbGetConn().getAutoCommit());
+			svw.dbRollback();
+			try (SvReader svrCheck = new SvReader()) {
+				assertEquals(0, countNotes(svrCheck, oid));
+			}
+		} catch (SvException e) {
+			e.printStackTrace();
+			fail("Test failed with exception" + e.getFormattedMessage());
+		} catch (SQLException e) {
+			e.printStackTrace();
+			fail("Test failed with exception" + e.getMessage());
+		}
+	}
+
+	@Test
+	public void testReleasedCoreIsNotReacquired() {
+		try (SvReader svr = new SvReader()) {
+			SvCursor cursor = svr.getObjectsCursor(
+					new DbSearchCriterion("OBJECT_ID", DbCompareOperand.EQUAL, svCONST.OBJECT_TYPE_TABLE),
+					svCONST.OBJECT_TYPE_TABLE, null);
+			svr.release();
+			// the cursor owns its connection, closing it after the release of
+			// the instance must not acquire a tracked connection again
+			cursor.close();
+			assertFalse(SvConnTracker.hasTrackedConnection(svr.weakThis));
+		} catch (SvException e) {
+			e.printStackTrace();
+			fail("Test failed with exception" + e.getFormattedMessage());
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.io.BaseEncoding;
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbSearch;
+import com.prtech.svarog_common.DbSearchCriterion;
+import com.prtech.svarog_common.DbSearchCriterion.DbCompareOperand;
+import com.prtech.svarog_common.DbSearchExpression;
+
+public class SvKeysetTest {
+
+	private static final String FIELD = "SORT_F";
+
+	private static DbDataObject last(Object value) {
+		DbDataObject dbo = new DbDataObject();
+		dbo.setObjectId(99L);
+		if (value != null)
+			dbo.setVal(FIELD, value);
+		return dbo;
+	}
+
+	private static String encode(String raw) {
+		return BaseEncoding.base64Url().omitPadding().encode(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Method to render the structure of a search, with the logic operand
+	 * between the items of an expression
+	 */
+	private static String describe(DbSearch search) {
+		if (search instanceof DbSearchCriterion) {
+			DbSearchCriterion crit = (DbSearchCriterion) search;
+			return (Boolean.TRUE.equals(crit.getNotPrefix()) ? "NOT " : "") + crit.getFieldName() + " "
+					+ crit.getOperand() + (crit.getCompareValue() != null ? " " + crit.getCompareValue() : "");
+		}
+		StringBuilder result = new StringBuilder("(");
+		DbSearchExpression expr = (DbSearchExpression) search;
+		for (int i = 0; i < expr.getExprList().size(); i++) {
+			DbSearch item = expr.getExprList().get(i);
+			result.append(describe(item));
+			if (i < expr.getExprList().size() - 1)
+				result.append(' ').append(item instanceof DbSearchCriterion
+						? ((DbSearchCriterion) item).getNextCritOperand()
+						: ((DbSearchExpression) item).getNextCritOperand()).append(' ');
+		}
+		return result.append(')').toString();
+	}
+
+	/**
+	 * Method to decode a token issued for a value and get the decoded key
+	 */
+	private static Object roundTrip(Object value) throws SvException {
+		DbSearch seek = SvKeyset.getSeekSearch(SvKeyset.getToken(last(value), FIELD), FIELD, true);
+		DbSearch first = ((DbSearchExpression) seek).getExprList().get(0);
+		if (first instanceof DbSearchCriterion)
+			return ((DbSearchCriterion) first).getCompareValue();
+		// a null key starts with the (field IS NULL AND object_id > id) group
+		return null;
+	}
+
+	private static void assertMalformed(String token, String sortField) {
+		try {
+			SvKeyset.getSeekSearch(token, sortField, true);
+			fail("The token was accepted: " + token);
+		} catch (SvException e) {
+			assertEquals("system.error.keyset_token_err", e.getLabelCode());
+		}
+	}
+
+	@Test
+	public void testTokenRoundTrip() throws SvException {
+		assertEquals(42L, roundTrip(42L));
+		assertEquals(7L, roundTrip(7));
+		assertEquals(new BigDecimal("12.50"), roundTrip(new BigDecimal("12.50")));
+		assertEquals(new BigDecimal("1.5"), roundTrip(1.5d));
+		assertEquals("a\u00e9b c", roundTrip("a\u00e9b c"));
+		assertEquals(new DateTime(123456789L), roundTrip(new DateTime(123456789L)));
+		assertEquals(Boolean.TRUE, roundTrip(Boolean.TRUE));
+		assertNull(roundTrip(null));
+	}
+
+	@Test
+	public void testObjectIdToken() throws SvException {
+		DbDataArray page = new DbDataArray();
+		page.addDataItem(last(1L));
+		assertNull(SvKeyset.getNextToken(new DbDataArray(), null));
+		String token = SvKeyset.getNextToken(page, null);
+		assertEquals("OBJECT_ID GREATER 99", describe(SvKeyset.getSeekSearch(token, null, true)));
+		assertEquals("OBJECT_ID GREATER 99", describe(SvKeyset.getSeekSearch(token, "object_id", true)));
+	}
+
+	@Test
+	public void testDecodeValue() {
+		assertNull(SvKeyset.decodeValue("N"));
+		assertEquals(-3L, SvKeyset.decodeValue("L-3"));
+		assertEquals("", SvKeyset.decodeValue("S"));
+		assertEquals(Boolean.FALSE, SvKeyset.decodeValue("Bfalse"));
+		try {
+			SvKeyset.decodeValue("Q1");
+			fail("Unknown type accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			SvKeyset.decodeValue("Tnow");
+			fail("Malformed time accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testMalformedToken() {
+		assertMalformed("!!!", FIELD);
+		assertMalformed(encode(FIELD + "\u000199"), FIELD);
+		assertMalformed(encode(FIELD + "\u0001x\u0001L1"), FIELD);
+		assertMalformed(encode(FIELD + "\u000199\u0001"), FIELD);
+		assertMalformed(encode(FIELD + "\u000199\u0001Q1"), FIELD);
+		assertMalformed(encode(FIELD + "\u000199\u0001Lzz"), FIELD);
+	}
+
+	@Test
+	public void testWrongSortField() throws SvException {
+		String token = SvKeyset.getToken(last(5L), FIELD);
+		assertMalformed(token, "OTHER_F");
+		assertMalformed(token, null);
+		assertMalformed(SvKeyset.getToken(last(5L), null), FIELD);
+		// the sort field is case insensitive
+		SvKeyset.getSeekSearch(token, FIELD.toLowerCase(), true);
+	}
+
+	@Test
+	public void testSeekNullOrdering() throws SvException {
+		String token = SvKeyset.getToken(last(5L), FIELD);
+		assertEquals("(SORT_F GREATER 5 OR (SORT_F EQUAL 5 AND OBJECT_ID GREATER 99) OR SORT_F ISNULL)",
+				describe(SvKeyset.getSeekSearch(token, FIELD, true)));
+		assertEquals("(SORT_F GREATER 5 OR (SORT_F EQUAL 5 AND OBJECT_ID GREATER 99))",
+				describe(SvKeyset.getSeekSearch(token, FIELD, false)));
+		String nullToken = SvKeyset.getToken(last(null), FIELD);
+		assertEquals("((SORT_F ISNULL AND OBJECT_ID GREATER 99))",
+				describe(SvKeyset.getSeekSearch(nullToken, FIELD, true)));
+		assertEquals("((SORT_F ISNULL AND OBJECT_ID GREATER 99) OR NOT SORT_F ISNULL)",
+				describe(SvKeyset.getSeekSearch(nullToken, FIELD, false)));
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class SvLazyGeometryTest {
+
+	private static final String[] WKTS = { "POINT (10 20)", "LINESTRING (0 0, 5 7, -3 2)",
+			"POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 3 2, 3 3, 2 2))",
+			"MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((100 50, 101 50, 101 51, 100 50)))",
+			"GEOMETRYCOLLECTION (POINT (-5 -5), LINESTRING (1 1, 2 9))", "POINT Z (1 2 3)",
+			"LINESTRING Z (1 2 3, 4 5 6)" };
+
+	@Test
+	public void testEnvelopeFromWkb() throws Exception {
+		WKTReader reader = new WKTReader(new GeometryFactory());
+		for (String wkt : WKTS) {
+			Geometry geom = reader.read(wkt);
+			geom.setSRID(6316);
+			Envelope expected = geom.getEnvelopeInternal();
+			int dims = wkt.contains(" Z ") ? 3 : 2;
+			byte[][] encodings = { new WKBWriter(dims, ByteOrderValues.BIG_ENDIAN).write(geom),
+					new WKBWriter(dims, ByteOrderValues.LITTLE_ENDIAN).write(geom),
+					new WKBWriter(dims, ByteOrderValues.LITTLE_ENDIAN, true).write(geom) };
+			for (byte[] wkb : encodings)
+				assertEquals(wkt, expected, SvLazyGeometry.getEnvelope(wkb));
+		}
+	}
+
+	@Test
+	public void testToString() throws Exception {
+		Geometry geom = new WKTReader(new GeometryFactory()).read(WKTS[2]);
+		SvLazyGeometry lazy = new SvLazyGeometry(new WKBWriter().write(geom));
+		assertFalse(lazy.isDecoded());
+		// the text form is the WKT, not the identity of the wrapper
+		assertEquals(geom.toString(), lazy.toString());
+		assertTrue(lazy.isDecoded());
+	}
+
+	@Test
+	public void testEmptyAndMalformed() throws Exception {
+		Geometry empty = new WKTReader(new GeometryFactory()).read("MULTIPOLYGON EMPTY");
+		assertTrue(SvLazyGeometry.getEnvelope(new WKBWriter().write(empty)).isNull());
+		byte[] wkb = new WKBWriter().write(new WKTReader(new GeometryFactory()).read("LINESTRING (0 0, 5 7)"));
+		byte[] truncated = new byte[wkb.length - 4];
+		System.arraycopy(wkb, 0, truncated, 0, truncated.length);
+		assertNull(SvLazyGeometry.getEnvelope(truncated));
+	}
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+public class SvLongCacheTest {
+
+	static class ManualTicker extends Ticker {
+		final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		SvLongCache<String> cache = new SvLongCache<>(0, 0, null);
+		for (long i = 0; i < 10000; i++)
+			cache.put(i, Long.toString(i));
+		if (cache.size() != 10000)
+			fail("Cache size is wrong");
+		for (long i = 0; i < 10000; i++)
+			assertEquals(Long.toString(i), cache.getIfPresent(i));
+		for (long i = 0; i < 10000; i += 2)
+			cache.invalidate(i);
+		for (long i = 0; i < 10000; i++)
+			if (i % 2 == 0)
+				assertNull(cache.getIfPresent(i));
+			else
+				assertEquals(Long.toString(i), cache.getIfPresent(i));
+		assertNull(cache.putIfAbsent(20000L, "A"));
+		assertEquals("A", cache.putIfAbsent(20000L, "C"));
+	}
+
+	@Test
+	public void testSizeLimit() {
+		final AtomicLong evicted = new AtomicLong();
+		RemovalListener<Long, String> listener = new RemovalListener<Long, String>() {
+			@Override
+			public void onRemoval(RemovalNotification<Long, String> notification) {
+				if (notification.getCause().equals(RemovalCause.SIZE))
+					evicted.incrementAndGet();
+			}
+		};
+		SvLongCache<String> cache = new SvLongCache<>(160, 0, listener);
+		for (long i = 0; i < 1000; i++)
+			cache.put(i, Long.toString(i));
+		if (cache.size() > 160)
+			fail("Cache exceeded the maximum size:" + cache.size());
+		assertEquals(1000 - cache.size(), evicted.get());
+	}
+
+	@Test
+	public void testExpiry() {
+		ManualTicker ticker = new ManualTicker();
+		SvLongCache<String> cache = new SvLongCache<>(0, 100, null, ticker);
+		cache.put(1L, "1");
+		cache.put(2L, "2");
+		ticker.nanos.addAndGet(60);
+		assertEquals("1", cache.getIfPresent(1L));
+		ticker.nanos.addAndGet(60);
+		assertEquals("1", cache.getIfPresent(1L));
+		assertNull(cache.getIfPresent(2L));
+		cache.cleanUp();
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testReplace() {
+		SvLongCache<long[]> cache = new SvLongCache<>(0, 0, null);
+		long[] first = new long[] { 1L };
+		cache.put(1L, first);
+		long[] second = new long[] { 1L, 2L };
+		if (!cache.replace(1L, first, second))
+			fail("Replace of expected snapshot failed");
+		if (cache.replace(1L, first, new long[] { 3L }))
+			fail("Replace of stale snapshot succeeded");
+		if (cache.remove(1L, first))
+			fail("Remove of stale snapshot succeeded");
+		if (!cache.remove(1L, second))
+			fail("Remove of expected snapshot failed");
+		assertNull(cache.getIfPresent(1L));
+	}
+
+	@Test
+	public void testStats() {
+		SvLongCache<String> cache = new SvLongCache<>(16, 0, null);
+		cache.put(1L, "1");
+		cache.getIfPresent(1L);
+		cache.getIfPresent(2L);
+		for (long i = 10; i < 100; i++)
+			cache.put(i, Long.toString(i));
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.missCount());
+		assertEquals(91 - cache.size(), cache.evictionCount());
+	}
+
+	@Test
+	public void testWeightLimit() {
+		Weigher<Long, String> weigher = new Weigher<Long, String>() {
+			@Override
+			public int weigh(Long key, String value) {
+				return value.length();
+			}
+		};
+		SvLongCache<String> cache = new SvLongCache<>(0, 1600, weigher, 0, null, Ticker.systemTicker());
+		for (long i = 0; i < 1000; i++)
+			cache.put(i, "0123456789");
+		if (cache.weight() > 1600)
+			fail("Cache exceeded the maximum weight:" + cache.weight());
+		assertEquals(cache.size() * 10, cache.weight());
+		// entries heavier than a segment are not cached
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			large.append('x');
+		cache.put(5000L, large.toString());
+		assertNull(cache.getIfPresent(5000L));
+		cache.invalidateAll();
+		assertEquals(0, cache.weight());
+	}
+
+	@Test
+	public void testGlobalWeightBudget() {
+		Weigher<Long, String> weigher = new Weigher<Long, String>() {
+			@Override
+			public int weigh(Long key, String value) {
+				return value.length();
+			}
+		};
+		SvLongCache<String> hot = new SvLongCache<>(0, 0, weigher, 0, null, Ticker.systemTicker());
+		SvLongCache<String> other = new SvLongCache<>(0, 0, weigher, 0, null, Ticker.systemTicker());
+		long budget = SvLongCache.globalWeight() + 1000;
+		SvLongCache.setGlobalMaxWeight(budget);
+		try {
+			for (long i = 0; i < 100; i++)
+				hot.put(i, "0123456789");
+			assertEquals(100, hot.size());
+			// the budget is used up by the first cache, so the second can't
+			// make room by evicting its own entries and rejects them
+			for (long i = 0; i < 50; i++)
+				other.put(i, "0123456789");
+			assertEquals(0, other.size());
+			assertEquals(50, other.rejectionCount());
+			assertEquals(100, hot.size());
+			assertEquals(budget, SvLongCache.globalWeight());
+			// the first cache makes room by evicting its own entries
+			hot.put(1000L, "0123456789");
+			if (SvLongCache.globalWeight() > budget)
+				fail("The global budget was exceeded:" + SvLongCache.globalWeight());
+			if (hot.size() < 99)
+				fail("The cache evicted more entries than needed:" + hot.size());
+
+			// a heavier replacement must fit in the budget like a new entry
+			hot.invalidateAll();
+			other.put(1L, "x");
+			for (long i = 0; i < 99; i++)
+				hot.put(i, "0123456789");
+			hot.put(99L, "012345678");
+			assertEquals(budget, SvLongCache.globalWeight());
+			assertFalse(other.replace(1L, "x", "xx"));
+			assertNull(other.getIfPresent(1L));
+			other.put(1L, "x");
+			other.put(1L, "xx");
+			assertNull(other.getIfPresent(1L));
+			assertEquals(52, other.rejectionCount());
+			assertEquals(budget - 1, SvLongCache.globalWeight());
+			// a lighter replacement always fits
+			other.put(2L, "x");
+			hot.put(0L, "0");
+			assertEquals("0", hot.getIfPresent(0L));
+			assertEquals(100, hot.size());
+		} finally {
+			SvLongCache.setGlobalMaxWeight(0);
+			hot.invalidateAll();
+			other.invalidateAll();
+		}
+	}
+
+	@Test
+	public void testFrequencyAdmission() {
+		SvLongCache<String> cache = new SvLongCache<String>(160, 0, null, 0, null, Ticker.systemTicker(), true);
+		for (int round = 0; round < 5; round++)
+			for (long i = 0; i < 100; i++)
+				if (cache.getIfPresent(i) == null)
+					cache.put(i, Long.toString(i));
+		// a scan of one-off keys shall not push the hot keys out of the cache
+		for (long i = 1000; i < 11000; i++)
+			cache.put(i, Long.toString(i));
+		int hot = 0;
+		for (long i = 0; i < 100; i++)
+			if (cache.getIfPresent(i) != null)
+				hot++;
+		if (hot < 90)
+			fail("Frequently used keys were evicted by a scan, remaining:" + hot);
+		if (cache.size() > 160)
+			fail("Cache exceeded the maximum size:" + cache.size());
+	}
+
+	@Test
+	public void testRejectionNotNotified() {
+		final AtomicLong notified = new AtomicLong();
+		RemovalListener<Long, String> listener = new RemovalListener<Long, String>() {
+			@Override
+			public void onRemoval(RemovalNotification<Long, String> notification) {
+				notified.incrementAndGet();
+			}
+		};
+		SvLongCache<String> cache = new SvLongCache<String>(160, 0, null, 0, listener, Ticker.systemTicker(), true);
+		long puts = 0;
+		for (int round = 0; round < 5; round++)
+			for (long i = 0; i < 100; i++)
+				if (cache.getIfPresent(i) == null) {
+					cache.put(i, Long.toString(i));
+					puts++;
+				}
+		for (long i = 1000; i < 11000; i++) {
+			cache.put(i, Long.toString(i));
+			puts++;
+		}
+		if (cache.rejectionCount() == 0)
+			fail("No entries were rejected by the admission");
+		// only the entries which were cached are reported as removed
+		assertEquals(cache.evictionCount(), notified.get());
+		assertEquals(puts, cache.size() + cache.evictionCount() + cache.rejectionCount());
+	}
+
+	@Test
+	public void testRefreshAfterWrite() {
+		ManualTicker ticker = new ManualTicker();
+		final ArrayList<Long> refreshed = new ArrayList<Long>();
+		SvLongCache<String> cache = new SvLongCache<>(0, 0, null, ticker);
+		cache.setRefreshAfterWrite(50, 100, new SvLongCache.Refresher<String>() {
+			@Override
+			public void refresh(long key, String value) {
+				refreshed.add(key);
+			}
+		});
+		cache.put(1L, "1");
+		cache.put(2L, "2");
+		ticker.nanos.addAndGet(40);
+		assertEquals("1", cache.getIfPresent(1L));
+		assertEquals(0, refreshed.size());
+		ticker.nanos.addAndGet(20);
+		assertEquals("1", cache.getIfPresent(1L));
+		assertEquals(1, refreshed.size());
+		// a refresh which found the same value resets the write time
+		if (!cache.touch(1L, cache.getIfPresent(1L)))
+			fail("Touch of the cached value failed");
+		ticker.nanos.addAndGet(50);
+		assertEquals("1", cache.getIfPresent(1L));
+		// entries expire after write even if they are accessed
+		assertNull(cache.getIfPresent(2L));
+		ticker.nanos.addAndGet(60);
+		assertNull(cache.getIfPresent(1L));
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class SvLongSetTest {
+
+	@Test
+	public void testAddContains() {
+		SvLongSet set = new SvLongSet();
+		for (long i = 0; i < 100000; i += 3)
+			if (!set.add(i))
+				fail("Value reported as present before it was added:" + i);
+		for (long i = 0; i < 100000; i += 3)
+			if (set.add(i))
+				fail("Value added twice:" + i);
+		for (long i = 0; i < 100000; i++)
+			if (set.contains(i) != (i % 3 == 0))
+				fail("Wrong membership of value:" + i);
+		assertEquals(33334, set.size());
+	}
+
+	@Test
+	public void testNegativeAndNull() {
+		SvLongSet set = new SvLongSet(4);
+		set.add(-1L);
+		set.add(Long.MIN_VALUE);
+		set.add(0L);
+		if (!set.contains(-1L) || !set.contains(Long.MIN_VALUE) || !set.contains(0L))
+			fail("Negative or zero value not found");
+		if (set.contains((Long) null))
+			fail("Null must never be contained");
+		assertEquals(3, set.size());
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class SvQueryHistogramTest {
+
+	private static final long MS = 1000000L;
+
+	@Test
+	public void testBuckets() {
+		SvQueryHistogram histogram = new SvQueryHistogram();
+		histogram.record(MS / 2, 1);
+		histogram.record(1 * MS, 1);
+		histogram.record(15 * MS, 3);
+		histogram.record(45000 * MS, 5);
+		long[] counts = histogram.getBucketCounts();
+		assertEquals(SvQueryHistogram.BUCKET_BOUNDS.length + 1, counts.length);
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+		assertEquals(1, counts[4]);
+		assertEquals(1, counts[counts.length - 1]);
+		assertEquals(4, histogram.getCount());
+		assertEquals(10, histogram.getRows());
+		assertEquals(45000.0, histogram.getMaxMillis(), 0.001);
+		assertEquals((0.5 + 1 + 15 + 45000) / 4, histogram.getMeanMillis(), 0.001);
+	}
+
+	@Test
+	public void testPercentile() {
+		SvQueryHistogram histogram = new SvQueryHistogram();
+		assertEquals(0.0, histogram.getPercentileMillis(99), 0.001);
+		for (int i = 0; i < 98; i++)
+			histogram.record(3 * MS, 0);
+		histogram.record(700 * MS, 0);
+		histogram.record(1500 * MS, 0);
+		assertEquals(5.0, histogram.getPercentileMillis(50), 0.001);
+		assertEquals(5.0, histogram.getPercentileMillis(98), 0.001);
+		assertEquals(1000.0, histogram.getPercentileMillis(99), 0.001);
+		assertEquals(1500.0, histogram.getPercentileMillis(100), 0.001);
+	}
+
+	@Test
+	public void testBindsRedacted() {
+		// the binds of users and sessions hold credentials, whatever the config
+		assertFalse(SvQueryLog.canLogBinds(svCONST.OBJECT_TYPE_USER));
+		assertFalse(SvQueryLog.canLogBinds(svCONST.OBJECT_TYPE_SECURITY_LOG));
+		assertFalse(SvQueryLog.canLogBinds(null));
+	}
+
+	@Test
+	public void testJson() {
+		SvQueryHistogram histogram = new SvQueryHistogram();
+		histogram.record(7 * MS, 2);
+		assertEquals(1, histogram.toJsonObject().get("count").getAsLong());
+		assertEquals(SvQueryHistogram.BUCKET_BOUNDS.length + 1,
+				histogram.toJsonObject().get("buckets").getAsJsonArray().size());
+	}
+}
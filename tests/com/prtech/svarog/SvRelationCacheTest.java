@@ -0,0 +1,95 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataArray;
+import com.prtech.svarog_common.DbDataObject;
+
+public class SvRelationCacheTest {
+
+	private static final String ROOT_KEY = "SC_OBJECT_ID";
+
+	private static DbDataObject row(long rootId, long childId) {
+		DbDataObject dbo = new DbDataObject();
+		dbo.setVal(ROOT_KEY, rootId);
+		dbo.setVal("ANI_OBJECT_ID", childId);
+		return dbo;
+	}
+
+	private static DbDataArray array(DbDataObject... rows) {
+		DbDataArray dba = new DbDataArray();
+		for (DbDataObject dbo : rows)
+			dba.addDataItem(dbo);
+		return dba;
+	}
+
+	private static void assertSameRows(DbDataArray expected, DbDataArray actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertSame("Row " + i + " differs", expected.get(i), actual.get(i));
+	}
+
+	@Test
+	public void testDeltaMatchesFullReload() {
+		DbDataObject r1 = row(1L, 11L);
+		DbDataObject r2a = row(2L, 21L);
+		DbDataObject r2b = row(2L, 22L);
+		DbDataObject r3 = row(3L, 31L);
+		DbDataArray cached = array(r1, r2a, r2b, r3);
+
+		// root 2 lost a child and got a new one, root 4 is new
+		DbDataObject r2aNew = row(2L, 21L);
+		DbDataObject r2c = row(2L, 23L);
+		DbDataObject r4 = row(4L, 41L);
+		DbDataArray delta = array(r2aNew, r2c, r4);
+		DbDataArray fullReload = array(r1, r2aNew, r2c, r3, r4);
+
+		DbDataArray merged = SvRelationCache.mergeDelta(cached, delta, ROOT_KEY,
+				new HashSet<Long>(Arrays.asList(2L, 4L)));
+		assertSameRows(fullReload, merged);
+		// the cached array is not modified, since readers might iterate it
+		assertSameRows(array(r1, r2a, r2b, r3), cached);
+	}
+
+	@Test
+	public void testDeltaRemovesRoot() {
+		DbDataObject r1 = row(1L, 11L);
+		DbDataObject r2 = row(2L, 21L);
+		DbDataObject r3 = row(3L, 31L);
+		DbDataObject r1New = row(1L, 12L);
+
+		// root 2 no longer matches, so the delta has no rows for it
+		DbDataArray merged = SvRelationCache.mergeDelta(array(r1, r2, r3), array(r1New), ROOT_KEY,
+				new HashSet<Long>(Arrays.asList(1L, 2L)));
+		assertSameRows(array(r1New, r3), merged);
+	}
+
+	@Test
+	public void testDeltaNoChange() {
+		DbDataObject r1 = row(1L, 11L);
+		DbDataObject r2 = row(2L, 21L);
+		DbDataArray merged = SvRelationCache.mergeDelta(array(r1, r2), new DbDataArray(), ROOT_KEY,
+				new HashSet<Long>());
+		assertSameRows(array(r1, r2), merged);
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SvReplicaTest {
+
+	@Test
+	public void testNotConfigured() {
+		SvReplica.updateHealth(0);
+		assertFalse(SvReplica.route(null, false));
+		assertFalse(SvReplica.route("replica-test-none", false));
+		// writes aren't tracked without a replica
+		SvReplica.markWrite("replica-test-none", false);
+		SvReplica.updateHealth(0);
+		assertTrue(SvReplica.route("replica-test-none", true));
+	}
+
+	@Test
+	public void testLagFallback() {
+		SvReplica.updateHealth(0);
+		assertTrue(SvReplica.isHealthy());
+		assertTrue(SvReplica.route(null, true));
+		SvReplica.updateHealth(SvConf.getReplicaMaxLag());
+		assertTrue(SvReplica.isHealthy());
+		SvReplica.updateHealth(SvConf.getReplicaMaxLag() + 1);
+		assertFalse(SvReplica.isHealthy());
+		assertFalse(SvReplica.route(null, true));
+		// an unreachable replica is measured as infinite lag
+		SvReplica.updateHealth(Double.POSITIVE_INFINITY);
+		assertFalse(SvReplica.route("replica-test-lag", true));
+		SvReplica.updateHealth(0);
+		assertTrue(SvReplica.route("replica-test-lag", true));
+	}
+
+	@Test
+	public void testStickySession() {
+		SvReplica.updateHealth(0);
+		assertTrue(SvReplica.route("replica-test-writer", true));
+		SvReplica.markWrite("replica-test-writer", true);
+		// the writer reads its own writes from the primary
+		assertFalse(SvReplica.route("replica-test-writer", true));
+		// other sessions and anonymous readers keep using the replica
+		assertTrue(SvReplica.route("replica-test-reader", true));
+		assertTrue(SvReplica.route(null, true));
+		// anonymous writes can't make a session sticky
+		SvReplica.markWrite(null, true);
+		assertTrue(SvReplica.route(null, true));
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.prtech.svarog_common.DbDataObject;
+import com.prtech.svarog_common.DbQueryExpression;
+import com.prtech.svarog_common.SvCharId;
+
+public class SvRowPlanTest {
+
+	private static final String[] TYPED_COLUMNS = { "tbl0_pkid", "TBL0_OBJECT_ID", "TBL0_DT_INSERT", "TBL0_DT_DELETE",
+			"TBL0_PARENT_ID", "TBL0_OBJECT_TYPE", "tbl0_status", "TBL0_USER_ID", "TBL0_NAME", "tbl0_code" };
+
+	private static ResultSetMetaData metaData(final String... columns) {
+		return (ResultSetMetaData) Proxy.newProxyInstance(SvRowPlanTest.class.getClassLoader(),
+				new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getColumnCount"))
+							return columns.length;
+						if (method.getName().equals("getColumnName"))
+							return columns[(Integer) args[0] - 1];
+						if (method.getName().equals("getColumnType"))
+							return Types.VARCHAR;
+						return 0;
+					}
+				});
+	}
+
+	private static DbDataObject field(String fieldType) {
+		DbDataObject dbf = new DbDataObject(svCONST.OBJECT_TYPE_FIELD);
+		dbf.setVal(Sv.FIELD_TYPE, fieldType);
+		return dbf;
+	}
+
+	private static HashMap<SvCharId, Object> fields(String... names) {
+		HashMap<SvCharId, Object> fields = new HashMap<SvCharId, Object>();
+		for (String name : names)
+			fields.put(new SvCharId(name), field(Sv.NVARCHAR));
+		fields.put(new SvCharId("GEOM"), field(Sv.GEOMETRY));
+		return fields;
+	}
+
+	private static DbQueryExpression typedQuery() {
+		DbQueryExpression query = new DbQueryExpression();
+		DbDataObject dbt = new DbDataObject(svCONST.OBJECT_TYPE_TABLE);
+		dbt.setObjectId(990002L);
+		query.setReturnType(dbt);
+		return query;
+	}
+
+	/**
+	 * The field name as it was mapped by column name on every row, before the
+	 * row plan was introduced
+	 */
+	private static String nameBased(String column, String tblPrefix) {
+		return column.toUpperCase().substring(tblPrefix.length() + 1);
+	}
+
+	@Test
+	public void testTypedMapping() throws SQLException {
+		HashMap<SvCharId, Object> fields = fields("NAME", "CODE");
+		SvRowPlan plan = new SvRowPlan("TBL", typedQuery(), metaData(TYPED_COLUMNS), fields);
+		assertEquals("TBL0", plan.tblPrefix);
+		assertTrue(plan.setRepoData);
+		assertFalse(plan.partial);
+		for (int colIndex = 1; colIndex <= TYPED_COLUMNS.length; colIndex++) {
+			String fieldName = nameBased(TYPED_COLUMNS[colIndex - 1], "TBL0");
+			if (svCONST.repoFieldNames.indexOf(fieldName) >= 0) {
+				// repo columns are read into the slots which were read by name
+				assertNull(plan.fieldIds[colIndex]);
+				assertEquals(colIndex, plan.repoCols[indexOf(SvRowPlan.REPO_COLUMNS, fieldName)]);
+			} else {
+				SvCharId fieldId = new SvCharId(fieldName);
+				assertEquals(fieldId, plan.fieldIds[colIndex]);
+				assertSame(fields.get(fieldId), plan.fieldDescs[colIndex]);
+				assertEquals(Sv.NVARCHAR, plan.fieldTypes[colIndex]);
+			}
+		}
+	}
+
+	@Test
+	public void testPartialAndMissingRepo() throws SQLException {
+		// a field of the type which isn't in the result set
+		SvRowPlan plan = new SvRowPlan("TBL", typedQuery(), metaData(TYPED_COLUMNS), fields("NAME", "CODE", "NOTE"));
+		assertTrue(plan.partial);
+		// without all repo columns the repo data is read by name
+		plan = new SvRowPlan("TBL", typedQuery(), metaData("TBL0_PKID", "TBL0_OBJECT_ID", "TBL0_NAME"),
+				fields("NAME"));
+		assertNull(plan.repoCols);
+	}
+
+	@Test
+	public void testUntypedMapping() throws SQLException {
+		String[] columns = { "TBL_NAME", "tbl_code", "TOTAL" };
+		SvRowPlan plan = new SvRowPlan("TBL", new DbQueryExpression(), metaData(columns), null);
+		assertEquals("TBL", plan.tblPrefix);
+		assertFalse(plan.setRepoData);
+		for (int colIndex = 1; colIndex <= columns.length; colIndex++)
+			assertEquals(columns[colIndex - 1].toUpperCase().replace("TBL_", ""), plan.fieldNames[colIndex]);
+	}
+
+	private static int indexOf(String[] values, String value) {
+		for (int i = 0; i < values.length; i++)
+			if (values[i].equals(value))
+				return i;
+		return -1;
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ *   Copyright (c) 2013, 2019 Perun Technologii DOOEL Skopje.
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Apache License
+ *   Version 2.0 or the Svarog License Agreement (the "License");
+ *   You may not use this file except in compliance with the License. 
+ *  
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See LICENSE file in the project root for the specific language governing 
+ *   permissions and limitations under the License.
+ *  
+ *******************************************************************************/
+package com.prtech.svarog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class SvSingleFlightTest {
+
+	private static final int WAITERS = 7;
+
+	/**
+	 * Method to wait until a thread blocks, which for the waiters of a flight
+	 * means they wait for the leader to finish
+	 */
+	private static void awaitBlocked(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (thread.getState() != Thread.State.WAITING) {
+			if (System.currentTimeMillis() > deadline)
+				fail("The thread didn't start waiting for the leader");
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Method to start a leader thread whose load blocks until released
+	 */
+	private static Thread startLeader(final SvSingleFlight flight, final String key, final CountDownLatch started,
+			final CountDownLatch release, final AtomicReference<String> cache, final AtomicInteger dbLoads) {
+		Thread leader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flight.load(key, new SvSingleFlight.Loader<String>() {
+						@Override
+						public String load() throws SvException {
+							dbLoads.incrementAndGet();
+							started.countDown();
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+							return cache.get();
+						}
+					}, null);
+				} catch (SvException e) {
+					fail(e.getMessage());
+				}
+			}
+		});
+		leader.start();
+		return leader;
+	}
+
+	@Test
+	public void testConcurrentLoadsCoalesced() throws InterruptedException {
+		final SvSingleFlight flight = new SvSingleFlight();
+		final AtomicInteger dbLoads = new AtomicInteger();
+		final AtomicReference<String> cache = new AtomicReference<String>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger errors = new AtomicInteger();
+
+		cache.set("loaded");
+		Thread leader = startLeader(flight, "O.1.1", started, release, cache, dbLoads);
+		started.await();
+
+		List<Thread> waiters = new ArrayList<Thread>();
+		for (int i = 0; i < WAITERS; i++) {
+			Thread waiter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String value = flight.load("O.1.1", new SvSingleFlight.Loader<String>() {
+							@Override
+							public String load() throws SvException {
+								dbLoads.incrementAndGet();
+								return "loaded";
+							}
+						}, new SvSingleFlight.Loader<String>() {
+							@Override
+							public String load() throws SvException {
+								return cache.get();
+							}
+						});
+						if (!"loaded".equals(value))
+							errors.incrementAndGet();
+					} catch (SvException e) {
+						errors.incrementAndGet();
+					}
+				}
+			});
+			waiter.start();
+			waiters.add(waiter);
+		}
+		for (Thread waiter : waiters)
+			awaitBlocked(waiter);
+		release.countDown();
+		leader.join();
+		for (Thread waiter : waiters)
+			waiter.join();
+		if (errors.get() > 0)
+			fail("Some of the loads didn't return the loaded value");
+		assertEquals(1, dbLoads.get());
+		assertEquals(1, flight.getLoadCount());
+		assertEquals(WAITERS, flight.getSavedLoadCount());
+	}
+
+	@Test
+	public void testWaiterLoadsOnEmptyCache() throws InterruptedException {
+		final SvSingleFlight flight = new SvSingleFlight();
+		final AtomicInteger dbLoads = new AtomicInteger();
+		final AtomicReference<String> cache = new AtomicReference<String>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicReference<String> waiterValue = new AtomicReference<String>();
+
+		// the leader populates nothing, so the waiter must load by itself
+		Thread leader = startLeader(flight, "O.1.2", started, release, cache, dbLoads);
+		started.await();
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					waiterValue.set(flight.load("O.1.2", new SvSingleFlight.Loader<String>() {
+						@Override
+						public String load() throws SvException {
+							dbLoads.incrementAndGet();
+							return "db";
+						}
+					}, new SvSingleFlight.Loader<String>() {
+						@Override
+						public String load() throws SvException {
+							return cache.get();
+						}
+					}));
+				} catch (SvException e) {
+					fail(e.getMessage());
+				}
+			}
+		});
+		waiter.start();
+		awaitBlocked(waiter);
+		release.countDown();
+		leader.join();
+		waiter.join();
+		assertEquals("db", waiterValue.get());
+		assertEquals(2, dbLoads.get());
+		assertEquals(2, flight.getLoadCount());
+		assertEquals(0, flight.getSavedLoadCount());
+	}
+
+	@Test
+	public void testInterruptedWaiter() throws InterruptedException {
+		final SvSingleFlight flight = new SvSingleFlight();
+		final AtomicInteger dbLoads = new AtomicInteger();
+		final AtomicReference<String> cache = new AtomicReference<String>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicReference<String> errorLabel = new AtomicReference<String>();
+		final AtomicReference<Boolean> interrupted = new AtomicReference<Boolean>();
+
+		cache.set("loaded");
+		Thread leader = startLeader(flight, "O.1.3", started, release, cache, dbLoads);
+		started.await();
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flight.load("O.1.3", new SvSingleFlight.Loader<String>() {
+						@Override
+						public String load() throws SvException {
+							dbLoads.incrementAndGet();
+							return "db";
+						}
+					}, new SvSingleFlight.Loader<String>() {
+						@Override
+						public String load() throws SvException {
+							return cache.get();
+						}
+					});
+				} catch (SvException e) {
+					errorLabel.set(e.getLabelCode());
+				}
+				interrupted.set(Thread.currentThread().isInterrupted());
+			}
+		});
+		waiter.start();
+		awaitBlocked(waiter);
+		waiter.interrupt();
+		waiter.join();
+		release.countDown();
+		leader.join();
+		// the interrupted waiter doesn't load by itself
+		assertEquals("system.err.thread_interrupted", errorLabel.get());
+		assertTrue(interrupted.get());
+		assertEquals(1, dbLoads.get());
+		assertEquals(1, flight.getLoadCount());
+		assertEquals(0, flight.getSavedLoadCount());
+	}
+}